@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.api.mapping;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.plugin.adyen.client.model.SplitSettlementData;
+import org.killbill.billing.plugin.util.KillBillMoney;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Parsing of the splitSettlementDataItem.* and additionalDataItem.* properties: single pass tokenizer over the
+ * indexed prefix groups vs. the previous implementation (scan of all properties, regex split, one map per field).
+ * The *Indexing variants also pay for the indexing of the properties, which the other ones share.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ItemPropertiesMappingBenchmark {
+
+    // Split settlement items (and additional data items)
+    @Param({"2", "20"})
+    public int items;
+
+    // Unrelated properties (card, address, 3-D Secure, etc.)
+    @Param({"30"})
+    public int otherProperties;
+
+    private List<PluginProperty> properties;
+    private IndexedPluginProperties indexedProperties;
+
+    @Setup
+    public void setUp() {
+        properties = new ArrayList<PluginProperty>();
+        for (int i = 0; i < otherProperties; i++) {
+            properties.add(new PluginProperty("property" + i, "value" + i, false));
+        }
+        for (int i = 1; i <= items; i++) {
+            properties.add(new PluginProperty("splitSettlementDataItem." + i + ".amount", "2.5", false));
+            properties.add(new PluginProperty("splitSettlementDataItem." + i + ".group", "deal" + i, false));
+            properties.add(new PluginProperty("splitSettlementDataItem." + i + ".reference", "voucherId" + i, false));
+            properties.add(new PluginProperty("splitSettlementDataItem." + i + ".type", "Voucher", false));
+            properties.add(new PluginProperty("additionalDataItem." + i + ".key", "riskdata.basket.item" + i + ".sku", false));
+            properties.add(new PluginProperty("additionalDataItem." + i + ".value", "sku" + i, false));
+        }
+        indexedProperties = IndexedPluginProperties.of(properties);
+    }
+
+    @Benchmark
+    public SplitSettlementData splitSettlementData() {
+        return ItemPropertiesMappingService.toSplitSettlementData(Currency.EUR, indexedProperties);
+    }
+
+    @Benchmark
+    public SplitSettlementData splitSettlementDataIndexing() {
+        return ItemPropertiesMappingService.toSplitSettlementData(Currency.EUR, IndexedPluginProperties.of(properties));
+    }
+
+    @Benchmark
+    public SplitSettlementData splitSettlementDataRegexSplit() {
+        return regexSplitSettlementData(Currency.EUR, properties);
+    }
+
+    @Benchmark
+    public Map<String, String> additionalData() {
+        return ItemPropertiesMappingService.toAdditionalData(indexedProperties);
+    }
+
+    @Benchmark
+    public Map<String, String> additionalDataIndexing() {
+        return ItemPropertiesMappingService.toAdditionalData(IndexedPluginProperties.of(properties));
+    }
+
+    @Benchmark
+    public Map<String, String> additionalDataRegexSplit() {
+        return regexAdditionalData(properties);
+    }
+
+    // Previous implementation, for comparison
+    private static SplitSettlementData regexSplitSettlementData(final Currency currency, final Iterable<PluginProperty> pluginProperties) {
+        final Map<Short, BigDecimal> amounts = new HashMap<Short, BigDecimal>();
+        final Map<Short, String> groups = new HashMap<Short, String>();
+        final Map<Short, String> references = new HashMap<Short, String>();
+        final Map<Short, String> types = new HashMap<Short, String>();
+        for (final PluginProperty pluginProperty : pluginProperties) {
+            if (pluginProperty.getKey().startsWith("splitSettlementDataItem") && pluginProperty.getValue() != null) {
+                final String[] parts = pluginProperty.getKey().split("\\.");
+                final Short itemNb = Short.parseShort(parts[1]);
+                final String suffix = parts[2];
+
+                final String value = pluginProperty.getValue().toString();
+                if ("amount".equals(suffix)) {
+                    amounts.put(itemNb, new BigDecimal(value));
+                } else if ("group".equals(suffix)) {
+                    groups.put(itemNb, value);
+                } else if ("reference".equals(suffix)) {
+                    references.put(itemNb, value);
+                } else if ("type".equals(suffix)) {
+                    types.put(itemNb, value);
+                }
+            }
+        }
+
+        final List<SplitSettlementData.Item> items = new LinkedList<SplitSettlementData.Item>();
+        for (final Short itemNb : amounts.keySet()) {
+            final String type = types.get(itemNb);
+            if (type != null) {
+                items.add(new SplitSettlementData.Item(KillBillMoney.toMinorUnits(currency.toString(), amounts.get(itemNb)),
+                                                       MoreObjects.firstNonNull(groups.get(itemNb), type),
+                                                       MoreObjects.firstNonNull(references.get(itemNb), type),
+                                                       type));
+            }
+        }
+
+        return items.isEmpty() ? null : new SplitSettlementData(1, currency.toString(), items);
+    }
+
+    // Previous implementation, for comparison
+    private static Map<String, String> regexAdditionalData(final Iterable<PluginProperty> pluginProperties) {
+        final Map<Short, String> keys = new HashMap<Short, String>();
+        final Map<Short, String> values = new HashMap<Short, String>();
+        for (final PluginProperty pluginProperty : pluginProperties) {
+            if (pluginProperty.getKey().startsWith("additionalDataItem") && pluginProperty.getValue() != null) {
+                final String[] parts = pluginProperty.getKey().split("\\.");
+                final Short itemNb = Short.parseShort(parts[1]);
+                final String suffix = parts[2];
+
+                final String value = pluginProperty.getValue().toString();
+                if ("key".equals(suffix)) {
+                    keys.put(itemNb, value);
+                } else if ("value".equals(suffix)) {
+                    values.put(itemNb, value);
+                }
+            }
+        }
+
+        final Map<String, String> additionalData = new HashMap<String, String>();
+        for (final Short itemNb : keys.keySet()) {
+            additionalData.put(keys.get(itemNb), values.get(itemNb));
+        }
+        return additionalData;
+    }
+}
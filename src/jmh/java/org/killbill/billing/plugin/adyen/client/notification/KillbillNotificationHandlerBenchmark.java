@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.client.notification;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.adyen.notification.SendNotification;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.payment.api.Payment;
+import org.killbill.billing.payment.api.PaymentApiException;
+import org.killbill.billing.payment.api.PaymentTransaction;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionStatus;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.TestUtils;
+import org.killbill.billing.plugin.adyen.api.AdyenPaymentTransactionInfoPlugin;
+import org.killbill.billing.plugin.adyen.client.AdyenConfigProperties;
+import org.killbill.billing.plugin.adyen.client.model.PaymentServiceProviderResult;
+import org.killbill.billing.plugin.adyen.client.model.PurchaseResult;
+import org.killbill.billing.plugin.adyen.core.AdyenActivator;
+import org.killbill.billing.plugin.adyen.core.AdyenConfigPropertiesConfigurationHandler;
+import org.killbill.billing.plugin.adyen.core.KillbillAdyenNotificationHandler;
+import org.killbill.billing.plugin.adyen.dao.AdyenDao;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.clock.DefaultClock;
+import org.killbill.commons.embeddeddb.h2.H2EmbeddedDB;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+
+import static org.killbill.billing.plugin.adyen.client.notification.NotificationIngestionBenchmark.buildNotificationPayload;
+import static org.killbill.billing.plugin.adyen.client.notification.NotificationIngestionBenchmark.buildPspReferences;
+
+/**
+ * Same batches as {@link NotificationIngestionBenchmark}, dispatched to {@link KillbillAdyenNotificationHandler}
+ * backed by an in-memory H2 database and a mocked Kill Bill API. Each notification matches an existing
+ * AUTHORISATION already in sync with Kill Bill, i.e. the handler looks up, updates and records it. The recorded
+ * notifications are deleted before each iteration, so that the iterations run against the same table size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@State(Scope.Benchmark)
+public class KillbillNotificationHandlerBenchmark {
+
+    @Param({"1", "50", "500"})
+    public int batchSize;
+
+    private H2EmbeddedDB embeddedDB;
+    private AdyenNotificationService adyenNotificationService;
+    private String payload;
+    private SendNotification sendNotification;
+
+    @Setup
+    public void setUp() throws Exception {
+        embeddedDB = new H2EmbeddedDB();
+        embeddedDB.initialize();
+        embeddedDB.start();
+        embeddedDB.executeScript(TestUtils.toString("ddl.sql"));
+        embeddedDB.refreshTableNames();
+        final AdyenDao dao = new AdyenDao(embeddedDB.getDataSource());
+
+        final DefaultClock clock = new DefaultClock();
+        final UUID kbTenantId = UUID.randomUUID();
+        final Account account = TestUtils.buildAccount(Currency.EUR, "DE");
+        final OSGIKillbillAPI killbillApi = TestUtils.buildOSGIKillbillAPI(account);
+
+        final List<String> pspReferences = buildPspReferences(batchSize);
+        final Map<UUID, Payment> payments = new HashMap<UUID, Payment>();
+        for (final String pspReference : pspReferences) {
+            final Payment payment = TestUtils.buildPayment(account.getId(), account.getPaymentMethodId(), Currency.EUR);
+            final PaymentTransaction paymentTransaction = TestUtils.buildPaymentTransaction(payment, TransactionType.AUTHORIZE, TransactionStatus.SUCCESS, BigDecimal.TEN, Currency.EUR);
+            final AdyenResponsesRecord record = dao.addResponse(account.getId(),
+                                                                payment.getId(),
+                                                                paymentTransaction.getId(),
+                                                                TransactionType.AUTHORIZE,
+                                                                BigDecimal.TEN,
+                                                                Currency.EUR,
+                                                                new PurchaseResult(PaymentServiceProviderResult.AUTHORISED, null, pspReference, null, null, null, null),
+                                                                clock.getUTCNow(),
+                                                                kbTenantId);
+            TestUtils.updatePaymentTransaction(paymentTransaction, new AdyenPaymentTransactionInfoPlugin(record));
+            payments.put(payment.getId(), payment);
+        }
+        // Avoid stubbing getPayment once per payment (Mockito stub lookups are linear)
+        Mockito.when(killbillApi.getPaymentApi().getPayment(Mockito.<UUID>any(),
+                                                            Mockito.anyBoolean(),
+                                                            Mockito.anyBoolean(),
+                                                            Mockito.<Iterable<PluginProperty>>any(),
+                                                            Mockito.<TenantContext>any()))
+               .then(new Answer<Payment>() {
+                   @Override
+                   public Payment answer(final InvocationOnMock invocation) throws Throwable {
+                       final Payment payment = payments.get((UUID) invocation.getArguments()[0]);
+                       if (payment == null) {
+                           throw new PaymentApiException(new IllegalStateException("Unknown payment"), 0, "Unknown payment");
+                       }
+                       return payment;
+                   }
+               });
+
+        final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler = new AdyenConfigPropertiesConfigurationHandler(AdyenActivator.PLUGIN_NAME, killbillApi, TestUtils.buildLogService(), null);
+        adyenConfigPropertiesConfigurationHandler.setDefaultConfigurable(new AdyenConfigProperties(new Properties()));
+
+        final AdyenNotificationHandler killbillAdyenNotificationHandler = new KillbillAdyenNotificationHandler(adyenConfigPropertiesConfigurationHandler, killbillApi, dao, clock);
+        adyenNotificationService = new AdyenNotificationService(ImmutableList.<AdyenNotificationHandler>of(killbillAdyenNotificationHandler));
+
+        payload = buildNotificationPayload(pspReferences);
+        sendNotification = adyenNotificationService.parse(new ByteArrayInputStream(payload.getBytes(Charsets.UTF_8)));
+    }
+
+    @Setup(Level.Iteration)
+    public void deleteNotifications() throws Exception {
+        final Connection connection = embeddedDB.getDataSource().getConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            try {
+                statement.execute("truncate table adyen_notifications");
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        embeddedDB.stop();
+    }
+
+    @Benchmark
+    public SendNotification dispatch() {
+        adyenNotificationService.dispatch(sendNotification);
+        return sendNotification;
+    }
+
+    @Benchmark
+    public String handleNotifications() {
+        return adyenNotificationService.handleNotifications(payload);
+    }
+}
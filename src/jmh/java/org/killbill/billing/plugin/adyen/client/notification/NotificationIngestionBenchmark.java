@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.client.notification;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.adyen.notification.NotificationRequestItem;
+import org.killbill.adyen.notification.SendNotification;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Cost of the notification path with a no-op handler: SOAP parsing, dispatching to the handlers
+ * and building the acknowledgement are measured separately, as well as end-to-end.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@State(Scope.Benchmark)
+public class NotificationIngestionBenchmark {
+
+    static final String MERCHANT_ACCOUNT = "TestMerchant";
+
+    private AdyenNotificationService adyenNotificationService;
+
+    @State(Scope.Benchmark)
+    public static class Batch {
+
+        @Param({"1", "50", "500"})
+        public int batchSize;
+
+        String payload;
+        SendNotification sendNotification;
+
+        @Setup
+        public void setUp(final NotificationIngestionBenchmark benchmark) throws Exception {
+            payload = buildNotificationPayload(buildPspReferences(batchSize));
+            sendNotification = benchmark.adyenNotificationService.parse(new ByteArrayInputStream(payload.getBytes(Charsets.UTF_8)));
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        adyenNotificationService = new AdyenNotificationService(ImmutableList.<AdyenNotificationHandler>of(new NoOpAdyenNotificationHandler()));
+    }
+
+    @Benchmark
+    public SendNotification parse(final Batch batch) throws Exception {
+        return adyenNotificationService.parse(new ByteArrayInputStream(batch.payload.getBytes(Charsets.UTF_8)));
+    }
+
+    @Benchmark
+    public SendNotification dispatch(final Batch batch) {
+        adyenNotificationService.dispatch(batch.sendNotification);
+        return batch.sendNotification;
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream ack() {
+        return adyenNotificationService.createSendNotificationResponse("[accepted]");
+    }
+
+    @Benchmark
+    public String handleNotifications(final Batch batch) {
+        return adyenNotificationService.handleNotifications(batch.payload);
+    }
+
+    static List<String> buildPspReferences(final int batchSize) {
+        final ImmutableList.Builder<String> pspReferences = ImmutableList.<String>builder();
+        for (int i = 0; i < batchSize; i++) {
+            pspReferences.add(String.valueOf(4823660019473428L + i));
+        }
+        return pspReferences.build();
+    }
+
+    // Same shape as the notifications recorded in TestAdyenNotificationService
+    static String buildNotificationPayload(final Iterable<String> pspReferences) {
+        final StringBuilder payload = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                                        "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n" +
+                                                        "  <soap:Body>\n" +
+                                                        "    <ns1:sendNotification xmlns:ns1=\"http://notification.services.adyen.com\">\n" +
+                                                        "      <ns1:notification>\n" +
+                                                        "        <live xmlns=\"http://notification.services.adyen.com\">true</live>\n" +
+                                                        "        <notificationItems xmlns=\"http://notification.services.adyen.com\">\n");
+        for (final String pspReference : pspReferences) {
+            payload.append("          <NotificationRequestItem>\n" +
+                           "            <additionalData>\n" +
+                           "              <entry>\n" +
+                           "                <key xsi:type=\"xsd:string\">hmacSignature</key>\n" +
+                           "                <value xsi:type=\"xsd:string\">XlhIGK7wKAFJ1D1aqceFwLkXSL1XXf1DWBVhUo17rqo=</value>\n" +
+                           "              </entry>\n" +
+                           "            </additionalData>\n" +
+                           "            <amount>\n" +
+                           "              <currency xmlns=\"http://common.services.adyen.com\">EUR</currency>\n" +
+                           "              <value xmlns=\"http://common.services.adyen.com\">1000</value>\n" +
+                           "            </amount>\n" +
+                           "            <eventCode>AUTHORISATION</eventCode>\n" +
+                           "            <eventDate>2013-04-15T06:59:22.278+02:00</eventDate>\n" +
+                           "            <merchantAccountCode>" + MERCHANT_ACCOUNT + "</merchantAccountCode>\n" +
+                           "            <merchantReference>" + pspReference + "</merchantReference>\n" +
+                           "            <operations>\n" +
+                           "              <string>CANCEL</string>\n" +
+                           "              <string>CAPTURE</string>\n" +
+                           "              <string>REFUND</string>\n" +
+                           "            </operations>\n" +
+                           "            <originalReference xsi:nil=\"true\"/>\n" +
+                           "            <paymentMethod>visa</paymentMethod>\n" +
+                           "            <pspReference>" + pspReference + "</pspReference>\n" +
+                           "            <reason>111647:7629:5/2014</reason>\n" +
+                           "            <success>true</success>\n" +
+                           "          </NotificationRequestItem>\n");
+        }
+        payload.append("        </notificationItems>\n" +
+                       "      </ns1:notification>\n" +
+                       "    </ns1:sendNotification>\n" +
+                       "  </soap:Body>\n" +
+                       "</soap:Envelope>");
+        return payload.toString();
+    }
+
+    private static final class NoOpAdyenNotificationHandler implements AdyenNotificationHandler {
+
+        private long handled;
+
+        @Override
+        public boolean canHandleNotification(final NotificationRequestItem item) {
+            return true;
+        }
+
+        @Override
+        public void handleNotification(final NotificationRequestItem item) {
+            handled++;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.client.payment.builder;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.killbill.adyen.payment.AnyType2AnyTypeMap;
+import org.killbill.adyen.payment.ModificationRequest;
+import org.killbill.adyen.payment.PaymentRequest;
+import org.killbill.adyen.payment.PaymentRequest3D;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.plugin.adyen.client.AdyenConfigProperties;
+import org.killbill.billing.plugin.adyen.client.model.PaymentData;
+import org.killbill.billing.plugin.adyen.client.model.SplitSettlementData;
+import org.killbill.billing.plugin.adyen.client.model.UserData;
+import org.killbill.billing.plugin.adyen.client.model.paymentinfo.Card;
+import org.killbill.billing.plugin.adyen.client.model.paymentinfo.Recurring;
+import org.killbill.billing.plugin.adyen.client.model.paymentinfo.WebPaymentFrontend;
+import org.killbill.billing.plugin.adyen.client.payment.converter.impl.PaymentInfoConverterService;
+import org.killbill.billing.plugin.adyen.client.payment.exception.SignatureGenerationException;
+import org.killbill.billing.plugin.adyen.client.payment.service.Signer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Throughput of the request builders used on the authorization hot path. Run with the gc profiler
+ * (default jmh.args of the benchmarks profile) to also get the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestBuilderBenchmark {
+
+    static final String MERCHANT_ACCOUNT = "ShoppyShopDE";
+    static final String SKIN_CODE = "skinCodeDE";
+    static final String HMAC_SECRET = "4468D9782DEF54FCD706C9100C71EC43932B1EBC2ACF6BA0560C05AAA7550C48";
+    static final String PSP_REFERENCE = "8514436247811264";
+
+    private PaymentInfoConverterService paymentInfoConverterService;
+    private AdyenConfigProperties adyenConfigProperties;
+    private Signer signer;
+
+    private PaymentData cardPaymentData;
+    private PaymentData recurringPaymentData;
+    private PaymentData threeDSPaymentData;
+    private PaymentData hppPaymentData;
+    private UserData userData;
+    private SplitSettlementData splitSettlementData;
+    private Map<String, String> additionalData;
+
+    @Setup
+    public void setUp() {
+        paymentInfoConverterService = new PaymentInfoConverterService();
+
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.adyen.merchantAccount", MERCHANT_ACCOUNT);
+        properties.put("org.killbill.billing.plugin.adyen.skin", SKIN_CODE);
+        properties.put("org.killbill.billing.plugin.adyen.hmac.secret", HMAC_SECRET);
+        adyenConfigProperties = new AdyenConfigProperties(properties);
+        signer = new Signer();
+
+        cardPaymentData = buildCardPaymentData();
+        recurringPaymentData = buildRecurringPaymentData();
+        threeDSPaymentData = build3DSPaymentData();
+        hppPaymentData = buildHppPaymentData();
+        userData = buildUserData();
+        splitSettlementData = buildSplitSettlementData();
+        additionalData = ImmutableMap.<String, String>of("riskdata.deliveryMethod", "express",
+                                                         "riskdata.basket.item1.sku", "premium-plan");
+    }
+
+    @Benchmark
+    public PaymentRequest paymentRequestCard() {
+        return new PaymentRequestBuilder(MERCHANT_ACCOUNT, cardPaymentData, userData, splitSettlementData, additionalData, paymentInfoConverterService).build();
+    }
+
+    @Benchmark
+    public PaymentRequest paymentRequestRecurring() {
+        return new PaymentRequestBuilder(MERCHANT_ACCOUNT, recurringPaymentData, userData, null, additionalData, paymentInfoConverterService).build();
+    }
+
+    @Benchmark
+    public PaymentRequest3D paymentRequest3D() {
+        return new PaymentRequest3DBuilder(MERCHANT_ACCOUNT, threeDSPaymentData, userData, splitSettlementData, additionalData).build();
+    }
+
+    @Benchmark
+    public ModificationRequest modificationRequest() {
+        return new ModificationRequestBuilder(MERCHANT_ACCOUNT, cardPaymentData, PSP_REFERENCE, splitSettlementData, additionalData).build();
+    }
+
+    @Benchmark
+    public Map<String, String> hppRequest() {
+        return new HPPRequestBuilder(MERCHANT_ACCOUNT, hppPaymentData, userData, splitSettlementData, adyenConfigProperties, signer).build();
+    }
+
+    @Benchmark
+    public List<AnyType2AnyTypeMap.Entry> splitSettlementEntries() {
+        return new SplitSettlementParamsBuilder().createEntriesFrom(splitSettlementData);
+    }
+
+    @Benchmark
+    public Map<String, String> splitSettlementSignedParams() throws SignatureGenerationException {
+        return new SplitSettlementParamsBuilder().createSignedParamsFrom(splitSettlementData, "A8fZw3UV2aLfWtr8mrqy8+wtVXs=", signer, "Hello kitty", "HmacSHA1");
+    }
+
+    static PaymentData buildCardPaymentData() {
+        final Card card = new Card();
+        card.setHolderName("Dupont");
+        card.setNumber("4111111111111111");
+        card.setCvc("737");
+        card.setExpiryMonth(8);
+        card.setExpiryYear(2030);
+        card.setAcceptHeader("text/html");
+        card.setUserAgent("Mozilla/5.0");
+        card.setCaptureDelayHours(0);
+        card.setContract("RECURRING");
+        return new PaymentData<Card>(new BigDecimal("20.99"), Currency.EUR, UUID.randomUUID().toString(), card);
+    }
+
+    static PaymentData buildRecurringPaymentData() {
+        final Recurring recurring = new Recurring();
+        recurring.setRecurringDetailReference("8314442372419167");
+        recurring.setContract("RECURRING");
+        recurring.setShopperInteraction("ContAuth");
+        return new PaymentData<Recurring>(new BigDecimal("20.99"), Currency.EUR, UUID.randomUUID().toString(), recurring);
+    }
+
+    static PaymentData build3DSPaymentData() {
+        final Card card = new Card();
+        card.setMd("djIhcWc9PSFvTm5vWVpqQ1B3NExwN2xaN3c5L1RpUT0");
+        card.setPaRes("eNrNV1mTosgWfq9fUVHzaHSzuFRZ4zhBmIAom6JS+MaSIsqiLAr+");
+        card.setAcceptHeader("text/html");
+        card.setUserAgent("Mozilla/5.0");
+        return new PaymentData<Card>(new BigDecimal("20.99"), Currency.EUR, UUID.randomUUID().toString(), card);
+    }
+
+    static PaymentData buildHppPaymentData() {
+        final WebPaymentFrontend webPaymentFrontend = new WebPaymentFrontend();
+        webPaymentFrontend.setCountry("DE");
+        webPaymentFrontend.setSkinCode(SKIN_CODE);
+        webPaymentFrontend.setShipBeforeDate(new DateTime().plusDays(1).toString("yyyy-MM-dd'T'HH:mm"));
+        webPaymentFrontend.setSessionValidity(new DateTime().plusMinutes(15).toString("yyyy-MM-dd'T'HH:mm"));
+        webPaymentFrontend.setResURL("http://killbill.io");
+        webPaymentFrontend.setBrandCode("paypal");
+        return new PaymentData<WebPaymentFrontend>(new BigDecimal("20.99"), Currency.EUR, UUID.randomUUID().toString(), webPaymentFrontend);
+    }
+
+    static UserData buildUserData() {
+        final UserData userData = new UserData();
+        userData.setShopperEmail("test@killbill.io");
+        userData.setShopperReference(UUID.randomUUID().toString());
+        userData.setShopperLocale(Locale.GERMANY);
+        userData.setShopperIP("127.0.0.1");
+        userData.setFirstName("Jean");
+        userData.setLastName("Dupont");
+        return userData;
+    }
+
+    static SplitSettlementData buildSplitSettlementData() {
+        return new SplitSettlementData(1,
+                                       "EUR",
+                                       ImmutableList.<SplitSettlementData.Item>of(new SplitSettlementData.Item(500, "deal1", "voucherId", "voucher"),
+                                                                                  new SplitSettlementData.Item(750, "deal1", "voucherId2", "voucher"),
+                                                                                  new SplitSettlementData.Item(849, "deal2", "travelId", "travel")));
+    }
+}
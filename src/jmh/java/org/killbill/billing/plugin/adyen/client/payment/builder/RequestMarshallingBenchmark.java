@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.client.payment.builder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.killbill.adyen.payment.Authorise;
+import org.killbill.adyen.payment.Authorise3D;
+import org.killbill.adyen.payment.Capture;
+import org.killbill.adyen.payment.Refund;
+import org.killbill.billing.plugin.adyen.client.payment.converter.impl.PaymentInfoConverterService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableMap;
+
+import static org.killbill.billing.plugin.adyen.client.payment.builder.RequestBuilderBenchmark.MERCHANT_ACCOUNT;
+import static org.killbill.billing.plugin.adyen.client.payment.builder.RequestBuilderBenchmark.PSP_REFERENCE;
+
+/**
+ * Cost of serializing the SOAP payloads sent to Adyen, independently of the network call.
+ * The JAXB context is shared (as CXF does) and each thread reuses its own marshaller and buffer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestMarshallingBenchmark {
+
+    private Marshaller marshaller;
+    private ByteArrayOutputStream outputStream;
+
+    private Authorise authorise;
+    private Authorise3D authorise3D;
+    private Capture capture;
+    private Refund refund;
+
+    @Setup
+    public void setUp() throws JAXBException {
+        final JAXBContext jaxbContext = JAXBContext.newInstance(Authorise.class, Authorise3D.class, Capture.class, Refund.class);
+        marshaller = jaxbContext.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+        outputStream = new ByteArrayOutputStream(8192);
+
+        final Map<String, String> additionalData = ImmutableMap.<String, String>of("riskdata.deliveryMethod", "express");
+
+        authorise = new Authorise();
+        authorise.setPaymentRequest(new PaymentRequestBuilder(MERCHANT_ACCOUNT,
+                                                              RequestBuilderBenchmark.buildCardPaymentData(),
+                                                              RequestBuilderBenchmark.buildUserData(),
+                                                              RequestBuilderBenchmark.buildSplitSettlementData(),
+                                                              additionalData,
+                                                              new PaymentInfoConverterService()).build());
+
+        authorise3D = new Authorise3D();
+        authorise3D.setPaymentRequest3D(new PaymentRequest3DBuilder(MERCHANT_ACCOUNT,
+                                                                    RequestBuilderBenchmark.build3DSPaymentData(),
+                                                                    RequestBuilderBenchmark.buildUserData(),
+                                                                    null,
+                                                                    additionalData).build());
+
+        capture = new Capture();
+        capture.setModificationRequest(new ModificationRequestBuilder(MERCHANT_ACCOUNT,
+                                                                      RequestBuilderBenchmark.buildCardPaymentData(),
+                                                                      PSP_REFERENCE,
+                                                                      RequestBuilderBenchmark.buildSplitSettlementData(),
+                                                                      additionalData).build());
+
+        refund = new Refund();
+        refund.setModificationRequest(new ModificationRequestBuilder(MERCHANT_ACCOUNT,
+                                                                     RequestBuilderBenchmark.buildCardPaymentData(),
+                                                                     PSP_REFERENCE,
+                                                                     null,
+                                                                     additionalData).build());
+    }
+
+    @Benchmark
+    public int marshalAuthorise() throws JAXBException {
+        return marshal(authorise);
+    }
+
+    @Benchmark
+    public int marshalAuthorise3D() throws JAXBException {
+        return marshal(authorise3D);
+    }
+
+    @Benchmark
+    public int marshalCapture() throws JAXBException {
+        return marshal(capture);
+    }
+
+    @Benchmark
+    public int marshalRefund() throws JAXBException {
+        return marshal(refund);
+    }
+
+    private int marshal(final Object payload) throws JAXBException {
+        outputStream.reset();
+        marshaller.marshal(payload, outputStream);
+        return outputStream.size();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.dao;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.TestUtils;
+import org.killbill.billing.plugin.adyen.client.model.PaymentServiceProviderResult;
+import org.killbill.billing.plugin.adyen.client.model.PurchaseResult;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+import org.killbill.commons.embeddeddb.h2.H2EmbeddedDB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups by kb_payment_id (index range scan plus the row fetch) with the ids stored as char(36) or, once
+ * converted by KbIdColumnsMigration, as binary(16). Runs on H2: the index size reduction itself is better
+ * observed on MySQL (information_schema.tables.index_length).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@State(Scope.Benchmark)
+public class KbIdLookupBenchmark {
+
+    private final UUID kbAccountId = UUID.randomUUID();
+    private final UUID kbTenantId = UUID.randomUUID();
+
+    @Param({"false", "true"})
+    public boolean binaryKbIds;
+
+    @Param({"10000"})
+    public int payments;
+
+    private H2EmbeddedDB embeddedDB;
+    private AdyenDao dao;
+    private UUID[] kbPaymentIds;
+
+    @Setup
+    public void setUp() throws Exception {
+        embeddedDB = new H2EmbeddedDB("kbIdLookupBenchmark" + System.nanoTime(), "adyen", "adyen");
+        embeddedDB.initialize();
+        embeddedDB.start();
+        embeddedDB.executeScript(TestUtils.toString("ddl.sql"));
+        embeddedDB.refreshTableNames();
+
+        final AdyenDao textDao = new AdyenDao(embeddedDB.getDataSource());
+        kbPaymentIds = new UUID[payments];
+        for (int i = 0; i < payments; i++) {
+            kbPaymentIds[i] = UUID.randomUUID();
+            final PurchaseResult purchaseResult = new PurchaseResult(PaymentServiceProviderResult.AUTHORISED, null, UUID.randomUUID().toString(), null, null, null, null);
+            textDao.addResponse(kbAccountId, kbPaymentIds[i], UUID.randomUUID(), TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, DateTime.now(DateTimeZone.UTC), kbTenantId);
+        }
+
+        if (binaryKbIds) {
+            final Connection conn = embeddedDB.getDataSource().getConnection();
+            try {
+                new KbIdColumnsMigration(conn).cutover(KbIdColumnsMigration.DEFAULT_CHUNK_SIZE);
+            } finally {
+                conn.close();
+            }
+        }
+        dao = new AdyenDao(embeddedDB.getDataSource());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        embeddedDB.stop();
+    }
+
+    @Benchmark
+    public List<AdyenResponsesRecord> getResponses() throws Exception {
+        return dao.getResponses(kbPaymentIds[ThreadLocalRandom.current().nextInt(payments)], kbTenantId);
+    }
+
+    @Benchmark
+    public AdyenResponsesRecord getSuccessfulAuthorizationResponse() throws Exception {
+        return dao.getSuccessfulAuthorizationResponse(kbPaymentIds[ThreadLocalRandom.current().nextInt(payments)], kbTenantId);
+    }
+}
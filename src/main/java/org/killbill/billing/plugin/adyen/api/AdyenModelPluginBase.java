@@ -24,6 +24,7 @@ import java.util.Map;
 import javax.annotation.Nullable;
 
 import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.plugin.adyen.dao.AdditionalData;
 import org.killbill.billing.plugin.api.PluginProperties;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -45,6 +46,14 @@ public abstract class AdyenModelPluginBase {
         }
     }
 
+    protected static Map toMap(final AdditionalData additionalData) {
+        try {
+            return additionalData.asMap();
+        } catch (final RuntimeException e) {
+            return ImmutableMap.of();
+        }
+    }
+
     protected static List<PluginProperty> buildPluginProperties(@Nullable final String additionalData) {
         final Map additionalDataMap = toMap(additionalData);
         return PluginProperties.buildPluginProperties(additionalDataMap);
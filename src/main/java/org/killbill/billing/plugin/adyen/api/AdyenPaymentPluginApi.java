@@ -21,11 +21,15 @@ import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.net.URLDecoder;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import javax.annotation.Nullable;
@@ -53,6 +57,8 @@ import org.killbill.billing.payment.plugin.api.PaymentMethodInfoPlugin;
 import org.killbill.billing.payment.plugin.api.PaymentPluginApiException;
 import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
 import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
+import org.killbill.billing.plugin.adyen.api.mapping.IndexedPluginProperties;
+import org.killbill.billing.plugin.adyen.api.mapping.ItemPropertiesMappingService;
 import org.killbill.billing.plugin.adyen.api.mapping.PaymentInfoMappingService;
 import org.killbill.billing.plugin.adyen.client.AdyenConfigProperties;
 import org.killbill.billing.plugin.adyen.client.model.HppCompletedResult;
@@ -62,7 +68,6 @@ import org.killbill.billing.plugin.adyen.client.model.PaymentModificationRespons
 import org.killbill.billing.plugin.adyen.client.model.PaymentServiceProviderResult;
 import org.killbill.billing.plugin.adyen.client.model.PurchaseResult;
 import org.killbill.billing.plugin.adyen.client.model.SplitSettlementData;
-import org.killbill.billing.plugin.adyen.client.model.SplitSettlementData.Item;
 import org.killbill.billing.plugin.adyen.client.model.UserData;
 import org.killbill.billing.plugin.adyen.client.model.paymentinfo.WebPaymentFrontend;
 import org.killbill.billing.plugin.adyen.client.notification.AdyenNotificationHandler;
@@ -78,14 +83,17 @@ import org.killbill.billing.plugin.adyen.core.AdyenHostedPaymentPageConfiguratio
 import org.killbill.billing.plugin.adyen.core.AdyenRecurringConfigurationHandler;
 import org.killbill.billing.plugin.adyen.core.KillbillAdyenNotificationHandler;
 import org.killbill.billing.plugin.adyen.dao.AdyenDao;
+import org.killbill.billing.plugin.adyen.dao.ResponseWithHppRequest;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenPaymentMethods;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenResponses;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenPaymentMethodsRecord;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+import org.killbill.billing.plugin.adyen.metrics.Counter;
+import org.killbill.billing.plugin.adyen.metrics.MetricFamily;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
 import org.killbill.billing.plugin.api.PluginProperties;
 import org.killbill.billing.plugin.api.payment.PluginPaymentPluginApi;
-import org.killbill.billing.plugin.util.KillBillMoney;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.TenantContext;
 import org.killbill.clock.Clock;
@@ -99,8 +107,11 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -205,6 +216,13 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
     public static final String PROPERTY_DCC_SIGNATURE = "dccSignature";
     public static final String PROPERTY_ISSUER_URL = "issuerUrl";
 
+    public static final String TRANSACTION_EXTERNAL_KEY_LOOKUPS_METRIC = "adyen_transaction_external_key_lookups_total";
+
+    // External keys of the transactions of the payments already loaded, for the calls about the same transaction again
+    // (3-D Secure completions, retries): captures, refunds and voids are new transactions, with their own key
+    private static final long MAX_CACHED_TRANSACTION_EXTERNAL_KEYS = 10000;
+    private static final long CACHED_TRANSACTION_EXTERNAL_KEYS_TTL_MINUTES = 60;
+
     private static final Logger logger = LoggerFactory.getLogger(AdyenPaymentPluginApi.class);
 
     private final AdyenConfigurationHandler adyenConfigurationHandler;
@@ -213,6 +231,8 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
     private final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler;
     private final AdyenDao dao;
     private final AdyenNotificationService adyenNotificationService;
+    private final Cache<UUID, String> transactionExternalKeys;
+    private final MetricFamily<Counter> transactionExternalKeyLookups;
 
     public AdyenPaymentPluginApi(final AdyenConfigurationHandler adyenConfigurationHandler,
                                  final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler,
@@ -223,6 +243,28 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
                                  final OSGIKillbillLogService logService,
                                  final Clock clock,
                                  final AdyenDao dao) throws JAXBException {
+        this(adyenConfigurationHandler,
+             adyenConfigPropertiesConfigurationHandler,
+             adyenHppConfigurationHandler,
+             adyenRecurringConfigurationHandler,
+             killbillApi,
+             osgiConfigPropertiesService,
+             logService,
+             clock,
+             dao,
+             new MetricsRegistry());
+    }
+
+    public AdyenPaymentPluginApi(final AdyenConfigurationHandler adyenConfigurationHandler,
+                                 final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler,
+                                 final AdyenHostedPaymentPageConfigurationHandler adyenHppConfigurationHandler,
+                                 final AdyenRecurringConfigurationHandler adyenRecurringConfigurationHandler,
+                                 final OSGIKillbillAPI killbillApi,
+                                 final OSGIConfigPropertiesService osgiConfigPropertiesService,
+                                 final OSGIKillbillLogService logService,
+                                 final Clock clock,
+                                 final AdyenDao dao,
+                                 final MetricsRegistry metricsRegistry) throws JAXBException {
         super(killbillApi, osgiConfigPropertiesService, logService, clock, dao);
         this.adyenConfigurationHandler = adyenConfigurationHandler;
         this.adyenHppConfigurationHandler = adyenHppConfigurationHandler;
@@ -232,46 +274,46 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
 
         final AdyenNotificationHandler adyenNotificationHandler = new KillbillAdyenNotificationHandler(adyenConfigPropertiesConfigurationHandler, killbillApi, dao, clock);
         //noinspection RedundantTypeArguments
-        this.adyenNotificationService = new AdyenNotificationService(ImmutableList.<AdyenNotificationHandler>of(adyenNotificationHandler));
+        this.adyenNotificationService = new AdyenNotificationService(ImmutableList.<AdyenNotificationHandler>of(adyenNotificationHandler), metricsRegistry);
+
+        this.transactionExternalKeys = CacheBuilder.newBuilder()
+                                                   .maximumSize(MAX_CACHED_TRANSACTION_EXTERNAL_KEYS)
+                                                   .expireAfterWrite(CACHED_TRANSACTION_EXTERNAL_KEYS_TTL_MINUTES, TimeUnit.MINUTES)
+                                                   .build();
+        this.transactionExternalKeyLookups = metricsRegistry.counters(TRANSACTION_EXTERNAL_KEY_LOOKUPS_METRIC, "Resolutions of the transaction external key (merchant reference)", "source");
     }
 
     @Override
     public List<PaymentTransactionInfoPlugin> getPaymentInfo(final UUID kbAccountId, final UUID kbPaymentId, final Iterable<PluginProperty> properties, final TenantContext context) throws PaymentPluginApiException {
-        final List<PaymentTransactionInfoPlugin> transactions = super.getPaymentInfo(kbAccountId, kbPaymentId, properties, context);
-        if (transactions.isEmpty()) {
-            // We don't know about this payment (maybe it was aborted in a control plugin)
-            return transactions;
-        }
-
-        final ExpiredPaymentPolicy expiredPaymentPolicy = expiredPaymentPolicy(context);
-        if (expiredPaymentPolicy.isExpired(transactions)) {
-            cancelExpiredPayment(expiredPaymentPolicy.latestTransaction(transactions), context);
-            // reload payment
-            return super.getPaymentInfo(kbAccountId, kbPaymentId, properties, context);
-        }
-        return transactions;
+        return getPaymentInfos(ImmutableList.<UUID>of(kbPaymentId), properties, context).get(kbPaymentId);
     }
 
-    private void cancelExpiredPayment(PaymentTransactionInfoPlugin expiredTransaction, final TenantContext context) {
-        final List<PluginProperty> updatedStatusProperties = PluginProperties.buildPluginProperties(
-                ImmutableMap.builder()
-                            .put(PROPERTY_FROM_HPP_TRANSACTION_STATUS,
-                                 PaymentPluginStatus.CANCELED.toString())
-                            .put("message",
-                                 "Payment Expired - Cancelled by Janitor")
-                            .build());
-
+    /**
+     * Bulk version of getPaymentInfo: the responses (and HPP requests) of all payments are loaded at once
+     *
+     * @return the transactions by payment id (an empty list for the payments we don't know about)
+     */
+    public Map<UUID, List<PaymentTransactionInfoPlugin>> getPaymentInfos(final Iterable<UUID> kbPaymentIds, final Iterable<PluginProperty> properties, final TenantContext context) throws PaymentPluginApiException {
+        final Set<UUID> uniqueKbPaymentIds = ImmutableSet.<UUID>copyOf(kbPaymentIds);
+        final Map<UUID, List<ResponseWithHppRequest>> responsesByPaymentId;
         try {
-            dao.updateResponse(expiredTransaction.getKbTransactionPaymentId(),
-                               PluginProperties.merge(expiredTransaction.getProperties(), updatedStatusProperties),
-                               context.getTenantId());
+            responsesByPaymentId = dao.getResponsesWithHppRequests(uniqueKbPaymentIds, context.getTenantId());
         } catch (final SQLException e) {
-            logService.log(LogService.LOG_ERROR, "Unable to update canceled payment", e);
+            throw new PaymentPluginApiException("Unable to retrieve payments for kbPaymentIds " + uniqueKbPaymentIds, e);
         }
-    }
 
-    private ExpiredPaymentPolicy expiredPaymentPolicy(final TenantContext context) {
-        return new ExpiredPaymentPolicy(clock, getConfigProperties(context));
+        // Expired payments are canceled in the background (see AdyenExpiredPaymentsJanitor)
+        final Map<UUID, List<PaymentTransactionInfoPlugin>> transactionsByPaymentId = new LinkedHashMap<UUID, List<PaymentTransactionInfoPlugin>>();
+        for (final UUID kbPaymentId : uniqueKbPaymentIds) {
+            // An empty list means we don't know about this payment (maybe it was aborted in a control plugin)
+            final List<ResponseWithHppRequest> responses = MoreObjects.firstNonNull(responsesByPaymentId.get(kbPaymentId), ImmutableList.<ResponseWithHppRequest>of());
+            final List<PaymentTransactionInfoPlugin> transactions = new ArrayList<PaymentTransactionInfoPlugin>(responses.size());
+            for (final ResponseWithHppRequest response : responses) {
+                transactions.add(new AdyenPaymentTransactionInfoPlugin(response.getResponse(), response.getHppRequest()));
+            }
+            transactionsByPaymentId.put(kbPaymentId, transactions);
+        }
+        return transactionsByPaymentId;
     }
 
     @Override
@@ -314,9 +356,10 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
         if (adyenPaymentMethodsRecord.getToken() != null) {
             // Retrieve the associated country for that shopper (and the corresponding merchant account)
             final Account account = getAccount(kbAccountId, context);
-            final String pluginPropertyCountry = PluginProperties.findPluginPropertyValue(PROPERTY_COUNTRY, properties);
+            final IndexedPluginProperties indexedProperties = IndexedPluginProperties.of(properties);
+            final String pluginPropertyCountry = indexedProperties.findValue(PROPERTY_COUNTRY);
             final String countryCode = pluginPropertyCountry == null ? account.getCountry() : pluginPropertyCountry;
-            final String merchantAccount = getMerchantAccount(countryCode, properties, context);
+            final String merchantAccount = getMerchantAccount(countryCode, indexedProperties, context);
 
             final Map additionalData = AdyenDao.fromAdditionalData(adyenPaymentMethodsRecord.getAdditionalData());
             Object customerId = additionalData.get(PROPERTY_CUSTOMER_ID);
@@ -335,6 +378,22 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
         super.deletePaymentMethod(kbAccountId, kbPaymentMethodId, properties, context);
     }
 
+    @Override
+    public void resetPaymentMethods(final UUID kbAccountId, final List<PaymentMethodInfoPlugin> paymentMethods, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        try {
+            // All or nothing: a partial reset would leave payment methods unknown to the plugin
+            dao.inTransaction(new AdyenDao.UnitOfWork<Void, PaymentPluginApiException>() {
+                @Override
+                public Void run() throws PaymentPluginApiException {
+                    AdyenPaymentPluginApi.super.resetPaymentMethods(kbAccountId, paymentMethods, properties, context);
+                    return null;
+                }
+            });
+        } catch (final SQLException e) {
+            throw new PaymentPluginApiException("Unable to reset payment methods for kbAccountId " + kbAccountId, e);
+        }
+    }
+
     @Override
     public List<PaymentMethodInfoPlugin> getPaymentMethods(final UUID kbAccountId, final boolean refreshFromGateway, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
         // If refreshFromGateway isn't set, simply read our tables
@@ -357,11 +416,14 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
 
         // Retrieve the associated country for that shopper (and the corresponding merchant account)
         final Account account = getAccount(kbAccountId, context);
-        final String pluginPropertyCountry = PluginProperties.findPluginPropertyValue(PROPERTY_COUNTRY, properties);
+        final IndexedPluginProperties indexedProperties = IndexedPluginProperties.of(properties);
+        final String pluginPropertyCountry = indexedProperties.findValue(PROPERTY_COUNTRY);
         final String countryCode = pluginPropertyCountry == null ? account.getCountry() : pluginPropertyCountry;
-        final String merchantAccount = getMerchantAccount(countryCode, properties, context);
+        final String merchantAccount = getMerchantAccount(countryCode, indexedProperties, context);
 
-        for (final AdyenPaymentMethodsRecord record : Lists.<AdyenPaymentMethodsRecord>reverse(existingPaymentMethods)) {
+        // Group the payment methods to refresh by shopper reference and recurring contract: Adyen is called once per group
+        final Map<Map.Entry<String, String>, Map<String, AdyenPaymentMethodsRecord>> paymentMethodsToRefresh = new LinkedHashMap<Map.Entry<String, String>, Map<String, AdyenPaymentMethodsRecord>>();
+        for (final AdyenPaymentMethodsRecord record : existingPaymentMethods) {
             if (record.getToken() != null) {
                 // Immutable in Adyen -- nothing to do
                 continue;
@@ -376,59 +438,100 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
 
             Object recurringType = additionalData.get(PROPERTY_RECURRING_TYPE);
             if (recurringType == null) {
-                recurringType = MoreObjects.firstNonNull(PluginProperties.findPluginPropertyValue(PROPERTY_RECURRING_TYPE, properties), "RECURRING");
+                recurringType = MoreObjects.firstNonNull(indexedProperties.findValue(PROPERTY_RECURRING_TYPE), "RECURRING");
             }
 
-            final AdyenRecurringClient adyenRecurringClient = adyenRecurringConfigurationHandler.getConfigurable(context.getTenantId());
+            final Map.Entry<String, String> shopperReferenceAndContract = Maps.immutableEntry(customerId.toString(), recurringType.toString());
+            Map<String, AdyenPaymentMethodsRecord> records = paymentMethodsToRefresh.get(shopperReferenceAndContract);
+            if (records == null) {
+                records = new HashMap<String, AdyenPaymentMethodsRecord>();
+                paymentMethodsToRefresh.put(shopperReferenceAndContract, records);
+            }
+            records.put(record.getKbPaymentMethodId(), record);
+        }
 
+        final AdyenRecurringClient adyenRecurringClient = adyenRecurringConfigurationHandler.getConfigurable(context.getTenantId());
+        final Map<Map.Entry<String, String>, List<RecurringDetail>> recurringDetailsByShopperReferenceAndContract = new LinkedHashMap<Map.Entry<String, String>, List<RecurringDetail>>();
+        final Set<String> firstPspReferences = new HashSet<String>();
+        for (final Map.Entry<String, String> shopperReferenceAndContract : paymentMethodsToRefresh.keySet()) {
             final List<RecurringDetail> recurringDetailList;
             try {
-                recurringDetailList = adyenRecurringClient.getRecurringDetailList(customerId.toString(), merchantAccount, recurringType.toString());
+                recurringDetailList = adyenRecurringClient.getRecurringDetailList(shopperReferenceAndContract.getKey(), merchantAccount, shopperReferenceAndContract.getValue());
             } catch (final ServiceException e) {
                 logService.log(LogService.LOG_ERROR, "Unable to retrieve recurring details in Adyen", e);
                 continue;
             }
+            recurringDetailsByShopperReferenceAndContract.put(shopperReferenceAndContract, recurringDetailList);
             for (final RecurringDetail recurringDetail : recurringDetailList) {
-                final AdyenResponsesRecord formerResponse;
-                try {
-                    formerResponse = dao.getResponse(recurringDetail.getFirstPspReference());
-                } catch (final SQLException e) {
-                    logService.log(LogService.LOG_ERROR, "Unable to retrieve adyen response", e);
-                    continue;
-                }
+                firstPspReferences.add(recurringDetail.getFirstPspReference());
+            }
+        }
+
+        final Map<String, AdyenResponsesRecord> formerResponses;
+        try {
+            formerResponses = dao.getResponses(firstPspReferences, context.getTenantId());
+        } catch (final SQLException e) {
+            logService.log(LogService.LOG_ERROR, "Unable to retrieve adyen responses", e);
+            return super.getPaymentMethods(kbAccountId, false, properties, context);
+        }
+        if (formerResponses.isEmpty()) {
+            return super.getPaymentMethods(kbAccountId, false, properties, context);
+        }
+
+        // Only the first payments of the recurring details are loaded, not the whole history of the account
+        final Set<String> kbPaymentIds = new HashSet<String>();
+        for (final AdyenResponsesRecord formerResponse : formerResponses.values()) {
+            kbPaymentIds.add(formerResponse.getKbPaymentId());
+        }
+        final Map<String, String> kbPaymentMethodIdsByKbPaymentId = new HashMap<String, String>();
+        for (final String kbPaymentId : kbPaymentIds) {
+            final Payment payment;
+            try {
+                payment = killbillAPI.getPaymentApi().getPayment(UUID.fromString(kbPaymentId), false, false, properties, context);
+            } catch (final PaymentApiException e) {
+                // Only the payment methods of that payment aren't refreshed
+                logService.log(LogService.LOG_ERROR, "Unable to retrieve kbPaymentId " + kbPaymentId + " for kbAccountId " + kbAccountId, e);
+                continue;
+            }
+            // They must be payments of the account
+            if (kbAccountId.equals(payment.getAccountId())) {
+                kbPaymentMethodIdsByKbPaymentId.put(kbPaymentId, payment.getPaymentMethodId().toString());
+            }
+        }
+
+        final Map<String, String> tokensByKbPaymentMethodId = new HashMap<String, String>();
+        for (final Map.Entry<Map.Entry<String, String>, List<RecurringDetail>> entry : recurringDetailsByShopperReferenceAndContract.entrySet()) {
+            final Map<String, AdyenPaymentMethodsRecord> records = paymentMethodsToRefresh.get(entry.getKey());
+            for (final RecurringDetail recurringDetail : entry.getValue()) {
+                final AdyenResponsesRecord formerResponse = formerResponses.get(recurringDetail.getFirstPspReference());
                 if (formerResponse == null) {
                     continue;
                 }
 
-                final Payment payment;
-                try {
-                    payment = killbillAPI.getPaymentApi().getPayment(UUID.fromString(formerResponse.getKbPaymentId()), false, false, properties, context);
-                } catch (final PaymentApiException e) {
-                    logService.log(LogService.LOG_ERROR, "Unable to retrieve Payment for externalKey " + recurringDetail.getFirstPspReference(), e);
-                    continue;
-                }
-                if (payment.getPaymentMethodId().toString().equals(record.getKbPaymentMethodId())) {
-                    try {
-                        dao.setPaymentMethodToken(record.getKbPaymentMethodId(), recurringDetail.getRecurringDetailReference(), context.getTenantId().toString());
-                    } catch (final SQLException e) {
-                        logService.log(LogService.LOG_ERROR, "Unable to update token", e);
-                        continue;
-                    }
+                final String kbPaymentMethodId = kbPaymentMethodIdsByKbPaymentId.get(formerResponse.getKbPaymentId());
+                if (kbPaymentMethodId != null && records.containsKey(kbPaymentMethodId)) {
+                    tokensByKbPaymentMethodId.put(kbPaymentMethodId, recurringDetail.getRecurringDetailReference());
                 }
             }
         }
 
+        try {
+            dao.setPaymentMethodTokens(tokensByKbPaymentMethodId, context.getTenantId().toString());
+        } catch (final SQLException e) {
+            logService.log(LogService.LOG_ERROR, "Unable to update tokens", e);
+        }
+
         return super.getPaymentMethods(kbAccountId, false, properties, context);
     }
 
     @Override
     public PaymentTransactionInfoPlugin authorizePayment(final UUID kbAccountId, final UUID kbPaymentId, final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
         final AdyenResponsesRecord adyenResponsesRecord = fetchResponseIfExist(kbPaymentId, context.getTenantId());
-        final boolean isHPPCompletion = adyenResponsesRecord != null && Boolean.valueOf(MoreObjects.firstNonNull(AdyenDao.fromAdditionalData(adyenResponsesRecord.getAdditionalData()).get(PROPERTY_FROM_HPP), false).toString());
+        final boolean isHPPCompletion = adyenResponsesRecord != null && AdyenDao.isFromHpp(adyenResponsesRecord);
         if (!isHPPCompletion) {
             updateResponseWithAdditionalProperties(kbTransactionId, properties, context.getTenantId());
             // We don't have any record for that payment: we want to trigger an actual authorization call (or complete a 3D-S authorization)
-            return executeInitialTransaction(TransactionType.AUTHORIZE, kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, amount, currency, properties, context);
+            return executeInitialTransaction(TransactionType.AUTHORIZE, kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, amount, currency, IndexedPluginProperties.of(properties), context);
         } else {
             // We already have a record for that payment transaction and we just updated the response row with additional properties
             // (the API can be called for instance after the user is redirected back from the HPP to store the PSP reference)
@@ -454,7 +557,7 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
                                           kbPaymentMethodId,
                                           amount,
                                           currency,
-                                          properties,
+                                          IndexedPluginProperties.of(properties),
                                           context);
     }
 
@@ -462,15 +565,16 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
     public PaymentTransactionInfoPlugin purchasePayment(final UUID kbAccountId, final UUID kbPaymentId, final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
         final AdyenResponsesRecord adyenResponsesRecord;
         try {
-            adyenResponsesRecord = dao.updateResponse(kbTransactionId, properties, context.getTenantId());
+            adyenResponsesRecord = dao.updateResponse(kbTransactionId, properties, context.getTenantId(), false);
         } catch (final SQLException e) {
             throw new PaymentPluginApiException("HPP notification came through, but we encountered a database error", e);
         }
 
         if (adyenResponsesRecord == null) {
             // We don't have any record for that payment: we want to trigger an actual purchase (auto-capture) call
-            final String captureDelayHours = PluginProperties.getValue(PROPERTY_CAPTURE_DELAY_HOURS, "0", properties);
-            final Iterable<PluginProperty> overriddenProperties = PluginProperties.merge(properties, ImmutableList.<PluginProperty>of(new PluginProperty(PROPERTY_CAPTURE_DELAY_HOURS, captureDelayHours, false)));
+            final IndexedPluginProperties indexedProperties = IndexedPluginProperties.of(properties);
+            final String captureDelayHours = indexedProperties.getValue(PROPERTY_CAPTURE_DELAY_HOURS, "0");
+            final IndexedPluginProperties overriddenProperties = IndexedPluginProperties.merge(indexedProperties, ImmutableList.<PluginProperty>of(new PluginProperty(PROPERTY_CAPTURE_DELAY_HOURS, captureDelayHours, false)));
             return executeInitialTransaction(TransactionType.PURCHASE, kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, amount, currency, overriddenProperties, context);
         } else {
             // We already have a record for that payment transaction and we just updated the response row with additional properties
@@ -496,14 +600,14 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
                                           kbPaymentMethodId,
                                           null,
                                           null,
-                                          properties,
+                                          IndexedPluginProperties.of(properties),
                                           context);
     }
 
     @Override
     public PaymentTransactionInfoPlugin creditPayment(final UUID kbAccountId, final UUID kbPaymentId, final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
         // See https://docs.adyen.com/developers/api-manual#carddepositcardfundtransfercft
-        return executeInitialTransaction(TransactionType.CREDIT, kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, amount, currency, properties, context);
+        return executeInitialTransaction(TransactionType.CREDIT, kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, amount, currency, IndexedPluginProperties.of(properties), context);
     }
 
     @Override
@@ -522,7 +626,7 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
                                           kbPaymentMethodId,
                                           amount,
                                           currency,
-                                          properties,
+                                          IndexedPluginProperties.of(properties),
                                           context);
     }
 
@@ -530,28 +634,28 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
 
     @Override
     public HostedPaymentPageFormDescriptor buildFormDescriptor(final UUID kbAccountId, final Iterable<PluginProperty> customFields, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
-        //noinspection unchecked
-        final Iterable<PluginProperty> mergedProperties = PluginProperties.merge(customFields, properties);
+        final IndexedPluginProperties indexedProperties = IndexedPluginProperties.of(properties);
+        final IndexedPluginProperties mergedProperties = IndexedPluginProperties.merge(customFields, indexedProperties);
 
         final Account account = getAccount(kbAccountId, context);
-        final String countryCode = getCountryCode(account, null, properties);
-        final String merchantAccount = getMerchantAccount(countryCode, properties, context);
+        final String countryCode = getCountryCode(account, null, indexedProperties);
+        final String merchantAccount = getMerchantAccount(countryCode, indexedProperties, context);
 
-        final String amountString = PluginProperties.findPluginPropertyValue(PROPERTY_AMOUNT, mergedProperties);
+        final String amountString = mergedProperties.findValue(PROPERTY_AMOUNT);
         Preconditions.checkState(!Strings.isNullOrEmpty(amountString), "amount not specified");
         final BigDecimal amount = new BigDecimal(amountString);
-        final String currencyString = PluginProperties.findPluginPropertyValue(PROPERTY_CURRENCY, properties);
+        final String currencyString = indexedProperties.findValue(PROPERTY_CURRENCY);
         final Currency currency = currencyString == null ? account.getCurrency() : Currency.valueOf(currencyString);
         Preconditions.checkState(currency != null, "currency not specified");
 
         final PaymentData paymentData = buildPaymentData(merchantAccount, countryCode, account, amount, currency, mergedProperties, context);
         final UserData userData = toUserData(account, mergedProperties);
 
-        final boolean shouldCreatePendingPayment = Boolean.valueOf(PluginProperties.findPluginPropertyValue(PROPERTY_CREATE_PENDING_PAYMENT, mergedProperties));
+        final boolean shouldCreatePendingPayment = Boolean.valueOf(mergedProperties.findValue(PROPERTY_CREATE_PENDING_PAYMENT));
         Payment pendingPayment = null;
         if (shouldCreatePendingPayment) {
-            final boolean authMode = Boolean.valueOf(PluginProperties.findPluginPropertyValue(PROPERTY_AUTH_MODE, mergedProperties));
-            final String paymentMethodIdString = PluginProperties.findPluginPropertyValue(PROPERTY_PAYMENT_METHOD_ID, mergedProperties);
+            final boolean authMode = Boolean.valueOf(mergedProperties.findValue(PROPERTY_AUTH_MODE));
+            final String paymentMethodIdString = mergedProperties.findValue(PROPERTY_PAYMENT_METHOD_ID);
             final UUID paymentMethodId = paymentMethodIdString == null ? null : UUID.fromString(paymentMethodIdString);
             pendingPayment = createPendingPayment(authMode, account, paymentMethodId, paymentData, context);
         }
@@ -573,7 +677,7 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
 
         final AdyenPaymentServiceProviderHostedPaymentPagePort hostedPaymentPagePort = adyenHppConfigurationHandler.getConfigurable(context.getTenantId());
 
-        final SplitSettlementData splitSettlementData = buildSplitSettlementData(currency, properties);
+        final SplitSettlementData splitSettlementData = ItemPropertiesMappingService.toSplitSettlementData(currency, indexedProperties);
 
         final Map formParameter;
         try {
@@ -585,7 +689,7 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
         // Safe cast
         final WebPaymentFrontend webPaymentFrontend = (WebPaymentFrontend) paymentData.getPaymentInfo();
 
-        final boolean withDirectory = Boolean.valueOf(PluginProperties.findPluginPropertyValue(PROPERTY_LOOKUP_DIRECTORY, mergedProperties));
+        final boolean withDirectory = Boolean.valueOf(mergedProperties.findValue(PROPERTY_LOOKUP_DIRECTORY));
         if (withDirectory) {
             final Map directory = hostedPaymentPagePort.getDirectory(merchantAccount,
                                                                      amount,
@@ -598,7 +702,7 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
         }
 
         final String target = webPaymentFrontend.getBrandCode() != null && webPaymentFrontend.getIssuerId() != null ? getConfigProperties(context).getHppSkipDetailsTarget() : getConfigProperties(context).getHppTarget();
-        final String hppTarget = PluginProperties.getValue(PROPERTY_HPP_TARGET, target, properties);
+        final String hppTarget = indexedProperties.getValue(PROPERTY_HPP_TARGET, target);
         return new AdyenHostedPaymentPageFormDescriptor(kbAccountId, hppTarget, PluginProperties.buildPluginProperties(formParameter));
     }
 
@@ -635,7 +739,7 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
                                                                    final UUID kbPaymentMethodId,
                                                                    final BigDecimal amount,
                                                                    final Currency currency,
-                                                                   final Iterable<PluginProperty> properties,
+                                                                   final IndexedPluginProperties properties,
                                                                    final CallContext context) throws PaymentPluginApiException {
         return executeInitialTransaction(transactionType,
                                          new TransactionExecutor<PurchaseResult>() {
@@ -675,14 +779,14 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
                                                                    final UUID kbPaymentMethodId,
                                                                    final BigDecimal amount,
                                                                    final Currency currency,
-                                                                   final Iterable<PluginProperty> properties,
+                                                                   final IndexedPluginProperties properties,
                                                                    final TenantContext context) throws PaymentPluginApiException {
         final Account account = getAccount(kbAccountId, context);
         final AdyenPaymentMethodsRecord nonNullPaymentMethodsRecord = getAdyenPaymentMethodsRecord(kbPaymentMethodId, context);
         final String countryCode = getCountryCode(account, nonNullPaymentMethodsRecord, properties);
         final String merchantAccount = getMerchantAccount(countryCode, properties, context);
 
-        final boolean fromHPP = Boolean.valueOf(PluginProperties.findPluginPropertyValue(PROPERTY_FROM_HPP, properties));
+        final boolean fromHPP = Boolean.valueOf(properties.findValue(PROPERTY_FROM_HPP));
         if (fromHPP) {
             // We are either processing a notification (see KillbillAdyenNotificationHandler), creating a PENDING payment for HPP (see buildFormDescriptor) or recording a payment post HPP redirect
             return getPaymentTransactionInfoPluginForHPP(transactionType, kbAccountId, kbPaymentId, kbTransactionId, amount, currency, properties, context);
@@ -690,19 +794,18 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
 
         // Pull extra properties from the payment method (such as the customerId)
         final Iterable<PluginProperty> additionalPropertiesFromRecord = buildPaymentMethodPlugin(nonNullPaymentMethodsRecord).getProperties();
-        //noinspection unchecked
-        final Iterable<PluginProperty> mergedProperties = PluginProperties.merge(additionalPropertiesFromRecord, properties);
+        final IndexedPluginProperties mergedProperties = IndexedPluginProperties.merge(additionalPropertiesFromRecord, properties);
         final PaymentData paymentData = buildPaymentData(merchantAccount, countryCode, account, kbPaymentId, kbTransactionId, nonNullPaymentMethodsRecord, amount, currency, mergedProperties, context);
         final UserData userData = toUserData(account, mergedProperties);
-        final SplitSettlementData splitSettlementData = buildSplitSettlementData(currency, properties);
-        final Map<String, String> additionalData = buildAdditionalData(properties);
+        final SplitSettlementData splitSettlementData = ItemPropertiesMappingService.toSplitSettlementData(currency, properties);
+        final Map<String, String> additionalData = ItemPropertiesMappingService.toAdditionalData(properties);
         final DateTime utcNow = clock.getUTCNow();
 
         final PurchaseResult response;
         if (shouldSkipAdyen(properties)) {
             response = new PurchaseResult(PaymentServiceProviderResult.AUTHORISED,
                                           null,
-                                          PluginProperties.findPluginPropertyValue(PROPERTY_PSP_REFERENCE, properties),
+                                          properties.findValue(PROPERTY_PSP_REFERENCE),
                                           "skip_gw",
                                           PaymentServiceProviderResult.AUTHORISED.getResponses()[0],
                                           paymentData.getPaymentTransactionExternalKey(),
@@ -730,13 +833,13 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
                                                                     final UUID kbPaymentMethodId,
                                                                     @Nullable final BigDecimal amount,
                                                                     @Nullable final Currency currency,
-                                                                    final Iterable<PluginProperty> properties,
+                                                                    final IndexedPluginProperties properties,
                                                                     final TenantContext context) throws PaymentPluginApiException {
         final Account account = getAccount(kbAccountId, context);
         final AdyenPaymentMethodsRecord nonNullPaymentMethodsRecord = getAdyenPaymentMethodsRecord(kbPaymentMethodId, context);
         final String countryCode = getCountryCode(account, nonNullPaymentMethodsRecord, properties);
 
-        final boolean fromHPP = Boolean.valueOf(PluginProperties.findPluginPropertyValue(PROPERTY_FROM_HPP, properties));
+        final boolean fromHPP = Boolean.valueOf(properties.findValue(PROPERTY_FROM_HPP));
         if (fromHPP) {
             // We are processing a notification (see KillbillAdyenNotificationHandler)
             return getPaymentTransactionInfoPluginForHPP(transactionType, kbAccountId, kbPaymentId, kbTransactionId, amount, currency, properties, context);
@@ -754,14 +857,14 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
 
         final String merchantAccount = getMerchantAccount(countryCode, previousResponse, properties, context);
         final PaymentData paymentData = buildPaymentData(merchantAccount, countryCode, account, kbPaymentId, kbTransactionId, nonNullPaymentMethodsRecord, amount, currency, properties, context);
-        final SplitSettlementData splitSettlementData = buildSplitSettlementData(currency, properties);
-        final Map<String, String> additionalData = buildAdditionalData(properties);
+        final SplitSettlementData splitSettlementData = ItemPropertiesMappingService.toSplitSettlementData(currency, properties);
+        final Map<String, String> additionalData = ItemPropertiesMappingService.toAdditionalData(properties);
         final DateTime utcNow = clock.getUTCNow();
 
         final PaymentModificationResponse response;
         if (shouldSkipAdyen(properties)) {
             response = new PaymentModificationResponse(PaymentServiceProviderResult.PENDING.getResponses()[0],
-                                                       PluginProperties.findPluginPropertyValue(PROPERTY_PSP_REFERENCE, properties),
+                                                       properties.findValue(PROPERTY_PSP_REFERENCE),
                                                        ImmutableMap.<Object, Object>of("skipGw", "true",
                                                                                        "merchantAccountCode", merchantAccount,
                                                                                        "merchantReference", paymentData.getPaymentTransactionExternalKey(),
@@ -787,101 +890,33 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
 
     private void updateResponseWithAdditionalProperties(final UUID kbTransactionId, final Iterable<PluginProperty> properties, final UUID tenantId) throws PaymentPluginApiException {
         try {
-            dao.updateResponse(kbTransactionId, properties, tenantId);
+            dao.updateResponse(kbTransactionId, properties, tenantId, false);
         } catch (final SQLException e) {
             throw new PaymentPluginApiException("SQL exception when updating response", e);
         }
     }
 
+    // The payment of an initial transaction is either new or being completed (3D-S, HPP): it cannot have been archived
     private AdyenResponsesRecord fetchResponseIfExist(final UUID kbPaymentId, final UUID tenantId) throws PaymentPluginApiException {
         try {
-            return dao.getSuccessfulAuthorizationResponse(kbPaymentId, tenantId);
+            return dao.getSuccessfulAuthorizationResponse(kbPaymentId, tenantId, false);
         } catch (final SQLException e) {
             throw new PaymentPluginApiException("SQL exception when fetching response", e);
         }
     }
 
-    private boolean shouldSkipAdyen(final Iterable<PluginProperty> properties) {
-        return "true".equals(PluginProperties.findPluginPropertyValue("skipGw", properties)) || "true".equals(PluginProperties.findPluginPropertyValue("skip_gw", properties));
+    private boolean shouldSkipAdyen(final IndexedPluginProperties properties) {
+        return "true".equals(properties.findValue("skipGw")) || "true".equals(properties.findValue("skip_gw"));
     }
 
-    private String getCountryCode(final AccountData account, @Nullable final AdyenPaymentMethodsRecord paymentMethodsRecord, final Iterable<PluginProperty> properties) {
-        String country = PluginProperties.getValue(PROPERTY_COUNTRY, paymentMethodsRecord == null ? null : paymentMethodsRecord.getCountry(), properties);
+    private String getCountryCode(final AccountData account, @Nullable final AdyenPaymentMethodsRecord paymentMethodsRecord, final IndexedPluginProperties properties) {
+        String country = properties.getValue(PROPERTY_COUNTRY, paymentMethodsRecord == null ? null : paymentMethodsRecord.getCountry());
         if (country == null && account != null) {
             country = account.getCountry();
         }
         return country;
     }
 
-    private SplitSettlementData buildSplitSettlementData(final Currency currency, final Iterable<PluginProperty> pluginProperties) {
-        final Map<Short, BigDecimal> amounts = new HashMap<Short, BigDecimal>();
-        final Map<Short, String> groups = new HashMap<Short, String>();
-        final Map<Short, String> references = new HashMap<Short, String>();
-        final Map<Short, String> types = new HashMap<Short, String>();
-        for (final PluginProperty pluginProperty : pluginProperties) {
-            if (pluginProperty.getKey().startsWith(SPLIT_SETTLEMENT_DATA_ITEM) && pluginProperty.getValue() != null) {
-                final String[] parts = pluginProperty.getKey().split("\\.");
-                final Short itemNb = Short.parseShort(parts[1]);
-                final String suffix = parts[2];
-
-                final String value = pluginProperty.getValue().toString();
-                if ("amount".equals(suffix)) {
-                    // In major units
-                    amounts.put(itemNb, new BigDecimal(value));
-                } else if ("group".equals(suffix)) {
-                    groups.put(itemNb, value);
-                } else if ("reference".equals(suffix)) {
-                    references.put(itemNb, value);
-                } else if ("type".equals(suffix)) {
-                    types.put(itemNb, value);
-                }
-            }
-        }
-
-        final List<Item> items = new LinkedList<Item>();
-        for (final Short itemNb : amounts.keySet()) {
-            final String type = types.get(itemNb);
-            if (type != null) {
-                items.add(new SplitSettlementData.Item(KillBillMoney.toMinorUnits(currency.toString(), amounts.get(itemNb)),
-                                                       MoreObjects.firstNonNull(groups.get(itemNb), type),
-                                                       MoreObjects.firstNonNull(references.get(itemNb), type),
-                                                       type));
-            }
-        }
-
-        if (items.isEmpty()) {
-            return null;
-        } else {
-            return new SplitSettlementData(1, currency.toString(), items);
-        }
-    }
-
-    private Map<String, String> buildAdditionalData(final Iterable<PluginProperty> pluginProperties) {
-        final Map<Short, String> keys = new HashMap<Short, String>();
-        final Map<Short, String> values = new HashMap<Short, String>();
-        for (final PluginProperty pluginProperty : pluginProperties) {
-            if (pluginProperty.getKey().startsWith(ADDITIONAL_DATA_ITEM) && pluginProperty.getValue() != null) {
-                final String[] parts = pluginProperty.getKey().split("\\.");
-                final Short itemNb = Short.parseShort(parts[1]);
-                final String suffix = parts[2];
-
-                final String value = pluginProperty.getValue().toString();
-                if ("key".equals(suffix)) {
-                    keys.put(itemNb, value);
-                } else if ("value".equals(suffix)) {
-                    values.put(itemNb, value);
-                }
-            }
-        }
-
-        final Map<String, String> additionalData = new HashMap<String, String>();
-        for (final Short itemNb : keys.keySet()) {
-            additionalData.put(keys.get(itemNb), values.get(itemNb));
-        }
-
-        return additionalData;
-    }
-
     private PaymentTransactionInfoPlugin getPaymentTransactionInfoPluginForHPP(final TransactionType transactionType, final UUID kbAccountId, final UUID kbPaymentId, final UUID kbTransactionId, final BigDecimal amount, final Currency currency, final Iterable<PluginProperty> properties, final TenantContext context) throws PaymentPluginApiException {
         final AdyenPaymentServiceProviderHostedPaymentPagePort hostedPaymentPagePort = adyenHppConfigurationHandler.getConfigurable(context.getTenantId());
         final Map<String, String> requestParameterMap = Maps.transformValues(PluginProperties.toStringMap(properties), new Function<String, String>() {
@@ -904,13 +939,29 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
     }
 
     // For API
-    private PaymentData buildPaymentData(final String merchantAccount, final String countryCode, final AccountData account, final UUID kbPaymentId, final UUID kbTransactionId, final AdyenPaymentMethodsRecord paymentMethodsRecord, final BigDecimal amount, final Currency currency, final Iterable<PluginProperty> properties, final TenantContext context) throws PaymentPluginApiException {
+    private PaymentData buildPaymentData(final String merchantAccount, final String countryCode, final AccountData account, final UUID kbPaymentId, final UUID kbTransactionId, final AdyenPaymentMethodsRecord paymentMethodsRecord, final BigDecimal amount, final Currency currency, final IndexedPluginProperties properties, final TenantContext context) throws PaymentPluginApiException {
+        final String paymentTransactionExternalKey = getPaymentTransactionExternalKey(kbPaymentId, kbTransactionId, properties, context);
+        final PaymentInfo paymentInfo = buildPaymentInfo(merchantAccount, countryCode, account, paymentMethodsRecord, properties, context);
+
+        return new PaymentData<PaymentInfo>(amount, currency, paymentTransactionExternalKey, paymentInfo);
+    }
+
+    // Kill Bill doesn't pass the transaction external key: only load the payment if it isn't already known (3-D Secure completions, retries)
+    private String getPaymentTransactionExternalKey(final UUID kbPaymentId, final UUID kbTransactionId, final IndexedPluginProperties properties, final TenantContext context) throws PaymentPluginApiException {
+        final String cachedExternalKey = transactionExternalKeys.getIfPresent(kbTransactionId);
+        if (cachedExternalKey != null) {
+            transactionExternalKeyLookups.labels("cache").increment();
+            return cachedExternalKey;
+        }
+
+        transactionExternalKeyLookups.labels("killbill").increment();
         final Payment payment;
         try {
             payment = killbillAPI.getPaymentApi().getPayment(kbPaymentId, false, false, properties, context);
         } catch (final PaymentApiException e) {
             throw new PaymentPluginApiException(String.format("Unable to retrieve kbPaymentId='%s'", kbPaymentId), e);
         }
+        cacheTransactionExternalKeys(payment);
 
         final PaymentTransaction paymentTransaction = Iterables.<PaymentTransaction>find(payment.getTransactions(),
                                                                                          new Predicate<PaymentTransaction>() {
@@ -919,20 +970,25 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
                                                                                                  return kbTransactionId.equals(input.getId());
                                                                                              }
                                                                                          });
+        return paymentTransaction.getExternalKey();
+    }
 
-        final PaymentInfo paymentInfo = buildPaymentInfo(merchantAccount, countryCode, account, paymentMethodsRecord, properties, context);
-
-        return new PaymentData<PaymentInfo>(amount, currency, paymentTransaction.getExternalKey(), paymentInfo);
+    private void cacheTransactionExternalKeys(final Payment payment) {
+        for (final PaymentTransaction paymentTransaction : payment.getTransactions()) {
+            if (paymentTransaction.getId() != null && paymentTransaction.getExternalKey() != null) {
+                transactionExternalKeys.put(paymentTransaction.getId(), paymentTransaction.getExternalKey());
+            }
+        }
     }
 
     // For HPP
-    private PaymentData buildPaymentData(final String merchantAccount, final String countryCode, final AccountData account, final BigDecimal amount, final Currency currency, final Iterable<PluginProperty> properties, final TenantContext context) {
+    private PaymentData buildPaymentData(final String merchantAccount, final String countryCode, final AccountData account, final BigDecimal amount, final Currency currency, final IndexedPluginProperties properties, final TenantContext context) {
         final PaymentInfo paymentInfo = buildPaymentInfo(merchantAccount, countryCode, account, null, properties, context);
-        final String paymentTransactionExternalKey = PluginProperties.getValue(PROPERTY_PAYMENT_EXTERNAL_KEY, UUID.randomUUID().toString(), properties);
+        final String paymentTransactionExternalKey = properties.getValue(PROPERTY_PAYMENT_EXTERNAL_KEY, UUID.randomUUID().toString());
         return new PaymentData<PaymentInfo>(amount, currency, paymentTransactionExternalKey, paymentInfo);
     }
 
-    private PaymentInfo buildPaymentInfo(final String merchantAccount, final String countryCode, final AccountData account, @Nullable final AdyenPaymentMethodsRecord paymentMethodsRecord, final Iterable<PluginProperty> properties, final TenantContext context) {
+    private PaymentInfo buildPaymentInfo(final String merchantAccount, final String countryCode, final AccountData account, @Nullable final AdyenPaymentMethodsRecord paymentMethodsRecord, final IndexedPluginProperties properties, final TenantContext context) {
         // A bit of a hack - it would be nice to be able to isolate AdyenConfigProperties
         final AdyenConfigProperties adyenConfigProperties = getConfigProperties(context);
         return PaymentInfoMappingService.toPaymentInfo(merchantAccount, countryCode, adyenConfigProperties, clock, account, paymentMethodsRecord, properties);
@@ -1017,7 +1073,7 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
 
     private AdyenResponsesRecord previousAdyenResponseRecord(final UUID kbPaymentId, final String kbPaymentTransactionId, final CallContext context) {
         try {
-            final AdyenResponsesRecord previousAuthorizationResponse = dao.getSuccessfulAuthorizationResponse(kbPaymentId, context.getTenantId());
+            final AdyenResponsesRecord previousAuthorizationResponse = dao.getSuccessfulAuthorizationResponse(kbPaymentId, context.getTenantId(), false);
             if (previousAuthorizationResponse != null && previousAuthorizationResponse.getKbPaymentTransactionId().equals(kbPaymentTransactionId)) {
                 return previousAuthorizationResponse;
             }
@@ -1029,12 +1085,12 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
         }
     }
 
-    private String getMerchantAccount(final String countryCode, final Iterable<PluginProperty> properties, final TenantContext context) {
+    private String getMerchantAccount(final String countryCode, final IndexedPluginProperties properties, final TenantContext context) {
         return getMerchantAccount(countryCode, null, properties, context);
     }
 
-    private String getMerchantAccount(final String countryCode, @Nullable final AdyenResponsesRecord adyenResponsesRecord, final Iterable<PluginProperty> properties, final TenantContext context) {
-        final String paymentProcessorAccountId = PluginProperties.findPluginPropertyValue(PROPERTY_PAYMENT_PROCESSOR_ACCOUNT_ID, properties);
+    private String getMerchantAccount(final String countryCode, @Nullable final AdyenResponsesRecord adyenResponsesRecord, final IndexedPluginProperties properties, final TenantContext context) {
+        final String paymentProcessorAccountId = properties.findValue(PROPERTY_PAYMENT_PROCESSOR_ACCOUNT_ID);
         if (paymentProcessorAccountId != null) {
             return getConfigProperties(context)
                     .getMerchantAccountOfPaymentProcessorAccountId(paymentProcessorAccountId)
@@ -1058,12 +1114,7 @@ public class AdyenPaymentPluginApi extends PluginPaymentPluginApi<AdyenResponses
     }
 
     private String getMerchantAccountFromRecord(final AdyenResponsesRecord adyenResponsesRecord) {
-        final Map additionalData = AdyenDao.fromAdditionalData(adyenResponsesRecord.getAdditionalData());
-        final Object merchantAccountCode = additionalData.get(AdyenPaymentPluginApi.PROPERTY_MERCHANT_ACCOUNT_CODE);
-        if (merchantAccountCode != null) {
-            return merchantAccountCode.toString();
-        }
-        return null;
+        return AdyenDao.getMerchantAccountCode(adyenResponsesRecord);
     }
 
     private AdyenConfigProperties getConfigProperties(final TenantContext context) {
@@ -36,7 +36,7 @@ import org.killbill.billing.plugin.adyen.client.model.PaymentModificationRespons
 import org.killbill.billing.plugin.adyen.client.model.PaymentServiceProviderResult;
 import org.killbill.billing.plugin.adyen.client.model.PurchaseResult;
 import org.killbill.billing.plugin.adyen.client.payment.service.AdyenCallErrorStatus;
-import org.killbill.billing.plugin.adyen.dao.AdyenDao;
+import org.killbill.billing.plugin.adyen.dao.AdditionalData;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
 import org.killbill.billing.plugin.api.PluginProperties;
@@ -209,7 +209,7 @@ public class AdyenPaymentTransactionInfoPlugin extends PluginPaymentTransactionI
     }
 
     private static String getGatewayError(final AdyenResponsesRecord record) {
-        final Map additionalData = AdyenDao.fromAdditionalData(record.getAdditionalData());
+        final Map additionalData = AdditionalData.of(record).asMap();
         final String refusalResponseMessage = getGatewayError(additionalData);
         if (refusalResponseMessage != null) {
             return refusalResponseMessage;
@@ -262,7 +262,7 @@ public class AdyenPaymentTransactionInfoPlugin extends PluginPaymentTransactionI
     }
 
     private static String getGatewayErrorCode(final AdyenResponsesRecord record) {
-        return getGatewayErrorCode(AdyenDao.fromAdditionalData(record.getAdditionalData()));
+        return getGatewayErrorCode(AdditionalData.of(record).asMap());
     }
 
     private static String getGatewayErrorCode(@Nullable final Map additionalData) {
@@ -299,7 +299,7 @@ public class AdyenPaymentTransactionInfoPlugin extends PluginPaymentTransactionI
 
     private static PaymentPluginStatus getPaymentPluginStatus(final AdyenResponsesRecord record) {
         if (Strings.isNullOrEmpty(record.getPspResult())) {
-            final String adyenCallErrorStatusString = toString(AdyenDao.fromAdditionalData(record.getAdditionalData()).get(PurchaseResult.ADYEN_CALL_ERROR_STATUS));
+            final String adyenCallErrorStatusString = AdditionalData.of(record).getAdyenCallErrorStatus();
             final AdyenCallErrorStatus adyenCallErrorStatus;
             if (Strings.isNullOrEmpty(adyenCallErrorStatusString)) {
                 adyenCallErrorStatus = AdyenCallErrorStatus.UNKNOWN_FAILURE;
@@ -472,9 +472,9 @@ public class AdyenPaymentTransactionInfoPlugin extends PluginPaymentTransactionI
         final Map mergedMap = new HashMap();
 
         if (adyenHppRequestsRecord != null) {
-            mergedMap.putAll(toMap(adyenHppRequestsRecord.getAdditionalData()));
+            mergedMap.putAll(toMap(AdditionalData.of(adyenHppRequestsRecord)));
         }
-        mergedMap.putAll(toMap(adyenResponsesRecord.getAdditionalData()));
+        mergedMap.putAll(toMap(AdditionalData.of(adyenResponsesRecord)));
 
         return buildProperties(mergedMap);
     }
@@ -30,12 +30,8 @@ import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRe
 import org.killbill.billing.plugin.api.PluginProperties;
 import org.killbill.clock.Clock;
 
-import com.google.common.base.MoreObjects;
 import com.google.common.collect.Iterables;
 
-import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPERTY_FROM_HPP;
-import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPERTY_HPP_COMPLETION;
-
 public class ExpiredPaymentPolicy {
 
     private final Clock clock;
@@ -111,15 +107,22 @@ public class ExpiredPaymentPolicy {
     }
 
     private boolean isHppCompletionTransaction(final AdyenResponsesRecord adyenResponsesRecord) {
-        return Boolean.valueOf(MoreObjects.firstNonNull(AdyenDao.fromAdditionalData(adyenResponsesRecord.getAdditionalData()).get(PROPERTY_HPP_COMPLETION), false).toString());
+        return AdyenDao.isHppCompletion(adyenResponsesRecord);
     }
 
     private boolean isHppPayment(final AdyenResponsesRecord adyenResponsesRecord) {
-        return Boolean.valueOf(MoreObjects.firstNonNull(AdyenDao.fromAdditionalData(adyenResponsesRecord.getAdditionalData()).get(PROPERTY_FROM_HPP), false).toString());
+        return AdyenDao.isFromHpp(adyenResponsesRecord);
     }
 
     // paymentMethod comes from the notification, brandCode from the HPP request
-    private String getPaymentMethod(final PaymentTransactionInfoPlugin transaction) {
+    private String getPaymentMethod(final AdyenPaymentTransactionInfoPlugin transaction) {
+        if (transaction.getAdyenResponseRecord().isPresent()) {
+            final String paymentMethod = AdyenDao.getPaymentMethod(transaction.getAdyenResponseRecord().get());
+            if (paymentMethod != null) {
+                return paymentMethod;
+            }
+        }
+
         final String paymentMethod = PluginProperties.findPluginPropertyValue("paymentMethod", transaction.getProperties());
         return paymentMethod != null ? paymentMethod : PluginProperties.findPluginPropertyValue("brandCode", transaction.getProperties());
     }
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.api;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.PaymentMethodPlugin;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.plugin.api.GatewayNotification;
+import org.killbill.billing.payment.plugin.api.HostedPaymentPageFormDescriptor;
+import org.killbill.billing.payment.plugin.api.PaymentMethodInfoPlugin;
+import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
+import org.killbill.billing.payment.plugin.api.PaymentPluginApiException;
+import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
+import org.killbill.billing.plugin.adyen.metrics.Gauge;
+import org.killbill.billing.plugin.adyen.metrics.MetricFamily;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
+import org.killbill.billing.plugin.adyen.metrics.OperationMetrics;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.entity.Pagination;
+
+/**
+ * Records the duration, failures and concurrency of each {@link PaymentPluginApi} call.
+ */
+public class InstrumentedPaymentPluginApi implements PaymentPluginApi {
+
+    public static final String API_METRIC = "adyen_api_call";
+    public static final String API_IN_FLIGHT_METRIC = "adyen_api_calls_in_flight";
+
+    private final PaymentPluginApi delegate;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final OperationMetrics authorizePaymentMetrics;
+    private final OperationMetrics capturePaymentMetrics;
+    private final OperationMetrics purchasePaymentMetrics;
+    private final OperationMetrics voidPaymentMetrics;
+    private final OperationMetrics creditPaymentMetrics;
+    private final OperationMetrics refundPaymentMetrics;
+    private final OperationMetrics getPaymentInfoMetrics;
+    private final OperationMetrics searchPaymentsMetrics;
+    private final OperationMetrics addPaymentMethodMetrics;
+    private final OperationMetrics deletePaymentMethodMetrics;
+    private final OperationMetrics getPaymentMethodDetailMetrics;
+    private final OperationMetrics setDefaultPaymentMethodMetrics;
+    private final OperationMetrics getPaymentMethodsMetrics;
+    private final OperationMetrics searchPaymentMethodsMetrics;
+    private final OperationMetrics resetPaymentMethodsMetrics;
+    private final OperationMetrics buildFormDescriptorMetrics;
+    private final OperationMetrics processNotificationMetrics;
+
+    public InstrumentedPaymentPluginApi(final PaymentPluginApi delegate, final MetricsRegistry metricsRegistry) {
+        this.delegate = delegate;
+
+        // Resolved once, so that recording is a plain field access
+        final MetricFamily<OperationMetrics> apiMetrics = metricsRegistry.operations(API_METRIC, "the payment plugin API calls", "method");
+        this.authorizePaymentMetrics = apiMetrics.labels("authorizePayment");
+        this.capturePaymentMetrics = apiMetrics.labels("capturePayment");
+        this.purchasePaymentMetrics = apiMetrics.labels("purchasePayment");
+        this.voidPaymentMetrics = apiMetrics.labels("voidPayment");
+        this.creditPaymentMetrics = apiMetrics.labels("creditPayment");
+        this.refundPaymentMetrics = apiMetrics.labels("refundPayment");
+        this.getPaymentInfoMetrics = apiMetrics.labels("getPaymentInfo");
+        this.searchPaymentsMetrics = apiMetrics.labels("searchPayments");
+        this.addPaymentMethodMetrics = apiMetrics.labels("addPaymentMethod");
+        this.deletePaymentMethodMetrics = apiMetrics.labels("deletePaymentMethod");
+        this.getPaymentMethodDetailMetrics = apiMetrics.labels("getPaymentMethodDetail");
+        this.setDefaultPaymentMethodMetrics = apiMetrics.labels("setDefaultPaymentMethod");
+        this.getPaymentMethodsMetrics = apiMetrics.labels("getPaymentMethods");
+        this.searchPaymentMethodsMetrics = apiMetrics.labels("searchPaymentMethods");
+        this.resetPaymentMethodsMetrics = apiMetrics.labels("resetPaymentMethods");
+        this.buildFormDescriptorMetrics = apiMetrics.labels("buildFormDescriptor");
+        this.processNotificationMetrics = apiMetrics.labels("processNotification");
+
+        metricsRegistry.gauge(API_IN_FLIGHT_METRIC,
+                              "Payment plugin API calls in progress",
+                              new Gauge() {
+                                  @Override
+                                  public double getValue() {
+                                      return inFlight.get();
+                                  }
+                              });
+    }
+
+    @Override
+    public PaymentTransactionInfoPlugin authorizePayment(final UUID kbAccountId, final UUID kbPaymentId, final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        return execute(authorizePaymentMetrics,
+                       new PluginApiCallback<PaymentTransactionInfoPlugin>() {
+                           @Override
+                           public PaymentTransactionInfoPlugin call() throws PaymentPluginApiException {
+                               return delegate.authorizePayment(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, amount, currency, properties, context);
+                           }
+                       });
+    }
+
+    @Override
+    public PaymentTransactionInfoPlugin capturePayment(final UUID kbAccountId, final UUID kbPaymentId, final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        return execute(capturePaymentMetrics,
+                       new PluginApiCallback<PaymentTransactionInfoPlugin>() {
+                           @Override
+                           public PaymentTransactionInfoPlugin call() throws PaymentPluginApiException {
+                               return delegate.capturePayment(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, amount, currency, properties, context);
+                           }
+                       });
+    }
+
+    @Override
+    public PaymentTransactionInfoPlugin purchasePayment(final UUID kbAccountId, final UUID kbPaymentId, final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        return execute(purchasePaymentMetrics,
+                       new PluginApiCallback<PaymentTransactionInfoPlugin>() {
+                           @Override
+                           public PaymentTransactionInfoPlugin call() throws PaymentPluginApiException {
+                               return delegate.purchasePayment(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, amount, currency, properties, context);
+                           }
+                       });
+    }
+
+    @Override
+    public PaymentTransactionInfoPlugin voidPayment(final UUID kbAccountId, final UUID kbPaymentId, final UUID kbTransactionId, final UUID kbPaymentMethodId, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        return execute(voidPaymentMetrics,
+                       new PluginApiCallback<PaymentTransactionInfoPlugin>() {
+                           @Override
+                           public PaymentTransactionInfoPlugin call() throws PaymentPluginApiException {
+                               return delegate.voidPayment(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, properties, context);
+                           }
+                       });
+    }
+
+    @Override
+    public PaymentTransactionInfoPlugin creditPayment(final UUID kbAccountId, final UUID kbPaymentId, final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        return execute(creditPaymentMetrics,
+                       new PluginApiCallback<PaymentTransactionInfoPlugin>() {
+                           @Override
+                           public PaymentTransactionInfoPlugin call() throws PaymentPluginApiException {
+                               return delegate.creditPayment(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, amount, currency, properties, context);
+                           }
+                       });
+    }
+
+    @Override
+    public PaymentTransactionInfoPlugin refundPayment(final UUID kbAccountId, final UUID kbPaymentId, final UUID kbTransactionId, final UUID kbPaymentMethodId, final BigDecimal amount, final Currency currency, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        return execute(refundPaymentMetrics,
+                       new PluginApiCallback<PaymentTransactionInfoPlugin>() {
+                           @Override
+                           public PaymentTransactionInfoPlugin call() throws PaymentPluginApiException {
+                               return delegate.refundPayment(kbAccountId, kbPaymentId, kbTransactionId, kbPaymentMethodId, amount, currency, properties, context);
+                           }
+                       });
+    }
+
+    @Override
+    public List<PaymentTransactionInfoPlugin> getPaymentInfo(final UUID kbAccountId, final UUID kbPaymentId, final Iterable<PluginProperty> properties, final TenantContext context) throws PaymentPluginApiException {
+        return execute(getPaymentInfoMetrics,
+                       new PluginApiCallback<List<PaymentTransactionInfoPlugin>>() {
+                           @Override
+                           public List<PaymentTransactionInfoPlugin> call() throws PaymentPluginApiException {
+                               return delegate.getPaymentInfo(kbAccountId, kbPaymentId, properties, context);
+                           }
+                       });
+    }
+
+    @Override
+    public Pagination<PaymentTransactionInfoPlugin> searchPayments(final String searchKey, final Long offset, final Long limit, final Iterable<PluginProperty> properties, final TenantContext context) throws PaymentPluginApiException {
+        return execute(searchPaymentsMetrics,
+                       new PluginApiCallback<Pagination<PaymentTransactionInfoPlugin>>() {
+                           @Override
+                           public Pagination<PaymentTransactionInfoPlugin> call() throws PaymentPluginApiException {
+                               return delegate.searchPayments(searchKey, offset, limit, properties, context);
+                           }
+                       });
+    }
+
+    @Override
+    public void addPaymentMethod(final UUID kbAccountId, final UUID kbPaymentMethodId, final PaymentMethodPlugin paymentMethodProps, final boolean setDefault, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        execute(addPaymentMethodMetrics,
+                new PluginApiCallback<Void>() {
+                    @Override
+                    public Void call() throws PaymentPluginApiException {
+                        delegate.addPaymentMethod(kbAccountId, kbPaymentMethodId, paymentMethodProps, setDefault, properties, context);
+                        return null;
+                    }
+                });
+    }
+
+    @Override
+    public void deletePaymentMethod(final UUID kbAccountId, final UUID kbPaymentMethodId, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        execute(deletePaymentMethodMetrics,
+                new PluginApiCallback<Void>() {
+                    @Override
+                    public Void call() throws PaymentPluginApiException {
+                        delegate.deletePaymentMethod(kbAccountId, kbPaymentMethodId, properties, context);
+                        return null;
+                    }
+                });
+    }
+
+    @Override
+    public PaymentMethodPlugin getPaymentMethodDetail(final UUID kbAccountId, final UUID kbPaymentMethodId, final Iterable<PluginProperty> properties, final TenantContext context) throws PaymentPluginApiException {
+        return execute(getPaymentMethodDetailMetrics,
+                       new PluginApiCallback<PaymentMethodPlugin>() {
+                           @Override
+                           public PaymentMethodPlugin call() throws PaymentPluginApiException {
+                               return delegate.getPaymentMethodDetail(kbAccountId, kbPaymentMethodId, properties, context);
+                           }
+                       });
+    }
+
+    @Override
+    public void setDefaultPaymentMethod(final UUID kbAccountId, final UUID kbPaymentMethodId, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        execute(setDefaultPaymentMethodMetrics,
+                new PluginApiCallback<Void>() {
+                    @Override
+                    public Void call() throws PaymentPluginApiException {
+                        delegate.setDefaultPaymentMethod(kbAccountId, kbPaymentMethodId, properties, context);
+                        return null;
+                    }
+                });
+    }
+
+    @Override
+    public List<PaymentMethodInfoPlugin> getPaymentMethods(final UUID kbAccountId, final boolean refreshFromGateway, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        return execute(getPaymentMethodsMetrics,
+                       new PluginApiCallback<List<PaymentMethodInfoPlugin>>() {
+                           @Override
+                           public List<PaymentMethodInfoPlugin> call() throws PaymentPluginApiException {
+                               return delegate.getPaymentMethods(kbAccountId, refreshFromGateway, properties, context);
+                           }
+                       });
+    }
+
+    @Override
+    public Pagination<PaymentMethodPlugin> searchPaymentMethods(final String searchKey, final Long offset, final Long limit, final Iterable<PluginProperty> properties, final TenantContext context) throws PaymentPluginApiException {
+        return execute(searchPaymentMethodsMetrics,
+                       new PluginApiCallback<Pagination<PaymentMethodPlugin>>() {
+                           @Override
+                           public Pagination<PaymentMethodPlugin> call() throws PaymentPluginApiException {
+                               return delegate.searchPaymentMethods(searchKey, offset, limit, properties, context);
+                           }
+                       });
+    }
+
+    @Override
+    public void resetPaymentMethods(final UUID kbAccountId, final List<PaymentMethodInfoPlugin> paymentMethods, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        execute(resetPaymentMethodsMetrics,
+                new PluginApiCallback<Void>() {
+                    @Override
+                    public Void call() throws PaymentPluginApiException {
+                        delegate.resetPaymentMethods(kbAccountId, paymentMethods, properties, context);
+                        return null;
+                    }
+                });
+    }
+
+    @Override
+    public HostedPaymentPageFormDescriptor buildFormDescriptor(final UUID kbAccountId, final Iterable<PluginProperty> customFields, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        return execute(buildFormDescriptorMetrics,
+                       new PluginApiCallback<HostedPaymentPageFormDescriptor>() {
+                           @Override
+                           public HostedPaymentPageFormDescriptor call() throws PaymentPluginApiException {
+                               return delegate.buildFormDescriptor(kbAccountId, customFields, properties, context);
+                           }
+                       });
+    }
+
+    @Override
+    public GatewayNotification processNotification(final String notification, final Iterable<PluginProperty> properties, final CallContext context) throws PaymentPluginApiException {
+        return execute(processNotificationMetrics,
+                       new PluginApiCallback<GatewayNotification>() {
+                           @Override
+                           public GatewayNotification call() throws PaymentPluginApiException {
+                               return delegate.processNotification(notification, properties, context);
+                           }
+                       });
+    }
+
+    private <T> T execute(final OperationMetrics operationMetrics, final PluginApiCallback<T> callback) throws PaymentPluginApiException {
+        inFlight.incrementAndGet();
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final T result = callback.call();
+            success = true;
+            return result;
+        } finally {
+            operationMetrics.record(startNanos, success);
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private interface PluginApiCallback<T> {
+
+        T call() throws PaymentPluginApiException;
+    }
+}
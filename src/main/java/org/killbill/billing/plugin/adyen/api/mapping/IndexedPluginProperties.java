@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.api.mapping;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.plugin.api.PluginProperties;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+
+/**
+ * Immutable snapshot of the plugin properties of an API call, indexed once so that the mapping code doesn't scan them
+ * for each key.
+ * <p/>
+ * Lookups have the same semantics as {@link PluginProperties#findPluginPropertyValue(String, Iterable)} (first match,
+ * empty values are null). Properties whose key looks like prefix.suffix (splitSettlementDataItem.*, additionalDataItem.*,
+ * MPI implementation values, etc.) are also grouped by prefix.
+ */
+public final class IndexedPluginProperties implements Iterable<PluginProperty> {
+
+    private static final IndexedPluginProperties EMPTY = new IndexedPluginProperties(ImmutableList.<PluginProperty>of());
+
+    private final List<PluginProperty> properties;
+    private final Map<String, String> values;
+    private final ImmutableListMultimap<String, PluginProperty> groups;
+
+    public static IndexedPluginProperties of(@Nullable final Iterable<PluginProperty> properties) {
+        if (properties == null) {
+            return EMPTY;
+        } else if (properties instanceof IndexedPluginProperties) {
+            return (IndexedPluginProperties) properties;
+        } else {
+            return new IndexedPluginProperties(ImmutableList.<PluginProperty>copyOf(properties));
+        }
+    }
+
+    // Last one has precedence (see PluginProperties#merge)
+    public static IndexedPluginProperties merge(@Nullable final Iterable<PluginProperty> properties, @Nullable final Iterable<PluginProperty> overrides) {
+        final Map<String, PluginProperty> mergedProperties = new LinkedHashMap<String, PluginProperty>();
+        for (final Iterable<PluginProperty> propertiesList : ImmutableList.<Iterable<PluginProperty>>of(of(properties), of(overrides))) {
+            for (final PluginProperty pluginProperty : propertiesList) {
+                if (pluginProperty.getKey() != null && pluginProperty.getValue() != null) {
+                    mergedProperties.put(pluginProperty.getKey(), pluginProperty);
+                }
+            }
+        }
+        return new IndexedPluginProperties(ImmutableList.<PluginProperty>copyOf(mergedProperties.values()));
+    }
+
+    private IndexedPluginProperties(final List<PluginProperty> properties) {
+        this.properties = properties;
+        this.values = new HashMap<String, String>();
+        final ImmutableListMultimap.Builder<String, PluginProperty> groupsBuilder = ImmutableListMultimap.builder();
+        for (final PluginProperty pluginProperty : properties) {
+            final String key = pluginProperty.getKey();
+            if (key == null) {
+                continue;
+            }
+
+            if (!values.containsKey(key)) {
+                final String value = pluginProperty.getValue() == null ? null : String.valueOf(pluginProperty.getValue());
+                values.put(key, Strings.emptyToNull(value));
+            }
+
+            final int separator = key.indexOf('.');
+            if (separator > 0 && pluginProperty.getValue() != null) {
+                groupsBuilder.put(key.substring(0, separator), pluginProperty);
+            }
+        }
+        this.groups = groupsBuilder.build();
+    }
+
+    public String findValue(final String key) {
+        return values.get(key);
+    }
+
+    // Return the value from the plugin properties if it exists, or the fallback otherwise
+    public String getValue(final String key, @Nullable final String fallbackValue) {
+        final String value = values.get(key);
+        return value == null ? fallbackValue : value;
+    }
+
+    /**
+     * @param prefix key prefix, without the trailing dot
+     * @return the properties with a non-null value whose key starts with prefix followed by a dot, in order
+     */
+    public List<PluginProperty> findGroup(final String prefix) {
+        return groups.get(prefix);
+    }
+
+    @Override
+    public Iterator<PluginProperty> iterator() {
+        return properties.iterator();
+    }
+
+    @Override
+    public String toString() {
+        return properties.toString();
+    }
+}
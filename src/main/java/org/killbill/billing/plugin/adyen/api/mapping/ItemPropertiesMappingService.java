@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.api.mapping;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.plugin.adyen.client.model.SplitSettlementData;
+import org.killbill.billing.plugin.adyen.client.model.SplitSettlementData.Item;
+import org.killbill.billing.plugin.util.KillBillMoney;
+
+import com.google.common.base.MoreObjects;
+
+import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.ADDITIONAL_DATA_ITEM;
+import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.SPLIT_SETTLEMENT_DATA_ITEM;
+
+/**
+ * Indexed item properties, i.e. prefix.itemNumber.field: splitSettlementDataItem.1.amount, additionalDataItem.1.key, etc.
+ * <p/>
+ * Keys are tokenized in a single pass over the prefix group (see {@link IndexedPluginProperties#findGroup(String)}).
+ * Item numbers must be unsigned integers (up to 32767), items are returned in item number order and unknown fields
+ * are ignored.
+ */
+public abstract class ItemPropertiesMappingService {
+
+    static final int MAX_ITEM_NUMBER = Short.MAX_VALUE;
+
+    private static final String[] SPLIT_SETTLEMENT_DATA_FIELDS = {"amount", "group", "reference", "type"};
+    private static final int AMOUNT = 0;
+    private static final int GROUP = 1;
+    private static final int REFERENCE = 2;
+    private static final int TYPE = 3;
+
+    private static final String[] ADDITIONAL_DATA_FIELDS = {"key", "value"};
+    private static final int KEY = 0;
+    private static final int VALUE = 1;
+
+    public static SplitSettlementData toSplitSettlementData(final Currency currency, final IndexedPluginProperties properties) {
+        final Map<Integer, String[]> itemsFields = parse(SPLIT_SETTLEMENT_DATA_ITEM, SPLIT_SETTLEMENT_DATA_FIELDS, properties);
+
+        final List<Item> items = new ArrayList<Item>(itemsFields.size());
+        for (final String[] fields : itemsFields.values()) {
+            final String type = fields[TYPE];
+            if (fields[AMOUNT] != null && type != null) {
+                // Amount in major units
+                items.add(new Item(KillBillMoney.toMinorUnits(currency.toString(), new BigDecimal(fields[AMOUNT])),
+                                   MoreObjects.firstNonNull(fields[GROUP], type),
+                                   MoreObjects.firstNonNull(fields[REFERENCE], type),
+                                   type));
+            }
+        }
+
+        if (items.isEmpty()) {
+            return null;
+        } else {
+            return new SplitSettlementData(1, currency.toString(), items);
+        }
+    }
+
+    public static Map<String, String> toAdditionalData(final IndexedPluginProperties properties) {
+        final Map<Integer, String[]> itemsFields = parse(ADDITIONAL_DATA_ITEM, ADDITIONAL_DATA_FIELDS, properties);
+
+        final Map<String, String> additionalData = new LinkedHashMap<String, String>();
+        for (final String[] fields : itemsFields.values()) {
+            if (fields[KEY] != null) {
+                additionalData.put(fields[KEY], fields[VALUE]);
+            }
+        }
+        return additionalData;
+    }
+
+    // Fields values by item number (last one has precedence)
+    private static Map<Integer, String[]> parse(final String prefix, final String[] fieldNames, final IndexedPluginProperties properties) {
+        final Map<Integer, String[]> itemsFields = new TreeMap<Integer, String[]>();
+        for (final PluginProperty pluginProperty : properties.findGroup(prefix)) {
+            final String key = pluginProperty.getKey();
+            // The group guarantees the prefix and the dot
+            int position = prefix.length() + 1;
+
+            int itemNumber = 0;
+            final int itemNumberStart = position;
+            while (position < key.length() && key.charAt(position) != '.') {
+                final char c = key.charAt(position);
+                if (c < '0' || c > '9') {
+                    throw new IllegalArgumentException(String.format("Invalid item number in property '%s'", key));
+                }
+                itemNumber = itemNumber * 10 + (c - '0');
+                if (itemNumber > MAX_ITEM_NUMBER) {
+                    throw new IllegalArgumentException(String.format("Item number too large in property '%s' (max %s)", key, MAX_ITEM_NUMBER));
+                }
+                position++;
+            }
+            if (position == itemNumberStart || position >= key.length() - 1) {
+                throw new IllegalArgumentException(String.format("Property '%s' should be of the form %s.<itemNumber>.<field>", key, prefix));
+            }
+
+            final int field = indexOf(fieldNames, key, position + 1);
+            if (field < 0) {
+                continue;
+            }
+
+            String[] fields = itemsFields.get(itemNumber);
+            if (fields == null) {
+                fields = new String[fieldNames.length];
+                itemsFields.put(itemNumber, fields);
+            }
+            fields[field] = pluginProperty.getValue().toString();
+        }
+        return itemsFields;
+    }
+
+    private static int indexOf(final String[] fieldNames, final String key, final int fieldStart) {
+        final int fieldLength = key.length() - fieldStart;
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (fieldNames[i].length() == fieldLength && key.startsWith(fieldNames[i], fieldStart)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
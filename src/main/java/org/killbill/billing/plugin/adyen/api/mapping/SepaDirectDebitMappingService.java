@@ -20,11 +20,9 @@ package org.killbill.billing.plugin.adyen.api.mapping;
 import javax.annotation.Nullable;
 
 import org.killbill.billing.account.api.AccountData;
-import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.plugin.adyen.client.model.paymentinfo.ELVDirectDebit;
 import org.killbill.billing.plugin.adyen.client.model.paymentinfo.SepaDirectDebit;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenPaymentMethodsRecord;
-import org.killbill.billing.plugin.api.PluginProperties;
 
 import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPERTY_DD_ACCOUNT_NUMBER;
 import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPERTY_DD_BANK_IDENTIFIER_CODE;
@@ -35,12 +33,12 @@ import static org.killbill.billing.plugin.api.payment.PluginPaymentPluginApi.PRO
 
 public abstract class SepaDirectDebitMappingService {
 
-    public static SepaDirectDebit toPaymentInfo(@Nullable final AccountData account, final AdyenPaymentMethodsRecord paymentMethodsRecord, final Iterable<PluginProperty> properties) {
+    public static SepaDirectDebit toPaymentInfo(@Nullable final AccountData account, final AdyenPaymentMethodsRecord paymentMethodsRecord, final IndexedPluginProperties properties) {
         final SepaDirectDebit sepaDirectDebit;
 
-        final String ddAccountNumber = PluginProperties.getValue(PROPERTY_DD_ACCOUNT_NUMBER, paymentMethodsRecord.getCcNumber(), properties);
+        final String ddAccountNumber = properties.getValue(PROPERTY_DD_ACCOUNT_NUMBER, paymentMethodsRecord.getCcNumber());
 
-        final String elvBlz = PluginProperties.findPluginPropertyValue(PROPERTY_ELV_BLZ, properties);
+        final String elvBlz = properties.findValue(PROPERTY_ELV_BLZ);
         if (elvBlz != null) {
             @SuppressWarnings("deprecation") final ELVDirectDebit elvDirectDebit = new ELVDirectDebit();
             elvDirectDebit.setBlz(elvBlz);
@@ -50,17 +48,17 @@ public abstract class SepaDirectDebitMappingService {
             sepaDirectDebit = new SepaDirectDebit();
             sepaDirectDebit.setIban(ddAccountNumber);
 
-            final String ddBic = PluginProperties.findPluginPropertyValue(PROPERTY_DD_BANK_IDENTIFIER_CODE, properties);
+            final String ddBic = properties.findValue(PROPERTY_DD_BANK_IDENTIFIER_CODE);
             sepaDirectDebit.setBic(ddBic);
         }
 
         final String paymentMethodHolderName = holderName(paymentMethodsRecord.getCcFirstName(), paymentMethodsRecord.getCcLastName());
-        final String ddHolderName = PluginProperties.getValue(PROPERTY_DD_HOLDER_NAME, paymentMethodHolderName, properties);
+        final String ddHolderName = properties.getValue(PROPERTY_DD_HOLDER_NAME, paymentMethodHolderName);
         sepaDirectDebit.setSepaAccountHolder(ddHolderName);
 
-        String countryCode = PluginProperties.findPluginPropertyValue(PROPERTY_SEPA_COUNTRY_CODE, properties);
+        String countryCode = properties.findValue(PROPERTY_SEPA_COUNTRY_CODE);
         if(countryCode == null) {
-            countryCode = PluginProperties.getValue(PROPERTY_COUNTRY, paymentMethodsRecord.getCountry(), properties);
+            countryCode = properties.getValue(PROPERTY_COUNTRY, paymentMethodsRecord.getCountry());
             if (countryCode == null && account != null) {
                 countryCode = account.getCountry();
             }
@@ -18,11 +18,9 @@
 package org.killbill.billing.plugin.adyen.api.mapping;
 
 import org.joda.time.DateTime;
-import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.plugin.adyen.client.AdyenConfigProperties;
 import org.killbill.billing.plugin.adyen.client.model.PaymentInfo;
 import org.killbill.billing.plugin.adyen.client.model.paymentinfo.WebPaymentFrontend;
-import org.killbill.billing.plugin.api.PluginProperties;
 import org.killbill.clock.Clock;
 
 import com.google.common.base.Strings;
@@ -42,42 +40,42 @@ import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPER
 
 public abstract class WebPaymentFrontendMappingService {
 
-    public static PaymentInfo toPaymentInfo(final String merchantAccount, final AdyenConfigProperties configuration, final Clock clock, final Iterable<PluginProperty> properties) {
+    public static PaymentInfo toPaymentInfo(final String merchantAccount, final AdyenConfigProperties configuration, final Clock clock, final IndexedPluginProperties properties) {
         final WebPaymentFrontend paymentInfo = new WebPaymentFrontend();
 
-        final String propertyShipBeforeDate = PluginProperties.findPluginPropertyValue(PROPERTY_SHIP_BEFORE_DATE, properties);
+        final String propertyShipBeforeDate = properties.findValue(PROPERTY_SHIP_BEFORE_DATE);
         final DateTime shipBeforeDateTime = propertyShipBeforeDate == null ? clock.getUTCNow().plusHours(1) : new DateTime(propertyShipBeforeDate);
         paymentInfo.setShipBeforeDate(shipBeforeDateTime.toString("yyyy-MM-dd"));
 
-        final String skinCode = PluginProperties.getValue(PROPERTY_SKIN_CODE, configuration.getSkin(merchantAccount), properties);
+        final String skinCode = properties.getValue(PROPERTY_SKIN_CODE, configuration.getSkin(merchantAccount));
         paymentInfo.setSkinCode(skinCode);
 
-        final String orderData = PluginProperties.findPluginPropertyValue(PROPERTY_ORDER_DATA, properties);
+        final String orderData = properties.findValue(PROPERTY_ORDER_DATA);
         paymentInfo.setOrderData(orderData);
 
-        final String sessionValidity = PluginProperties.getValue(PROPERTY_SESSION_VALIDITY, clock.getUTCNow().plusMinutes(15).toString("yyyy-MM-dd'T'HH:mm:ssZZ"), properties);
+        final String sessionValidity = properties.getValue(PROPERTY_SESSION_VALIDITY, clock.getUTCNow().plusMinutes(15).toString("yyyy-MM-dd'T'HH:mm:ssZZ"));
         paymentInfo.setSessionValidity(sessionValidity);
 
-        final String merchantReturnData = PluginProperties.findPluginPropertyValue(PROPERTY_MERCHANT_RETURN_DATA, properties);
+        final String merchantReturnData = properties.findValue(PROPERTY_MERCHANT_RETURN_DATA);
         paymentInfo.setMerchantReturnData(merchantReturnData);
 
-        final String allowedMethods = PluginProperties.findPluginPropertyValue(PROPERTY_ALLOWED_METHODS, properties);
+        final String allowedMethods = properties.findValue(PROPERTY_ALLOWED_METHODS);
         paymentInfo.setAllowedMethods(allowedMethods);
 
-        final String blockedMethods = PluginProperties.findPluginPropertyValue(PROPERTY_BLOCKED_METHODS, properties);
+        final String blockedMethods = properties.findValue(PROPERTY_BLOCKED_METHODS);
         paymentInfo.setBlockedMethods(blockedMethods);
 
-        final String brandCode = PluginProperties.getValue(PROPERTY_BRAND_CODE, configuration.getHppVariantOverride(), properties);
+        final String brandCode = properties.getValue(PROPERTY_BRAND_CODE, configuration.getHppVariantOverride());
         paymentInfo.setBrandCode(brandCode);
 
-        final String issuerId = PluginProperties.findPluginPropertyValue(PROPERTY_ISSUER_ID, properties);
+        final String issuerId = properties.findValue(PROPERTY_ISSUER_ID);
         paymentInfo.setIssuerId(issuerId);
 
-        final String offerEmail = PluginProperties.findPluginPropertyValue(PROPERTY_OFFER_EMAIL, properties);
+        final String offerEmail = properties.findValue(PROPERTY_OFFER_EMAIL);
         paymentInfo.setOfferEmail(offerEmail);
 
-        final String serverUrl = PluginProperties.findPluginPropertyValue(PROPERTY_SERVER_URL, properties);
-        final String resultUrl = PluginProperties.findPluginPropertyValue(PROPERTY_RESULT_URL, properties);
+        final String serverUrl = properties.findValue(PROPERTY_SERVER_URL);
+        final String resultUrl = properties.findValue(PROPERTY_RESULT_URL);
         paymentInfo.setResURL(Strings.nullToEmpty(serverUrl) + Strings.nullToEmpty(resultUrl));
 
         return paymentInfo;
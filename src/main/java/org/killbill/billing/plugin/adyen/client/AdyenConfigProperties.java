@@ -106,6 +106,10 @@ public class AdyenConfigProperties {
 
     private final Period pending3DsPaymentExpirationPeriod;
 
+    private final Period notificationsRetentionPeriod;
+
+    private final Period settledResponsesRetentionPeriod;
+
     private final String currentRegion;
 
     private final String invoicePaymentEnabled;
@@ -149,6 +153,8 @@ public class AdyenConfigProperties {
         this.pendingPaymentExpirationPeriod = readPendingExpirationProperty(properties);
         this.pending3DsPaymentExpirationPeriod = read3DsPendingExpirationProperty(properties);
         this.pendingHppPaymentWithoutCompletionExpirationPeriod = readPendingHppPaymentWithoutCompletionExpirationPeriod(properties);
+        this.notificationsRetentionPeriod = readRetentionPeriod(properties, "notificationsRetentionPeriod");
+        this.settledResponsesRetentionPeriod = readRetentionPeriod(properties, "settledResponsesRetentionPeriod");
 
         this.acquirersList = properties.getProperty(PROPERTY_PREFIX + "acquirersList");
 
@@ -285,6 +291,18 @@ public class AdyenConfigProperties {
         return Period.parse(DEFAULT_PENDING_3DS_PAYMENT_EXPIRATION_PERIOD);
     }
 
+    private Period readRetentionPeriod(final Properties properties, final String key) {
+        final String value = properties.getProperty(PROPERTY_PREFIX + key);
+        if (value != null) {
+            try {
+                return Period.parse(value);
+            } catch (final IllegalArgumentException e) { /* Ignore */ }
+        }
+
+        // Keep the rows forever
+        return null;
+    }
+
     public Boolean getInvoicePaymentEnabled() {
         return Boolean.valueOf(invoicePaymentEnabled);
     }
@@ -312,6 +330,25 @@ public class AdyenConfigProperties {
         }
     }
 
+    /**
+     * @return all the merchant accounts configured (per country, fallback and per payment processor account id)
+     */
+    public Set<String> getMerchantAccounts() {
+        final ImmutableSet.Builder<String> builder = ImmutableSet.<String>builder();
+        if (countryToMerchantAccountMap.isEmpty()) {
+            if (!Strings.isNullOrEmpty(merchantAccounts)) {
+                builder.add(merchantAccounts);
+            }
+        } else {
+            builder.addAll(countryToMerchantAccountMap.values());
+        }
+        if (fallBackMerchantAccount != null) {
+            builder.add(fallBackMerchantAccount);
+        }
+        builder.addAll(paymentProcessorAccountIdToMerchantAccountMap.values());
+        return builder.build();
+    }
+
     public String getUserName(final String merchantAccount) {
         if (merchantAccountToUsernameMap.isEmpty()) {
             return userNames;
@@ -376,6 +413,18 @@ public class AdyenConfigProperties {
         return pending3DsPaymentExpirationPeriod;
     }
 
+    /**
+     * @return all the expiration periods of the pending payments (default, per payment method, 3-D Secure and HPP)
+     */
+    public List<Period> getPendingPaymentExpirationPeriods() {
+        return ImmutableList.<Period>builder()
+                            .add(pendingPaymentExpirationPeriod)
+                            .addAll(paymentMethodToExpirationPeriod.values())
+                            .add(pending3DsPaymentExpirationPeriod)
+                            .add(pendingHppPaymentWithoutCompletionExpirationPeriod)
+                            .build();
+    }
+
     public String getAcquirersList() {
         return acquirersList;
     }
@@ -479,4 +528,20 @@ public class AdyenConfigProperties {
     public Period getPendingHppPaymentWithoutCompletionExpirationPeriod() {
         return pendingHppPaymentWithoutCompletionExpirationPeriod;
     }
+
+    /**
+     * @return how long notifications are kept before being archived, null to keep them forever
+     */
+    @Nullable
+    public Period getNotificationsRetentionPeriod() {
+        return notificationsRetentionPeriod;
+    }
+
+    /**
+     * @return how long the responses of settled payments are kept before being archived, null to keep them forever
+     */
+    @Nullable
+    public Period getSettledResponsesRetentionPeriod() {
+        return settledResponsesRetentionPeriod;
+    }
 }
@@ -45,11 +45,16 @@ import org.killbill.billing.plugin.adyen.client.jaxws.HttpHeaderInterceptor;
 import org.killbill.billing.plugin.adyen.client.jaxws.IgnoreUnexpectedElementsEventHandler;
 import org.killbill.billing.plugin.adyen.client.jaxws.LoggingInInterceptor;
 import org.killbill.billing.plugin.adyen.client.jaxws.LoggingOutInterceptor;
+import org.killbill.billing.plugin.adyen.metrics.MetricFamily;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
+import org.killbill.billing.plugin.adyen.metrics.OperationMetrics;
 
 import com.google.common.base.Preconditions;
 
 public class AdyenPaymentPortRegistry implements PaymentPortRegistry {
 
+    public static final String PORT_CREATION_METRIC = "adyen_cxf_port_creation";
+
     private static final String PAYMENT_SERVICE_SUFFIX = "-paymentService";
 
     private final Map<String, Object> services = new ConcurrentHashMap<String, Object>();
@@ -57,6 +62,7 @@ public class AdyenPaymentPortRegistry implements PaymentPortRegistry {
     private final LoggingOutInterceptor loggingOutInterceptor;
     private final LoggingInInterceptor loggingInInterceptor;
     private final HttpHeaderInterceptor httpHeaderInterceptor;
+    private final MetricFamily<OperationMetrics> portCreations;
 
     protected final AdyenConfigProperties config;
 
@@ -64,10 +70,19 @@ public class AdyenPaymentPortRegistry implements PaymentPortRegistry {
                                     final LoggingInInterceptor loggingInInterceptor,
                                     final LoggingOutInterceptor loggingOutInterceptor,
                                     final HttpHeaderInterceptor httpHeaderInterceptor) {
+        this(config, loggingInInterceptor, loggingOutInterceptor, httpHeaderInterceptor, new MetricsRegistry());
+    }
+
+    public AdyenPaymentPortRegistry(final AdyenConfigProperties config,
+                                    final LoggingInInterceptor loggingInInterceptor,
+                                    final LoggingOutInterceptor loggingOutInterceptor,
+                                    final HttpHeaderInterceptor httpHeaderInterceptor,
+                                    final MetricsRegistry metricsRegistry) {
         this.loggingInInterceptor = loggingInInterceptor;
         this.loggingOutInterceptor = loggingOutInterceptor;
         this.config = Preconditions.checkNotNull(config, "config");
         this.httpHeaderInterceptor = httpHeaderInterceptor;
+        this.portCreations = metricsRegistry.operations(PORT_CREATION_METRIC, "the creation of CXF ports", "service");
     }
 
     @Override
@@ -105,14 +120,21 @@ public class AdyenPaymentPortRegistry implements PaymentPortRegistry {
         if (!this.services.containsKey(key)) {
             synchronized (this) {
                 if (!this.services.containsKey(key)) {
-                    final T service = createService(merchantAccount,
-                                                    clazz,
-                                                    serviceName,
-                                                    portName,
-                                                    address,
-                                                    connectionTimeout,
-                                                    readTimeout);
-                    this.services.put(key, service);
+                    final long startNanos = System.nanoTime();
+                    boolean success = false;
+                    try {
+                        final T service = createService(merchantAccount,
+                                                        clazz,
+                                                        serviceName,
+                                                        portName,
+                                                        address,
+                                                        connectionTimeout,
+                                                        readTimeout);
+                        this.services.put(key, service);
+                        success = true;
+                    } finally {
+                        portCreations.labels(clazz.getSimpleName()).record(startNanos, success);
+                    }
                 }
             }
         }
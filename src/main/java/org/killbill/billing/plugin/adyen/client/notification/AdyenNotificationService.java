@@ -21,6 +21,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
@@ -38,23 +39,35 @@ import org.killbill.adyen.notification.NotificationRequestItem;
 import org.killbill.adyen.notification.ObjectFactory;
 import org.killbill.adyen.notification.SendNotification;
 import org.killbill.adyen.notification.SendNotificationResponse;
+import org.killbill.billing.plugin.adyen.metrics.MetricFamily;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
+import org.killbill.billing.plugin.adyen.metrics.OperationMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 
 public class AdyenNotificationService {
 
+    public static final String NOTIFICATION_METRIC = "adyen_notification_handling";
+
     private static final Logger logger = LoggerFactory.getLogger(AdyenNotificationService.class);
 
     private final List<AdyenNotificationHandler> notificationHandlers;
     private final JAXBContext jaxbContext;
+    private final MetricFamily<OperationMetrics> notificationMetrics;
 
     public AdyenNotificationService(final List<AdyenNotificationHandler> notificationHandlers) throws JAXBException {
+        this(notificationHandlers, new MetricsRegistry());
+    }
+
+    public AdyenNotificationService(final List<AdyenNotificationHandler> notificationHandlers, final MetricsRegistry metricsRegistry) throws JAXBException {
         this.notificationHandlers = notificationHandlers;
+        this.notificationMetrics = metricsRegistry.operations(NOTIFICATION_METRIC, "the handling of Adyen notifications", "event_code");
         this.jaxbContext = JAXBContext.newInstance(SendNotification.class, SendNotificationResponse.class, ObjectFactory.class);
     }
 
@@ -72,18 +85,23 @@ public class AdyenNotificationService {
             return createSendNotificationResponse("error");
         }
 
+        dispatch(sendNotification);
+        return createSendNotificationResponse("[accepted]");
+    }
+
+    @VisibleForTesting
+    void dispatch(final SendNotification sendNotification) {
         final List<NotificationRequestItem> listOfNotifications = sendNotification.getNotification()
                                                                                   .getNotificationItems()
                                                                                   .getNotificationRequestItem();
         for (final NotificationRequestItem item : listOfNotifications) {
             handleNotification(item);
         }
-        return createSendNotificationResponse("[accepted]");
     }
 
     private void handleNotification(final NotificationRequestItem item) {
         Exception error = null;
-        final long startTime = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
         long duration = 0L;
         try {
             final AdyenNotificationHandler adyenNotificationHandler = getAdyenNotificationHandler(item);
@@ -93,11 +111,13 @@ public class AdyenNotificationService {
             }
 
             adyenNotificationHandler.handleNotification(item);
-            duration = System.currentTimeMillis() - startTime;
+            duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
         } catch (final Exception e) {
-            duration = System.currentTimeMillis() - startTime;
+            duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
             error = e;
         } finally {
+            notificationMetrics.labels(item.getEventCode()).record(startNanos, error == null);
+
             final String message = String.format(
                     "op='notificationHandling', eventCode='%s', pspReference='%s', originalReference='%s', success='%s', reason='%s', merchantReference='%s', merchantAccount='%s', duration=%d, error=%s",
                     item.getEventCode(),
@@ -128,7 +148,8 @@ public class AdyenNotificationService {
         return null;
     }
 
-    private SendNotification parse(final InputStream inputStream) throws ParserConfigurationException, IOException, SAXException, JAXBException {
+    @VisibleForTesting
+    SendNotification parse(final InputStream inputStream) throws ParserConfigurationException, IOException, SAXException, JAXBException {
         final DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
         builderFactory.setNamespaceAware(true);
         final DocumentBuilder builder = builderFactory.newDocumentBuilder();
@@ -140,7 +161,8 @@ public class AdyenNotificationService {
         return (SendNotification) unmarshaller.unmarshal(new DOMSource(sendNotificationNode));
     }
 
-    private ByteArrayOutputStream createSendNotificationResponse(final String value) {
+    @VisibleForTesting
+    ByteArrayOutputStream createSendNotificationResponse(final String value) {
         try {
             final SendNotificationResponse response = new SendNotificationResponse();
             response.setNotificationResponse(value);
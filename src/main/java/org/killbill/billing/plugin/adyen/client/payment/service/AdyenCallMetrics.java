@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.client.payment.service;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.adyen.metrics.LatencyHistogram;
+import org.killbill.billing.plugin.adyen.metrics.MetricsCollector;
+import org.killbill.billing.plugin.adyen.metrics.PrometheusTextWriter;
+
+/**
+ * Latency histograms of the calls to the Adyen payment service, per operation, merchant account and outcome.
+ */
+public class AdyenCallMetrics implements MetricsCollector {
+
+    public static final String CALL_DURATION_METRIC = "adyen_gateway_call_duration_seconds";
+
+    private static final String SUCCESS = "SUCCESS";
+    private static final String[] LABEL_NAMES = {"operation", "merchant_account", "status"};
+    private static final AdyenCallErrorStatus[] ERROR_STATUSES = AdyenCallErrorStatus.values();
+
+    // operation -> merchant account -> histograms indexed by status (SUCCESS first, then the error statuses)
+    private final ConcurrentMap<String, ConcurrentMap<String, AtomicReferenceArray<LatencyHistogram>>> histograms = new ConcurrentHashMap<String, ConcurrentMap<String, AtomicReferenceArray<LatencyHistogram>>>();
+
+    public void record(final String operation, final String merchantAccount, @Nullable final AdyenCallErrorStatus errorStatus, final long durationNanos) {
+        final AtomicReferenceArray<LatencyHistogram> byStatus = getHistogramsByStatus(operation, merchantAccount == null ? "" : merchantAccount);
+        final int index = errorStatus == null ? 0 : errorStatus.ordinal() + 1;
+
+        LatencyHistogram histogram = byStatus.get(index);
+        if (histogram == null) {
+            byStatus.compareAndSet(index, null, new LatencyHistogram());
+            histogram = byStatus.get(index);
+        }
+        histogram.record(durationNanos);
+    }
+
+    @Nullable
+    public LatencyHistogram getHistogram(final String operation, final String merchantAccount, @Nullable final AdyenCallErrorStatus errorStatus) {
+        final Map<String, AtomicReferenceArray<LatencyHistogram>> byMerchantAccount = histograms.get(operation);
+        if (byMerchantAccount == null) {
+            return null;
+        }
+        final AtomicReferenceArray<LatencyHistogram> byStatus = byMerchantAccount.get(merchantAccount);
+        return byStatus == null ? null : byStatus.get(errorStatus == null ? 0 : errorStatus.ordinal() + 1);
+    }
+
+    @Override
+    public void writeTo(final PrometheusTextWriter writer) {
+        writer.header(CALL_DURATION_METRIC, "summary", "Duration of the calls to the Adyen payment service");
+
+        // Sort the series, to keep the output stable across scrapes
+        for (final Entry<String, ConcurrentMap<String, AtomicReferenceArray<LatencyHistogram>>> operationEntry : new TreeMap<String, ConcurrentMap<String, AtomicReferenceArray<LatencyHistogram>>>(histograms).entrySet()) {
+            for (final Entry<String, AtomicReferenceArray<LatencyHistogram>> merchantAccountEntry : new TreeMap<String, AtomicReferenceArray<LatencyHistogram>>(operationEntry.getValue()).entrySet()) {
+                final AtomicReferenceArray<LatencyHistogram> byStatus = merchantAccountEntry.getValue();
+                for (int i = 0; i < byStatus.length(); i++) {
+                    final LatencyHistogram histogram = byStatus.get(i);
+                    if (histogram == null) {
+                        continue;
+                    }
+                    final String status = i == 0 ? SUCCESS : ERROR_STATUSES[i - 1].name();
+                    writer.summary(CALL_DURATION_METRIC, LABEL_NAMES, new String[]{operationEntry.getKey(), merchantAccountEntry.getKey(), status}, histogram);
+                }
+            }
+        }
+    }
+
+    private AtomicReferenceArray<LatencyHistogram> getHistogramsByStatus(final String operation, final String merchantAccount) {
+        // Plain get() first: computeIfAbsent would lock the bin even when the entry already exists
+        ConcurrentMap<String, AtomicReferenceArray<LatencyHistogram>> byMerchantAccount = histograms.get(operation);
+        if (byMerchantAccount == null) {
+            final ConcurrentMap<String, AtomicReferenceArray<LatencyHistogram>> newByMerchantAccount = new ConcurrentHashMap<String, AtomicReferenceArray<LatencyHistogram>>();
+            byMerchantAccount = histograms.putIfAbsent(operation, newByMerchantAccount);
+            if (byMerchantAccount == null) {
+                byMerchantAccount = newByMerchantAccount;
+            }
+        }
+
+        AtomicReferenceArray<LatencyHistogram> byStatus = byMerchantAccount.get(merchantAccount);
+        if (byStatus == null) {
+            final AtomicReferenceArray<LatencyHistogram> newByStatus = new AtomicReferenceArray<LatencyHistogram>(ERROR_STATUSES.length + 1);
+            byStatus = byMerchantAccount.putIfAbsent(merchantAccount, newByStatus);
+            if (byStatus == null) {
+                byStatus = newByStatus;
+            }
+        }
+        return byStatus;
+    }
+}
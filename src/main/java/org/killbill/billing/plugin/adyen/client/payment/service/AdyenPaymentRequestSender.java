@@ -23,6 +23,7 @@ import java.net.ConnectException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.ws.soap.SOAPFaultException;
 
@@ -53,13 +54,19 @@ public class AdyenPaymentRequestSender implements Closeable {
     private static final Logger logger = LoggerFactory.getLogger(AdyenPaymentRequestSender.class);
 
     private final PaymentPortRegistry adyenPaymentPortRegistry;
+    private final AdyenCallMetrics adyenCallMetrics;
 
     public AdyenPaymentRequestSender(final PaymentPortRegistry adyenPaymentPortRegistry) {
+        this(adyenPaymentPortRegistry, new AdyenCallMetrics());
+    }
+
+    public AdyenPaymentRequestSender(final PaymentPortRegistry adyenPaymentPortRegistry, final AdyenCallMetrics adyenCallMetrics) {
         this.adyenPaymentPortRegistry = adyenPaymentPortRegistry;
+        this.adyenCallMetrics = adyenCallMetrics;
     }
 
     public AdyenCallResult<PaymentResult> authorise(final String merchantAccount, final PaymentRequest request) {
-        return callAdyen(merchantAccount, new AdyenCall<PaymentPortType, PaymentResult>() {
+        return callAdyen("authorise", merchantAccount, new AdyenCall<PaymentPortType, PaymentResult>() {
             @Override
             public PaymentResult apply(final PaymentPortType paymentPort) throws ServiceException {
                 return paymentPort.authorise(request);
@@ -68,7 +75,7 @@ public class AdyenPaymentRequestSender implements Closeable {
     }
 
     public AdyenCallResult<PaymentResult> authorise3D(final String merchantAccount, final PaymentRequest3D request) {
-        return callAdyen(merchantAccount, new AdyenCall<PaymentPortType, PaymentResult>() {
+        return callAdyen("authorise3D", merchantAccount, new AdyenCall<PaymentPortType, PaymentResult>() {
             @Override
             public PaymentResult apply(final PaymentPortType paymentPort) throws ServiceException {
                 return paymentPort.authorise3D(request);
@@ -77,7 +84,7 @@ public class AdyenPaymentRequestSender implements Closeable {
     }
 
     public AdyenCallResult<PaymentResult> refundWithData(final String merchantAccount, final PaymentRequest request) {
-        return callAdyen(merchantAccount, new AdyenCall<PaymentPortType, PaymentResult>() {
+        return callAdyen("refundWithData", merchantAccount, new AdyenCall<PaymentPortType, PaymentResult>() {
             @Override
             public PaymentResult apply(final PaymentPortType paymentPort) throws ServiceException {
                 return paymentPort.refundWithData(request);
@@ -86,7 +93,7 @@ public class AdyenPaymentRequestSender implements Closeable {
     }
 
     public AdyenCallResult<ModificationResult> refund(final String merchantAccount, final ModificationRequest modificationRequest) {
-        return callAdyen(merchantAccount, new AdyenCall<PaymentPortType, ModificationResult>() {
+        return callAdyen("refund", merchantAccount, new AdyenCall<PaymentPortType, ModificationResult>() {
             @Override
             public ModificationResult apply(final PaymentPortType paymentPort) throws ServiceException {
                 return paymentPort.refund(modificationRequest);
@@ -95,7 +102,7 @@ public class AdyenPaymentRequestSender implements Closeable {
     }
 
     public AdyenCallResult<ModificationResult> cancel(final String merchantAccount, final ModificationRequest modificationRequest) {
-        return callAdyen(merchantAccount, new AdyenCall<PaymentPortType, ModificationResult>() {
+        return callAdyen("cancel", merchantAccount, new AdyenCall<PaymentPortType, ModificationResult>() {
             @Override
             public ModificationResult apply(final PaymentPortType paymentPort) throws ServiceException {
                 return paymentPort.cancel(modificationRequest);
@@ -104,7 +111,7 @@ public class AdyenPaymentRequestSender implements Closeable {
     }
 
     public AdyenCallResult<ModificationResult> cancelOrRefund(final String merchantAccount, final ModificationRequest modificationRequest) {
-        return callAdyen(merchantAccount, new AdyenCall<PaymentPortType, ModificationResult>() {
+        return callAdyen("cancelOrRefund", merchantAccount, new AdyenCall<PaymentPortType, ModificationResult>() {
             @Override
             public ModificationResult apply(final PaymentPortType paymentPort) throws ServiceException {
                 return paymentPort.cancelOrRefund(modificationRequest);
@@ -113,7 +120,7 @@ public class AdyenPaymentRequestSender implements Closeable {
     }
 
     public AdyenCallResult<ModificationResult> capture(final String merchantAccount, final ModificationRequest modificationRequest) {
-        return callAdyen(merchantAccount, new AdyenCall<PaymentPortType, ModificationResult>() {
+        return callAdyen("capture", merchantAccount, new AdyenCall<PaymentPortType, ModificationResult>() {
             @Override
             public ModificationResult apply(final PaymentPortType paymentPort) throws ServiceException {
                 return paymentPort.capture(modificationRequest);
@@ -121,20 +128,23 @@ public class AdyenPaymentRequestSender implements Closeable {
         });
     }
 
-    private <T> AdyenCallResult<T> callAdyen(final String merchantAccount, final AdyenCall<PaymentPortType, T> adyenCall) {
-        final long startTime = System.currentTimeMillis();
+    private <T> AdyenCallResult<T> callAdyen(final String operation, final String merchantAccount, final AdyenCall<PaymentPortType, T> adyenCall) {
+        // nanoTime is monotonic, unlike currentTimeMillis (NTP adjustments, coarse granularity)
+        final long startNanos = System.nanoTime();
         try {
             final PaymentPortType paymentPort = adyenPaymentPortRegistry.getPaymentPort(merchantAccount);
             final T result = adyenCall.apply(paymentPort);
 
-            final long duration = System.currentTimeMillis() - startTime;
-            return new SuccessfulAdyenCall<T>(result, duration);
+            final long durationNanos = System.nanoTime() - startNanos;
+            adyenCallMetrics.record(operation, merchantAccount, null, durationNanos);
+            return new SuccessfulAdyenCall<T>(result, TimeUnit.NANOSECONDS.toMillis(durationNanos));
         } catch (final Exception e) {
-            final long duration = System.currentTimeMillis() - startTime;
+            final long durationNanos = System.nanoTime() - startNanos;
             logger.warn("Exception during Adyen request", e);
 
             final UnSuccessfulAdyenCall<T> unsuccessfulResult = mapExceptionToCallResult(e);
-            unsuccessfulResult.setDuration(duration);
+            unsuccessfulResult.setDuration(TimeUnit.NANOSECONDS.toMillis(durationNanos));
+            adyenCallMetrics.record(operation, merchantAccount, unsuccessfulResult.getResponseStatus().orNull(), durationNanos);
             return unsuccessfulResult;
         }
     }
@@ -30,6 +30,7 @@ import org.killbill.billing.plugin.adyen.client.AdyenConfigProperties;
 import org.killbill.billing.plugin.adyen.client.jaxws.HttpHeaderInterceptor;
 import org.killbill.billing.plugin.adyen.client.jaxws.LoggingInInterceptor;
 import org.killbill.billing.plugin.adyen.client.jaxws.LoggingOutInterceptor;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
 
 import com.google.common.collect.ImmutableList;
 
@@ -41,10 +42,19 @@ public class AdyenRecurringClient {
                                 final LoggingInInterceptor loggingInInterceptor,
                                 final LoggingOutInterceptor loggingOutInterceptor,
                                 final HttpHeaderInterceptor httpHeaderInterceptor) {
+        this(config, loggingInInterceptor, loggingOutInterceptor, httpHeaderInterceptor, new MetricsRegistry());
+    }
+
+    public AdyenRecurringClient(final AdyenConfigProperties config,
+                                final LoggingInInterceptor loggingInInterceptor,
+                                final LoggingOutInterceptor loggingOutInterceptor,
+                                final HttpHeaderInterceptor httpHeaderInterceptor,
+                                final MetricsRegistry metricsRegistry) {
         this.recurringPortRegistry = new AdyenRecurringPortRegistry(config,
                                                                     loggingInInterceptor,
                                                                     loggingOutInterceptor,
-                                                                    httpHeaderInterceptor);
+                                                                    httpHeaderInterceptor,
+                                                                    metricsRegistry);
     }
 
     public List<RecurringDetail> getRecurringDetailList(final String shopperRef,
@@ -24,6 +24,7 @@ import org.killbill.billing.plugin.adyen.client.AdyenPaymentPortRegistry;
 import org.killbill.billing.plugin.adyen.client.jaxws.HttpHeaderInterceptor;
 import org.killbill.billing.plugin.adyen.client.jaxws.LoggingInInterceptor;
 import org.killbill.billing.plugin.adyen.client.jaxws.LoggingOutInterceptor;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
 
 public class AdyenRecurringPortRegistry extends AdyenPaymentPortRegistry implements RecurringPortRegistry {
 
@@ -36,6 +37,14 @@ public class AdyenRecurringPortRegistry extends AdyenPaymentPortRegistry impleme
         super(config, loggingInInterceptor, loggingOutInterceptor, httpHeaderInterceptor);
     }
 
+    public AdyenRecurringPortRegistry(final AdyenConfigProperties config,
+                                      final LoggingInInterceptor loggingInInterceptor,
+                                      final LoggingOutInterceptor loggingOutInterceptor,
+                                      final HttpHeaderInterceptor httpHeaderInterceptor,
+                                      final MetricsRegistry metricsRegistry) {
+        super(config, loggingInInterceptor, loggingOutInterceptor, httpHeaderInterceptor, metricsRegistry);
+    }
+
     @Override
     public RecurringPortType getRecurringPort(final String merchantAccount) {
         return createService(merchantAccount,
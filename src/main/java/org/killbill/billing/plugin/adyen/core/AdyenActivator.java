@@ -17,22 +17,38 @@
 package org.killbill.billing.plugin.adyen.core;
 
 import java.util.Hashtable;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.Servlet;
 import javax.servlet.http.HttpServlet;
 
+import org.joda.time.Period;
+import org.killbill.billing.notification.plugin.api.ExtBusEvent;
 import org.killbill.billing.osgi.api.Healthcheck;
 import org.killbill.billing.osgi.api.OSGIPluginProperties;
 import org.killbill.billing.osgi.libs.killbill.KillbillActivatorBase;
 import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
 import org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi;
+import org.killbill.billing.plugin.adyen.api.InstrumentedPaymentPluginApi;
 import org.killbill.billing.plugin.adyen.client.AdyenConfigProperties;
+import org.killbill.billing.plugin.adyen.client.payment.service.AdyenCallMetrics;
 import org.killbill.billing.plugin.adyen.client.payment.service.AdyenPaymentServiceProviderHostedPaymentPagePort;
 import org.killbill.billing.plugin.adyen.client.payment.service.AdyenPaymentServiceProviderPort;
 import org.killbill.billing.plugin.adyen.client.recurring.AdyenRecurringClient;
+import org.killbill.billing.plugin.adyen.core.resources.AdyenExportServlet;
 import org.killbill.billing.plugin.adyen.core.resources.AdyenHealthcheckServlet;
+import org.killbill.billing.plugin.adyen.core.resources.AdyenMetricsServlet;
 import org.killbill.billing.plugin.adyen.core.resources.AdyenServlet;
 import org.killbill.billing.plugin.adyen.dao.AdyenDao;
+import org.killbill.billing.plugin.adyen.dao.PaymentMethodsCache;
+import org.killbill.billing.plugin.adyen.dao.ReadReplica;
+import org.killbill.billing.plugin.adyen.metrics.Counter;
+import org.killbill.billing.plugin.adyen.metrics.MetricFamily;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
 import org.killbill.billing.plugin.api.notification.PluginConfigurationEventHandler;
 import org.killbill.billing.plugin.core.config.PluginEnvironmentConfig;
 import org.killbill.billing.plugin.core.resources.jooby.PluginApp;
@@ -41,27 +57,60 @@ import org.killbill.clock.Clock;
 import org.killbill.clock.DefaultClock;
 import org.osgi.framework.BundleContext;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
 public class AdyenActivator extends KillbillActivatorBase {
 
     public static final String PLUGIN_NAME = "killbill-adyen";
+    public static final String CONFIG_RELOAD_METRIC = "adyen_config_reloads_total";
+    public static final long ARCHIVAL_INTERVAL_MINUTES = 60;
+    // Held across runs by the same node, until it stops
+    public static final int ARCHIVAL_LEASE_INTERVALS = 2;
+    public static final String EXPIRED_PAYMENTS_JANITOR_INTERVAL_SECONDS_PROPERTY = "org.killbill.billing.plugin.adyen.expiredPaymentsJanitorIntervalSeconds";
+    public static final long DEFAULT_EXPIRED_PAYMENTS_JANITOR_INTERVAL_SECONDS = 300;
+    // Missed runs (e.g. behind a long archival) don't make the lease change hands
+    public static final int EXPIRED_PAYMENTS_JANITOR_LEASE_INTERVALS = 3;
+    public static final long MAINTENANCE_SHUTDOWN_TIMEOUT_SECONDS = 10;
+    public static final String PAYMENT_METHODS_CACHE_MAX_SIZE_PROPERTY = "org.killbill.billing.plugin.adyen.paymentMethodsCacheMaxSize";
+    public static final String PAYMENT_METHODS_CACHE_TTL_SECONDS_PROPERTY = "org.killbill.billing.plugin.adyen.paymentMethodsCacheTtlSeconds";
+    public static final String READ_REPLICA_URL_PROPERTY = "org.killbill.billing.plugin.adyen.readReplica.url";
+    public static final String READ_REPLICA_USER_PROPERTY = "org.killbill.billing.plugin.adyen.readReplica.user";
+    public static final String READ_REPLICA_PASSWORD_PROPERTY = "org.killbill.billing.plugin.adyen.readReplica.password";
+    public static final String READ_REPLICA_MAX_POOL_SIZE_PROPERTY = "org.killbill.billing.plugin.adyen.readReplica.maxPoolSize";
+    public static final String READ_REPLICA_READ_YOUR_WRITES_SECONDS_PROPERTY = "org.killbill.billing.plugin.adyen.readReplica.readYourWritesSeconds";
+    public static final int DEFAULT_READ_REPLICA_MAX_POOL_SIZE = 10;
 
     private AdyenConfigurationHandler adyenConfigurationHandler;
     private AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler;
     private AdyenHostedPaymentPageConfigurationHandler adyenHostedPaymentPageConfigurationHandler;
     private AdyenRecurringConfigurationHandler adyenRecurringConfigurationHandler;
+    private MetricsRegistry metricsRegistry;
+    private ScheduledExecutorService maintenanceExecutor;
+    private AdyenNotificationsArchival notificationsArchival;
+    private AdyenResponsesArchival responsesArchival;
+    private AdyenExpiredPaymentsJanitor expiredPaymentsJanitor;
+    private HikariDataSource readReplicaDataSource;
 
     @Override
     public void start(final BundleContext context) throws Exception {
         super.start(context);
 
+        // Plugin-wide metrics, exposed by AdyenMetricsServlet
+        metricsRegistry = new MetricsRegistry();
+        final AdyenCallMetrics adyenCallMetrics = metricsRegistry.register(new AdyenCallMetrics());
+
         final Clock clock = new DefaultClock();
-        final AdyenDao dao = new AdyenDao(dataSource.getDataSource());
+        final String paymentMethodsCacheMaxSize = configProperties.getProperties().getProperty(PAYMENT_METHODS_CACHE_MAX_SIZE_PROPERTY, String.valueOf(PaymentMethodsCache.DEFAULT_MAX_SIZE));
+        final String paymentMethodsCacheTtlSeconds = configProperties.getProperties().getProperty(PAYMENT_METHODS_CACHE_TTL_SECONDS_PROPERTY, String.valueOf(PaymentMethodsCache.DEFAULT_TTL_SECONDS));
+        final PaymentMethodsCache paymentMethodsCache = new PaymentMethodsCache(Long.valueOf(paymentMethodsCacheMaxSize), Long.valueOf(paymentMethodsCacheTtlSeconds), metricsRegistry);
+        final AdyenDao dao = new AdyenDao(dataSource.getDataSource(), createReadReplica(configProperties.getProperties()), metricsRegistry, paymentMethodsCache);
 
         final String region = PluginEnvironmentConfig.getRegion(configProperties.getProperties());
-        adyenConfigurationHandler = new AdyenConfigurationHandler(PLUGIN_NAME, killbillAPI, logService, region);
+        adyenConfigurationHandler = new AdyenConfigurationHandler(PLUGIN_NAME, killbillAPI, logService, region, adyenCallMetrics, metricsRegistry);
         adyenConfigPropertiesConfigurationHandler = new AdyenConfigPropertiesConfigurationHandler(PLUGIN_NAME, killbillAPI, logService, region);
         adyenHostedPaymentPageConfigurationHandler = new AdyenHostedPaymentPageConfigurationHandler(PLUGIN_NAME, killbillAPI, logService, region);
-        adyenRecurringConfigurationHandler = new AdyenRecurringConfigurationHandler(PLUGIN_NAME, killbillAPI, logService, region);
+        adyenRecurringConfigurationHandler = new AdyenRecurringConfigurationHandler(PLUGIN_NAME, killbillAPI, logService, region, metricsRegistry);
 
         final AdyenPaymentServiceProviderPort globalAdyenClient = adyenConfigurationHandler.createConfigurable(configProperties.getProperties());
         adyenConfigurationHandler.setDefaultConfigurable(globalAdyenClient);
@@ -88,6 +137,10 @@ public class AdyenActivator extends KillbillActivatorBase {
                                                          configProperties).withRouteClass(AdyenServlet.class)
                                                                           .withRouteClass(AdyenHealthcheckServlet.class)
                                                                           .withService(adyenHealthcheck)
+                                                                          .withRouteClass(AdyenMetricsServlet.class)
+                                                                          .withService(metricsRegistry)
+                                                                          .withRouteClass(AdyenExportServlet.class)
+                                                                          .withService(dao)
                                                                           .build();
         final HttpServlet adyenServlet = PluginApp.createServlet(pluginApp);
         registerServlet(context, adyenServlet);
@@ -101,13 +154,108 @@ public class AdyenActivator extends KillbillActivatorBase {
                                                                           configProperties,
                                                                           logService,
                                                                           clock,
-                                                                          dao);
-        registerPaymentPluginApi(context, pluginApi);
+                                                                          dao,
+                                                                          metricsRegistry);
+        registerPaymentPluginApi(context, new InstrumentedPaymentPluginApi(pluginApi, metricsRegistry));
         registerHandlers();
+
+        // Background maintenance jobs, run one at a time
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, PLUGIN_NAME + "-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // Resolve the tenants of the merchant accounts up front, for the notifications
+        maintenanceExecutor.submit(new AdyenTenantConfigurationsLoader(dao, adyenConfigPropertiesConfigurationHandler));
+        // Populate the additional data columns of the rows which predate them
+        maintenanceExecutor.submit(new AdyenAdditionalDataBackfill(dao));
+        // Leader-elected across the nodes, like the expired payments janitor
+        final Period archivalLeaseDuration = Period.minutes((int) ARCHIVAL_INTERVAL_MINUTES * ARCHIVAL_LEASE_INTERVALS);
+        notificationsArchival = new AdyenNotificationsArchival(dao, adyenConfigPropertiesConfigurationHandler, clock, archivalLeaseDuration);
+        maintenanceExecutor.scheduleWithFixedDelay(notificationsArchival,
+                                                   ARCHIVAL_INTERVAL_MINUTES,
+                                                   ARCHIVAL_INTERVAL_MINUTES,
+                                                   TimeUnit.MINUTES);
+        responsesArchival = new AdyenResponsesArchival(dao, adyenConfigPropertiesConfigurationHandler, clock, archivalLeaseDuration);
+        maintenanceExecutor.scheduleWithFixedDelay(responsesArchival,
+                                                   ARCHIVAL_INTERVAL_MINUTES,
+                                                   ARCHIVAL_INTERVAL_MINUTES,
+                                                   TimeUnit.MINUTES);
+        // Leader-elected across the nodes
+        final long expiredPaymentsJanitorIntervalSeconds = Long.valueOf(configProperties.getProperties().getProperty(EXPIRED_PAYMENTS_JANITOR_INTERVAL_SECONDS_PROPERTY, String.valueOf(DEFAULT_EXPIRED_PAYMENTS_JANITOR_INTERVAL_SECONDS)));
+        expiredPaymentsJanitor = new AdyenExpiredPaymentsJanitor(dao,
+                                                                 adyenConfigPropertiesConfigurationHandler,
+                                                                 clock,
+                                                                 metricsRegistry,
+                                                                 Period.seconds((int) expiredPaymentsJanitorIntervalSeconds * EXPIRED_PAYMENTS_JANITOR_LEASE_INTERVALS));
+        maintenanceExecutor.scheduleWithFixedDelay(expiredPaymentsJanitor,
+                                                   expiredPaymentsJanitorIntervalSeconds,
+                                                   expiredPaymentsJanitorIntervalSeconds,
+                                                   TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop(final BundleContext context) throws Exception {
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+            maintenanceExecutor.awaitTermination(MAINTENANCE_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        if (notificationsArchival != null) {
+            notificationsArchival.release();
+        }
+        if (responsesArchival != null) {
+            responsesArchival.release();
+        }
+        if (expiredPaymentsJanitor != null) {
+            expiredPaymentsJanitor.release();
+        }
+        super.stop(context);
+        if (readReplicaDataSource != null) {
+            readReplicaDataSource.close();
+        }
+    }
+
+    // Optional: the reads which tolerate replication lag go to the primary if no replica is configured
+    private ReadReplica createReadReplica(final Properties properties) {
+        final String url = properties.getProperty(READ_REPLICA_URL_PROPERTY);
+        if (url == null) {
+            return null;
+        }
+
+        final HikariConfig config = new HikariConfig();
+        config.setPoolName(PLUGIN_NAME + "-read-replica");
+        config.setJdbcUrl(url);
+        config.setUsername(properties.getProperty(READ_REPLICA_USER_PROPERTY));
+        config.setPassword(properties.getProperty(READ_REPLICA_PASSWORD_PROPERTY));
+        config.setMaximumPoolSize(Integer.valueOf(properties.getProperty(READ_REPLICA_MAX_POOL_SIZE_PROPERTY, String.valueOf(DEFAULT_READ_REPLICA_MAX_POOL_SIZE))));
+        config.setReadOnly(true);
+        // Don't prevent the plugin from starting if the replica is down
+        config.setInitializationFailFast(false);
+        readReplicaDataSource = new HikariDataSource(config);
+
+        final String readYourWritesSeconds = properties.getProperty(READ_REPLICA_READ_YOUR_WRITES_SECONDS_PROPERTY, String.valueOf(ReadReplica.DEFAULT_READ_YOUR_WRITES_SECONDS));
+        return new ReadReplica(readReplicaDataSource, Long.valueOf(readYourWritesSeconds), metricsRegistry);
     }
 
     public void registerHandlers() {
-        final PluginConfigurationEventHandler handler = new PluginConfigurationEventHandler(adyenConfigPropertiesConfigurationHandler, adyenConfigurationHandler, adyenHostedPaymentPageConfigurationHandler, adyenRecurringConfigurationHandler);
+        final MetricFamily<Counter> configReloads = metricsRegistry.counters(CONFIG_RELOAD_METRIC, "Configuration reloads triggered by Kill Bill events", "event_type");
+        final PluginConfigurationEventHandler handler = new PluginConfigurationEventHandler(adyenConfigPropertiesConfigurationHandler, adyenConfigurationHandler, adyenHostedPaymentPageConfigurationHandler, adyenRecurringConfigurationHandler) {
+            @Override
+            public void handleKillbillEvent(final ExtBusEvent extBusEvent) {
+                switch (extBusEvent.getEventType()) {
+                    case TENANT_CONFIG_CHANGE:
+                    case TENANT_CONFIG_DELETION:
+                        configReloads.labels(extBusEvent.getEventType().name()).increment();
+                        break;
+                    default:
+                        break;
+                }
+                super.handleKillbillEvent(extBusEvent);
+            }
+        };
         dispatcher.registerEventHandlers(handler);
     }
 
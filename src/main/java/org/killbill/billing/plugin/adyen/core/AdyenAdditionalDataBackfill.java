@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core;
+
+import java.sql.SQLException;
+
+import org.jooq.types.UInteger;
+import org.killbill.billing.plugin.adyen.dao.AdyenDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Populates, in chunks, the columns extracted from additional_data for the rows written before they were introduced.
+ * <p/>
+ * Each chunk is committed on its own and only rows still missing the columns are selected: the job can be
+ * interrupted (e.g. on shutdown) and simply resumes on the next start.
+ */
+public class AdyenAdditionalDataBackfill implements Runnable {
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final Logger logger = LoggerFactory.getLogger(AdyenAdditionalDataBackfill.class);
+
+    private final AdyenDao dao;
+    private final int chunkSize;
+
+    public AdyenAdditionalDataBackfill(final AdyenDao dao) {
+        this(dao, DEFAULT_CHUNK_SIZE);
+    }
+
+    public AdyenAdditionalDataBackfill(final AdyenDao dao, final int chunkSize) {
+        this.dao = dao;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void run() {
+        try {
+            UInteger lastResponseRecordId = null;
+            int responsesChunks = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                lastResponseRecordId = dao.backfillResponses(lastResponseRecordId, chunkSize);
+                if (lastResponseRecordId == null) {
+                    break;
+                }
+                responsesChunks++;
+            }
+
+            UInteger lastHppRequestRecordId = null;
+            int hppRequestsChunks = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                lastHppRequestRecordId = dao.backfillHppRequests(lastHppRequestRecordId, chunkSize);
+                if (lastHppRequestRecordId == null) {
+                    break;
+                }
+                hppRequestsChunks++;
+            }
+
+            if (responsesChunks > 0 || hppRequestsChunks > 0) {
+                logger.info("Backfilled additional data columns: responsesChunks='{}', hppRequestsChunks='{}', interrupted='{}'",
+                            responsesChunks, hppRequestsChunks, Thread.currentThread().isInterrupted());
+            }
+        } catch (final SQLException | RuntimeException e) {
+            logger.warn("Unable to backfill the additional data columns, will resume on next start", e);
+        }
+    }
+}
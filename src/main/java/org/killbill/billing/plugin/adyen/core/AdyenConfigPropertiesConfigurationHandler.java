@@ -1,6 +1,6 @@
 /*
- * Copyright 2014-2016 Groupon, Inc
- * Copyright 2014-2016 The Billing Project, LLC
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
  *
  * The Billing Project licenses this file to you under the Apache License, version 2.0
  * (the "License"); you may not use this file except in compliance with the
@@ -17,17 +17,32 @@
 
 package org.killbill.billing.plugin.adyen.core;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
 
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
 import org.killbill.billing.osgi.libs.killbill.OSGIKillbillLogService;
 import org.killbill.billing.plugin.adyen.client.AdyenConfigProperties;
 import org.killbill.billing.plugin.api.notification.PluginTenantConfigurableConfigurationHandler;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
 public class AdyenConfigPropertiesConfigurationHandler extends PluginTenantConfigurableConfigurationHandler<AdyenConfigProperties> {
 
     private final String region;
 
+    // Merchant accounts of the tenants configured so far (guarded by this)
+    private final Map<UUID, Set<String>> merchantAccountsByTenant = new HashMap<UUID, Set<String>>();
+    // Rebuilt on each configuration change: merchant accounts configured by a single tenant only
+    private volatile Map<String, UUID> tenantByMerchantAccount = ImmutableMap.<String, UUID>of();
+
     public AdyenConfigPropertiesConfigurationHandler(final String pluginName,
                                                      final OSGIKillbillAPI osgiKillbillAPI,
                                                      final OSGIKillbillLogService osgiKillbillLogService,
@@ -40,4 +55,55 @@ public class AdyenConfigPropertiesConfigurationHandler extends PluginTenantConfi
     protected AdyenConfigProperties createConfigurable(final Properties properties) {
         return new AdyenConfigProperties(properties, region);
     }
+
+    @Override
+    protected void configure(@Nullable final UUID kbTenantId) {
+        super.configure(kbTenantId);
+        if (kbTenantId == null) {
+            return;
+        }
+
+        // The configurable of the tenant isn't accessible from here (getConfigurable would configure it again). If
+        // the configuration was deleted or cannot be read, its notifications are simply looked up across all tenants.
+        final Properties properties = getTenantConfigurationAsProperties(kbTenantId);
+        indexMerchantAccounts(kbTenantId, properties == null ? ImmutableSet.<String>of() : createConfigurable(properties).getMerchantAccounts());
+    }
+
+    /**
+     * Load the configuration of these tenants, so their merchant accounts can be resolved by getTenantId
+     *
+     * @param kbTenantIds Kill Bill tenant ids
+     */
+    public void configureTenants(final Iterable<UUID> kbTenantIds) {
+        for (final UUID kbTenantId : kbTenantIds) {
+            getConfigurable(kbTenantId);
+        }
+    }
+
+    /**
+     * Resolve the tenant of a merchant account, e.g. for a notification, from the tenants configured so far
+     *
+     * @param merchantAccount merchant account code
+     * @return the only tenant configuring that merchant account, null if unknown or shared by several tenants
+     */
+    @Nullable
+    public UUID getTenantId(@Nullable final String merchantAccount) {
+        return merchantAccount == null ? null : tenantByMerchantAccount.get(merchantAccount);
+    }
+
+    private synchronized void indexMerchantAccounts(final UUID kbTenantId, final Set<String> merchantAccounts) {
+        merchantAccountsByTenant.put(kbTenantId, merchantAccounts);
+
+        final Map<String, UUID> index = new HashMap<String, UUID>();
+        final Set<String> sharedMerchantAccounts = new HashSet<String>();
+        for (final Map.Entry<UUID, Set<String>> tenantMerchantAccounts : merchantAccountsByTenant.entrySet()) {
+            for (final String merchantAccount : tenantMerchantAccounts.getValue()) {
+                if (index.put(merchantAccount, tenantMerchantAccounts.getKey()) != null) {
+                    sharedMerchantAccounts.add(merchantAccount);
+                }
+            }
+        }
+        index.keySet().removeAll(sharedMerchantAccounts);
+        tenantByMerchantAccount = ImmutableMap.<String, UUID>copyOf(index);
+    }
 }
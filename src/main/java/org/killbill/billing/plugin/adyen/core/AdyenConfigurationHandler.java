@@ -30,21 +30,37 @@ import org.killbill.billing.plugin.adyen.client.jaxws.LoggingOutInterceptor;
 import org.killbill.billing.plugin.adyen.client.payment.builder.AdyenRequestFactory;
 import org.killbill.billing.plugin.adyen.client.payment.converter.PaymentInfoConverterManagement;
 import org.killbill.billing.plugin.adyen.client.payment.converter.impl.PaymentInfoConverterService;
+import org.killbill.billing.plugin.adyen.client.payment.service.AdyenCallMetrics;
 import org.killbill.billing.plugin.adyen.client.payment.service.AdyenPaymentRequestSender;
 import org.killbill.billing.plugin.adyen.client.payment.service.AdyenPaymentServiceProviderPort;
 import org.killbill.billing.plugin.adyen.client.payment.service.Signer;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
 import org.killbill.billing.plugin.api.notification.PluginTenantConfigurableConfigurationHandler;
 
 public class AdyenConfigurationHandler extends PluginTenantConfigurableConfigurationHandler<AdyenPaymentServiceProviderPort> {
 
     private final String region;
+    private final AdyenCallMetrics adyenCallMetrics;
+    private final MetricsRegistry metricsRegistry;
 
     public AdyenConfigurationHandler(final String pluginName,
                                      final OSGIKillbillAPI osgiKillbillAPI,
                                      final OSGIKillbillLogService osgiKillbillLogService,
                                      final String region) {
+        this(pluginName, osgiKillbillAPI, osgiKillbillLogService, region, new AdyenCallMetrics(), new MetricsRegistry());
+    }
+
+    public AdyenConfigurationHandler(final String pluginName,
+                                     final OSGIKillbillAPI osgiKillbillAPI,
+                                     final OSGIKillbillLogService osgiKillbillLogService,
+                                     final String region,
+                                     final AdyenCallMetrics adyenCallMetrics,
+                                     final MetricsRegistry metricsRegistry) {
         super(pluginName, osgiKillbillAPI, osgiKillbillLogService);
         this.region = region;
+        // Shared across tenants and configuration reloads
+        this.adyenCallMetrics = adyenCallMetrics;
+        this.metricsRegistry = metricsRegistry;
     }
 
     @Override
@@ -62,8 +78,8 @@ public class AdyenConfigurationHandler extends PluginTenantConfigurableConfigura
         final LoggingInInterceptor loggingInInterceptor = new LoggingInInterceptor();
         final LoggingOutInterceptor loggingOutInterceptor = new LoggingOutInterceptor();
         final HttpHeaderInterceptor httpHeaderInterceptor = new HttpHeaderInterceptor();
-        final PaymentPortRegistry adyenPaymentPortRegistry = new AdyenPaymentPortRegistry(adyenConfigProperties, loggingInInterceptor, loggingOutInterceptor, httpHeaderInterceptor);
-        final AdyenPaymentRequestSender adyenPaymentRequestSender = new AdyenPaymentRequestSender(adyenPaymentPortRegistry);
+        final PaymentPortRegistry adyenPaymentPortRegistry = new AdyenPaymentPortRegistry(adyenConfigProperties, loggingInInterceptor, loggingOutInterceptor, httpHeaderInterceptor, metricsRegistry);
+        final AdyenPaymentRequestSender adyenPaymentRequestSender = new AdyenPaymentRequestSender(adyenPaymentPortRegistry, adyenCallMetrics);
 
         return new AdyenPaymentServiceProviderPort(adyenRequestFactory, adyenPaymentRequestSender);
     }
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+import org.jooq.types.UInteger;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
+import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
+import org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi;
+import org.killbill.billing.plugin.adyen.api.AdyenPaymentTransactionInfoPlugin;
+import org.killbill.billing.plugin.adyen.api.ExpiredPaymentPolicy;
+import org.killbill.billing.plugin.adyen.client.AdyenConfigProperties;
+import org.killbill.billing.plugin.adyen.dao.AdyenDao;
+import org.killbill.billing.plugin.adyen.dao.ResponseWithHppRequest;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+import org.killbill.billing.plugin.adyen.metrics.Counter;
+import org.killbill.billing.plugin.adyen.metrics.MetricFamily;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
+import org.killbill.billing.plugin.api.PluginProperties;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+
+/**
+ * Cancels the pending payments past their expiration period (see ExpiredPaymentPolicy), so that reads don't have to.
+ * <p/>
+ * Only one node runs it at a time: the one holding the lease, renewed after each chunk. For each tenant, the pending
+ * authorizations and purchases older than the shortest expiration period of the tenant are scanned in record id order.
+ * Each chunk is checked and canceled on a single connection, to the primary database.
+ */
+public class AdyenExpiredPaymentsJanitor implements Runnable {
+
+    public static final String LEASE_NAME = "expired-payments-janitor";
+    public static final String EXPIRED_PAYMENTS_METRIC = "adyen_expired_payments_total";
+    public static final Period DEFAULT_LEASE_DURATION = Period.minutes(15);
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    private static final Logger logger = LoggerFactory.getLogger(AdyenExpiredPaymentsJanitor.class);
+
+    private final AdyenDao dao;
+    private final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler;
+    private final Clock clock;
+    private final MetricFamily<Counter> expiredPayments;
+    private final AdyenMaintenanceLease lease;
+    private final int chunkSize;
+
+    public AdyenExpiredPaymentsJanitor(final AdyenDao dao,
+                                       final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler,
+                                       final Clock clock,
+                                       final MetricsRegistry metricsRegistry,
+                                       final Period leaseDuration) {
+        this(dao, adyenConfigPropertiesConfigurationHandler, clock, metricsRegistry, AdyenMaintenanceLease.newOwner(), leaseDuration, DEFAULT_CHUNK_SIZE);
+    }
+
+    public AdyenExpiredPaymentsJanitor(final AdyenDao dao,
+                                       final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler,
+                                       final Clock clock,
+                                       final MetricsRegistry metricsRegistry,
+                                       final String owner,
+                                       final Period leaseDuration,
+                                       final int chunkSize) {
+        this.dao = dao;
+        this.adyenConfigPropertiesConfigurationHandler = adyenConfigPropertiesConfigurationHandler;
+        this.clock = clock;
+        this.expiredPayments = metricsRegistry.counters(EXPIRED_PAYMENTS_METRIC, "Expired payments handled by the janitor", "result");
+        this.lease = new AdyenMaintenanceLease(dao, clock, LEASE_NAME, owner, leaseDuration);
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (!lease.acquire()) {
+                logger.debug("Expired payments janitor running on another node");
+                return;
+            }
+
+            for (final String kbTenantIdString : dao.getResponsesTenantIds()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                if (!cancelExpiredPayments(UUID.fromString(kbTenantIdString))) {
+                    logger.info("Expired payments janitor lease lost: owner='{}'", lease.getOwner());
+                    break;
+                }
+            }
+        } catch (final SQLException | RuntimeException e) {
+            logger.warn("Unable to cancel expired payments, will retry on next run", e);
+        }
+    }
+
+    /**
+     * Give up the lease, so that another node takes over right away (on shutdown)
+     */
+    public void release() {
+        lease.release();
+    }
+
+    // Returns false if the lease was lost
+    private boolean cancelExpiredPayments(final UUID kbTenantId) throws SQLException {
+        final AdyenConfigProperties adyenConfigProperties = adyenConfigPropertiesConfigurationHandler.getConfigurable(kbTenantId);
+        final ExpiredPaymentPolicy expiredPaymentPolicy = new ExpiredPaymentPolicy(clock, adyenConfigProperties);
+        final DateTime createdBefore = getCreatedBefore(adyenConfigProperties);
+
+        UInteger afterRecordId = null;
+        int canceled = 0;
+        boolean leaseHeld = true;
+        while (!Thread.currentThread().isInterrupted()) {
+            final List<AdyenResponsesRecord> pendingResponses = dao.getPendingResponses(kbTenantId, createdBefore, afterRecordId, chunkSize);
+            if (!pendingResponses.isEmpty()) {
+                canceled += dao.inUnitOfWork(new AdyenDao.UnitOfWork<Integer, SQLException>() {
+                    @Override
+                    public Integer run() throws SQLException {
+                        return cancelExpiredPayments(pendingResponses, expiredPaymentPolicy, kbTenantId);
+                    }
+                });
+            }
+            if (pendingResponses.size() < chunkSize) {
+                break;
+            }
+
+            leaseHeld = lease.acquire();
+            if (!leaseHeld) {
+                break;
+            }
+            afterRecordId = Iterables.getLast(pendingResponses).getRecordId();
+        }
+
+        if (canceled > 0) {
+            logger.info("Canceled expired payments: kbTenantId='{}', createdBefore='{}', canceled='{}'", kbTenantId, createdBefore, canceled);
+        }
+        return leaseHeld;
+    }
+
+    private int cancelExpiredPayments(final Iterable<AdyenResponsesRecord> pendingResponses, final ExpiredPaymentPolicy expiredPaymentPolicy, final UUID kbTenantId) throws SQLException {
+        final Set<UUID> kbPaymentIds = new LinkedHashSet<UUID>();
+        for (final AdyenResponsesRecord pendingResponse : pendingResponses) {
+            kbPaymentIds.add(UUID.fromString(pendingResponse.getKbPaymentId()));
+        }
+
+        int canceled = 0;
+        for (final Map.Entry<UUID, List<ResponseWithHppRequest>> entry : dao.getResponsesWithHppRequests(kbPaymentIds, kbTenantId).entrySet()) {
+            final List<PaymentTransactionInfoPlugin> transactions = new ArrayList<PaymentTransactionInfoPlugin>(entry.getValue().size());
+            for (final ResponseWithHppRequest response : entry.getValue()) {
+                transactions.add(new AdyenPaymentTransactionInfoPlugin(response.getResponse(), response.getHppRequest()));
+            }
+            if (!expiredPaymentPolicy.isExpired(transactions)) {
+                continue;
+            }
+
+            try {
+                cancelExpiredPayment(expiredPaymentPolicy.latestTransaction(transactions), kbTenantId);
+                expiredPayments.labels("canceled").increment();
+                canceled++;
+            } catch (final SQLException e) {
+                expiredPayments.labels("failed").increment();
+                logger.warn("Unable to cancel expired payment: kbPaymentId='{}'", entry.getKey(), e);
+            }
+        }
+        return canceled;
+    }
+
+    private void cancelExpiredPayment(final PaymentTransactionInfoPlugin expiredTransaction, final UUID kbTenantId) throws SQLException {
+        final List<PluginProperty> updatedStatusProperties = PluginProperties.buildPluginProperties(
+                ImmutableMap.builder()
+                            .put(AdyenPaymentPluginApi.PROPERTY_FROM_HPP_TRANSACTION_STATUS,
+                                 PaymentPluginStatus.CANCELED.toString())
+                            .put("message",
+                                 "Payment Expired - Cancelled by Janitor")
+                            .build());
+
+        dao.updateResponse(expiredTransaction.getKbTransactionPaymentId(),
+                           PluginProperties.merge(expiredTransaction.getProperties(), updatedStatusProperties),
+                           kbTenantId);
+    }
+
+    // Nothing created after that date can have expired
+    private DateTime getCreatedBefore(final AdyenConfigProperties adyenConfigProperties) {
+        final DateTime now = clock.getUTCNow();
+        DateTime createdBefore = null;
+        for (final Period expirationPeriod : adyenConfigProperties.getPendingPaymentExpirationPeriods()) {
+            final DateTime expirationStart = now.minus(expirationPeriod);
+            if (createdBefore == null || expirationStart.isAfter(createdBefore)) {
+                createdBefore = expirationStart;
+            }
+        }
+        return createdBefore;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core;
+
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+import org.killbill.billing.plugin.adyen.dao.AdyenDao;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lease (adyen_leases table) making sure that only one node runs a given background job at a time.
+ * <p/>
+ * The owner keeps it by renewing it before it expires (e.g. after each chunk of work), and gives it up on shutdown.
+ */
+public class AdyenMaintenanceLease {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdyenMaintenanceLease.class);
+
+    private final AdyenDao dao;
+    private final Clock clock;
+    private final String name;
+    private final String owner;
+    private final Period duration;
+
+    public AdyenMaintenanceLease(final AdyenDao dao, final Clock clock, final String name, final String owner, final Period duration) {
+        this.dao = dao;
+        this.clock = clock;
+        this.name = name;
+        this.owner = owner;
+        this.duration = duration;
+    }
+
+    /**
+     * @return true if this node holds the lease (acquired or renewed), false if another node does
+     */
+    public boolean acquire() throws SQLException {
+        final DateTime now = clock.getUTCNow();
+        return dao.acquireLease(name, owner, now, now.plus(duration));
+    }
+
+    /**
+     * Give up the lease, so that another node takes over right away (on shutdown)
+     */
+    public void release() {
+        try {
+            dao.releaseLease(name, owner);
+        } catch (final SQLException e) {
+            logger.warn("Unable to release lease: name='{}', owner='{}'", name, owner, e);
+        }
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    // Unique per node (and per plugin restart), readable in the adyen_leases table
+    public static String newOwner() {
+        return ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core;
+
+import java.sql.SQLException;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+import org.killbill.billing.plugin.adyen.client.AdyenConfigProperties;
+import org.killbill.billing.plugin.adyen.dao.AdyenDao;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the notifications past the retention period of their tenant (notificationsRetentionPeriod) to adyen_notifications_archive.
+ * <p/>
+ * Notifications are moved in small chunks, each in its own transaction, so that the table is never locked for long.
+ * Notifications which couldn't be matched to a tenant follow the global configuration. Only one node runs it at a time:
+ * the one holding the lease, renewed after each chunk.
+ */
+public class AdyenNotificationsArchival implements Runnable {
+
+    public static final String LEASE_NAME = "notifications-archival";
+    public static final Period DEFAULT_LEASE_DURATION = Period.hours(2);
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final Logger logger = LoggerFactory.getLogger(AdyenNotificationsArchival.class);
+
+    private final AdyenDao dao;
+    private final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler;
+    private final Clock clock;
+    private final AdyenMaintenanceLease lease;
+    private final int chunkSize;
+
+    public AdyenNotificationsArchival(final AdyenDao dao,
+                                      final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler,
+                                      final Clock clock,
+                                      final Period leaseDuration) {
+        this(dao, adyenConfigPropertiesConfigurationHandler, clock, AdyenMaintenanceLease.newOwner(), leaseDuration, DEFAULT_CHUNK_SIZE);
+    }
+
+    public AdyenNotificationsArchival(final AdyenDao dao,
+                                      final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler,
+                                      final Clock clock,
+                                      final String owner,
+                                      final Period leaseDuration,
+                                      final int chunkSize) {
+        this.dao = dao;
+        this.adyenConfigPropertiesConfigurationHandler = adyenConfigPropertiesConfigurationHandler;
+        this.clock = clock;
+        this.lease = new AdyenMaintenanceLease(dao, clock, LEASE_NAME, owner, leaseDuration);
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (!lease.acquire()) {
+                logger.debug("Notifications archival running on another node");
+                return;
+            }
+
+            for (final String kbTenantIdString : dao.getNotificationsTenantIds()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                final UUID kbTenantId = kbTenantIdString == null ? null : UUID.fromString(kbTenantIdString);
+                final AdyenConfigProperties adyenConfigProperties = adyenConfigPropertiesConfigurationHandler.getConfigurable(kbTenantId);
+                final Period retentionPeriod = adyenConfigProperties.getNotificationsRetentionPeriod();
+                if (retentionPeriod == null) {
+                    continue;
+                }
+
+                if (!archive(kbTenantId, clock.getUTCNow().minus(retentionPeriod))) {
+                    logger.info("Notifications archival lease lost: owner='{}'", lease.getOwner());
+                    break;
+                }
+            }
+        } catch (final SQLException | RuntimeException e) {
+            logger.warn("Unable to archive notifications, will retry on next run", e);
+        }
+    }
+
+    /**
+     * Give up the lease, so that another node takes over right away (on shutdown)
+     */
+    public void release() {
+        lease.release();
+    }
+
+    // Returns false if the lease was lost
+    private boolean archive(final UUID kbTenantId, final DateTime createdBefore) throws SQLException {
+        long archived = 0;
+        boolean leaseHeld = true;
+        while (!Thread.currentThread().isInterrupted()) {
+            final int archivedInChunk = dao.archiveNotifications(kbTenantId, createdBefore, chunkSize);
+            archived += archivedInChunk;
+            if (archivedInChunk < chunkSize) {
+                break;
+            }
+
+            leaseHeld = lease.acquire();
+            if (!leaseHeld) {
+                break;
+            }
+        }
+
+        if (archived > 0) {
+            logger.info("Archived notifications: kbTenantId='{}', createdBefore='{}', archived='{}'", kbTenantId, createdBefore, archived);
+        }
+        return leaseHeld;
+    }
+}
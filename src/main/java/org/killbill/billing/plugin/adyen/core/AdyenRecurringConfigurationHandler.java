@@ -26,18 +26,29 @@ import org.killbill.billing.plugin.adyen.client.jaxws.HttpHeaderInterceptor;
 import org.killbill.billing.plugin.adyen.client.jaxws.LoggingInInterceptor;
 import org.killbill.billing.plugin.adyen.client.jaxws.LoggingOutInterceptor;
 import org.killbill.billing.plugin.adyen.client.recurring.AdyenRecurringClient;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
 import org.killbill.billing.plugin.api.notification.PluginTenantConfigurableConfigurationHandler;
 
 public class AdyenRecurringConfigurationHandler extends PluginTenantConfigurableConfigurationHandler<AdyenRecurringClient> {
 
     private final String region;
+    private final MetricsRegistry metricsRegistry;
 
     public AdyenRecurringConfigurationHandler(final String pluginName,
                                               final OSGIKillbillAPI osgiKillbillAPI,
                                               final OSGIKillbillLogService osgiKillbillLogService,
                                               final String region) {
+        this(pluginName, osgiKillbillAPI, osgiKillbillLogService, region, new MetricsRegistry());
+    }
+
+    public AdyenRecurringConfigurationHandler(final String pluginName,
+                                              final OSGIKillbillAPI osgiKillbillAPI,
+                                              final OSGIKillbillLogService osgiKillbillLogService,
+                                              final String region,
+                                              final MetricsRegistry metricsRegistry) {
         super(pluginName, osgiKillbillAPI, osgiKillbillLogService);
         this.region = region;
+        this.metricsRegistry = metricsRegistry;
     }
 
     @Override
@@ -47,6 +58,6 @@ public class AdyenRecurringConfigurationHandler extends PluginTenantConfigurable
         final HttpHeaderInterceptor httpHeaderInterceptor = new HttpHeaderInterceptor();
 
         final AdyenConfigProperties adyenConfigProperties = new AdyenConfigProperties(properties, region);
-        return new AdyenRecurringClient(adyenConfigProperties, loggingInInterceptor, loggingOutInterceptor, httpHeaderInterceptor);
+        return new AdyenRecurringClient(adyenConfigProperties, loggingInInterceptor, loggingOutInterceptor, httpHeaderInterceptor, metricsRegistry);
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core;
+
+import java.sql.SQLException;
+
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+import org.jooq.types.UInteger;
+import org.killbill.billing.plugin.adyen.dao.AdyenDao;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the responses of the payments settled for longer than settledResponsesRetentionPeriod to adyen_responses_archive.
+ * <p/>
+ * The table is scanned in record id order, one chunk (and transaction) at a time, up to the first recent response. Only
+ * one node runs it at a time: the one holding the lease, renewed after each chunk.
+ * <p/>
+ * The scan resumes where the previous run stopped (saved after each chunk), instead of going through the responses
+ * which were already scanned again. A payment is looked at again when it gets a new response: one still pending when
+ * its latest response is scanned, i.e. older than the retention period, is left in adyen_responses.
+ */
+public class AdyenResponsesArchival implements Runnable {
+
+    public static final String LEASE_NAME = "responses-archival";
+    public static final Period DEFAULT_LEASE_DURATION = Period.hours(2);
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final Logger logger = LoggerFactory.getLogger(AdyenResponsesArchival.class);
+
+    private final AdyenDao dao;
+    private final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler;
+    private final Clock clock;
+    private final AdyenMaintenanceLease lease;
+    private final int chunkSize;
+
+    public AdyenResponsesArchival(final AdyenDao dao,
+                                  final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler,
+                                  final Clock clock,
+                                  final Period leaseDuration) {
+        this(dao, adyenConfigPropertiesConfigurationHandler, clock, AdyenMaintenanceLease.newOwner(), leaseDuration, DEFAULT_CHUNK_SIZE);
+    }
+
+    public AdyenResponsesArchival(final AdyenDao dao,
+                                  final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler,
+                                  final Clock clock,
+                                  final String owner,
+                                  final Period leaseDuration,
+                                  final int chunkSize) {
+        this.dao = dao;
+        this.adyenConfigPropertiesConfigurationHandler = adyenConfigPropertiesConfigurationHandler;
+        this.clock = clock;
+        this.lease = new AdyenMaintenanceLease(dao, clock, LEASE_NAME, owner, leaseDuration);
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void run() {
+        // Global configuration only: the table isn't scanned per tenant
+        final Period retentionPeriod = adyenConfigPropertiesConfigurationHandler.getConfigurable(null).getSettledResponsesRetentionPeriod();
+        if (retentionPeriod == null) {
+            return;
+        }
+
+        final DateTime createdBefore = clock.getUTCNow().minus(retentionPeriod);
+        try {
+            if (!lease.acquire()) {
+                logger.debug("Responses archival running on another node");
+                return;
+            }
+
+            UInteger lastRecordId = dao.getCheckpoint(LEASE_NAME);
+            int chunks = 0;
+            boolean leaseHeld = true;
+            while (!Thread.currentThread().isInterrupted()) {
+                lastRecordId = dao.archiveResponses(lastRecordId, createdBefore, chunkSize);
+                chunks++;
+                if (lastRecordId == null) {
+                    break;
+                }
+                dao.setCheckpoint(LEASE_NAME, lastRecordId);
+
+                leaseHeld = lease.acquire();
+                if (!leaseHeld) {
+                    break;
+                }
+            }
+
+            logger.info("Archived settled responses: createdBefore='{}', chunks='{}', interrupted='{}', leaseHeld='{}'",
+                        createdBefore, chunks, Thread.currentThread().isInterrupted(), leaseHeld);
+        } catch (final SQLException | RuntimeException e) {
+            logger.warn("Unable to archive settled responses, will retry on next run", e);
+        }
+    }
+
+    /**
+     * Give up the lease, so that another node takes over right away (on shutdown)
+     */
+    public void release() {
+        lease.release();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core;
+
+import java.sql.SQLException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+
+import org.killbill.billing.plugin.adyen.dao.AdyenDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads, on start, the configuration of the tenants notifications have been received for: the tenant of the next
+ * notifications is then resolved from their merchant account before looking up their PSP reference.
+ * <p/>
+ * The other tenants are indexed as their configuration is loaded, i.e. on their first payment call.
+ */
+public class AdyenTenantConfigurationsLoader implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdyenTenantConfigurationsLoader.class);
+
+    private final AdyenDao dao;
+    private final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler;
+
+    public AdyenTenantConfigurationsLoader(final AdyenDao dao, final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler) {
+        this.dao = dao;
+        this.adyenConfigPropertiesConfigurationHandler = adyenConfigPropertiesConfigurationHandler;
+    }
+
+    @Override
+    public void run() {
+        try {
+            final List<UUID> kbTenantIds = new LinkedList<UUID>();
+            for (final String kbTenantId : dao.getNotificationsTenantIds()) {
+                // Notifications which couldn't be matched
+                if (kbTenantId != null) {
+                    kbTenantIds.add(UUID.fromString(kbTenantId));
+                }
+            }
+            adyenConfigPropertiesConfigurationHandler.configureTenants(kbTenantIds);
+            logger.info("Loaded the configuration of {} tenant(s)", kbTenantIds.size());
+        } catch (final SQLException | RuntimeException e) {
+            logger.warn("Unable to load the tenant configurations, notifications will be looked up across all tenants until they are", e);
+        }
+    }
+}
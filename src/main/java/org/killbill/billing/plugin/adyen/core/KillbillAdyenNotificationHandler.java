@@ -47,6 +47,7 @@ import org.killbill.billing.plugin.adyen.client.AdyenConfigProperties;
 import org.killbill.billing.plugin.adyen.client.model.NotificationItem;
 import org.killbill.billing.plugin.adyen.client.model.PaymentServiceProviderResult;
 import org.killbill.billing.plugin.adyen.client.notification.AdyenNotificationHandler;
+import org.killbill.billing.plugin.adyen.dao.AdditionalData;
 import org.killbill.billing.plugin.adyen.dao.AdyenDao;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
@@ -116,24 +117,26 @@ public class KillbillAdyenNotificationHandler implements AdyenNotificationHandle
         boolean authMode = true;
         boolean isHpp = false;
         try {
-            // Check if we have a record for that pspReference (PENDING auth, capture, refund, etc.)
-            final AdyenResponsesRecord record = getResponseRecord(notification.getPspReference());
+            // Tenant of the merchant account, if known from the configuration: the lookups by PSP reference try its
+            // rows first (otherwise, they span all tenants)
+            final UUID merchantAccountKbTenantId = adyenConfigPropertiesConfigurationHandler.getTenantId(notification.getMerchantAccountCode());
+
+            final NotificationRecords notificationRecords = getNotificationRecords(notification, merchantAccountKbTenantId);
+            final AdyenResponsesRecord record = notificationRecords.response;
             if (record != null) {
                 kbAccountId = UUID.fromString(record.getKbAccountId());
                 kbTenantId = UUID.fromString(record.getKbTenantId());
                 kbPaymentId = UUID.fromString(record.getKbPaymentId());
                 kbPaymentTransactionId = UUID.fromString(record.getKbPaymentTransactionId());
             } else {
-                // Check if we have a record for the original pspReference (e.g. chargeback notification)
-                final AdyenResponsesRecord originalRecord = getResponseRecord(notification.getOriginalReference());
+                final AdyenResponsesRecord originalRecord = notificationRecords.originalResponse;
                 if (originalRecord != null) {
                     kbAccountId = UUID.fromString(originalRecord.getKbAccountId());
                     kbTenantId = UUID.fromString(originalRecord.getKbTenantId());
                     kbPaymentId = UUID.fromString(originalRecord.getKbPaymentId());
                     kbPaymentTransactionId = null;
                 } else {
-                    // Check if the notification is associated with a HPP request
-                    final AdyenHppRequestsRecord hppRequest = getHppRequest(notification.getMerchantReference());
+                    final AdyenHppRequestsRecord hppRequest = notificationRecords.hppRequest;
                     if (hppRequest != null) {
                         kbAccountId = UUID.fromString(hppRequest.getKbAccountId());
                         kbTenantId = UUID.fromString(hppRequest.getKbTenantId());
@@ -145,9 +148,7 @@ public class KillbillAdyenNotificationHandler implements AdyenNotificationHandle
                             kbPaymentTransactionId = UUID.fromString(hppRequest.getKbPaymentTransactionId());
                         }
 
-                        final Map additionalData = AdyenDao.fromAdditionalData(hppRequest.getAdditionalData());
-                        final Object authModeProperty = MoreObjects.firstNonNull(additionalData.get(PROPERTY_AUTH_MODE), true);
-                        authMode = Boolean.valueOf(authModeProperty.toString());
+                        authMode = AdditionalData.of(hppRequest).getBoolean(PROPERTY_AUTH_MODE, true);
 
                         isHpp = true;
                     }
@@ -160,7 +161,7 @@ public class KillbillAdyenNotificationHandler implements AdyenNotificationHandle
             final NotificationItem transformedNotification = transformNotificationItemIfNeeded(notification, tenantConfiguration);
             if (transformedNotification != null) {
                 // Find the original transaction
-                final AdyenResponsesRecord linkedOriginalRecord = getResponseRecord(transformedNotification.getPspReference());
+                final AdyenResponsesRecord linkedOriginalRecord = getResponseRecord(transformedNotification.getPspReference(), context.getTenantId());
                 Preconditions.checkNotNull(linkedOriginalRecord, "Unable to retrieve record for pspReference='%s'", transformedNotification.getPspReference());
                 kbPaymentTransactionId = UUID.fromString(linkedOriginalRecord.getKbPaymentTransactionId());
             }
@@ -490,9 +491,74 @@ public class KillbillAdyenNotificationHandler implements AdyenNotificationHandle
 
     // DAO
 
-    private AdyenResponsesRecord getResponseRecord(final String pspReference) {
+    // Lookups on a single connection
+    private NotificationRecords getNotificationRecords(final NotificationItem notification, @Nullable final UUID merchantAccountKbTenantId) {
         try {
-            return dao.getResponse(pspReference);
+            return dao.inUnitOfWork(new AdyenDao.UnitOfWork<NotificationRecords, RuntimeException>() {
+                @Override
+                public NotificationRecords run() {
+                    final NotificationRecords notificationRecords = new NotificationRecords();
+                    // Check if we have a record for that pspReference (PENDING auth, capture, refund, etc.)
+                    notificationRecords.response = getNotificationResponseRecord(notification.getPspReference(), merchantAccountKbTenantId);
+                    if (notificationRecords.response == null) {
+                        // Check if we have a record for the original pspReference (e.g. chargeback notification)
+                        notificationRecords.originalResponse = getNotificationResponseRecord(notification.getOriginalReference(), merchantAccountKbTenantId);
+                    }
+                    if (notificationRecords.response == null && notificationRecords.originalResponse == null) {
+                        // Only then, check if the payment was archived
+                        notificationRecords.response = getArchivedResponseRecord(notification.getPspReference());
+                        if (notificationRecords.response == null) {
+                            notificationRecords.originalResponse = getArchivedResponseRecord(notification.getOriginalReference());
+                        }
+                        if (notificationRecords.response == null && notificationRecords.originalResponse == null) {
+                            // Check if the notification is associated with a HPP request
+                            notificationRecords.hppRequest = getHppRequest(notification.getMerchantReference());
+                        }
+                    }
+                    return notificationRecords;
+                }
+            });
+        } catch (final SQLException e) {
+            // Have Adyen retry
+            throw new RuntimeException(String.format("Unable to retrieve records for pspReference='%s'", notification.getPspReference()), e);
+        }
+    }
+
+    // The tenant resolved from the merchant account is only a hint: the tenant of the payment may not be configured on
+    // this node yet, or share the merchant account with the resolved one
+    private AdyenResponsesRecord getNotificationResponseRecord(final String pspReference, @Nullable final UUID merchantAccountKbTenantId) {
+        final AdyenResponsesRecord record = getLiveResponseRecord(pspReference, merchantAccountKbTenantId);
+        if (record != null || merchantAccountKbTenantId == null) {
+            return record;
+        }
+        return getLiveResponseRecord(pspReference, null);
+    }
+
+    private AdyenResponsesRecord getLiveResponseRecord(final String pspReference, @Nullable final UUID kbTenantId) {
+        try {
+            return dao.getResponse(pspReference, kbTenantId, false);
+        } catch (final SQLException e) {
+            // Have Adyen retry
+            throw new RuntimeException(String.format("Unable to retrieve response for pspReference='%s'", pspReference), e);
+        }
+    }
+
+    // Across all tenants: notifications for archived payments are rare
+    private AdyenResponsesRecord getArchivedResponseRecord(@Nullable final String pspReference) {
+        if (pspReference == null) {
+            return null;
+        }
+        try {
+            return dao.getArchivedResponse(pspReference, null);
+        } catch (final SQLException e) {
+            // Have Adyen retry
+            throw new RuntimeException(String.format("Unable to retrieve archived response for pspReference='%s'", pspReference), e);
+        }
+    }
+
+    private AdyenResponsesRecord getResponseRecord(final String pspReference, @Nullable final UUID kbTenantId) {
+        try {
+            return dao.getResponse(pspReference, kbTenantId);
         } catch (final SQLException e) {
             // Have Adyen retry
             throw new RuntimeException(String.format("Unable to retrieve response for pspReference='%s'", pspReference), e);
@@ -532,4 +598,11 @@ public class KillbillAdyenNotificationHandler implements AdyenNotificationHandle
             throw new RuntimeException(String.format("Unable to update response for kbTransactionId='%s'", kbTransactionId), e);
         }
     }
+
+    private static final class NotificationRecords {
+
+        private AdyenResponsesRecord response;
+        private AdyenResponsesRecord originalResponse;
+        private AdyenHppRequestsRecord hppRequest;
+    }
 }
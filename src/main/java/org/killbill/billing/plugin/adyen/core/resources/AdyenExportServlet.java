@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core.resources;
+
+import java.sql.SQLException;
+import java.util.Optional;
+
+import javax.annotation.Nullable;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.jooby.MediaType;
+import org.jooby.Result;
+import org.jooby.Results;
+import org.jooby.Status;
+import org.jooby.mvc.GET;
+import org.jooby.mvc.Local;
+import org.jooby.mvc.Path;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.RecordHandler;
+import org.jooq.types.UInteger;
+import org.killbill.billing.plugin.adyen.dao.AdyenDao;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+import org.killbill.billing.tenant.api.Tenant;
+
+import com.google.inject.Inject;
+
+import static org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenNotifications.ADYEN_NOTIFICATIONS;
+import static org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenResponses.ADYEN_RESPONSES;
+
+/**
+ * Streaming export of the responses and notifications of the tenant, for the reconciliation with the Adyen
+ * settlement reports.
+ * <p/>
+ * Parameters: format (csv, the default, or ndjson), merchantAccount, from and to (ISO-8601, on created_date, to is
+ * exclusive) and afterRecordId (to resume an interrupted export).
+ */
+@Singleton
+@Path("/export")
+public class AdyenExportServlet {
+
+    private final AdyenDao dao;
+
+    @Inject
+    public AdyenExportServlet(final AdyenDao dao) {
+        this.dao = dao;
+    }
+
+    @GET
+    @Path("/responses")
+    public Result responses(@Local @Named("killbill_tenant") final Optional<Tenant> tenant,
+                            @Named("format") final Optional<String> format,
+                            @Named("merchantAccount") final Optional<String> merchantAccount,
+                            @Named("from") final Optional<String> from,
+                            @Named("to") final Optional<String> to,
+                            @Named("afterRecordId") final Optional<String> afterRecordId) {
+        return export("adyen_responses",
+                      ADYEN_RESPONSES.fields(),
+                      tenant,
+                      format,
+                      merchantAccount,
+                      from,
+                      to,
+                      afterRecordId,
+                      new Exporter<AdyenResponsesRecord>() {
+                          @Override
+                          public UInteger readPage(final Tenant tenant, @Nullable final String merchantAccount, @Nullable final DateTime from, @Nullable final DateTime to,
+                                                   @Nullable final UInteger afterRecordId, final int pageSize, final RecordHandler<AdyenResponsesRecord> handler) throws SQLException {
+                              return dao.exportResponses(tenant.getId(), merchantAccount, from, to, afterRecordId, pageSize, handler);
+                          }
+                      });
+    }
+
+    @GET
+    @Path("/notifications")
+    public Result notifications(@Local @Named("killbill_tenant") final Optional<Tenant> tenant,
+                                @Named("format") final Optional<String> format,
+                                @Named("merchantAccount") final Optional<String> merchantAccount,
+                                @Named("from") final Optional<String> from,
+                                @Named("to") final Optional<String> to,
+                                @Named("afterRecordId") final Optional<String> afterRecordId) {
+        return export("adyen_notifications",
+                      ADYEN_NOTIFICATIONS.fields(),
+                      tenant,
+                      format,
+                      merchantAccount,
+                      from,
+                      to,
+                      afterRecordId,
+                      new Exporter<AdyenNotificationsRecord>() {
+                          @Override
+                          public UInteger readPage(final Tenant tenant, @Nullable final String merchantAccount, @Nullable final DateTime from, @Nullable final DateTime to,
+                                                   @Nullable final UInteger afterRecordId, final int pageSize, final RecordHandler<AdyenNotificationsRecord> handler) throws SQLException {
+                              return dao.exportNotifications(tenant.getId(), merchantAccount, from, to, afterRecordId, pageSize, handler);
+                          }
+                      });
+    }
+
+    private <R extends Record> Result export(final String table,
+                                             final Field<?>[] fields,
+                                             final Optional<Tenant> tenant,
+                                             final Optional<String> format,
+                                             final Optional<String> merchantAccount,
+                                             final Optional<String> from,
+                                             final Optional<String> to,
+                                             final Optional<String> afterRecordId,
+                                             final Exporter<R> exporter) {
+        if (!tenant.isPresent()) {
+            return Results.with("Tenant required", Status.UNAUTHORIZED);
+        }
+
+        final ExportFormat exportFormat;
+        final DateTime createdFrom;
+        final DateTime createdTo;
+        final UInteger afterRecordIdValue;
+        try {
+            exportFormat = format.isPresent() ? ExportFormat.fromString(format.get()) : ExportFormat.CSV;
+            createdFrom = from.isPresent() ? new DateTime(from.get(), DateTimeZone.UTC) : null;
+            createdTo = to.isPresent() ? new DateTime(to.get(), DateTimeZone.UTC) : null;
+            afterRecordIdValue = afterRecordId.isPresent() ? UInteger.valueOf(afterRecordId.get()) : null;
+        } catch (final IllegalArgumentException e) {
+            return Results.with("Invalid parameter: " + e.getMessage(), Status.BAD_REQUEST);
+        }
+
+        final ReconciliationExport<R> export = new ReconciliationExport<R>(fields,
+                                                                           exportFormat,
+                                                                           afterRecordIdValue,
+                                                                           new ReconciliationExport.PageReader<R>() {
+                                                                               @Override
+                                                                               public UInteger readPage(@Nullable final UInteger afterRecordId, final int pageSize, final RecordHandler<R> handler) throws SQLException {
+                                                                                   return exporter.readPage(tenant.get(), merchantAccount.orElse(null), createdFrom, createdTo, afterRecordId, pageSize, handler);
+                                                                               }
+                                                                           });
+        return Results.with(export, Status.OK)
+                      .header("Cache-Control", "no-cache, no-store, must-revalidate")
+                      .header("Content-Disposition", "attachment; filename=\"" + table + "." + exportFormat.getFileExtension() + "\"")
+                      .type(MediaType.valueOf(exportFormat.getContentType()));
+    }
+
+    private interface Exporter<R extends Record> {
+
+        UInteger readPage(Tenant tenant, @Nullable String merchantAccount, @Nullable DateTime from, @Nullable DateTime to,
+                          @Nullable UInteger afterRecordId, int pageSize, RecordHandler<R> handler) throws SQLException;
+    }
+}
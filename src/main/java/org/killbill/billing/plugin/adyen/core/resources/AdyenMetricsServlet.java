@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core.resources;
+
+import javax.inject.Singleton;
+
+import org.jooby.MediaType;
+import org.jooby.Result;
+import org.jooby.Results;
+import org.jooby.Status;
+import org.jooby.mvc.GET;
+import org.jooby.mvc.Path;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
+import org.killbill.billing.plugin.adyen.metrics.PrometheusTextWriter;
+
+import com.google.inject.Inject;
+
+@Singleton
+@Path("/metrics")
+public class AdyenMetricsServlet {
+
+    private final MetricsRegistry metricsRegistry;
+
+    @Inject
+    public AdyenMetricsServlet(final MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    @GET
+    public Result metrics() {
+        final StringBuilder body = new StringBuilder();
+        metricsRegistry.writeTo(new PrometheusTextWriter(body));
+        return Results.with(body.toString(), Status.OK)
+                      .header("Cache-Control", "no-cache, no-store, must-revalidate")
+                      .type(MediaType.valueOf(PrometheusTextWriter.CONTENT_TYPE));
+    }
+}
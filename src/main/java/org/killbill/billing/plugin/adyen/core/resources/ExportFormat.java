@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core.resources;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Locale;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.jooq.Field;
+import org.jooq.Record;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Charsets;
+
+/**
+ * Formats of the reconciliation export. Values are rendered the same way in both: dates as ISO-8601 UTC, amounts
+ * in plain notation, additional_data as the stored JSON string.
+ */
+public enum ExportFormat {
+
+    /**
+     * RFC 4180, with a header line
+     */
+    CSV("text/csv; charset=utf-8", "csv") {
+        @Override
+        public void writeHeader(final Field<?>[] fields, final OutputStream out) throws IOException {
+            final Writer writer = new OutputStreamWriter(out, Charsets.UTF_8);
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeCsvValue(fields[i].getName(), writer);
+            }
+            writer.write("\r\n");
+            writer.flush();
+        }
+
+        @Override
+        public void writeRecord(final Field<?>[] fields, final Record record, final OutputStream out) throws IOException {
+            final Writer writer = new OutputStreamWriter(out, Charsets.UTF_8);
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                final String value = format(record.get(fields[i]));
+                if (value != null) {
+                    writeCsvValue(value, writer);
+                }
+            }
+            writer.write("\r\n");
+            writer.flush();
+        }
+    },
+
+    /**
+     * One JSON object per line, keyed by column name
+     */
+    NDJSON("application/x-ndjson", "ndjson") {
+        @Override
+        public void writeHeader(final Field<?>[] fields, final OutputStream out) {
+            // No header
+        }
+
+        @Override
+        public void writeRecord(final Field<?>[] fields, final Record record, final OutputStream out) throws IOException {
+            final JsonGenerator generator = jsonFactory.createGenerator(out);
+            generator.writeStartObject();
+            for (final Field<?> field : fields) {
+                final Object value = record.get(field);
+                if (value instanceof Number) {
+                    generator.writeFieldName(field.getName());
+                    generator.writeNumber(format(value));
+                } else {
+                    generator.writeStringField(field.getName(), format(value));
+                }
+            }
+            generator.writeEndObject();
+            generator.close();
+            out.write('\n');
+        }
+    };
+
+    private static final JsonFactory jsonFactory = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final String contentType;
+    private final String fileExtension;
+
+    ExportFormat(final String contentType, final String fileExtension) {
+        this.contentType = contentType;
+        this.fileExtension = fileExtension;
+    }
+
+    public static ExportFormat fromString(final String format) {
+        return valueOf(format.toUpperCase(Locale.ROOT));
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    public abstract void writeHeader(Field<?>[] fields, OutputStream out) throws IOException;
+
+    public abstract void writeRecord(Field<?>[] fields, Record record, OutputStream out) throws IOException;
+
+    private static String format(final Object value) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof Timestamp) {
+            return new DateTime(((Timestamp) value).getTime(), DateTimeZone.UTC).toString();
+        } else if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        } else {
+            return value.toString();
+        }
+    }
+
+    private static void writeCsvValue(final String value, final Writer writer) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            final char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+}
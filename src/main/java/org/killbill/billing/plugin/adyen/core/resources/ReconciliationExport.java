@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core.resources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+
+import javax.annotation.Nullable;
+
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.RecordHandler;
+import org.jooq.types.UInteger;
+
+/**
+ * Export of a table, rendered as it is read: the servlet copies this stream to the response, which pulls the pages
+ * one at a time (see AdyenDao#exportResponses).
+ * <p/>
+ * Only the current page is buffered, already formatted: memory is bounded by the page size, not the export size. The
+ * connection is released as soon as the page is read, i.e. it is never held while writing to a (slow) client.
+ */
+public class ReconciliationExport<R extends Record> extends InputStream {
+
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    public interface PageReader<R extends Record> {
+
+        /**
+         * @return the record_id of the last record handed over, null if there was none
+         */
+        UInteger readPage(@Nullable UInteger afterRecordId, int pageSize, RecordHandler<R> handler) throws SQLException;
+    }
+
+    private final Field<?>[] fields;
+    private final ExportFormat format;
+    private final PageReader<R> pageReader;
+    private final int pageSize;
+    private final PageBuffer buffer = new PageBuffer();
+
+    private UInteger lastRecordId;
+    private boolean headerWritten = false;
+    private boolean lastPage = false;
+    private int position = 0;
+
+    public ReconciliationExport(final Field<?>[] fields, final ExportFormat format, @Nullable final UInteger afterRecordId, final PageReader<R> pageReader) {
+        this(fields, format, afterRecordId, pageReader, DEFAULT_PAGE_SIZE);
+    }
+
+    public ReconciliationExport(final Field<?>[] fields, final ExportFormat format, @Nullable final UInteger afterRecordId, final PageReader<R> pageReader, final int pageSize) {
+        this.fields = fields;
+        this.format = format;
+        this.lastRecordId = afterRecordId;
+        this.pageReader = pageReader;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer.array()[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        final int read = Math.min(len, buffer.size() - position);
+        System.arraycopy(buffer.array(), position, b, off, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return buffer.size() - position;
+    }
+
+    /**
+     * @return false once the export is complete
+     */
+    private boolean fill() throws IOException {
+        while (position == buffer.size()) {
+            if (lastPage) {
+                return false;
+            }
+
+            buffer.reset();
+            position = 0;
+            if (!headerWritten) {
+                format.writeHeader(fields, buffer);
+                headerWritten = true;
+            }
+            readPage();
+        }
+        return true;
+    }
+
+    private void readPage() throws IOException {
+        final int[] records = {0};
+        final UInteger pageLastRecordId;
+        try {
+            pageLastRecordId = pageReader.readPage(lastRecordId,
+                                                   pageSize,
+                                                   new RecordHandler<R>() {
+                                                       @Override
+                                                       public void next(final R record) {
+                                                           try {
+                                                               format.writeRecord(fields, record, buffer);
+                                                           } catch (final IOException e) {
+                                                               throw new UncheckedIOException(e);
+                                                           }
+                                                           records[0]++;
+                                                       }
+                                                   });
+        } catch (final SQLException e) {
+            throw new IOException("Unable to read the export page after record_id " + lastRecordId, e);
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (pageLastRecordId != null) {
+            lastRecordId = pageLastRecordId;
+        }
+        lastPage = records[0] < pageSize;
+    }
+
+    // Reused across pages, read in place
+    private static final class PageBuffer extends ByteArrayOutputStream {
+
+        private byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.dao;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPERTY_FROM_HPP;
+import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPERTY_HPP_COMPLETION;
+import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPERTY_MERCHANT_ACCOUNT_CODE;
+import static org.killbill.billing.plugin.adyen.client.model.PurchaseResult.ADYEN_CALL_ERROR_STATUS;
+
+/**
+ * Lazily parsed, memoised view of the additional_data column of a record.
+ * <p/>
+ * Single keys are looked up by streaming over the JSON (values of the other keys are skipped, not deserialized),
+ * the full map is only built if asked for. The view is attached to the record instance and rebuilt if its
+ * additional data is changed.
+ */
+public class AdditionalData {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final AdditionalData EMPTY = new AdditionalData(null);
+
+    // Identity-based and weak: the views go away with their records
+    private static final Cache<Object, AdditionalData> views = CacheBuilder.newBuilder()
+                                                                           .weakKeys()
+                                                                           .build();
+
+    private final String json;
+    private final ConcurrentMap<String, Optional<String>> values = new ConcurrentHashMap<String, Optional<String>>();
+    private volatile Map map;
+
+    public static AdditionalData of(final AdyenResponsesRecord record) {
+        return of(record, record.getAdditionalData());
+    }
+
+    public static AdditionalData of(final AdyenHppRequestsRecord record) {
+        return of(record, record.getAdditionalData());
+    }
+
+    private static AdditionalData of(final Object record, @Nullable final String json) {
+        if (json == null) {
+            return EMPTY;
+        }
+
+        final AdditionalData existing = views.getIfPresent(record);
+        // Reference comparison on purpose: any setAdditionalData call invalidates the view
+        if (existing != null && existing.json == json) {
+            return existing;
+        }
+        final AdditionalData additionalData = new AdditionalData(json);
+        views.put(record, additionalData);
+        return additionalData;
+    }
+
+    AdditionalData(@Nullable final String json) {
+        this.json = json;
+    }
+
+    public boolean isFromHpp() {
+        return getBoolean(PROPERTY_FROM_HPP, false);
+    }
+
+    public boolean isHppCompletion() {
+        return getBoolean(PROPERTY_HPP_COMPLETION, false);
+    }
+
+    @Nullable
+    public String getMerchantAccountCode() {
+        return get(PROPERTY_MERCHANT_ACCOUNT_CODE);
+    }
+
+    @Nullable
+    public String getAdyenCallErrorStatus() {
+        return get(ADYEN_CALL_ERROR_STATUS);
+    }
+
+    public boolean getBoolean(final String key, final boolean defaultValue) {
+        final String value = get(key);
+        return value == null ? defaultValue : Boolean.valueOf(value);
+    }
+
+    /**
+     * @param key additional data key
+     * @return the value, as a String, null if not present
+     */
+    @Nullable
+    public String get(final String key) {
+        if (json == null) {
+            return null;
+        }
+
+        final Map parsed = map;
+        if (parsed != null) {
+            final Object value = parsed.get(key);
+            return value == null ? null : value.toString();
+        }
+
+        Optional<String> value = values.get(key);
+        if (value == null) {
+            value = Optional.<String>fromNullable(scan(key));
+            values.put(key, value);
+        }
+        return value.orNull();
+    }
+
+    /**
+     * @return all the additional data (unmodifiable)
+     */
+    public Map asMap() {
+        Map parsed = map;
+        if (parsed == null) {
+            parsed = Collections.unmodifiableMap(AdyenDao.fromAdditionalData(json));
+            map = parsed;
+        }
+        return parsed;
+    }
+
+    private String scan(final String key) {
+        try {
+            final JsonParser parser = jsonFactory.createParser(json);
+            try {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    return null;
+                }
+
+                // Keep going after a match: like the deserialized map, the last occurrence of a duplicate key wins
+                String value = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final boolean found = key.equals(parser.getCurrentName());
+                    final JsonToken token = parser.nextToken();
+                    if (!found) {
+                        parser.skipChildren();
+                    } else if (token == JsonToken.VALUE_NULL) {
+                        value = null;
+                    } else if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                        // Same representation as the deserialized map
+                        value = parser.getNumberValue().toString();
+                    } else if (token.isScalarValue()) {
+                        value = parser.getText();
+                    } else {
+                        // Nested structures are rare: fall back to the full map
+                        final Object mapped = asMap().get(key);
+                        return mapped == null ? null : mapped.toString();
+                    }
+                }
+                return value;
+            } finally {
+                parser.close();
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.dao;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+
+import org.jooq.Binding;
+import org.jooq.BindingGetResultSetContext;
+import org.jooq.BindingGetSQLInputContext;
+import org.jooq.BindingGetStatementContext;
+import org.jooq.BindingRegisterContext;
+import org.jooq.BindingSQLContext;
+import org.jooq.BindingSetSQLOutputContext;
+import org.jooq.BindingSetStatementContext;
+import org.jooq.Configuration;
+import org.jooq.Converter;
+import org.jooq.conf.ParamType;
+import org.jooq.impl.DSL;
+
+/**
+ * Binding of the additional_data columns: the JSON is always a String on the Java side, stored either as text
+ * (default schema) or, once converted by AdditionalDataColumnsMigration, encoded by AdditionalDataCodec in a binary
+ * column.
+ * <p/>
+ * As for KbIdBinding, the storage is set on the jOOQ configuration (see BINARY_ADDITIONAL_DATA).
+ */
+public class AdditionalDataBinding implements Binding<String, String> {
+
+    public static final String BINARY_ADDITIONAL_DATA = "org.killbill.billing.plugin.adyen.binaryAdditionalData";
+
+    private static final Converter<String, String> IDENTITY = new Converter<String, String>() {
+        @Override
+        public String from(final String databaseObject) {
+            return databaseObject;
+        }
+
+        @Override
+        public String to(final String userObject) {
+            return userObject;
+        }
+
+        @Override
+        public Class<String> fromType() {
+            return String.class;
+        }
+
+        @Override
+        public Class<String> toType() {
+            return String.class;
+        }
+    };
+
+    public static boolean isBinary(final Configuration configuration) {
+        return Boolean.TRUE.equals(configuration.data(BINARY_ADDITIONAL_DATA));
+    }
+
+    @Override
+    public Converter<String, String> converter() {
+        return IDENTITY;
+    }
+
+    @Override
+    public void sql(final BindingSQLContext<String> ctx) throws SQLException {
+        if (ctx.render().paramType() != ParamType.INLINED) {
+            ctx.render().sql(ctx.variable());
+        } else if (ctx.value() == null || !isBinary(ctx.configuration())) {
+            ctx.render().visit(DSL.inline(ctx.value()));
+        } else {
+            ctx.render().visit(DSL.inline(AdditionalDataCodec.encode(ctx.value())));
+        }
+    }
+
+    @Override
+    public void register(final BindingRegisterContext<String> ctx) throws SQLException {
+        ctx.statement().registerOutParameter(ctx.index(), sqlType(ctx.configuration()));
+    }
+
+    @Override
+    public void set(final BindingSetStatementContext<String> ctx) throws SQLException {
+        if (ctx.value() == null) {
+            ctx.statement().setNull(ctx.index(), sqlType(ctx.configuration()));
+        } else if (!isBinary(ctx.configuration())) {
+            ctx.statement().setString(ctx.index(), ctx.value());
+        } else {
+            ctx.statement().setBytes(ctx.index(), AdditionalDataCodec.encode(ctx.value()));
+        }
+    }
+
+    @Override
+    public void set(final BindingSetSQLOutputContext<String> ctx) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public void get(final BindingGetResultSetContext<String> ctx) throws SQLException {
+        if (isBinary(ctx.configuration())) {
+            ctx.value(AdditionalDataCodec.decode(ctx.resultSet().getBytes(ctx.index())));
+        } else {
+            ctx.value(ctx.resultSet().getString(ctx.index()));
+        }
+    }
+
+    @Override
+    public void get(final BindingGetStatementContext<String> ctx) throws SQLException {
+        if (isBinary(ctx.configuration())) {
+            ctx.value(AdditionalDataCodec.decode(ctx.statement().getBytes(ctx.index())));
+        } else {
+            ctx.value(ctx.statement().getString(ctx.index()));
+        }
+    }
+
+    @Override
+    public void get(final BindingGetSQLInputContext<String> ctx) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    private static int sqlType(final Configuration configuration) {
+        return isBinary(configuration) ? Types.BLOB : Types.CLOB;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.dao;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Compact encoding of the additional_data JSON blobs, for the binary additional_data columns.
+ * <p/>
+ * The first byte is the format:
+ * <ul>
+ * <li>DICTIONARY: the JSON in UTF-8, where the JSON strings (keys or values) found in DICTIONARY are replaced
+ * by TOKEN followed by their index. The control characters aren't allowed unescaped in JSON, so TOKEN is
+ * never part of the JSON itself.</li>
+ * <li>RAW: the value in UTF-8 (unlikely fallback, for values with control characters).</li>
+ * <li>anything else: legacy rows, the JSON in UTF-8 (e.g. copied from a text column).</li>
+ * </ul>
+ * The encoding is a function of the JSON (AdyenDao compares the stored values in updateResponse): the dictionary is
+ * append-only, a change to the existing entries requires a new format.
+ */
+public abstract class AdditionalDataCodec {
+
+    static final byte RAW = 0x00;
+    static final byte DICTIONARY = 0x01;
+    static final byte TOKEN = 0x02;
+
+    // Append only (at most 256 entries)
+    private static final List<String> DICTIONARY_ENTRIES = ImmutableList.<String>of(
+            // Plugin
+            "adyenCallErrorStatus", "exceptionClass", "exceptionMessage", "fromHPP", "fromHPPCompletion", "fromHPPTransactionStatus",
+            "paymentProcessorAccountId", "recurringType", "recurringDetailId", "contAuth", "captureDelayHours", "installments",
+            "selectedBrand", "acquirer", "acquirerMID", "userAgent", "acceptHeader", "threeDThreshold", "issuerCountry",
+            "firstName", "lastName", "ip", "customerLocale", "customerId", "email", "createPendingPayment", "authMode",
+            "paymentMethodId", "paymentExternalKey", "resultUrl", "serverUrl", "shipBeforeDate", "skin", "orderData",
+            "sessionValidity", "merchantReturnData", "allowedMethods", "blockedMethods", "brandCode", "issuerId", "offerEmail",
+            "hppTarget", "lookupDirectory", "PaReq", "PaRes", "MD", "TermUrl", "dccAmount", "dccCurrency", "dccSignature", "issuerUrl",
+            "mpiDataDirectoryResponse", "mpiDataAuthenticationResponse", "mpiDataCavv", "mpiDataCavvAlgorithm", "mpiDataXid",
+            "mpiDataEci", "mpiImplementationType", "encryptedJson", "ddHolderName", "ddNumber", "ddBic", "elvBlz", "sepaCountryCode",
+            // Adyen responses, notifications and HPP results
+            "additionalData", "eventCode", "eventDate", "merchantAccountCode", "merchantReference", "operations", "originalReference",
+            "paymentMethod", "pspReference", "reason", "success", "live", "amount", "currency", "value", "authCode", "authResult",
+            "authorisationMid", "acquirerCode", "acquirerReference", "avsResult", "avsResultRaw", "cvcResult", "cvcResultRaw",
+            "cardBin", "cardHolderName", "cardSummary", "cardIssuingCountry", "cardIssuingBank", "cardPaymentMethod", "expiryDate",
+            "fundingSource", "hmacSignature", "liabilityShift", "refusalReasonRaw", "threeDOffered", "threeDAuthenticated",
+            "threeDOfferedResponse", "threeDAuthenticatedResponse", "totalFraudScore", "fraudResultType", "paymentMethodVariant",
+            "recurring.recurringDetailReference", "recurring.shopperReference", "recurringProcessingModel", "alias", "aliasType",
+            "shopperReference", "shopperEmail", "shopperLocale", "shopperIP", "merchantAccount", "merchantSig", "skinCode",
+            "currencyCode", "paymentAmount", "countryCode", "resultCode", "resURL", "merchantOrderReference", "orderReference",
+            "selectedRecurringDetailReference", "recurringDetailReference", "visa", "mc", "amex", "maestro", "cup", "diners",
+            "discover", "jcb", "ideal", "sepadirectdebit", "paypal", "Authorised", "Refused", "Received", "Pending", "Error",
+            "Cancelled", "RedirectShopper", "AUTHORISED", "REFUSED", "PENDING", "CANCELLED", "ERROR", "AUTHORISATION", "CAPTURE",
+            "CANCELLATION", "REFUND", "CANCEL_OR_REFUND", "CAPTURE_FAILED", "REFUND_FAILED", "CHARGEBACK", "REPORT_AVAILABLE",
+            "[capture-received]", "[refund-received]", "[cancel-received]", "[cancelOrRefund-received]", "true", "false",
+            "EUR", "USD", "GBP", "CHF", "SEK", "NOK", "DKK", "PLN", "BRL", "JPY", "CREDIT", "DEBIT", "ONECLICK", "RECURRING",
+            "ONECLICK,RECURRING", "CardOnFile", "Subscription", "UnscheduledCardOnFile");
+
+    private static final Map<String, Integer> DICTIONARY_INDEXES = new HashMap<String, Integer>();
+
+    static {
+        for (int i = 0; i < DICTIONARY_ENTRIES.size(); i++) {
+            DICTIONARY_INDEXES.put(DICTIONARY_ENTRIES.get(i), i);
+        }
+    }
+
+    @Nullable
+    public static byte[] encode(@Nullable final String json) {
+        if (json == null) {
+            return null;
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(json.length());
+        for (int i = 0; i < json.length(); i++) {
+            if (json.charAt(i) < 0x20) {
+                out.write(RAW);
+                write(out, json, 0, json.length());
+                return out.toByteArray();
+            }
+        }
+
+        out.write(DICTIONARY);
+        int literalStart = 0;
+        int i = 0;
+        while (i < json.length()) {
+            if (json.charAt(i) != '"') {
+                i++;
+                continue;
+            }
+
+            // Find the end of the string, the dictionary entries don't need escaping
+            int end = i + 1;
+            boolean escaped = false;
+            while (end < json.length() && json.charAt(end) != '"') {
+                escaped |= json.charAt(end) == '\\';
+                end++;
+            }
+            if (end == json.length()) {
+                // Not JSON
+                break;
+            }
+
+            final Integer index = escaped ? null : DICTIONARY_INDEXES.get(json.substring(i + 1, end));
+            if (index != null) {
+                write(out, json, literalStart, i);
+                out.write(TOKEN);
+                out.write(index);
+                literalStart = end + 1;
+            } else if (escaped) {
+                // Skip the escaped quotes
+                end = endOfEscapedString(json, i);
+                if (end == json.length()) {
+                    break;
+                }
+            }
+            i = end + 1;
+        }
+        write(out, json, literalStart, json.length());
+        return out.toByteArray();
+    }
+
+    @Nullable
+    public static String decode(@Nullable final byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        } else if (bytes.length == 0 || (bytes[0] != DICTIONARY && bytes[0] != RAW)) {
+            return new String(bytes, Charsets.UTF_8);
+        } else if (bytes[0] == RAW) {
+            return new String(bytes, 1, bytes.length - 1, Charsets.UTF_8);
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 2);
+        int literalStart = 1;
+        for (int i = 1; i < bytes.length; i++) {
+            if (bytes[i] == TOKEN) {
+                out.write(bytes, literalStart, i - literalStart);
+                out.write('"');
+                final byte[] entry = DICTIONARY_ENTRIES.get(bytes[++i] & 0xFF).getBytes(Charsets.UTF_8);
+                out.write(entry, 0, entry.length);
+                out.write('"');
+                literalStart = i + 1;
+            }
+        }
+        out.write(bytes, literalStart, bytes.length - literalStart);
+        return new String(out.toByteArray(), Charsets.UTF_8);
+    }
+
+    public static boolean isCompact(@Nullable final byte[] bytes) {
+        return bytes != null && bytes.length > 0 && bytes[0] == DICTIONARY;
+    }
+
+    private static int endOfEscapedString(final String json, final int start) {
+        int end = start + 1;
+        while (end < json.length() && json.charAt(end) != '"') {
+            end += json.charAt(end) == '\\' ? 2 : 1;
+        }
+        return Math.min(end, json.length());
+    }
+
+    private static void write(final ByteArrayOutputStream out, final String json, final int start, final int end) {
+        if (start < end) {
+            final byte[] literal = json.substring(start, end).getBytes(Charsets.UTF_8);
+            out.write(literal, 0, literal.length);
+        }
+    }
+}
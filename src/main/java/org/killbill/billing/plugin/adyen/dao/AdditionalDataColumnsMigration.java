@@ -0,0 +1,178 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.dao;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jooq.DataType;
+import org.jooq.Field;
+import org.jooq.Record4;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Converts the additional_data columns from longtext to longblob (bytea on PostgreSQL), encoded by
+ * AdditionalDataCodec: the backfill re-encodes the existing rows in the background, report compares the sizes.
+ * <p/>
+ * Usage: java -cp adyen-plugin.jar:[JDBC driver] org.killbill.billing.plugin.adyen.dao.AdditionalDataColumnsMigration [JDBC url] [user] [password] backfill|cutover|report [chunk size]
+ */
+public class AdditionalDataColumnsMigration extends ShadowColumnsMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdditionalDataColumnsMigration.class);
+
+    private static final DataType<String> ADDITIONAL_DATA = SQLDataType.CLOB.asConvertedDataType(new AdditionalDataBinding());
+    private static final Map<String, List<String>> ADDITIONAL_DATA_COLUMNS = getColumnsWithBinding(AdditionalDataBinding.class);
+
+    public AdditionalDataColumnsMigration(final Connection conn) {
+        super(conn, AdditionalDataBinding.BINARY_ADDITIONAL_DATA, ADDITIONAL_DATA_COLUMNS, ADDITIONAL_DATA, "additional data");
+    }
+
+    /**
+     * @param conn connection to the plugin schema
+     * @return true if the additional data columns are binary
+     * @throws SQLException if the conversion was only partially done (cutover must be run again)
+     */
+    public static boolean hasBinaryAdditionalData(final Connection conn) throws SQLException {
+        return hasBinaryColumns(conn, ADDITIONAL_DATA_COLUMNS, AdditionalDataColumnsMigration.class.getSimpleName());
+    }
+
+    /**
+     * Sizes of the additional data, as stored by the database: text and, once (partially) backfilled or converted,
+     * binary
+     *
+     * @return the sizes, by table
+     * @throws SQLException For any unexpected SQL error
+     */
+    public List<SizeReport> report() throws SQLException {
+        final List<SizeReport> reports = new ArrayList<SizeReport>();
+        for (final Map.Entry<String, List<String>> table : getColumnsByTable().entrySet()) {
+            final Map<String, Column> existingColumns = getColumns(conn, table.getKey());
+            for (final String column : table.getValue()) {
+                if (!existingColumns.containsKey(column)) {
+                    continue;
+                }
+
+                final boolean binary = existingColumns.get(column).isBinary();
+                final Field<String> textField = DSL.field(DSL.name(column), SQLDataType.VARCHAR);
+                final Field<String> binaryField = binary ? textField : DSL.field(DSL.name(column + SHADOW_COLUMN_SUFFIX), SQLDataType.VARCHAR);
+                final boolean hasBinaryField = binary || existingColumns.containsKey(column + SHADOW_COLUMN_SUFFIX);
+                final Record4<Integer, BigDecimal, Integer, BigDecimal> sizes = textContext.select(binary ? DSL.inline(0) : DSL.count(textField),
+                                                                                                   binary ? DSL.inline(BigDecimal.ZERO) : DSL.sum(DSL.octetLength(textField)),
+                                                                                                   hasBinaryField ? DSL.count(binaryField) : DSL.inline(0),
+                                                                                                   hasBinaryField ? DSL.sum(DSL.octetLength(binaryField)) : DSL.inline(BigDecimal.ZERO))
+                                                                                           .from(DSL.table(DSL.name(table.getKey())))
+                                                                                           .fetchOne();
+                final SizeReport report = new SizeReport(table.getKey(),
+                                                         sizes.value1(),
+                                                         sizes.value2() == null ? 0 : sizes.value2().longValue(),
+                                                         sizes.value3(),
+                                                         sizes.value4() == null ? 0 : sizes.value4().longValue());
+                logger.info("{}", report);
+                reports.add(report);
+            }
+        }
+        return reports;
+    }
+
+    @Override
+    protected String binaryType() {
+        if (family == SQLDialect.POSTGRES) {
+            return "bytea";
+        }
+        return isMySQL() ? "longblob" : "blob";
+    }
+
+    public static void main(final String[] args) throws SQLException {
+        main(args,
+             AdditionalDataColumnsMigration.class.getSimpleName(),
+             ImmutableSet.<String>of("backfill", "cutover", "report"),
+             new Command() {
+                 @Override
+                 public void run(final Connection conn, final String command, final int chunkSize) throws SQLException {
+                     final AdditionalDataColumnsMigration migration = new AdditionalDataColumnsMigration(conn);
+                     if ("backfill".equals(command)) {
+                         migration.backfill(chunkSize);
+                     } else if ("cutover".equals(command)) {
+                         migration.cutover(chunkSize);
+                     }
+                     for (final SizeReport report : migration.report()) {
+                         System.out.println(report);
+                     }
+                 }
+             });
+    }
+
+    public static final class SizeReport {
+
+        private final String table;
+        private final int textRows;
+        private final long textBytes;
+        private final int binaryRows;
+        private final long binaryBytes;
+
+        private SizeReport(final String table, final int textRows, final long textBytes, final int binaryRows, final long binaryBytes) {
+            this.table = table;
+            this.textRows = textRows;
+            this.textBytes = textBytes;
+            this.binaryRows = binaryRows;
+            this.binaryBytes = binaryBytes;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public int getTextRows() {
+            return textRows;
+        }
+
+        public long getTextBytes() {
+            return textBytes;
+        }
+
+        public int getBinaryRows() {
+            return binaryRows;
+        }
+
+        public long getBinaryBytes() {
+            return binaryBytes;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("SizeReport{");
+            sb.append("table='").append(table).append('\'');
+            sb.append(", textRows=").append(textRows);
+            sb.append(", textBytes=").append(textBytes);
+            sb.append(", binaryRows=").append(binaryRows);
+            sb.append(", binaryBytes=").append(binaryBytes);
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+}
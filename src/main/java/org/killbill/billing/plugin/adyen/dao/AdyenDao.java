@@ -18,24 +18,62 @@
 package org.killbill.billing.plugin.adyen.dao;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
 import javax.sql.DataSource;
 
 import org.joda.time.DateTime;
-import org.jooq.UpdateSetMoreStep;
+import org.jooq.BatchBindStep;
+import org.jooq.Condition;
+import org.jooq.Configuration;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Identity;
+import org.jooq.Query;
+import org.jooq.Record;
+import org.jooq.Record2;
+import org.jooq.Record3;
+import org.jooq.RecordHandler;
+import org.jooq.Result;
+import org.jooq.ResultQuery;
+import org.jooq.Table;
+import org.jooq.TableRecord;
+import org.jooq.Transaction;
+import org.jooq.TransactionContext;
+import org.jooq.TransactionProvider;
+import org.jooq.TransactionalCallable;
+import org.jooq.TransactionalRunnable;
+import org.jooq.exception.DataAccessException;
+import org.jooq.exception.DataChangedException;
+import org.jooq.exception.SQLStateClass;
 import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+import org.jooq.types.UInteger;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
 import org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi;
 import org.killbill.billing.plugin.adyen.client.model.NotificationItem;
 import org.killbill.billing.plugin.adyen.client.model.PaymentModificationResponse;
@@ -47,17 +85,29 @@ import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequests
 import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenPaymentMethodsRecord;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+import org.killbill.billing.plugin.adyen.metrics.MetricFamily;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
+import org.killbill.billing.plugin.adyen.metrics.OperationMetrics;
 import org.killbill.billing.plugin.api.PluginProperties;
+import org.killbill.billing.plugin.api.payment.PluginPaymentPluginApi;
 import org.killbill.billing.plugin.dao.payment.PluginPaymentDao;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Functions;
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
+import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPERTY_BRAND_CODE;
+import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPERTY_FROM_HPP;
+import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPERTY_FROM_HPP_TRANSACTION_STATUS;
+import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPERTY_HPP_COMPLETION;
+import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPERTY_MERCHANT_ACCOUNT_CODE;
+import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPERTY_PAYMENT_METHOD;
 import static org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi.PROPERTY_PSP_REFERENCE;
 import static org.killbill.billing.plugin.adyen.client.model.PurchaseResult.ADYEN_CALL_ERROR_STATUS;
 import static org.killbill.billing.plugin.adyen.client.model.PurchaseResult.EXCEPTION_CLASS;
@@ -69,439 +119,1763 @@ import static org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenResponses.AD
 
 public class AdyenDao extends PluginPaymentDao<AdyenResponsesRecord, AdyenResponses, AdyenPaymentMethodsRecord, AdyenPaymentMethods> {
 
+    public static final String DAO_METRIC = "adyen_dao_call";
+    // Label of the calls made by PluginPaymentDao (e.g. addResponse with a map of properties)
+    public static final String INHERITED_METHOD = "inherited";
+
     private static final ObjectMapper objectMapper = new ObjectMapper();
     private static final Joiner JOINER = Joiner.on(",");
+    private static final int MAX_UPDATE_RESPONSE_ATTEMPTS = 5;
+
+    // Archive tables have the same columns as their counterpart (they aren't generated)
+    private static final Table<Record> ADYEN_RESPONSES_ARCHIVE = DSL.table(DSL.name("adyen_responses_archive"));
+    private static final List<Field<?>> ADYEN_RESPONSES_ARCHIVE_FIELDS = archiveFields(ADYEN_RESPONSES);
+    private static final Field<UInteger> ADYEN_RESPONSES_ARCHIVE_RECORD_ID = archiveField(ADYEN_RESPONSES.RECORD_ID);
+    private static final Field<String> ADYEN_RESPONSES_ARCHIVE_KB_PAYMENT_ID = archiveField(ADYEN_RESPONSES.KB_PAYMENT_ID);
+    private static final Field<String> ADYEN_RESPONSES_ARCHIVE_KB_PAYMENT_TRANSACTION_ID = archiveField(ADYEN_RESPONSES.KB_PAYMENT_TRANSACTION_ID);
+    private static final Field<String> ADYEN_RESPONSES_ARCHIVE_TRANSACTION_TYPE = archiveField(ADYEN_RESPONSES.TRANSACTION_TYPE);
+    private static final Field<String> ADYEN_RESPONSES_ARCHIVE_PSP_REFERENCE = archiveField(ADYEN_RESPONSES.PSP_REFERENCE);
+    private static final Field<String> ADYEN_RESPONSES_ARCHIVE_KB_TENANT_ID = archiveField(ADYEN_RESPONSES.KB_TENANT_ID);
+    private static final Table<Record> ADYEN_NOTIFICATIONS_ARCHIVE = DSL.table(DSL.name("adyen_notifications_archive"));
+    private static final List<Field<?>> ADYEN_NOTIFICATIONS_ARCHIVE_FIELDS = archiveFields(ADYEN_NOTIFICATIONS);
+    // Leader election of the background jobs (see acquireLease)
+    private static final Table<Record> ADYEN_LEASES = DSL.table(DSL.name("adyen_leases"));
+    private static final Field<String> ADYEN_LEASES_LEASE_NAME = DSL.field(DSL.name("lease_name"), SQLDataType.VARCHAR);
+    private static final Field<String> ADYEN_LEASES_OWNER = DSL.field(DSL.name("owner"), SQLDataType.VARCHAR);
+    private static final Field<Timestamp> ADYEN_LEASES_EXPIRATION_DATE = DSL.field(DSL.name("expiration_date"), SQLDataType.TIMESTAMP);
+    // Progress of the background jobs (see getCheckpoint)
+    private static final Table<Record> ADYEN_CHECKPOINTS = DSL.table(DSL.name("adyen_checkpoints"));
+    private static final Field<String> ADYEN_CHECKPOINTS_CHECKPOINT_NAME = DSL.field(DSL.name("checkpoint_name"), SQLDataType.VARCHAR);
+    private static final Field<UInteger> ADYEN_CHECKPOINTS_RECORD_ID = DSL.field(DSL.name("record_id"), SQLDataType.INTEGERUNSIGNED);
+
+    // Initial responses which can expire (see AdyenPaymentTransactionInfoPlugin#getStatus and ExpiredPaymentPolicy)
+    private static final Set<String> EXPIRABLE_PSP_RESULTS = ImmutableSet.<String>of(PaymentServiceProviderResult.INITIALISED.toString(),
+                                                                                     PaymentServiceProviderResult.REDIRECT_SHOPPER.toString(),
+                                                                                     PaymentServiceProviderResult.PENDING.toString(),
+                                                                                     PaymentServiceProviderResult.RECEIVED.toString());
+    private static final Set<String> EXPIRABLE_TRANSACTION_TYPES = ImmutableSet.<String>of(TransactionType.AUTHORIZE.toString(),
+                                                                                           TransactionType.PURCHASE.toString());
+    // First response of a payment
+    private static final Set<String> INITIAL_TRANSACTION_TYPES = ImmutableSet.<String>of(TransactionType.AUTHORIZE.toString(),
+                                                                                        TransactionType.PURCHASE.toString(),
+                                                                                        TransactionType.CREDIT.toString());
+    private static final Comparator<AdyenResponsesRecord> RECORD_ID_ORDERING = new Comparator<AdyenResponsesRecord>() {
+        @Override
+        public int compare(final AdyenResponsesRecord first, final AdyenResponsesRecord second) {
+            return first.getRecordId().compareTo(second.getRecordId());
+        }
+    };
+
+    private final MetricFamily<OperationMetrics> daoMetrics;
+    private final PaymentMethodsCache paymentMethodsCache;
+    // Optional, for the reads which tolerate replication lag
+    private final ReadReplica readReplica;
+    // Storage of the kb_*_id and additional_data columns (see KbIdColumnsMigration and AdditionalDataColumnsMigration)
+    private final boolean binaryKbIds;
+    private final boolean binaryAdditionalData;
+    // Connection of the unit of work running on the current thread (see inUnitOfWork)
+    private final ThreadLocal<BoundConnection> boundConnection = new ThreadLocal<BoundConnection>();
+    // Database calls of the methods inherited from PluginPaymentDao, which don't name themselves (see execute)
+    private final OperationMetrics inheritedDaoMetrics;
+
+    public AdyenDao(final DataSource dataSource) throws SQLException {
+        this(dataSource, new MetricsRegistry());
+    }
+
+    public AdyenDao(final DataSource dataSource, final MetricsRegistry metricsRegistry) throws SQLException {
+        this(dataSource, metricsRegistry, new PaymentMethodsCache(metricsRegistry));
+    }
+
+    public AdyenDao(final DataSource dataSource, final MetricsRegistry metricsRegistry, final PaymentMethodsCache paymentMethodsCache) throws SQLException {
+        this(dataSource, null, metricsRegistry, paymentMethodsCache);
+    }
+
+    public AdyenDao(final DataSource dataSource, @Nullable final ReadReplica readReplica, final MetricsRegistry metricsRegistry, final PaymentMethodsCache paymentMethodsCache) throws SQLException {
+        super(AdyenResponses.ADYEN_RESPONSES, AdyenPaymentMethods.ADYEN_PAYMENT_METHODS, dataSource);
+        this.readReplica = readReplica;
+        this.daoMetrics = metricsRegistry.operations(DAO_METRIC, "the database calls", "method");
+        this.inheritedDaoMetrics = daoMetrics.labels(INHERITED_METHOD);
+        this.paymentMethodsCache = paymentMethodsCache;
+        final Connection conn = dataSource.getConnection();
+        try {
+            this.binaryKbIds = KbIdColumnsMigration.hasBinaryKbIds(conn);
+            this.binaryAdditionalData = AdditionalDataColumnsMigration.hasBinaryAdditionalData(conn);
+        } finally {
+            conn.close();
+        }
+    }
+
+    public boolean hasBinaryKbIds() {
+        return binaryKbIds;
+    }
+
+    public boolean hasBinaryAdditionalData() {
+        return binaryAdditionalData;
+    }
+
+    // The base DAO queries reference columns by name, which bypasses the bindings: all queries must go through here
+    private DSLContext using(final Connection conn) {
+        final DSLContext context = DSL.using(conn, dialect, settings);
+        if (binaryKbIds) {
+            context.configuration().data(KbIdBinding.BINARY_KB_IDS, true);
+        }
+        if (binaryAdditionalData) {
+            context.configuration().data(AdditionalDataBinding.BINARY_ADDITIONAL_DATA, true);
+        }
+        final BoundConnection bound = boundConnection.get();
+        if (bound != null && bound.isTransactional()) {
+            context.configuration().set(bound.savepointTransactionProvider);
+        }
+        return context;
+    }
+
+    @Override
+    protected <T> T execute(final Connection conn, final WithConnectionCallback<T> callback) throws SQLException {
+        return execute(conn, inheritedDaoMetrics, callback);
+    }
+
+    // Each DAO method passes its name, the label of its calls in the metrics
+    private <T> T execute(final Connection conn, final String method, final WithConnectionCallback<T> callback) throws SQLException {
+        return execute(conn, daoMetrics.labels(method), callback);
+    }
+
+    private <T> T execute(final Connection conn, final OperationMetrics metrics, final WithConnectionCallback<T> callback) throws SQLException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final T result = super.execute(conn, callback);
+            success = true;
+            return result;
+        } finally {
+            metrics.record(startNanos, success);
+        }
+    }
+
+    // Units of work
+
+    /**
+     * Logical operation spanning several DAO calls (see inUnitOfWork and inTransaction)
+     *
+     * @param <T> result type
+     * @param <E> exception thrown by the operation
+     */
+    public interface UnitOfWork<T, E extends Exception> {
+
+        T run() throws E;
+    }
+
+    /**
+     * Run the DAO calls of the unit of work on a single connection (in auto-commit mode), instead of checking out a
+     * connection from the pool for each call. Nested units of work join the outermost one.
+     * <p/>
+     * The connection is checked out on the first DAO call and held until the unit of work completes: it must not span
+     * remote calls (Adyen, Kill Bill APIs). All calls go to the primary, even if a read replica is configured.
+     *
+     * @param unitOfWork DAO calls to run, on the current thread
+     * @return the result of the unit of work
+     * @throws E            if the unit of work throws
+     * @throws SQLException if no connection could be checked out
+     */
+    public <T, E extends Exception> T inUnitOfWork(final UnitOfWork<T, E> unitOfWork) throws E, SQLException {
+        return run(unitOfWork, false);
+    }
+
+    /**
+     * Same as inUnitOfWork, in a single transaction: committed if the unit of work completes, rolled back if it throws.
+     * Transactions of the DAO calls become savepoints and the payment methods cache is left alone until the end of
+     * the transaction. Note that the reads see the snapshot of the transaction (REPEATABLE READ): keep it short.
+     *
+     * @param unitOfWork DAO calls to run, on the current thread
+     * @return the result of the unit of work
+     * @throws E            if the unit of work throws (the transaction has been rolled back)
+     * @throws SQLException if the transaction couldn't be started or committed
+     */
+    public <T, E extends Exception> T inTransaction(final UnitOfWork<T, E> unitOfWork) throws E, SQLException {
+        return run(unitOfWork, true);
+    }
+
+    private <T, E extends Exception> T run(final UnitOfWork<T, E> unitOfWork, final boolean transactional) throws E, SQLException {
+        final BoundConnection current = boundConnection.get();
+        if (current != null) {
+            // A transaction within a unit of work runs on its connection
+            return transactional && !current.isTransactional() ? current.inTransaction(unitOfWork) : unitOfWork.run();
+        }
+
+        final BoundConnection bound = new BoundConnection(dataSource);
+        boundConnection.set(bound);
+        try {
+            return transactional ? bound.inTransaction(unitOfWork) : unitOfWork.run();
+        } finally {
+            boundConnection.remove();
+            bound.close();
+        }
+    }
+
+    // Connection of the current unit of work, if any
+    private Connection getConnection() throws SQLException {
+        final BoundConnection bound = boundConnection.get();
+        return bound == null ? dataSource.getConnection() : bound.getConnection();
+    }
+
+    // Reads which tolerate replication lag, unless they are about ids written recently (units of work stay on the primary)
+    private boolean canReadFromReplica(final Iterable<UUID> kbIds) {
+        return readReplica != null && boundConnection.get() == null && readReplica.canRead(kbIds);
+    }
+
+    private Connection getConnection(final boolean fromReplica) throws SQLException {
+        return fromReplica ? readReplica.getConnection() : getConnection();
+    }
+
+    private void recordWrites(final UUID... kbIds) {
+        if (readReplica == null) {
+            return;
+        }
+
+        for (final UUID kbId : kbIds) {
+            readReplica.recordWrite(kbId);
+        }
+        // The window starts once committed
+        afterTransaction(new Runnable() {
+            @Override
+            public void run() {
+                for (final UUID kbId : kbIds) {
+                    readReplica.recordWrite(kbId);
+                }
+            }
+        });
+    }
+
+    private boolean isInTransaction() {
+        final BoundConnection bound = boundConnection.get();
+        return bound != null && bound.isTransactional();
+    }
+
+    private void invalidatePaymentMethod(final UUID kbPaymentMethodId, final UUID kbTenantId) {
+        paymentMethodsCache.invalidate(kbPaymentMethodId, kbTenantId);
+        afterTransaction(new Runnable() {
+            @Override
+            public void run() {
+                paymentMethodsCache.invalidate(kbPaymentMethodId, kbTenantId);
+            }
+        });
+    }
+
+    private void invalidateAccountPaymentMethods(final UUID kbAccountId, final UUID kbTenantId) {
+        paymentMethodsCache.invalidateAccount(kbAccountId, kbTenantId);
+        afterTransaction(new Runnable() {
+            @Override
+            public void run() {
+                paymentMethodsCache.invalidateAccount(kbAccountId, kbTenantId);
+            }
+        });
+    }
+
+    // Until the transaction ends, other threads can still read (and cache) the previous rows: invalidate again then
+    private void afterTransaction(final Runnable callback) {
+        final BoundConnection bound = boundConnection.get();
+        if (bound != null && bound.isTransactional()) {
+            bound.afterTransaction(callback);
+        }
+    }
+
+    private static final class BoundConnection {
+
+        private final DataSource dataSource;
+        // Handed out to the DAO calls, which close their connection when done
+        private final Connection unclosableConnection;
+        private final List<Runnable> afterTransactionCallbacks = new LinkedList<Runnable>();
+        // Checked out on first use
+        private Connection connection;
+        private TransactionProvider savepointTransactionProvider;
+        private boolean transactional = false;
+
+        private BoundConnection(final DataSource dataSource) {
+            this.dataSource = dataSource;
+            this.unclosableConnection = (Connection) Proxy.newProxyInstance(AdyenDao.class.getClassLoader(),
+                                                                            new Class<?>[]{Connection.class},
+                                                                            new InvocationHandler() {
+                                                                                @Override
+                                                                                public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                                                                                    if ("close".equals(method.getName())) {
+                                                                                        return null;
+                                                                                    }
+                                                                                    try {
+                                                                                        return method.invoke(connection, args);
+                                                                                    } catch (final InvocationTargetException e) {
+                                                                                        throw e.getCause();
+                                                                                    }
+                                                                                }
+                                                                            });
+        }
+
+        private Connection getConnection() throws SQLException {
+            if (connection == null) {
+                connection = dataSource.getConnection();
+                savepointTransactionProvider = new SavepointTransactionProvider(connection);
+            }
+            return unclosableConnection;
+        }
+
+        private boolean isTransactional() {
+            return transactional;
+        }
+
+        private void afterTransaction(final Runnable callback) {
+            afterTransactionCallbacks.add(callback);
+        }
+
+        private <T, E extends Exception> T inTransaction(final UnitOfWork<T, E> unitOfWork) throws E, SQLException {
+            getConnection();
+            final boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            transactional = true;
+            try {
+                final T result = unitOfWork.run();
+                connection.commit();
+                return result;
+            } catch (final Throwable t) {
+                try {
+                    connection.rollback();
+                } catch (final SQLException e) {
+                    t.addSuppressed(e);
+                }
+                throw t;
+            } finally {
+                transactional = false;
+                try {
+                    connection.setAutoCommit(autoCommit);
+                } finally {
+                    for (final Runnable callback : afterTransactionCallbacks) {
+                        callback.run();
+                    }
+                    afterTransactionCallbacks.clear();
+                }
+            }
+        }
+
+        private void close() throws SQLException {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    // Transactions of the DAO calls, within the transaction of a unit of work
+    private static final class SavepointTransactionProvider implements TransactionProvider {
+
+        private final Connection connection;
+
+        private SavepointTransactionProvider(final Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void begin(final TransactionContext ctx) {
+            try {
+                ctx.transaction(new SavepointTransaction(connection.setSavepoint()));
+            } catch (final SQLException e) {
+                throw new DataAccessException("Unable to set savepoint", e);
+            }
+        }
+
+        @Override
+        public void commit(final TransactionContext ctx) {
+            try {
+                connection.releaseSavepoint(((SavepointTransaction) ctx.transaction()).savepoint);
+            } catch (final SQLException e) {
+                throw new DataAccessException("Unable to release savepoint", e);
+            }
+        }
+
+        @Override
+        public void rollback(final TransactionContext ctx) {
+            try {
+                connection.rollback(((SavepointTransaction) ctx.transaction()).savepoint);
+            } catch (final SQLException e) {
+                throw new DataAccessException("Unable to rollback to savepoint", e);
+            }
+        }
+    }
+
+    private static final class SavepointTransaction implements Transaction {
+
+        private final Savepoint savepoint;
+
+        private SavepointTransaction(final Savepoint savepoint) {
+            this.savepoint = savepoint;
+        }
+    }
+
+    // Payment methods
+
+    @Override
+    public AdyenPaymentMethodsRecord getPaymentMethod(final UUID kbPaymentMethodId, final UUID kbTenantId) throws SQLException {
+        final AdyenPaymentMethodsRecord cached = paymentMethodsCache.get(kbPaymentMethodId, kbTenantId);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Before the read: the row isn't cached if it gets invalidated in the meantime
+        final long cacheGeneration = paymentMethodsCache.getGeneration();
+        final AdyenPaymentMethodsRecord record = execute(getConnection(), "getPaymentMethod",
+                                                         new WithConnectionCallback<AdyenPaymentMethodsRecord>() {
+                                                             @Override
+                                                             public AdyenPaymentMethodsRecord withConnection(final Connection conn) throws SQLException {
+                                                                 return using(conn).selectFrom(ADYEN_PAYMENT_METHODS)
+                                                                                   .where(ADYEN_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID.equal(kbPaymentMethodId.toString()))
+                                                                                   .and(ADYEN_PAYMENT_METHODS.IS_DELETED.equal(FALSE))
+                                                                                   .and(ADYEN_PAYMENT_METHODS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                                                                   .orderBy(ADYEN_PAYMENT_METHODS.RECORD_ID.desc())
+                                                                                   .fetchOne();
+                                                             }
+                                                         });
+        // Uncommitted rows aren't visible to the other threads
+        if (record != null && !isInTransaction()) {
+            paymentMethodsCache.put(kbPaymentMethodId, kbTenantId, record, cacheGeneration);
+        }
+        return record;
+    }
+
+    @Override
+    public List<AdyenPaymentMethodsRecord> getPaymentMethods(final UUID kbAccountId, final UUID kbTenantId) throws SQLException {
+        final WithConnectionCallback<List<AdyenPaymentMethodsRecord>> callback = new WithConnectionCallback<List<AdyenPaymentMethodsRecord>>() {
+            @Override
+            public List<AdyenPaymentMethodsRecord> withConnection(final Connection conn) throws SQLException {
+                return using(conn).selectFrom(ADYEN_PAYMENT_METHODS)
+                                  .where(ADYEN_PAYMENT_METHODS.KB_ACCOUNT_ID.equal(kbAccountId.toString()))
+                                  .and(ADYEN_PAYMENT_METHODS.IS_DELETED.equal(FALSE))
+                                  .and(ADYEN_PAYMENT_METHODS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                  .orderBy(ADYEN_PAYMENT_METHODS.RECORD_ID.asc())
+                                  .fetch();
+            }
+        };
+        if (readReplica == null || boundConnection.get() != null) {
+            return execute(getConnection(), "getPaymentMethods", callback);
+        }
+
+        // Deletions and token updates are only recorded by payment method: they are checked once read, for a single
+        // decision
+        List<AdyenPaymentMethodsRecord> records = null;
+        boolean fromReplica = !readReplica.isRecentlyWritten(ImmutableList.<UUID>of(kbAccountId));
+        if (fromReplica) {
+            records = execute(readReplica.getConnection(), "getPaymentMethods", callback);
+            final List<UUID> kbPaymentMethodIds = new ArrayList<UUID>(records.size());
+            for (final AdyenPaymentMethodsRecord record : records) {
+                kbPaymentMethodIds.add(UUID.fromString(record.getKbPaymentMethodId()));
+            }
+            fromReplica = !readReplica.isRecentlyWritten(kbPaymentMethodIds);
+        }
+        readReplica.recordRead(fromReplica);
+        return fromReplica ? records : execute(getConnection(), "getPaymentMethods", callback);
+    }
+
+    @Override
+    public void addPaymentMethod(final UUID kbAccountId, final UUID kbPaymentMethodId, final boolean isDefault, final Map<String, String> properties, final DateTime utcNow, final UUID kbTenantId) throws SQLException {
+        // Known values are extracted, the others become additional data
+        final Map<String, String> clonedProperties = new HashMap<String, String>(properties);
+        final String ccNumber = clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_CC_NUMBER);
+
+        final AdyenPaymentMethodsRecord record = new AdyenPaymentMethodsRecord();
+        record.setKbAccountId(kbAccountId.toString());
+        record.setKbPaymentMethodId(kbPaymentMethodId.toString());
+        record.setToken(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_TOKEN));
+        record.setCcFirstName(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_CC_FIRST_NAME));
+        record.setCcLastName(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_CC_LAST_NAME));
+        record.setCcType(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_CC_TYPE));
+        record.setCcExpMonth(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_CC_EXPIRATION_MONTH));
+        record.setCcExpYear(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_CC_EXPIRATION_YEAR));
+        record.setCcNumber(ccNumber);
+        record.setCcLast_4(ccNumber == null ? null : ccNumber.substring(ccNumber.length() - 4, ccNumber.length()));
+        record.setCcStartMonth(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_CC_START_MONTH));
+        record.setCcStartYear(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_CC_START_YEAR));
+        record.setCcIssueNumber(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_CC_ISSUE_NUMBER));
+        record.setCcVerificationValue(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_CC_VERIFICATION_VALUE));
+        record.setCcTrackData(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_CC_TRACK_DATA));
+        record.setAddress1(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_ADDRESS1));
+        record.setAddress2(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_ADDRESS2));
+        record.setCity(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_CITY));
+        record.setState(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_STATE));
+        record.setZip(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_ZIP));
+        record.setCountry(clonedProperties.remove(PluginPaymentPluginApi.PROPERTY_COUNTRY));
+        record.setIsDefault(fromBoolean(isDefault));
+        record.setIsDeleted(FALSE);
+        record.setAdditionalData(asString(clonedProperties));
+        record.setCreatedDate(toTimestamp(utcNow));
+        record.setUpdatedDate(toTimestamp(utcNow));
+        record.setKbTenantId(kbTenantId.toString());
+
+        try {
+            execute(getConnection(), "addPaymentMethod",
+                    new WithConnectionCallback<Void>() {
+                        @Override
+                        public Void withConnection(final Connection conn) throws SQLException {
+                            using(conn).executeInsert(record);
+                            return null;
+                        }
+                    });
+        } finally {
+            invalidatePaymentMethod(kbPaymentMethodId, kbTenantId);
+            recordWrites(kbAccountId, kbPaymentMethodId);
+        }
+    }
+
+    @Override
+    public void deletePaymentMethod(final UUID kbPaymentMethodId, final DateTime utcNow, final UUID kbTenantId) throws SQLException {
+        try {
+            execute(getConnection(), "deletePaymentMethod",
+                    new WithConnectionCallback<Void>() {
+                        @Override
+                        public Void withConnection(final Connection conn) throws SQLException {
+                            using(conn).update(ADYEN_PAYMENT_METHODS)
+                                       .set(ADYEN_PAYMENT_METHODS.IS_DELETED, TRUE)
+                                       .set(ADYEN_PAYMENT_METHODS.UPDATED_DATE, toTimestamp(utcNow))
+                                       .where(ADYEN_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID.equal(kbPaymentMethodId.toString()))
+                                       .and(ADYEN_PAYMENT_METHODS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                       .execute();
+                            return null;
+                        }
+                    });
+        } finally {
+            invalidatePaymentMethod(kbPaymentMethodId, kbTenantId);
+            recordWrites(kbPaymentMethodId);
+        }
+    }
+
+    @Override
+    public void setDefaultPaymentMethod(final UUID kbAccountId, final UUID kbPaymentMethodId, final DateTime utcNow, final UUID kbTenantId) throws SQLException {
+        try {
+            execute(getConnection(), "setDefaultPaymentMethod",
+                    new WithConnectionCallback<Void>() {
+                        @Override
+                        public Void withConnection(final Connection conn) throws SQLException {
+                            using(conn).transaction(new TransactionalRunnable() {
+                                @Override
+                                public void run(final Configuration configuration) {
+                                    final DSLContext context = DSL.using(configuration);
+                                    context.update(ADYEN_PAYMENT_METHODS)
+                                           .set(ADYEN_PAYMENT_METHODS.IS_DEFAULT, FALSE)
+                                           .set(ADYEN_PAYMENT_METHODS.UPDATED_DATE, toTimestamp(utcNow))
+                                           .where(ADYEN_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID.notEqual(kbPaymentMethodId.toString()))
+                                           .and(ADYEN_PAYMENT_METHODS.KB_ACCOUNT_ID.equal(kbAccountId.toString()))
+                                           .and(ADYEN_PAYMENT_METHODS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                           .execute();
+                                    context.update(ADYEN_PAYMENT_METHODS)
+                                           .set(ADYEN_PAYMENT_METHODS.IS_DEFAULT, TRUE)
+                                           .set(ADYEN_PAYMENT_METHODS.UPDATED_DATE, toTimestamp(utcNow))
+                                           .where(ADYEN_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID.equal(kbPaymentMethodId.toString()))
+                                           .and(ADYEN_PAYMENT_METHODS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                           .execute();
+                                }
+                            });
+                            return null;
+                        }
+                    });
+        } finally {
+            // The is_default flag of all the payment methods of the account changes
+            invalidateAccountPaymentMethods(kbAccountId, kbTenantId);
+            recordWrites(kbAccountId);
+        }
+    }
+
+    public void setPaymentMethodToken(final String kbPaymentMethodId, final String token, final String kbTenantId) throws SQLException {
+        execute(getConnection(), "setPaymentMethodToken",
+                new WithConnectionCallback<AdyenResponsesRecord>() {
+                    @Override
+                    public AdyenResponsesRecord withConnection(final Connection conn) throws SQLException {
+                        using(conn)
+                           .update(ADYEN_PAYMENT_METHODS)
+                           .set(ADYEN_PAYMENT_METHODS.TOKEN, token)
+                           .where(ADYEN_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID.equal(kbPaymentMethodId))
+                           .and(ADYEN_PAYMENT_METHODS.KB_TENANT_ID.equal(kbTenantId))
+                           .and(ADYEN_PAYMENT_METHODS.IS_DELETED.equal(FALSE))
+                           .execute();
+                        return null;
+                    }
+                });
+        invalidatePaymentMethod(UUID.fromString(kbPaymentMethodId), UUID.fromString(kbTenantId));
+        recordWrites(UUID.fromString(kbPaymentMethodId));
+    }
+
+    /**
+     * Set the tokens of several payment methods at once (single JDBC batch)
+     *
+     * @param tokensByKbPaymentMethodId new tokens, by Kill Bill payment method id
+     * @param kbTenantId                Kill Bill tenant id
+     * @throws SQLException For any unexpected SQL error
+     */
+    public void setPaymentMethodTokens(final Map<String, String> tokensByKbPaymentMethodId, final String kbTenantId) throws SQLException {
+        if (tokensByKbPaymentMethodId.isEmpty()) {
+            return;
+        }
+
+        try {
+            execute(getConnection(), "setPaymentMethodTokens",
+                    new WithConnectionCallback<Void>() {
+                        @Override
+                        public Void withConnection(final Connection conn) throws SQLException {
+                            final DSLContext context = using(conn);
+                            final BatchBindStep batch = context.batch(context.update(ADYEN_PAYMENT_METHODS)
+                                                                             .set(ADYEN_PAYMENT_METHODS.TOKEN, (String) null)
+                                                                             .where(ADYEN_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID.equal((String) null))
+                                                                             .and(ADYEN_PAYMENT_METHODS.KB_TENANT_ID.equal(kbTenantId))
+                                                                             .and(ADYEN_PAYMENT_METHODS.IS_DELETED.equal(FALSE)));
+                            for (final Map.Entry<String, String> token : tokensByKbPaymentMethodId.entrySet()) {
+                                batch.bind(token.getValue(), token.getKey(), kbTenantId, FALSE);
+                            }
+                            batch.execute();
+                            return null;
+                        }
+                    });
+        } finally {
+            for (final String kbPaymentMethodId : tokensByKbPaymentMethodId.keySet()) {
+                invalidatePaymentMethod(UUID.fromString(kbPaymentMethodId), UUID.fromString(kbTenantId));
+                recordWrites(UUID.fromString(kbPaymentMethodId));
+            }
+        }
+    }
+
+    // HPP requests
+
+    public AdyenHppRequestsRecord addHppRequest(final UUID kbAccountId,
+                                                @Nullable final UUID kbPaymentId,
+                                                @Nullable final UUID kbPaymentTransactionId,
+                                                final String transactionExternalKey,
+                                                final Map additionalDataMap,
+                                                final DateTime utcNow,
+                                                final UUID kbTenantId) throws SQLException {
+        final String additionalData = asString(additionalDataMap);
+
+        final AdyenHppRequestsRecord hppRequest = execute(getConnection(), "addHppRequest",
+                                                          new WithConnectionCallback<AdyenHppRequestsRecord>() {
+                                                              @Override
+                                                              public AdyenHppRequestsRecord withConnection(final Connection conn) throws SQLException {
+                                                                  final AdyenHppRequestsRecord record = using(conn).newRecord(ADYEN_HPP_REQUESTS);
+                                                                  record.setKbAccountId(kbAccountId.toString());
+                                                                  record.setKbPaymentId(kbPaymentId != null ? kbPaymentId.toString() : null);
+                                                                  record.setKbPaymentTransactionId(kbPaymentTransactionId != null ? kbPaymentTransactionId.toString() : null);
+                                                                  record.setTransactionExternalKey(transactionExternalKey);
+                                                                  record.setAdditionalData(additionalData);
+                                                                  record.setCreatedDate(toTimestamp(utcNow));
+                                                                  record.setKbTenantId(kbTenantId.toString());
+                                                                  setIndexedColumns(record, additionalDataMap);
+                                                                  return insert(conn, ADYEN_HPP_REQUESTS.getIdentity(), record);
+                                                              }
+                                                          });
+        recordWrites(kbPaymentId);
+        return hppRequest;
+    }
+
+    public AdyenHppRequestsRecord getHppRequest(final String merchantReference) throws SQLException {
+        return execute(getConnection(), "getHppRequest",
+                       new WithConnectionCallback<AdyenHppRequestsRecord>() {
+                           @Override
+                           public AdyenHppRequestsRecord withConnection(final Connection conn) throws SQLException {
+                               return using(conn)
+                                         .selectFrom(ADYEN_HPP_REQUESTS)
+                                         .where(ADYEN_HPP_REQUESTS.TRANSACTION_EXTERNAL_KEY.equal(merchantReference))
+                                         .orderBy(ADYEN_HPP_REQUESTS.RECORD_ID.desc())
+                                         .limit(1)
+                                         .fetchOne();
+                           }
+                       });
+    }
+
+    public AdyenHppRequestsRecord getHppRequest(final UUID kbPaymentTransactionId) throws SQLException {
+        return execute(getConnection(), "getHppRequest",
+                       new WithConnectionCallback<AdyenHppRequestsRecord>() {
+                           @Override
+                           public AdyenHppRequestsRecord withConnection(final Connection conn) throws SQLException {
+                               return using(conn)
+                                         .selectFrom(ADYEN_HPP_REQUESTS)
+                                         .where(ADYEN_HPP_REQUESTS.KB_PAYMENT_TRANSACTION_ID.equal(kbPaymentTransactionId.toString()))
+                                         .orderBy(ADYEN_HPP_REQUESTS.RECORD_ID.desc())
+                                         .limit(1)
+                                         .fetchOne();
+                           }
+                       });
+    }
+
+    // Responses
+
+    public AdyenResponsesRecord addResponse(final UUID kbAccountId,
+                                            final UUID kbPaymentId,
+                                            final UUID kbPaymentTransactionId,
+                                            final TransactionType transactionType,
+                                            final BigDecimal amount,
+                                            final Currency currency,
+                                            final PurchaseResult result,
+                                            final DateTime utcNow,
+                                            final UUID kbTenantId) throws SQLException {
+        final String dccAmountValue = getProperty(AdyenPaymentPluginApi.PROPERTY_DCC_AMOUNT_VALUE, result);
+        final Map<String, String> additionalDataMap = getAdditionalDataMap(result);
+        final String additionalData = additionalDataMap.isEmpty() ? null : asString(additionalDataMap);
+
+        final AdyenResponsesRecord response = execute(getConnection(), "addResponse",
+                                                      new WithConnectionCallback<AdyenResponsesRecord>() {
+                                                          @Override
+                                                          public AdyenResponsesRecord withConnection(final Connection conn) throws SQLException {
+                                                              final AdyenResponsesRecord record = using(conn).newRecord(ADYEN_RESPONSES);
+                                                              record.setKbAccountId(kbAccountId.toString());
+                                                              record.setKbPaymentId(kbPaymentId.toString());
+                                                              record.setKbPaymentTransactionId(kbPaymentTransactionId.toString());
+                                                              record.setTransactionType(transactionType.toString());
+                                                              record.setAmount(amount);
+                                                              record.setCurrency(currency == null ? null : currency.toString());
+                                                              record.setPspResult(result.getResult().isPresent() ? result.getResult().get().toString() : null);
+                                                              record.setPspReference(result.getPspReference());
+                                                              record.setAuthCode(result.getAuthCode());
+                                                              record.setResultCode(result.getResultCode());
+                                                              record.setRefusalReason(result.getReason());
+                                                              record.setReference(result.getReference());
+                                                              record.setPspErrorCodes(null);
+                                                              record.setPaymentInternalRef(result.getPaymentTransactionExternalKey());
+                                                              record.setFormUrl(result.getFormUrl());
+                                                              record.setDccAmount(dccAmountValue == null ? null : new BigDecimal(dccAmountValue));
+                                                              record.setDccCurrency(getProperty(AdyenPaymentPluginApi.PROPERTY_DCC_AMOUNT_CURRENCY, result));
+                                                              record.setDccSignature(getProperty(AdyenPaymentPluginApi.PROPERTY_DCC_SIGNATURE, result));
+                                                              record.setIssuerUrl(getProperty(AdyenPaymentPluginApi.PROPERTY_ISSUER_URL, result));
+                                                              record.setMd(getProperty(AdyenPaymentPluginApi.PROPERTY_MD, result));
+                                                              record.setPaRequest(getProperty(AdyenPaymentPluginApi.PROPERTY_PA_REQ, result));
+                                                              record.setAdditionalData(additionalData);
+                                                              record.setCreatedDate(toTimestamp(utcNow));
+                                                              record.setKbTenantId(kbTenantId.toString());
+                                                              setIndexedColumns(record, additionalDataMap);
+                                                              return insert(conn, ADYEN_RESPONSES.getIdentity(), record);
+                                                          }
+                                                      });
+        recordWrites(kbPaymentId);
+        return response;
+    }
+
+    public AdyenResponsesRecord addResponse(final UUID kbAccountId,
+                                            final UUID kbPaymentId,
+                                            final UUID kbPaymentTransactionId,
+                                            final TransactionType transactionType,
+                                            @Nullable final BigDecimal amount,
+                                            @Nullable final Currency currency,
+                                            final PaymentModificationResponse result,
+                                            final DateTime utcNow,
+                                            final UUID kbTenantId) throws SQLException {
+        final String dccAmountValue = getProperty(AdyenPaymentPluginApi.PROPERTY_DCC_AMOUNT_VALUE, result);
+        final String additionalData = getAdditionalData(result);
+
+        final AdyenResponsesRecord response = execute(getConnection(), "addResponse",
+                                                      new WithConnectionCallback<AdyenResponsesRecord>() {
+                                                          @Override
+                                                          public AdyenResponsesRecord withConnection(final Connection conn) throws SQLException {
+                                                              final AdyenResponsesRecord record = using(conn).newRecord(ADYEN_RESPONSES);
+                                                              record.setKbAccountId(kbAccountId.toString());
+                                                              record.setKbPaymentId(kbPaymentId.toString());
+                                                              record.setKbPaymentTransactionId(kbPaymentTransactionId.toString());
+                                                              record.setTransactionType(transactionType.toString());
+                                                              record.setAmount(amount);
+                                                              record.setCurrency(currency == null ? null : currency.toString());
+                                                              record.setPspResult(result.getResponse());
+                                                              record.setPspReference(result.getPspReference());
+                                                              record.setDccAmount(dccAmountValue == null ? null : new BigDecimal(dccAmountValue));
+                                                              record.setDccCurrency(getProperty(AdyenPaymentPluginApi.PROPERTY_DCC_AMOUNT_CURRENCY, result));
+                                                              record.setDccSignature(getProperty(AdyenPaymentPluginApi.PROPERTY_DCC_SIGNATURE, result));
+                                                              record.setIssuerUrl(getProperty(AdyenPaymentPluginApi.PROPERTY_ISSUER_URL, result));
+                                                              record.setMd(getProperty(AdyenPaymentPluginApi.PROPERTY_MD, result));
+                                                              record.setPaRequest(getProperty(AdyenPaymentPluginApi.PROPERTY_PA_REQ, result));
+                                                              record.setAdditionalData(additionalData);
+                                                              record.setCreatedDate(toTimestamp(utcNow));
+                                                              record.setKbTenantId(kbTenantId.toString());
+                                                              setIndexedColumns(record, result.getAdditionalData());
+                                                              return insert(conn, ADYEN_RESPONSES.getIdentity(), record);
+                                                          }
+                                                      });
+        recordWrites(kbPaymentId);
+        return response;
+    }
+
+    public AdyenResponsesRecord updateResponse(final UUID kbPaymentTransactionId, final Iterable<PluginProperty> additionalPluginProperties, final UUID kbTenantId) throws SQLException {
+        return updateResponse(kbPaymentTransactionId, null, additionalPluginProperties, kbTenantId);
+    }
+
+    /**
+     * @param includeArchived false if the transaction cannot have been archived (e.g. an initial transaction being
+     *                        processed, which is either new or being completed): adyen_responses_archive isn't looked at
+     * @see #updateResponse(UUID, PaymentServiceProviderResult, Iterable, UUID)
+     */
+    public AdyenResponsesRecord updateResponse(final UUID kbPaymentTransactionId, final Iterable<PluginProperty> additionalPluginProperties, final UUID kbTenantId, final boolean includeArchived) throws SQLException {
+        return updateResponse(kbPaymentTransactionId, null, additionalPluginProperties, kbTenantId, includeArchived);
+    }
+
+    /**
+     * Update the PSP reference and additional data of the latest response row for a payment transaction
+     * <p/>
+     * The row is read and updated in a single transaction, the update being conditional on the row not having changed
+     * since it was read (optimistic concurrency): on conflict, e.g. with a notification for the same transaction
+     * processed concurrently, the merge is retried against the latest version of the row.
+     *
+     * @param kbPaymentTransactionId       Kill Bill payment transaction id
+     * @param paymentServiceProviderResult New PSP result (null if unchanged)
+     * @param additionalPluginProperties   Latest properties
+     * @param kbTenantId                   Kill Bill tenant id
+     * @return the latest version of the response row, null if one couldn't be found
+     * @throws SQLException For any unexpected SQL error, or if the row kept being modified concurrently
+     */
+    public AdyenResponsesRecord updateResponse(final UUID kbPaymentTransactionId, @Nullable final PaymentServiceProviderResult paymentServiceProviderResult, final Iterable<PluginProperty> additionalPluginProperties, final UUID kbTenantId) throws SQLException {
+        return updateResponse(kbPaymentTransactionId, paymentServiceProviderResult, additionalPluginProperties, kbTenantId, true);
+    }
+
+    private AdyenResponsesRecord updateResponse(final UUID kbPaymentTransactionId, @Nullable final PaymentServiceProviderResult paymentServiceProviderResult, final Iterable<PluginProperty> additionalPluginProperties, final UUID kbTenantId, final boolean includeArchived) throws SQLException {
+        final Map<String, Object> additionalProperties = PluginProperties.toMap(additionalPluginProperties);
+        final String pspReference = getProperty(PROPERTY_PSP_REFERENCE, additionalProperties);
+        final String pspResult = paymentServiceProviderResult == null ? null : paymentServiceProviderResult.toString();
+
+        final AdyenResponsesRecord response = execute(getConnection(), "updateResponse",
+                                                      new WithConnectionCallback<AdyenResponsesRecord>() {
+                                                          @Override
+                                                          public AdyenResponsesRecord withConnection(final Connection conn) throws SQLException {
+                                                              DataChangedException lastConflict = null;
+                                                              for (int attempt = 0; attempt < MAX_UPDATE_RESPONSE_ATTEMPTS; attempt++) {
+                                                                  try {
+                                                                      // New transaction for each attempt, to see the concurrent changes (REPEATABLE READ)
+                                                                      return using(conn)
+                                                                                .transactionResult(new TransactionalCallable<AdyenResponsesRecord>() {
+                                                                                    @Override
+                                                                                    public AdyenResponsesRecord run(final Configuration configuration) throws SQLException {
+                                                                                        return compareAndSetResponse(DSL.using(configuration), kbPaymentTransactionId, pspReference, pspResult, additionalProperties, kbTenantId, includeArchived);
+                                                                                    }
+                                                                                });
+                                                                  } catch (final DataChangedException e) {
+                                                                      lastConflict = e;
+                                                                  }
+                                                              }
+                                                              throw new SQLException("Unable to update the response for kbPaymentTransactionId " + kbPaymentTransactionId + " after " + MAX_UPDATE_RESPONSE_ATTEMPTS + " attempts", lastConflict);
+                                                          }
+                                                      });
+        if (response != null) {
+            recordWrites(UUID.fromString(response.getKbPaymentId()));
+        }
+        return response;
+    }
+
+    private AdyenResponsesRecord compareAndSetResponse(final DSLContext context,
+                                                       final UUID kbPaymentTransactionId,
+                                                       @Nullable final String pspReference,
+                                                       @Nullable final String pspResult,
+                                                       final Map<String, Object> additionalProperties,
+                                                       final UUID kbTenantId,
+                                                       final boolean includeArchived) throws SQLException {
+        AdyenResponsesRecord response = getLatestResponse(context, kbPaymentTransactionId, kbTenantId);
+        if (response == null) {
+            if (!includeArchived) {
+                return null;
+            }
+
+            // The payment may have been archived: bring it back, as it is active again
+            restoreResponses(context, kbPaymentTransactionId, kbTenantId);
+            response = getLatestResponse(context, kbPaymentTransactionId, kbTenantId);
+            if (response == null) {
+                return null;
+            }
+        }
+
+        final Map originalData = new HashMap(fromAdditionalData(response.getAdditionalData()));
+        originalData.putAll(additionalProperties);
+        if (pspReference != null) {
+            // If there is a PSP reference, the call went eventually to Adyen. Remove exceptions
+            originalData.remove(ADYEN_CALL_ERROR_STATUS);
+            originalData.remove(EXCEPTION_CLASS);
+            originalData.remove(EXCEPTION_MESSAGE);
+        }
+        final String mergedAdditionalData = asString(originalData);
+
+        final AdyenResponsesRecord changes = context.newRecord(ADYEN_RESPONSES);
+        changes.setPspReference(pspReference);
+        changes.setAdditionalData(mergedAdditionalData);
+        if (pspResult != null) {
+            changes.setPspResult(pspResult);
+        }
+        setIndexedColumns(changes, originalData);
+
+        // Compare-and-set on the columns we merged into
+        final int updated = context.update(ADYEN_RESPONSES)
+                                   .set(changes)
+                                   .where(ADYEN_RESPONSES.RECORD_ID.equal(response.getRecordId()))
+                                   .and(ADYEN_RESPONSES.PSP_REFERENCE.isNotDistinctFrom(response.getPspReference()))
+                                   .and(ADYEN_RESPONSES.PSP_RESULT.isNotDistinctFrom(response.getPspResult()))
+                                   .and(ADYEN_RESPONSES.ADDITIONAL_DATA.isNotDistinctFrom(response.getAdditionalData()))
+                                   .execute();
+        if (updated != 1) {
+            throw new DataChangedException("Response " + response.getRecordId() + " was modified concurrently");
+        }
+
+        // No need to re-read the row: we know what it contains now
+        response.setPspReference(pspReference);
+        response.setAdditionalData(mergedAdditionalData);
+        if (pspResult != null) {
+            response.setPspResult(pspResult);
+        }
+        setIndexedColumns(response, originalData);
+        response.changed(false);
+        return response;
+    }
+
+    private AdyenResponsesRecord getLatestResponse(final DSLContext context, final UUID kbPaymentTransactionId, final UUID kbTenantId) {
+        return context.selectFrom(ADYEN_RESPONSES)
+                      .where(ADYEN_RESPONSES.KB_PAYMENT_TRANSACTION_ID.equal(kbPaymentTransactionId.toString()))
+                      .and(ADYEN_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
+                      .orderBy(ADYEN_RESPONSES.RECORD_ID.desc())
+                      .limit(1)
+                      .fetchOne();
+    }
+
+    // Live responses only: the archive is a second query, which would be run for every new payment
+    @Override
+    public List<AdyenResponsesRecord> getResponses(final UUID kbPaymentId, final UUID kbTenantId) throws SQLException {
+        return getResponses(kbPaymentId, kbTenantId, false);
+    }
+
+    /**
+     * @param kbPaymentId     Kill Bill payment id
+     * @param kbTenantId      Kill Bill tenant id
+     * @param includeArchived whether to look at adyen_responses_archive if the payment has no initial response in
+     *                        adyen_responses
+     * @return the responses of the payment (see trimResponses)
+     * @throws SQLException For any unexpected SQL error
+     */
+    public List<AdyenResponsesRecord> getResponses(final UUID kbPaymentId, final UUID kbTenantId, final boolean includeArchived) throws SQLException {
+        List<AdyenResponsesRecord> allResponses = execute(getConnection(), "getResponses",
+                                                          new WithConnectionCallback<List<AdyenResponsesRecord>>() {
+                                                              @Override
+                                                              public List<AdyenResponsesRecord> withConnection(final Connection conn) throws SQLException {
+                                                                  return using(conn).selectFrom(ADYEN_RESPONSES)
+                                                                                    .where(ADYEN_RESPONSES.KB_PAYMENT_ID.equal(kbPaymentId.toString()))
+                                                                                    .and(ADYEN_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                                                                    .orderBy(ADYEN_RESPONSES.RECORD_ID.asc())
+                                                                                    .fetch();
+                                                              }
+                                                          });
+        if (includeArchived && !hasInitialResponse(allResponses)) {
+            // Archived payment (possibly with new responses since)
+            allResponses = new ArrayList<AdyenResponsesRecord>(allResponses);
+            allResponses.addAll(getArchivedResponses(ADYEN_RESPONSES_ARCHIVE_KB_PAYMENT_ID.equal(kbPaymentId.toString())
+                                                                                          .and(ADYEN_RESPONSES_ARCHIVE_KB_TENANT_ID.equal(kbTenantId.toString()))));
+            Collections.sort(allResponses, RECORD_ID_ORDERING);
+        }
+
+        return trimResponses(allResponses);
+    }
+
+    private static List<AdyenResponsesRecord> trimResponses(final List<AdyenResponsesRecord> allResponses) {
+        final List<AdyenResponsesRecord> responses = new LinkedList<AdyenResponsesRecord>();
+        for (final AdyenResponsesRecord adyenResponsesRecord : Lists.<AdyenResponsesRecord>reverse(allResponses)) {
+            responses.add(adyenResponsesRecord);
+
+            // Keep only the completion row for 3D-S
+            if (TransactionType.AUTHORIZE.toString().equals(adyenResponsesRecord.getTransactionType())) {
+                break;
+            }
+        }
+        return Lists.<AdyenResponsesRecord>reverse(responses);
+    }
+
+    public List<ResponseWithHppRequest> getResponsesWithHppRequests(final UUID kbPaymentId, final UUID kbTenantId) throws SQLException {
+        final List<ResponseWithHppRequest> responses = getResponsesWithHppRequests(ImmutableList.<UUID>of(kbPaymentId), kbTenantId).get(kbPaymentId);
+        return responses == null ? ImmutableList.<ResponseWithHppRequest>of() : responses;
+    }
+
+    /**
+     * Responses of payments (see getResponses), each with the latest HPP request of its payment transaction
+     * <p/>
+     * Responses and HPP requests are loaded by a single query, regardless of the number of payments and
+     * transactions (two more are needed when some of the payments have been archived).
+     *
+     * @param kbPaymentIds Kill Bill payment ids
+     * @param kbTenantId   Kill Bill tenant id
+     * @return the responses by payment id (payments without any response are left out)
+     * @throws SQLException For any unexpected SQL error
+     */
+    public Map<UUID, List<ResponseWithHppRequest>> getResponsesWithHppRequests(final Collection<UUID> kbPaymentIds, final UUID kbTenantId) throws SQLException {
+        if (kbPaymentIds.isEmpty()) {
+            return ImmutableMap.<UUID, List<ResponseWithHppRequest>>of();
+        }
+
+        final Map<String, List<AdyenResponsesRecord>> responsesByPaymentId = new HashMap<String, List<AdyenResponsesRecord>>();
+        final Map<String, AdyenHppRequestsRecord> hppRequestsByTransactionId = new HashMap<String, AdyenHppRequestsRecord>();
+        // All queries go to the same database
+        final boolean fromReplica = canReadFromReplica(kbPaymentIds);
+        execute(getConnection(fromReplica), "getResponsesWithHppRequests",
+                new WithConnectionCallback<Void>() {
+                    @Override
+                    public Void withConnection(final Connection conn) throws SQLException {
+                        final Result<Record> records = using(conn)
+                                                          .select(ADYEN_RESPONSES.fields())
+                                                          .select(ADYEN_HPP_REQUESTS.fields())
+                                                          .from(ADYEN_RESPONSES)
+                                                          .leftOuterJoin(ADYEN_HPP_REQUESTS).on(ADYEN_HPP_REQUESTS.KB_PAYMENT_TRANSACTION_ID.equal(ADYEN_RESPONSES.KB_PAYMENT_TRANSACTION_ID))
+                                                          .where(ADYEN_RESPONSES.KB_PAYMENT_ID.in(toStrings(kbPaymentIds)))
+                                                          .and(ADYEN_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                                          .orderBy(ADYEN_RESPONSES.RECORD_ID, ADYEN_HPP_REQUESTS.RECORD_ID)
+                                                          .fetch();
+
+                        UInteger previousRecordId = null;
+                        for (final Record record : records) {
+                            final AdyenResponsesRecord response = record.into(ADYEN_RESPONSES);
+                            // A response is repeated for each HPP request of its transaction: the latest one comes last
+                            if (!response.getRecordId().equals(previousRecordId)) {
+                                response.changed(false);
+                                addResponse(responsesByPaymentId, response);
+                                previousRecordId = response.getRecordId();
+                            }
+                            if (record.get(ADYEN_HPP_REQUESTS.RECORD_ID) != null) {
+                                final AdyenHppRequestsRecord hppRequest = record.into(ADYEN_HPP_REQUESTS);
+                                hppRequest.changed(false);
+                                hppRequestsByTransactionId.put(hppRequest.getKbPaymentTransactionId(), hppRequest);
+                            }
+                        }
+                        return null;
+                    }
+                });
+
+        final Set<String> archivedKbPaymentIds = new HashSet<String>();
+        for (final UUID kbPaymentId : kbPaymentIds) {
+            final List<AdyenResponsesRecord> responses = responsesByPaymentId.get(kbPaymentId.toString());
+            if (responses == null || !hasInitialResponse(responses)) {
+                archivedKbPaymentIds.add(kbPaymentId.toString());
+            }
+        }
+        if (!archivedKbPaymentIds.isEmpty()) {
+            // Archived payments (possibly with new responses since)
+            final Set<String> archivedKbPaymentTransactionIds = new HashSet<String>();
+            for (final AdyenResponsesRecord response : getArchivedResponses(fromReplica,
+                                                                            ADYEN_RESPONSES_ARCHIVE_KB_PAYMENT_ID.in(archivedKbPaymentIds)
+                                                                                                                 .and(ADYEN_RESPONSES_ARCHIVE_KB_TENANT_ID.equal(kbTenantId.toString())))) {
+                addResponse(responsesByPaymentId, response);
+                archivedKbPaymentTransactionIds.add(response.getKbPaymentTransactionId());
+            }
+            for (final String kbPaymentId : archivedKbPaymentIds) {
+                final List<AdyenResponsesRecord> responses = responsesByPaymentId.get(kbPaymentId);
+                if (responses != null) {
+                    Collections.sort(responses, RECORD_ID_ORDERING);
+                }
+            }
+            hppRequestsByTransactionId.putAll(getHppRequests(fromReplica, archivedKbPaymentTransactionIds));
+        }
+
+        final Map<UUID, List<ResponseWithHppRequest>> responsesWithHppRequests = new HashMap<UUID, List<ResponseWithHppRequest>>();
+        for (final Map.Entry<String, List<AdyenResponsesRecord>> entry : responsesByPaymentId.entrySet()) {
+            final List<ResponseWithHppRequest> responses = new ArrayList<ResponseWithHppRequest>();
+            for (final AdyenResponsesRecord response : trimResponses(entry.getValue())) {
+                responses.add(new ResponseWithHppRequest(response, hppRequestsByTransactionId.get(response.getKbPaymentTransactionId())));
+            }
+            responsesWithHppRequests.put(UUID.fromString(entry.getKey()), responses);
+        }
+        return responsesWithHppRequests;
+    }
+
+    private static void addResponse(final Map<String, List<AdyenResponsesRecord>> responsesByPaymentId, final AdyenResponsesRecord response) {
+        List<AdyenResponsesRecord> responses = responsesByPaymentId.get(response.getKbPaymentId());
+        if (responses == null) {
+            responses = new ArrayList<AdyenResponsesRecord>();
+            responsesByPaymentId.put(response.getKbPaymentId(), responses);
+        }
+        responses.add(response);
+    }
+
+    // Latest HPP request of each payment transaction
+    private Map<String, AdyenHppRequestsRecord> getHppRequests(final boolean fromReplica, final Collection<String> kbPaymentTransactionIds) throws SQLException {
+        if (kbPaymentTransactionIds.isEmpty()) {
+            return ImmutableMap.<String, AdyenHppRequestsRecord>of();
+        }
+
+        return execute(getConnection(fromReplica), "getHppRequests",
+                       new WithConnectionCallback<Map<String, AdyenHppRequestsRecord>>() {
+                           @Override
+                           public Map<String, AdyenHppRequestsRecord> withConnection(final Connection conn) throws SQLException {
+                               final Map<String, AdyenHppRequestsRecord> hppRequests = new HashMap<String, AdyenHppRequestsRecord>();
+                               for (final AdyenHppRequestsRecord hppRequest : using(conn)
+                                                                                 .selectFrom(ADYEN_HPP_REQUESTS)
+                                                                                 .where(ADYEN_HPP_REQUESTS.KB_PAYMENT_TRANSACTION_ID.in(kbPaymentTransactionIds))
+                                                                                 .orderBy(ADYEN_HPP_REQUESTS.RECORD_ID)
+                                                                                 .fetch()) {
+                                   hppRequests.put(hppRequest.getKbPaymentTransactionId(), hppRequest);
+                               }
+                               return hppRequests;
+                           }
+                       });
+    }
+
+    private static List<String> toStrings(final Collection<UUID> uuids) {
+        final List<String> strings = new ArrayList<String>(uuids.size());
+        for (final UUID uuid : uuids) {
+            strings.add(uuid.toString());
+        }
+        return strings;
+    }
+
+    // Assumes that the last auth was successful
+    @Override
+    public AdyenResponsesRecord getSuccessfulAuthorizationResponse(final UUID kbPaymentId, final UUID kbTenantId) throws SQLException {
+        return getSuccessfulAuthorizationResponse(kbPaymentId, kbTenantId, true);
+    }
+
+    /**
+     * @param kbPaymentId     Kill Bill payment id
+     * @param kbTenantId      Kill Bill tenant id
+     * @param includeArchived false if the payment cannot have been archived (e.g. an initial transaction being
+     *                        processed, which is either new or being completed): adyen_responses_archive isn't looked at
+     * @return the latest auth or purchase response of the payment, null if not found
+     * @throws SQLException For any unexpected SQL error
+     */
+    public AdyenResponsesRecord getSuccessfulAuthorizationResponse(final UUID kbPaymentId, final UUID kbTenantId, final boolean includeArchived) throws SQLException {
+        final AdyenResponsesRecord response = execute(getConnection(), "getSuccessfulAuthorizationResponse",
+                       new WithConnectionCallback<AdyenResponsesRecord>() {
+                           @Override
+                           public AdyenResponsesRecord withConnection(final Connection conn) throws SQLException {
+                               return successfulAuthorizationResponseQuery(using(conn), kbPaymentId, kbTenantId).fetchOne();
+                           }
+                       });
+        if (response != null || !includeArchived) {
+            return response;
+        }
+
+        return Iterables.<AdyenResponsesRecord>getLast(getArchivedResponses(ADYEN_RESPONSES_ARCHIVE_KB_PAYMENT_ID.equal(kbPaymentId.toString())
+                                                                                                                .and(ADYEN_RESPONSES_ARCHIVE_KB_TENANT_ID.equal(kbTenantId.toString()))
+                                                                                                                .and(ADYEN_RESPONSES_ARCHIVE_TRANSACTION_TYPE.in(TransactionType.AUTHORIZE.toString(), TransactionType.PURCHASE.toString()))),
+                                                        null);
+    }
+
+    /**
+     * The record id is looked up in adyen_responses_kb_payment_id_kb_tenant_id_record_id_tx_type only (backward scan, no sort),
+     * the row itself is then fetched by primary key.
+     */
+    @VisibleForTesting
+    static ResultQuery<AdyenResponsesRecord> successfulAuthorizationResponseQuery(final DSLContext context, final UUID kbPaymentId, final UUID kbTenantId) {
+        return context.selectFrom(ADYEN_RESPONSES)
+                      .where(ADYEN_RESPONSES.RECORD_ID.equal(context.select(ADYEN_RESPONSES.RECORD_ID)
+                                                                    .from(ADYEN_RESPONSES)
+                                                                    .where(ADYEN_RESPONSES.KB_PAYMENT_ID.equal(kbPaymentId.toString()))
+                                                                    .and(ADYEN_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                                                    .and(ADYEN_RESPONSES.TRANSACTION_TYPE.in(TransactionType.AUTHORIZE.toString(), TransactionType.PURCHASE.toString()))
+                                                                    .orderBy(ADYEN_RESPONSES.RECORD_ID.desc())
+                                                                    .limit(1)));
+    }
+
+    public AdyenResponsesRecord getResponse(final String pspReference) throws SQLException {
+        return getResponse(pspReference, null);
+    }
+
+    /**
+     * @param pspReference PSP reference
+     * @param kbTenantId   Kill Bill tenant id, null to look across all tenants (e.g. if the tenant of a notification
+     *                     cannot be resolved from its merchant account)
+     * @return the latest response of the PSP reference, null if not found
+     * @throws SQLException For any unexpected SQL error
+     */
+    public AdyenResponsesRecord getResponse(final String pspReference, @Nullable final UUID kbTenantId) throws SQLException {
+        final AdyenResponsesRecord response = getResponse(pspReference, kbTenantId, false);
+        if (response != null) {
+            return response;
+        }
+        return getArchivedResponse(pspReference, kbTenantId);
+    }
+
+    /**
+     * @param pspReference    PSP reference
+     * @param kbTenantId      Kill Bill tenant id, null to look across all tenants
+     * @param includeArchived false to only look at adyen_responses: for callers which try several lookups before
+     *                        falling through to the archive (see getArchivedResponse)
+     * @return the latest response of the PSP reference, null if not found
+     * @throws SQLException For any unexpected SQL error
+     */
+    public AdyenResponsesRecord getResponse(final String pspReference, @Nullable final UUID kbTenantId, final boolean includeArchived) throws SQLException {
+        if (includeArchived) {
+            return getResponse(pspReference, kbTenantId);
+        }
+        return execute(getConnection(), "getResponse",
+                       new WithConnectionCallback<AdyenResponsesRecord>() {
+                           @Override
+                           public AdyenResponsesRecord withConnection(final Connection conn) throws SQLException {
+                               return responseByPspReferenceQuery(using(conn), pspReference, kbTenantId).fetchOne();
+                           }
+                       });
+    }
+
+    /**
+     * @param pspReference PSP reference
+     * @param kbTenantId   Kill Bill tenant id, null to look across all tenants
+     * @return the latest archived response of the PSP reference, null if not found
+     * @throws SQLException For any unexpected SQL error
+     */
+    public AdyenResponsesRecord getArchivedResponse(final String pspReference, @Nullable final UUID kbTenantId) throws SQLException {
+        return Iterables.<AdyenResponsesRecord>getLast(getArchivedResponses(ADYEN_RESPONSES_ARCHIVE_PSP_REFERENCE.equal(pspReference)
+                                                                                                                   .and(kbTenantId == null ? DSL.trueCondition() : ADYEN_RESPONSES_ARCHIVE_KB_TENANT_ID.equal(kbTenantId.toString()))),
+                                                       null);
+    }
+
+    /**
+     * Served by the (psp_reference, kb_tenant_id) index: with a tenant, other tenants' rows with the same PSP
+     * reference aren't even read.
+     */
+    @VisibleForTesting
+    static ResultQuery<AdyenResponsesRecord> responseByPspReferenceQuery(final DSLContext context, final String pspReference, @Nullable final UUID kbTenantId) {
+        return context.selectFrom(ADYEN_RESPONSES)
+                      .where(ADYEN_RESPONSES.PSP_REFERENCE.equal(pspReference))
+                      .and(kbTenantId == null ? DSL.trueCondition() : ADYEN_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
+                      .orderBy(ADYEN_RESPONSES.RECORD_ID.desc())
+                      // Can have multiple entries for 3D-S
+                      .limit(1);
+    }
+
+    /**
+     * Multi-get version of getResponse(pspReference, kbTenantId)
+     *
+     * @param pspReferences PSP references
+     * @param kbTenantId    Kill Bill tenant id
+     * @return the latest response of each PSP reference found
+     * @throws SQLException For any unexpected SQL error
+     */
+    public Map<String, AdyenResponsesRecord> getResponses(final Collection<String> pspReferences, final UUID kbTenantId) throws SQLException {
+        if (pspReferences.isEmpty()) {
+            return ImmutableMap.<String, AdyenResponsesRecord>of();
+        }
+
+        final Map<String, AdyenResponsesRecord> responses = execute(getConnection(), "getResponses",
+                                                                    new WithConnectionCallback<Map<String, AdyenResponsesRecord>>() {
+                                                                        @Override
+                                                                        public Map<String, AdyenResponsesRecord> withConnection(final Connection conn) throws SQLException {
+                                                                            return latestByPspReference(using(conn)
+                                                                                                           .selectFrom(ADYEN_RESPONSES)
+                                                                                                           .where(ADYEN_RESPONSES.PSP_REFERENCE.in(pspReferences))
+                                                                                                           .and(ADYEN_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                                                                                           .orderBy(ADYEN_RESPONSES.RECORD_ID)
+                                                                                                           .fetch());
+                                                                        }
+                                                                    });
+
+        final Set<String> archivedPspReferences = new HashSet<String>(pspReferences);
+        archivedPspReferences.removeAll(responses.keySet());
+        if (!archivedPspReferences.isEmpty()) {
+            responses.putAll(latestByPspReference(getArchivedResponses(ADYEN_RESPONSES_ARCHIVE_PSP_REFERENCE.in(archivedPspReferences)
+                                                                                                            .and(ADYEN_RESPONSES_ARCHIVE_KB_TENANT_ID.equal(kbTenantId.toString())))));
+        }
+        return responses;
+    }
+
+    // Can have multiple entries for 3D-S: responses are sorted by record id, the latest one wins
+    private static Map<String, AdyenResponsesRecord> latestByPspReference(final Iterable<AdyenResponsesRecord> responses) {
+        final Map<String, AdyenResponsesRecord> responsesByPspReference = new HashMap<String, AdyenResponsesRecord>();
+        for (final AdyenResponsesRecord response : responses) {
+            responsesByPspReference.put(response.getPspReference(), response);
+        }
+        return responsesByPspReference;
+    }
+
+    // Archived responses
+
+    private static boolean hasInitialResponse(final Iterable<AdyenResponsesRecord> responses) {
+        for (final AdyenResponsesRecord response : responses) {
+            if (INITIAL_TRANSACTION_TYPES.contains(response.getTransactionType())) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-    public AdyenDao(final DataSource dataSource) throws SQLException {
-        super(AdyenResponses.ADYEN_RESPONSES, AdyenPaymentMethods.ADYEN_PAYMENT_METHODS, dataSource);
+    private List<AdyenResponsesRecord> getArchivedResponses(final Condition condition) throws SQLException {
+        return getArchivedResponses(false, condition);
     }
 
-    // Payment methods
+    private List<AdyenResponsesRecord> getArchivedResponses(final boolean fromReplica, final Condition condition) throws SQLException {
+        return execute(getConnection(fromReplica), "getArchivedResponses",
+                       new WithConnectionCallback<List<AdyenResponsesRecord>>() {
+                           @Override
+                           public List<AdyenResponsesRecord> withConnection(final Connection conn) throws SQLException {
+                               final Result<AdyenResponsesRecord> responses = using(conn)
+                                                                                 .select(ADYEN_RESPONSES_ARCHIVE_FIELDS)
+                                                                                 .from(ADYEN_RESPONSES_ARCHIVE)
+                                                                                 .where(condition)
+                                                                                 .orderBy(ADYEN_RESPONSES_ARCHIVE_RECORD_ID)
+                                                                                 .fetch()
+                                                                                 .into(ADYEN_RESPONSES);
+                               for (final AdyenResponsesRecord response : responses) {
+                                   response.changed(false);
+                               }
+                               return responses;
+                           }
+                       });
+    }
 
-    public void setPaymentMethodToken(final String kbPaymentMethodId, final String token, final String kbTenantId) throws SQLException {
-        execute(dataSource.getConnection(),
-                new WithConnectionCallback<AdyenResponsesRecord>() {
-                    @Override
-                    public AdyenResponsesRecord withConnection(final Connection conn) throws SQLException {
-                        DSL.using(conn, dialect, settings)
-                           .update(ADYEN_PAYMENT_METHODS)
-                           .set(ADYEN_PAYMENT_METHODS.TOKEN, token)
-                           .where(ADYEN_PAYMENT_METHODS.KB_PAYMENT_METHOD_ID.equal(kbPaymentMethodId))
-                           .and(ADYEN_PAYMENT_METHODS.KB_TENANT_ID.equal(kbTenantId))
-                           .and(ADYEN_PAYMENT_METHODS.IS_DELETED.equal(FALSE))
-                           .execute();
-                        return null;
-                    }
-                });
+    /**
+     * Move back to adyen_responses all the archived responses of the payment of a transaction
+     */
+    private void restoreResponses(final DSLContext context, final UUID kbPaymentTransactionId, final UUID kbTenantId) {
+        final List<String> kbPaymentIds = context.selectDistinct(ADYEN_RESPONSES_ARCHIVE_KB_PAYMENT_ID)
+                                                 .from(ADYEN_RESPONSES_ARCHIVE)
+                                                 .where(ADYEN_RESPONSES_ARCHIVE_KB_PAYMENT_TRANSACTION_ID.equal(kbPaymentTransactionId.toString()))
+                                                 .and(ADYEN_RESPONSES_ARCHIVE_KB_TENANT_ID.equal(kbTenantId.toString()))
+                                                 .fetch(ADYEN_RESPONSES_ARCHIVE_KB_PAYMENT_ID);
+        if (kbPaymentIds.isEmpty()) {
+            return;
+        }
+
+        // Serialize concurrent restores
+        final List<UInteger> recordIds = context.select(ADYEN_RESPONSES_ARCHIVE_RECORD_ID)
+                                                .from(ADYEN_RESPONSES_ARCHIVE)
+                                                .where(ADYEN_RESPONSES_ARCHIVE_KB_PAYMENT_ID.in(kbPaymentIds))
+                                                .forUpdate()
+                                                .fetch(ADYEN_RESPONSES_ARCHIVE_RECORD_ID);
+        if (recordIds.isEmpty()) {
+            return;
+        }
+
+        context.insertInto(ADYEN_RESPONSES, ADYEN_RESPONSES.fields())
+               .select(context.select(ADYEN_RESPONSES_ARCHIVE_FIELDS)
+                              .from(ADYEN_RESPONSES_ARCHIVE)
+                              .where(ADYEN_RESPONSES_ARCHIVE_RECORD_ID.in(recordIds)))
+               .execute();
+        context.deleteFrom(ADYEN_RESPONSES_ARCHIVE)
+               .where(ADYEN_RESPONSES_ARCHIVE_RECORD_ID.in(recordIds))
+               .execute();
     }
 
-    // HPP requests
+    /**
+     * Move the responses of the settled payments found in the next chunk of responses to adyen_responses_archive
+     * <p/>
+     * A payment is settled when it didn't have any response since createdBefore and none of its responses is pending
+     * (i.e. could still be canceled by the expired payments janitor).
+     * Each chunk is moved in its own transaction, which only locks the rows of the payments of the chunk.
+     * Archive-aware reads (e.g. getResponsesWithHppRequests) fall through to the archive and updateResponse moves the payment back.
+     *
+     * @param afterRecordId last record id scanned by the previous chunk (null for the first chunk)
+     * @param createdBefore only payments without responses since this date are archived
+     * @param chunkSize     maximum number of responses to scan
+     * @return the last record id scanned, null if there is nothing left to do
+     * @throws SQLException For any unexpected SQL error
+     */
+    public UInteger archiveResponses(@Nullable final UInteger afterRecordId, final DateTime createdBefore, final int chunkSize) throws SQLException {
+        final Timestamp createdBeforeTimestamp = toTimestamp(createdBefore);
+        return execute(getConnection(), "archiveResponses",
+                       new WithConnectionCallback<UInteger>() {
+                           @Override
+                           public UInteger withConnection(final Connection conn) throws SQLException {
+                               return using(conn)
+                                         .transactionResult(new TransactionalCallable<UInteger>() {
+                                             @Override
+                                             public UInteger run(final Configuration configuration) {
+                                                 final DSLContext context = DSL.using(configuration);
+                                                 final Result<Record3<UInteger, String, Timestamp>> rows = context.select(ADYEN_RESPONSES.RECORD_ID, ADYEN_RESPONSES.KB_PAYMENT_ID, ADYEN_RESPONSES.CREATED_DATE)
+                                                                                                          .from(ADYEN_RESPONSES)
+                                                                                                          .where(ADYEN_RESPONSES.RECORD_ID.greaterThan(afterRecordId == null ? UInteger.valueOf(0) : afterRecordId))
+                                                                                                          .orderBy(ADYEN_RESPONSES.RECORD_ID)
+                                                                                                          .limit(chunkSize)
+                                                                                                          .fetch();
 
-    public void addHppRequest(final UUID kbAccountId,
-                              @Nullable final UUID kbPaymentId,
-                              @Nullable final UUID kbPaymentTransactionId,
-                              final String transactionExternalKey,
-                              final Map additionalDataMap,
-                              final DateTime utcNow,
-                              final UUID kbTenantId) throws SQLException {
-        final String additionalData = asString(additionalDataMap);
+                                                 // Rows are (roughly) in creation order: stop at the first recent one
+                                                 boolean done = rows.size() < chunkSize;
+                                                 final Set<String> kbPaymentIds = new HashSet<String>();
+                                                 for (final Record3<UInteger, String, Timestamp> row : rows) {
+                                                     if (!row.value3().before(createdBeforeTimestamp)) {
+                                                         done = true;
+                                                         break;
+                                                     }
+                                                     kbPaymentIds.add(row.value2());
+                                                 }
 
-        execute(dataSource.getConnection(),
-                new WithConnectionCallback<Void>() {
-                    @Override
-                    public Void withConnection(final Connection conn) throws SQLException {
-                        DSL.using(conn, dialect, settings)
-                           .insertInto(ADYEN_HPP_REQUESTS,
-                                       ADYEN_HPP_REQUESTS.KB_ACCOUNT_ID,
-                                       ADYEN_HPP_REQUESTS.KB_PAYMENT_ID,
-                                       ADYEN_HPP_REQUESTS.KB_PAYMENT_TRANSACTION_ID,
-                                       ADYEN_HPP_REQUESTS.TRANSACTION_EXTERNAL_KEY,
-                                       ADYEN_HPP_REQUESTS.ADDITIONAL_DATA,
-                                       ADYEN_HPP_REQUESTS.CREATED_DATE,
-                                       ADYEN_HPP_REQUESTS.KB_TENANT_ID)
-                           .values(kbAccountId.toString(),
-                                   kbPaymentId != null ? kbPaymentId.toString() : null,
-                                   kbPaymentTransactionId != null ? kbPaymentTransactionId.toString() : null,
-                                   transactionExternalKey,
-                                   additionalData,
-                                   toTimestamp(utcNow),
-                                   kbTenantId.toString())
-                           .execute();
-                        return null;
-                    }
-                });
+                                                 if (!kbPaymentIds.isEmpty()) {
+                                                     archiveSettledPayments(context, kbPaymentIds, createdBeforeTimestamp);
+                                                 }
+                                                 return done ? null : rows.get(rows.size() - 1).value1();
+                                             }
+                                         });
+                           }
+                       });
     }
 
-    public AdyenHppRequestsRecord getHppRequest(final String merchantReference) throws SQLException {
-        return execute(dataSource.getConnection(),
-                       new WithConnectionCallback<AdyenHppRequestsRecord>() {
+    private void archiveSettledPayments(final DSLContext context, final Set<String> kbPaymentIds, final Timestamp createdBefore) {
+        // Lock all the responses of the payments, so that they don't change until they are moved
+        context.select(ADYEN_RESPONSES.RECORD_ID)
+               .from(ADYEN_RESPONSES)
+               .where(ADYEN_RESPONSES.KB_PAYMENT_ID.in(kbPaymentIds))
+               .forUpdate()
+               .fetch();
+
+        // Same definition of pending as the expired payments janitor: otherwise it would never see the archived payments
+        final Set<String> settledKbPaymentIds = new HashSet<String>(kbPaymentIds);
+        settledKbPaymentIds.removeAll(context.selectDistinct(ADYEN_RESPONSES.KB_PAYMENT_ID)
+                                             .from(ADYEN_RESPONSES)
+                                             .where(ADYEN_RESPONSES.KB_PAYMENT_ID.in(kbPaymentIds))
+                                             .and(ADYEN_RESPONSES.CREATED_DATE.greaterOrEqual(createdBefore).or(pendingResponseCondition()))
+                                             .fetch(ADYEN_RESPONSES.KB_PAYMENT_ID));
+        if (settledKbPaymentIds.isEmpty()) {
+            return;
+        }
+
+        context.insertInto(ADYEN_RESPONSES_ARCHIVE, ADYEN_RESPONSES_ARCHIVE_FIELDS)
+               .select(context.select(ADYEN_RESPONSES.fields())
+                              .from(ADYEN_RESPONSES)
+                              .where(ADYEN_RESPONSES.KB_PAYMENT_ID.in(settledKbPaymentIds)))
+               .execute();
+        context.deleteFrom(ADYEN_RESPONSES)
+               .where(ADYEN_RESPONSES.KB_PAYMENT_ID.in(settledKbPaymentIds))
+               .execute();
+    }
+
+    // Expired payments
+
+    /**
+     * Loose index scan over the (kb_tenant_id, psp_result, record_id) index: one index lookup per tenant, instead of a
+     * select distinct which reads the whole table. Whether a tenant has pending responses is up to getPendingResponses.
+     *
+     * @return the tenants responses have been received for
+     */
+    public List<String> getResponsesTenantIds() throws SQLException {
+        return execute(getConnection(), "getResponsesTenantIds",
+                       new WithConnectionCallback<List<String>>() {
                            @Override
-                           public AdyenHppRequestsRecord withConnection(final Connection conn) throws SQLException {
-                               return DSL.using(conn, dialect, settings)
-                                         .selectFrom(ADYEN_HPP_REQUESTS)
-                                         .where(ADYEN_HPP_REQUESTS.TRANSACTION_EXTERNAL_KEY.equal(merchantReference))
-                                         .orderBy(ADYEN_HPP_REQUESTS.RECORD_ID.desc())
-                                         .limit(1)
-                                         .fetchOne();
+                           public List<String> withConnection(final Connection conn) throws SQLException {
+                               final DSLContext context = using(conn);
+                               final List<String> kbTenantIds = new LinkedList<String>();
+                               String kbTenantId = null;
+                               do {
+                                   kbTenantId = context.select(DSL.min(ADYEN_RESPONSES.KB_TENANT_ID))
+                                                       .from(ADYEN_RESPONSES)
+                                                       .where(kbTenantId == null ? DSL.trueCondition() : ADYEN_RESPONSES.KB_TENANT_ID.greaterThan(kbTenantId))
+                                                       .fetchOne(0, String.class);
+                                   if (kbTenantId != null) {
+                                       kbTenantIds.add(kbTenantId);
+                                   }
+                               } while (kbTenantId != null);
+                               return kbTenantIds;
                            }
                        });
     }
 
-    public AdyenHppRequestsRecord getHppRequest(final UUID kbPaymentTransactionId) throws SQLException {
-        return execute(dataSource.getConnection(),
-                       new WithConnectionCallback<AdyenHppRequestsRecord>() {
+    /**
+     * Scan the next chunk of pending authorizations and purchases of a tenant, in record id order
+     * <p/>
+     * Served by the (kb_tenant_id, psp_result, record_id) and (kb_tenant_id, from_hpp_transaction_status, record_id)
+     * indexes, one range per pending status, starting after afterRecordId: only the pending responses of the tenant are
+     * read, whatever its number of settled ones. Only the record_id and kb_payment_id columns are populated. Whether the
+     * payment has expired is up to the caller.
+     *
+     * @param kbTenantId    Kill Bill tenant id
+     * @param createdBefore only responses created before this date are returned
+     * @param afterRecordId last record id returned by the previous chunk (null for the first chunk)
+     * @param chunkSize     maximum number of responses to return
+     * @return the pending responses, less than chunkSize if there is nothing left to scan
+     * @throws SQLException For any unexpected SQL error
+     */
+    public List<AdyenResponsesRecord> getPendingResponses(final UUID kbTenantId, final DateTime createdBefore, @Nullable final UInteger afterRecordId, final int chunkSize) throws SQLException {
+        return execute(getConnection(), "getPendingResponses",
+                       new WithConnectionCallback<List<AdyenResponsesRecord>>() {
                            @Override
-                           public AdyenHppRequestsRecord withConnection(final Connection conn) throws SQLException {
-                               return DSL.using(conn, dialect, settings)
-                                         .selectFrom(ADYEN_HPP_REQUESTS)
-                                         .where(ADYEN_HPP_REQUESTS.KB_PAYMENT_TRANSACTION_ID.equal(kbPaymentTransactionId.toString()))
-                                         .orderBy(ADYEN_HPP_REQUESTS.RECORD_ID.desc())
-                                         .limit(1)
-                                         .fetchOne();
+                           public List<AdyenResponsesRecord> withConnection(final Connection conn) throws SQLException {
+                               return using(conn)
+                                         .select(ADYEN_RESPONSES.RECORD_ID, ADYEN_RESPONSES.KB_PAYMENT_ID)
+                                         .from(ADYEN_RESPONSES)
+                                         .where(pendingResponseCondition())
+                                         .and(ADYEN_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                         .and(ADYEN_RESPONSES.CREATED_DATE.lessThan(toTimestamp(createdBefore)))
+                                         .and(ADYEN_RESPONSES.RECORD_ID.greaterThan(afterRecordId == null ? UInteger.valueOf(0) : afterRecordId))
+                                         .orderBy(ADYEN_RESPONSES.RECORD_ID)
+                                         .limit(chunkSize)
+                                         .fetchInto(ADYEN_RESPONSES);
                            }
                        });
     }
 
-    // Responses
+    // Canceled payments keep their psp_result: from_hpp_transaction_status has precedence
+    private static Condition pendingResponseCondition() {
+        return ADYEN_RESPONSES.TRANSACTION_TYPE.in(EXPIRABLE_TRANSACTION_TYPES)
+                                               .and(ADYEN_RESPONSES.FROM_HPP_TRANSACTION_STATUS.equal(PaymentPluginStatus.PENDING.toString())
+                                                                                               .or(ADYEN_RESPONSES.FROM_HPP_TRANSACTION_STATUS.isNull()
+                                                                                                                                              .and(ADYEN_RESPONSES.PSP_RESULT.in(EXPIRABLE_PSP_RESULTS))));
+    }
 
-    public AdyenResponsesRecord addResponse(final UUID kbAccountId,
-                                            final UUID kbPaymentId,
-                                            final UUID kbPaymentTransactionId,
-                                            final TransactionType transactionType,
-                                            final BigDecimal amount,
-                                            final Currency currency,
-                                            final PurchaseResult result,
-                                            final DateTime utcNow,
-                                            final UUID kbTenantId) throws SQLException {
-        final String dccAmountValue = getProperty(AdyenPaymentPluginApi.PROPERTY_DCC_AMOUNT_VALUE, result);
-        final String additionalData = getAdditionalData(result);
+    // Leases
 
-        return execute(dataSource.getConnection(),
-                       new WithConnectionCallback<AdyenResponsesRecord>() {
+    /**
+     * Acquire, or renew, a lease shared by all the nodes (e.g. to elect the node running a background job)
+     * <p/>
+     * The lease is granted if nobody holds it, if it is already held by the owner or if it has expired. Expiration
+     * dates are compared across nodes: their clocks are assumed to be much closer than the lease duration.
+     *
+     * @param leaseName      lease name
+     * @param owner          node requesting the lease, unique across the nodes
+     * @param now            current date
+     * @param expirationDate date until which the lease is held, unless renewed
+     * @return true if the lease is held by the owner until expirationDate
+     * @throws SQLException For any unexpected SQL error
+     */
+    public boolean acquireLease(final String leaseName, final String owner, final DateTime now, final DateTime expirationDate) throws SQLException {
+        return execute(getConnection(), "acquireLease",
+                       new WithConnectionCallback<Boolean>() {
                            @Override
-                           public AdyenResponsesRecord withConnection(final Connection conn) throws SQLException {
-                               DSL.using(conn, dialect, settings)
-                                  .insertInto(ADYEN_RESPONSES,
-                                              ADYEN_RESPONSES.KB_ACCOUNT_ID,
-                                              ADYEN_RESPONSES.KB_PAYMENT_ID,
-                                              ADYEN_RESPONSES.KB_PAYMENT_TRANSACTION_ID,
-                                              ADYEN_RESPONSES.TRANSACTION_TYPE,
-                                              ADYEN_RESPONSES.AMOUNT,
-                                              ADYEN_RESPONSES.CURRENCY,
-                                              ADYEN_RESPONSES.PSP_RESULT,
-                                              ADYEN_RESPONSES.PSP_REFERENCE,
-                                              ADYEN_RESPONSES.AUTH_CODE,
-                                              ADYEN_RESPONSES.RESULT_CODE,
-                                              ADYEN_RESPONSES.REFUSAL_REASON,
-                                              ADYEN_RESPONSES.REFERENCE,
-                                              ADYEN_RESPONSES.PSP_ERROR_CODES,
-                                              ADYEN_RESPONSES.PAYMENT_INTERNAL_REF,
-                                              ADYEN_RESPONSES.FORM_URL,
-                                              ADYEN_RESPONSES.DCC_AMOUNT,
-                                              ADYEN_RESPONSES.DCC_CURRENCY,
-                                              ADYEN_RESPONSES.DCC_SIGNATURE,
-                                              ADYEN_RESPONSES.ISSUER_URL,
-                                              ADYEN_RESPONSES.MD,
-                                              ADYEN_RESPONSES.PA_REQUEST,
-                                              ADYEN_RESPONSES.ADDITIONAL_DATA,
-                                              ADYEN_RESPONSES.CREATED_DATE,
-                                              ADYEN_RESPONSES.KB_TENANT_ID)
-                                  .values(kbAccountId.toString(),
-                                          kbPaymentId.toString(),
-                                          kbPaymentTransactionId.toString(),
-                                          transactionType.toString(),
-                                          amount,
-                                          currency,
-                                          result.getResult().isPresent() ? result.getResult().get().toString() : null,
-                                          result.getPspReference(),
-                                          result.getAuthCode(),
-                                          result.getResultCode(),
-                                          result.getReason(),
-                                          result.getReference(),
-                                          null,
-                                          result.getPaymentTransactionExternalKey(),
-                                          result.getFormUrl(),
-                                          dccAmountValue == null ? null : new BigDecimal(dccAmountValue),
-                                          getProperty(AdyenPaymentPluginApi.PROPERTY_DCC_AMOUNT_CURRENCY, result),
-                                          getProperty(AdyenPaymentPluginApi.PROPERTY_DCC_SIGNATURE, result),
-                                          getProperty(AdyenPaymentPluginApi.PROPERTY_ISSUER_URL, result),
-                                          getProperty(AdyenPaymentPluginApi.PROPERTY_MD, result),
-                                          getProperty(AdyenPaymentPluginApi.PROPERTY_PA_REQ, result),
-                                          additionalData,
-                                          toTimestamp(utcNow),
-                                          kbTenantId.toString())
-                                  .execute();
-
-                               return DSL.using(conn, dialect, settings)
-                                         .selectFrom(ADYEN_RESPONSES)
-                                         .where(ADYEN_RESPONSES.KB_PAYMENT_TRANSACTION_ID.equal(kbPaymentTransactionId.toString()))
-                                         .and(ADYEN_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
-                                         .orderBy(ADYEN_RESPONSES.RECORD_ID.desc())
-                                         .limit(1)
-                                         .fetchOne();
+                           public Boolean withConnection(final Connection conn) throws SQLException {
+                               final DSLContext context = using(conn);
+                               final int renewed = context.update(ADYEN_LEASES)
+                                                          .set(ADYEN_LEASES_OWNER, owner)
+                                                          .set(ADYEN_LEASES_EXPIRATION_DATE, toTimestamp(expirationDate))
+                                                          .where(ADYEN_LEASES_LEASE_NAME.equal(leaseName))
+                                                          .and(ADYEN_LEASES_OWNER.equal(owner).or(ADYEN_LEASES_EXPIRATION_DATE.lessThan(toTimestamp(now))))
+                                                          .execute();
+                               if (renewed == 1) {
+                                   return true;
+                               }
+
+                               try {
+                                   context.insertInto(ADYEN_LEASES, ADYEN_LEASES_LEASE_NAME, ADYEN_LEASES_OWNER, ADYEN_LEASES_EXPIRATION_DATE)
+                                          .values(leaseName, owner, toTimestamp(expirationDate))
+                                          .execute();
+                                   return true;
+                               } catch (final DataAccessException e) {
+                                   if (e.sqlStateClass() == SQLStateClass.C23_INTEGRITY_CONSTRAINT_VIOLATION) {
+                                       // Held by another node
+                                       return false;
+                                   }
+                                   throw e;
+                               }
                            }
                        });
     }
 
-    public void addResponse(final UUID kbAccountId,
-                            final UUID kbPaymentId,
-                            final UUID kbPaymentTransactionId,
-                            final TransactionType transactionType,
-                            @Nullable final BigDecimal amount,
-                            @Nullable final Currency currency,
-                            final PaymentModificationResponse result,
-                            final DateTime utcNow,
-                            final UUID kbTenantId) throws SQLException {
-        final String dccAmountValue = getProperty(AdyenPaymentPluginApi.PROPERTY_DCC_AMOUNT_VALUE, result);
-        final String additionalData = getAdditionalData(result);
-
-        execute(dataSource.getConnection(),
+    /**
+     * Give up a lease, so that another node can acquire it right away (no-op if it isn't held by the owner)
+     */
+    public void releaseLease(final String leaseName, final String owner) throws SQLException {
+        execute(getConnection(), "releaseLease",
                 new WithConnectionCallback<Void>() {
                     @Override
                     public Void withConnection(final Connection conn) throws SQLException {
-                        DSL.using(conn, dialect, settings)
-                           .insertInto(ADYEN_RESPONSES,
-                                       ADYEN_RESPONSES.KB_ACCOUNT_ID,
-                                       ADYEN_RESPONSES.KB_PAYMENT_ID,
-                                       ADYEN_RESPONSES.KB_PAYMENT_TRANSACTION_ID,
-                                       ADYEN_RESPONSES.TRANSACTION_TYPE,
-                                       ADYEN_RESPONSES.AMOUNT,
-                                       ADYEN_RESPONSES.CURRENCY,
-                                       ADYEN_RESPONSES.PSP_RESULT,
-                                       ADYEN_RESPONSES.PSP_REFERENCE,
-                                       ADYEN_RESPONSES.AUTH_CODE,
-                                       ADYEN_RESPONSES.RESULT_CODE,
-                                       ADYEN_RESPONSES.REFUSAL_REASON,
-                                       ADYEN_RESPONSES.REFERENCE,
-                                       ADYEN_RESPONSES.PSP_ERROR_CODES,
-                                       ADYEN_RESPONSES.PAYMENT_INTERNAL_REF,
-                                       ADYEN_RESPONSES.FORM_URL,
-                                       ADYEN_RESPONSES.DCC_AMOUNT,
-                                       ADYEN_RESPONSES.DCC_CURRENCY,
-                                       ADYEN_RESPONSES.DCC_SIGNATURE,
-                                       ADYEN_RESPONSES.ISSUER_URL,
-                                       ADYEN_RESPONSES.MD,
-                                       ADYEN_RESPONSES.PA_REQUEST,
-                                       ADYEN_RESPONSES.ADDITIONAL_DATA,
-                                       ADYEN_RESPONSES.CREATED_DATE,
-                                       ADYEN_RESPONSES.KB_TENANT_ID)
-                           .values(kbAccountId.toString(),
-                                   kbPaymentId.toString(),
-                                   kbPaymentTransactionId.toString(),
-                                   transactionType.toString(),
-                                   amount,
-                                   currency,
-                                   result.getResponse(),
-                                   result.getPspReference(),
-                                   null,
-                                   null,
-                                   null,
-                                   null,
-                                   null,
-                                   null,
-                                   null,
-                                   dccAmountValue == null ? null : new BigDecimal(dccAmountValue),
-                                   getProperty(AdyenPaymentPluginApi.PROPERTY_DCC_AMOUNT_CURRENCY, result),
-                                   getProperty(AdyenPaymentPluginApi.PROPERTY_DCC_SIGNATURE, result),
-                                   getProperty(AdyenPaymentPluginApi.PROPERTY_ISSUER_URL, result),
-                                   getProperty(AdyenPaymentPluginApi.PROPERTY_MD, result),
-                                   getProperty(AdyenPaymentPluginApi.PROPERTY_PA_REQ, result),
-                                   additionalData,
-                                   toTimestamp(utcNow),
-                                   kbTenantId.toString())
-                           .execute();
+                        using(conn).deleteFrom(ADYEN_LEASES)
+                                   .where(ADYEN_LEASES_LEASE_NAME.equal(leaseName))
+                                   .and(ADYEN_LEASES_OWNER.equal(owner))
+                                   .execute();
                         return null;
                     }
                 });
     }
 
-    public AdyenResponsesRecord updateResponse(final UUID kbPaymentTransactionId, final Iterable<PluginProperty> additionalPluginProperties, final UUID kbTenantId) throws SQLException {
-        return updateResponse(kbPaymentTransactionId, null, additionalPluginProperties, kbTenantId);
-    }
+    // Checkpoints
 
     /**
-     * Update the PSP reference and additional data of the latest response row for a payment transaction
-     *
-     * @param kbPaymentTransactionId       Kill Bill payment transaction id
-     * @param paymentServiceProviderResult New PSP result (null if unchanged)
-     * @param additionalPluginProperties   Latest properties
-     * @param kbTenantId                   Kill Bill tenant id
-     * @return the latest version of the response row, null if one couldn't be found
+     * @param checkpointName checkpoint name (e.g. the name of the lease of the job)
+     * @return the last record id saved by setCheckpoint, null if none
      * @throws SQLException For any unexpected SQL error
      */
-    public AdyenResponsesRecord updateResponse(final UUID kbPaymentTransactionId, @Nullable final PaymentServiceProviderResult paymentServiceProviderResult, final Iterable<PluginProperty> additionalPluginProperties, final UUID kbTenantId) throws SQLException {
-        final Map<String, Object> additionalProperties = PluginProperties.toMap(additionalPluginProperties);
-
-        return execute(dataSource.getConnection(),
-                       new WithConnectionCallback<AdyenResponsesRecord>() {
+    public UInteger getCheckpoint(final String checkpointName) throws SQLException {
+        return execute(getConnection(), "getCheckpoint",
+                       new WithConnectionCallback<UInteger>() {
                            @Override
-                           public AdyenResponsesRecord withConnection(final Connection conn) throws SQLException {
-                               final AdyenResponsesRecord response = DSL.using(conn, dialect, settings)
-                                                                        .selectFrom(ADYEN_RESPONSES)
-                                                                        .where(ADYEN_RESPONSES.KB_PAYMENT_TRANSACTION_ID.equal(kbPaymentTransactionId.toString()))
-                                                                        .and(ADYEN_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
-                                                                        .orderBy(ADYEN_RESPONSES.RECORD_ID.desc())
-                                                                        .limit(1)
-                                                                        .fetchOne();
-
-                               if (response == null) {
-                                   return null;
-                               }
+                           public UInteger withConnection(final Connection conn) throws SQLException {
+                               return using(conn).select(ADYEN_CHECKPOINTS_RECORD_ID)
+                                                 .from(ADYEN_CHECKPOINTS)
+                                                 .where(ADYEN_CHECKPOINTS_CHECKPOINT_NAME.equal(checkpointName))
+                                                 .fetchOne(ADYEN_CHECKPOINTS_RECORD_ID);
+                           }
+                       });
+    }
 
-                               final Map originalData = new HashMap(fromAdditionalData(response.getAdditionalData()));
-                               originalData.putAll(additionalProperties);
-                               final String pspReference = getProperty(PROPERTY_PSP_REFERENCE, additionalProperties);
-                               if (pspReference != null) {
-                                   // If there is a PSP reference, the call went eventually to Adyen. Remove exceptions
-                                   originalData.remove(ADYEN_CALL_ERROR_STATUS);
-                                   originalData.remove(EXCEPTION_CLASS);
-                                   originalData.remove(EXCEPTION_MESSAGE);
-                               }
-                               final String mergedAdditionalData = asString(originalData);
-
-                               UpdateSetMoreStep<AdyenResponsesRecord> step = DSL.using(conn, dialect, settings)
-                                                                                 .update(ADYEN_RESPONSES)
-                                                                                 .set(ADYEN_RESPONSES.PSP_REFERENCE, pspReference)
-                                                                                 .set(ADYEN_RESPONSES.ADDITIONAL_DATA, mergedAdditionalData);
-                               if (paymentServiceProviderResult != null) {
-                                   step = step.set(ADYEN_RESPONSES.PSP_RESULT, paymentServiceProviderResult.toString());
-                               }
-                               step.where(ADYEN_RESPONSES.RECORD_ID.equal(response.getRecordId()))
+    /**
+     * Save the progress of a job, so that the next run resumes from there (only called by the holder of its lease)
+     */
+    public void setCheckpoint(final String checkpointName, final UInteger recordId) throws SQLException {
+        execute(getConnection(), "setCheckpoint",
+                new WithConnectionCallback<Void>() {
+                    @Override
+                    public Void withConnection(final Connection conn) throws SQLException {
+                        final DSLContext context = using(conn);
+                        final int updated = context.update(ADYEN_CHECKPOINTS)
+                                                   .set(ADYEN_CHECKPOINTS_RECORD_ID, recordId)
+                                                   .where(ADYEN_CHECKPOINTS_CHECKPOINT_NAME.equal(checkpointName))
+                                                   .execute();
+                        if (updated == 0) {
+                            context.insertInto(ADYEN_CHECKPOINTS, ADYEN_CHECKPOINTS_CHECKPOINT_NAME, ADYEN_CHECKPOINTS_RECORD_ID)
+                                   .values(checkpointName, recordId)
                                    .execute();
+                        }
+                        return null;
+                    }
+                });
+    }
 
-                               return DSL.using(conn, dialect, settings)
-                                         .selectFrom(ADYEN_RESPONSES)
-                                         .where(ADYEN_RESPONSES.KB_PAYMENT_TRANSACTION_ID.equal(kbPaymentTransactionId.toString()))
-                                         .and(ADYEN_RESPONSES.KB_TENANT_ID.equal(kbTenantId.toString()))
-                                         .orderBy(ADYEN_RESPONSES.RECORD_ID.desc())
-                                         .limit(1)
-                                         .fetchOne();
-                           }
-                       });
+    // Columns extracted from the additional data (rows written before they were introduced fall back to the JSON)
+
+    public static boolean isFromHpp(final AdyenResponsesRecord record) {
+        return record.getFromHpp() != null ? Byte.valueOf(TRUE).equals(record.getFromHpp()) : AdditionalData.of(record).isFromHpp();
     }
 
-    @Override
-    public List<AdyenResponsesRecord> getResponses(final UUID kbPaymentId, final UUID kbTenantId) throws SQLException {
-        final List<AdyenResponsesRecord> responses = new LinkedList<AdyenResponsesRecord>();
-        for (final AdyenResponsesRecord adyenResponsesRecord : Lists.<AdyenResponsesRecord>reverse(super.getResponses(kbPaymentId, kbTenantId))) {
-            responses.add(adyenResponsesRecord);
+    public static boolean isHppCompletion(final AdyenResponsesRecord record) {
+        return record.getFromHppCompletion() != null ? Byte.valueOf(TRUE).equals(record.getFromHppCompletion()) : AdditionalData.of(record).isHppCompletion();
+    }
 
-            // Keep only the completion row for 3D-S
-            if (TransactionType.AUTHORIZE.toString().equals(adyenResponsesRecord.getTransactionType())) {
-                break;
-            }
+    @Nullable
+    public static String getMerchantAccountCode(final AdyenResponsesRecord record) {
+        return record.getFromHpp() != null ? record.getMerchantAccountCode() : AdditionalData.of(record).getMerchantAccountCode();
+    }
+
+    @Nullable
+    public static String getPaymentMethod(final AdyenResponsesRecord record) {
+        if (record.getFromHpp() != null) {
+            return record.getPaymentMethod();
         }
-        return Lists.<AdyenResponsesRecord>reverse(responses);
+        final AdditionalData additionalData = AdditionalData.of(record);
+        final String paymentMethod = additionalData.get(PROPERTY_PAYMENT_METHOD);
+        return paymentMethod != null ? paymentMethod : additionalData.get(PROPERTY_BRAND_CODE);
     }
 
-    // Assumes that the last auth was successful
-    @Override
-    public AdyenResponsesRecord getSuccessfulAuthorizationResponse(final UUID kbPaymentId, final UUID kbTenantId) throws SQLException {
-        return execute(dataSource.getConnection(),
-                       new WithConnectionCallback<AdyenResponsesRecord>() {
+    /**
+     * Populate the extracted columns of the next chunk of responses which predate them
+     *
+     * @param afterRecordId last record id processed by the previous chunk (null for the first chunk)
+     * @param chunkSize     maximum number of rows to update
+     * @return the last record id processed, null if there is nothing left to do
+     * @throws SQLException For any unexpected SQL error
+     */
+    public UInteger backfillResponses(@Nullable final UInteger afterRecordId, final int chunkSize) throws SQLException {
+        return execute(getConnection(), "backfillResponses",
+                       new WithConnectionCallback<UInteger>() {
                            @Override
-                           public AdyenResponsesRecord withConnection(final Connection conn) throws SQLException {
-                               return DSL.using(conn, dialect, settings)
-                                         .selectFrom(responsesTable)
-                                         .where(DSL.field(responsesTable.getName() + "." + KB_PAYMENT_ID).equal(kbPaymentId.toString()))
-                                         .and(
-                                                 DSL.field(responsesTable.getName() + "." + TRANSACTION_TYPE).equal(TransactionType.AUTHORIZE.toString())
-                                                    .or(DSL.field(responsesTable.getName() + "." + TRANSACTION_TYPE).equal(TransactionType.PURCHASE.toString()))
-                                             )
-                                         .and(DSL.field(responsesTable.getName() + "." + KB_TENANT_ID).equal(kbTenantId.toString()))
-                                         .orderBy(DSL.field(responsesTable.getName() + "." + RECORD_ID).desc())
-                                         .limit(1)
-                                         .fetchOne();
+                           public UInteger withConnection(final Connection conn) throws SQLException {
+                               return using(conn)
+                                         .transactionResult(new TransactionalCallable<UInteger>() {
+                                             @Override
+                                             public UInteger run(final Configuration configuration) {
+                                                 final DSLContext context = DSL.using(configuration);
+                                                 // from_hpp is always set for new rows
+                                                 final Result<Record2<UInteger, String>> rows = context.select(ADYEN_RESPONSES.RECORD_ID, ADYEN_RESPONSES.ADDITIONAL_DATA)
+                                                                                                       .from(ADYEN_RESPONSES)
+                                                                                                       .where(ADYEN_RESPONSES.FROM_HPP.isNull())
+                                                                                                       .and(ADYEN_RESPONSES.RECORD_ID.greaterThan(afterRecordId == null ? UInteger.valueOf(0) : afterRecordId))
+                                                                                                       .orderBy(ADYEN_RESPONSES.RECORD_ID)
+                                                                                                       .limit(chunkSize)
+                                                                                                       .fetch();
+                                                 if (rows.isEmpty()) {
+                                                     return null;
+                                                 }
+
+                                                 final List<Query> updates = new ArrayList<Query>(rows.size());
+                                                 for (final Record2<UInteger, String> row : rows) {
+                                                     final AdyenResponsesRecord changes = context.newRecord(ADYEN_RESPONSES);
+                                                     setIndexedColumns(changes, fromAdditionalDataOrEmpty(row.value2()));
+                                                     // Don't overwrite a concurrent updateResponse
+                                                     updates.add(context.update(ADYEN_RESPONSES)
+                                                                        .set(changes)
+                                                                        .where(ADYEN_RESPONSES.RECORD_ID.equal(row.value1()))
+                                                                        .and(ADYEN_RESPONSES.FROM_HPP.isNull()));
+                                                 }
+                                                 context.batch(updates).execute();
+                                                 return rows.get(rows.size() - 1).value1();
+                                             }
+                                         });
                            }
                        });
     }
 
-    public AdyenResponsesRecord getResponse(final String pspReference) throws SQLException {
-        return execute(dataSource.getConnection(),
-                       new WithConnectionCallback<AdyenResponsesRecord>() {
+    /**
+     * Populate the extracted columns of the next chunk of HPP requests which predate them
+     *
+     * @param afterRecordId last record id processed by the previous chunk (null for the first chunk)
+     * @param chunkSize     maximum number of rows to update
+     * @return the last record id processed, null if there is nothing left to do
+     * @throws SQLException For any unexpected SQL error
+     */
+    public UInteger backfillHppRequests(@Nullable final UInteger afterRecordId, final int chunkSize) throws SQLException {
+        return execute(getConnection(), "backfillHppRequests",
+                       new WithConnectionCallback<UInteger>() {
                            @Override
-                           public AdyenResponsesRecord withConnection(final Connection conn) throws SQLException {
-                               return DSL.using(conn, dialect, settings)
-                                         .selectFrom(ADYEN_RESPONSES)
-                                         .where(ADYEN_RESPONSES.PSP_REFERENCE.equal(pspReference))
-                                         .orderBy(ADYEN_RESPONSES.RECORD_ID.desc())
-                                         // Can have multiple entries for 3D-S
-                                         .limit(1)
-                                         .fetchOne();
+                           public UInteger withConnection(final Connection conn) throws SQLException {
+                               return using(conn)
+                                         .transactionResult(new TransactionalCallable<UInteger>() {
+                                             @Override
+                                             public UInteger run(final Configuration configuration) {
+                                                 final DSLContext context = DSL.using(configuration);
+                                                 // additional_data_extracted is always set for new rows
+                                                 final Result<Record2<UInteger, String>> rows = context.select(ADYEN_HPP_REQUESTS.RECORD_ID, ADYEN_HPP_REQUESTS.ADDITIONAL_DATA)
+                                                                                                       .from(ADYEN_HPP_REQUESTS)
+                                                                                                       .where(ADYEN_HPP_REQUESTS.ADDITIONAL_DATA_EXTRACTED.isNull())
+                                                                                                       .and(ADYEN_HPP_REQUESTS.RECORD_ID.greaterThan(afterRecordId == null ? UInteger.valueOf(0) : afterRecordId))
+                                                                                                       .orderBy(ADYEN_HPP_REQUESTS.RECORD_ID)
+                                                                                                       .limit(chunkSize)
+                                                                                                       .fetch();
+                                                 if (rows.isEmpty()) {
+                                                     return null;
+                                                 }
+
+                                                 final List<Query> updates = new ArrayList<Query>(rows.size());
+                                                 for (final Record2<UInteger, String> row : rows) {
+                                                     final AdyenHppRequestsRecord changes = context.newRecord(ADYEN_HPP_REQUESTS);
+                                                     // Rows without any of the keys are flagged too, so they aren't parsed again on the next start
+                                                     setIndexedColumns(changes, fromAdditionalDataOrEmpty(row.value2()));
+                                                     updates.add(context.update(ADYEN_HPP_REQUESTS)
+                                                                        .set(changes)
+                                                                        .where(ADYEN_HPP_REQUESTS.RECORD_ID.equal(row.value1()))
+                                                                        .and(ADYEN_HPP_REQUESTS.ADDITIONAL_DATA_EXTRACTED.isNull()));
+                                                 }
+                                                 context.batch(updates).execute();
+                                                 return rows.get(rows.size() - 1).value1();
+                                             }
+                                         });
                            }
                        });
     }
 
     // Notifications
 
-    public void addNotification(@Nullable final UUID kbAccountId,
-                                @Nullable final UUID kbPaymentId,
-                                @Nullable final UUID kbPaymentTransactionId,
-                                @Nullable final TransactionType transactionType,
-                                final NotificationItem notification,
-                                final DateTime utcNow,
-                                @Nullable final UUID kbTenantId) throws SQLException {
+    public AdyenNotificationsRecord addNotification(@Nullable final UUID kbAccountId,
+                                                    @Nullable final UUID kbPaymentId,
+                                                    @Nullable final UUID kbPaymentTransactionId,
+                                                    @Nullable final TransactionType transactionType,
+                                                    final NotificationItem notification,
+                                                    final DateTime utcNow,
+                                                    @Nullable final UUID kbTenantId) throws SQLException {
         final String additionalData = asString(notification.getAdditionalData());
 
-        execute(dataSource.getConnection(),
-                new WithConnectionCallback<Void>() {
-                    @Override
-                    public Void withConnection(final Connection conn) throws SQLException {
-                        DSL.using(conn, dialect, settings)
-                           .insertInto(ADYEN_NOTIFICATIONS,
-                                       ADYEN_NOTIFICATIONS.KB_ACCOUNT_ID,
-                                       ADYEN_NOTIFICATIONS.KB_PAYMENT_ID,
-                                       ADYEN_NOTIFICATIONS.KB_PAYMENT_TRANSACTION_ID,
-                                       ADYEN_NOTIFICATIONS.TRANSACTION_TYPE,
-                                       ADYEN_NOTIFICATIONS.AMOUNT,
-                                       ADYEN_NOTIFICATIONS.CURRENCY,
-                                       ADYEN_NOTIFICATIONS.EVENT_CODE,
-                                       ADYEN_NOTIFICATIONS.EVENT_DATE,
-                                       ADYEN_NOTIFICATIONS.MERCHANT_ACCOUNT_CODE,
-                                       ADYEN_NOTIFICATIONS.MERCHANT_REFERENCE,
-                                       ADYEN_NOTIFICATIONS.OPERATIONS,
-                                       ADYEN_NOTIFICATIONS.ORIGINAL_REFERENCE,
-                                       ADYEN_NOTIFICATIONS.PAYMENT_METHOD,
-                                       ADYEN_NOTIFICATIONS.PSP_REFERENCE,
-                                       ADYEN_NOTIFICATIONS.REASON,
-                                       ADYEN_NOTIFICATIONS.SUCCESS,
-                                       ADYEN_NOTIFICATIONS.ADDITIONAL_DATA,
-                                       ADYEN_NOTIFICATIONS.CREATED_DATE,
-                                       ADYEN_NOTIFICATIONS.KB_TENANT_ID)
-                           .values(kbAccountId == null ? null : kbAccountId.toString(),
-                                   kbPaymentId == null ? null : kbPaymentId.toString(),
-                                   kbPaymentTransactionId == null ? null : kbPaymentTransactionId.toString(),
-                                   transactionType == null ? null : transactionType.toString(),
-                                   notification.getAmount(),
-                                   notification.getCurrency(),
-                                   notification.getEventCode(),
-                                   toTimestamp(notification.getEventDate()),
-                                   notification.getMerchantAccountCode(),
-                                   notification.getMerchantReference(),
-                                   getString(notification.getOperations()),
-                                   notification.getOriginalReference(),
-                                   notification.getPaymentMethod(),
-                                   notification.getPspReference(),
-                                   notification.getReason(),
-                                   notification.getSuccess() == null ? FALSE : fromBoolean(notification.getSuccess()),
-                                   additionalData,
-                                   toTimestamp(utcNow),
-                                   kbTenantId == null ? null : kbTenantId.toString())
-                           .execute();
-                        return null;
-                    }
-                });
+        return execute(getConnection(), "addNotification",
+                       new WithConnectionCallback<AdyenNotificationsRecord>() {
+                           @Override
+                           public AdyenNotificationsRecord withConnection(final Connection conn) throws SQLException {
+                               final AdyenNotificationsRecord record = using(conn).newRecord(ADYEN_NOTIFICATIONS);
+                               record.setKbAccountId(kbAccountId == null ? null : kbAccountId.toString());
+                               record.setKbPaymentId(kbPaymentId == null ? null : kbPaymentId.toString());
+                               record.setKbPaymentTransactionId(kbPaymentTransactionId == null ? null : kbPaymentTransactionId.toString());
+                               record.setTransactionType(transactionType == null ? null : transactionType.toString());
+                               record.setAmount(notification.getAmount());
+                               record.setCurrency(notification.getCurrency());
+                               record.setEventCode(notification.getEventCode());
+                               record.setEventDate(toTimestamp(notification.getEventDate()));
+                               record.setMerchantAccountCode(notification.getMerchantAccountCode());
+                               record.setMerchantReference(notification.getMerchantReference());
+                               record.setOperations(getString(notification.getOperations()));
+                               record.setOriginalReference(notification.getOriginalReference());
+                               record.setPaymentMethod(notification.getPaymentMethod());
+                               record.setPspReference(notification.getPspReference());
+                               record.setReason(notification.getReason());
+                               record.setSuccess(notification.getSuccess() == null ? FALSE : fromBoolean(notification.getSuccess()));
+                               record.setAdditionalData(additionalData);
+                               record.setCreatedDate(toTimestamp(utcNow));
+                               record.setKbTenantId(kbTenantId == null ? null : kbTenantId.toString());
+                               return insert(conn, ADYEN_NOTIFICATIONS.getIdentity(), record);
+                           }
+                       });
     }
 
     @VisibleForTesting
     AdyenNotificationsRecord getNotification(final String pspReference) throws SQLException {
-        return execute(dataSource.getConnection(),
+        return getNotification(pspReference, null);
+    }
+
+    /**
+     * @param pspReference PSP reference
+     * @param kbTenantId   Kill Bill tenant id, null to look across all tenants
+     * @return the latest notification of the PSP reference, null if not found
+     * @throws SQLException For any unexpected SQL error
+     */
+    public AdyenNotificationsRecord getNotification(final String pspReference, @Nullable final UUID kbTenantId) throws SQLException {
+        return execute(getConnection(), "getNotification",
                        new WithConnectionCallback<AdyenNotificationsRecord>() {
                            @Override
                            public AdyenNotificationsRecord withConnection(final Connection conn) throws SQLException {
-                               return DSL.using(conn, dialect, settings)
+                               return using(conn)
                                          .selectFrom(ADYEN_NOTIFICATIONS)
                                          .where(ADYEN_NOTIFICATIONS.PSP_REFERENCE.equal(pspReference))
+                                         .and(kbTenantId == null ? DSL.trueCondition() : ADYEN_NOTIFICATIONS.KB_TENANT_ID.equal(kbTenantId.toString()))
                                          .orderBy(ADYEN_NOTIFICATIONS.RECORD_ID.desc())
                                          .limit(1)
                                          .fetchOne();
@@ -509,13 +1883,229 @@ public class AdyenDao extends PluginPaymentDao<AdyenResponsesRecord, AdyenRespon
                        });
     }
 
+    /**
+     * Loose index scan over the (kb_tenant_id, created_date) index: one index lookup per tenant, instead of a
+     * select distinct which reads the whole table.
+     *
+     * @return the tenants notifications have been received for (null for the notifications which couldn't be matched)
+     */
+    public List<String> getNotificationsTenantIds() throws SQLException {
+        return execute(getConnection(canReadFromReplica(ImmutableList.<UUID>of())), "getNotificationsTenantIds",
+                       new WithConnectionCallback<List<String>>() {
+                           @Override
+                           public List<String> withConnection(final Connection conn) throws SQLException {
+                               final DSLContext context = using(conn);
+                               final List<String> kbTenantIds = new LinkedList<String>();
+                               String kbTenantId = null;
+                               do {
+                                   kbTenantId = context.select(DSL.min(ADYEN_NOTIFICATIONS.KB_TENANT_ID))
+                                                       .from(ADYEN_NOTIFICATIONS)
+                                                       .where(kbTenantId == null ? ADYEN_NOTIFICATIONS.KB_TENANT_ID.isNotNull() : ADYEN_NOTIFICATIONS.KB_TENANT_ID.greaterThan(kbTenantId))
+                                                       .fetchOne(0, String.class);
+                                   if (kbTenantId != null) {
+                                       kbTenantIds.add(kbTenantId);
+                                   }
+                               } while (kbTenantId != null);
+
+                               final boolean hasUnmatchedNotifications = context.fetchExists(context.selectOne()
+                                                                                                    .from(ADYEN_NOTIFICATIONS)
+                                                                                                    .where(ADYEN_NOTIFICATIONS.KB_TENANT_ID.isNull()));
+                               if (hasUnmatchedNotifications) {
+                                   kbTenantIds.add(null);
+                               }
+                               return kbTenantIds;
+                           }
+                       });
+    }
+
+    /**
+     * Move the next chunk of notifications of a tenant to adyen_notifications_archive
+     * <p/>
+     * Each chunk is moved in its own transaction, which only locks the rows of the chunk.
+     *
+     * @param kbTenantId    Kill Bill tenant id (null for the notifications which couldn't be matched)
+     * @param createdBefore only notifications created before this date are archived
+     * @param chunkSize     maximum number of notifications to archive
+     * @return the number of notifications archived, less than chunkSize if there is nothing left to do
+     * @throws SQLException For any unexpected SQL error
+     */
+    public int archiveNotifications(@Nullable final UUID kbTenantId, final DateTime createdBefore, final int chunkSize) throws SQLException {
+        return execute(getConnection(), "archiveNotifications",
+                       new WithConnectionCallback<Integer>() {
+                           @Override
+                           public Integer withConnection(final Connection conn) throws SQLException {
+                               return using(conn)
+                                         .transactionResult(new TransactionalCallable<Integer>() {
+                                             @Override
+                                             public Integer run(final Configuration configuration) {
+                                                 final DSLContext context = DSL.using(configuration);
+                                                 final List<UInteger> recordIds = context.select(ADYEN_NOTIFICATIONS.RECORD_ID)
+                                                                                         .from(ADYEN_NOTIFICATIONS)
+                                                                                         .where(kbTenantId == null ? ADYEN_NOTIFICATIONS.KB_TENANT_ID.isNull() : ADYEN_NOTIFICATIONS.KB_TENANT_ID.equal(kbTenantId.toString()))
+                                                                                         .and(ADYEN_NOTIFICATIONS.CREATED_DATE.lessThan(toTimestamp(createdBefore)))
+                                                                                         .orderBy(ADYEN_NOTIFICATIONS.RECORD_ID)
+                                                                                         .limit(chunkSize)
+                                                                                         .forUpdate()
+                                                                                         .fetch(ADYEN_NOTIFICATIONS.RECORD_ID);
+                                                 if (recordIds.isEmpty()) {
+                                                     return 0;
+                                                 }
+
+                                                 context.insertInto(ADYEN_NOTIFICATIONS_ARCHIVE, ADYEN_NOTIFICATIONS_ARCHIVE_FIELDS)
+                                                        .select(context.select(ADYEN_NOTIFICATIONS.fields())
+                                                                       .from(ADYEN_NOTIFICATIONS)
+                                                                       .where(ADYEN_NOTIFICATIONS.RECORD_ID.in(recordIds)))
+                                                        .execute();
+                                                 return context.deleteFrom(ADYEN_NOTIFICATIONS)
+                                                               .where(ADYEN_NOTIFICATIONS.RECORD_ID.in(recordIds))
+                                                               .execute();
+                                             }
+                                         });
+                           }
+                       });
+    }
+
+    // Reconciliation export
+
+    /**
+     * Stream a page of the responses of a tenant, in record_id order. Pages are delimited by the last record_id seen
+     * (keyset pagination), so each page is an index range scan whatever the depth of the export. Archived responses
+     * are included: they keep their record_id.
+     *
+     * @param kbTenantId          Kill Bill tenant id
+     * @param merchantAccountCode only responses of this merchant account, if specified
+     * @param createdFrom         only responses created on or after this date, if specified
+     * @param createdTo           only responses created before this date, if specified
+     * @param afterRecordId       record_id of the last response of the previous page, null for the first page
+     * @param pageSize            maximum number of responses in the page
+     * @param handler             invoked for each response, while the cursor is open
+     * @return the record_id of the last response of the page, null if there was none
+     * @throws SQLException For any unexpected SQL error
+     */
+    public UInteger exportResponses(final UUID kbTenantId,
+                                    @Nullable final String merchantAccountCode,
+                                    @Nullable final DateTime createdFrom,
+                                    @Nullable final DateTime createdTo,
+                                    @Nullable final UInteger afterRecordId,
+                                    final int pageSize,
+                                    final RecordHandler<AdyenResponsesRecord> handler) throws SQLException {
+        return exportPage(ADYEN_RESPONSES,
+                          ADYEN_RESPONSES_ARCHIVE,
+                          ADYEN_RESPONSES_ARCHIVE_FIELDS,
+                          ADYEN_RESPONSES_ARCHIVE_RECORD_ID,
+                          exportCondition(ADYEN_RESPONSES_ARCHIVE_KB_TENANT_ID.equal(kbTenantId.toString()),
+                                          archiveField(ADYEN_RESPONSES.MERCHANT_ACCOUNT_CODE),
+                                          merchantAccountCode,
+                                          archiveField(ADYEN_RESPONSES.CREATED_DATE),
+                                          createdFrom,
+                                          createdTo),
+                          afterRecordId,
+                          pageSize,
+                          handler);
+    }
+
+    /**
+     * Stream a page of the notifications of a tenant, in record_id order (see exportResponses)
+     */
+    public UInteger exportNotifications(final UUID kbTenantId,
+                                        @Nullable final String merchantAccountCode,
+                                        @Nullable final DateTime createdFrom,
+                                        @Nullable final DateTime createdTo,
+                                        @Nullable final UInteger afterRecordId,
+                                        final int pageSize,
+                                        final RecordHandler<AdyenNotificationsRecord> handler) throws SQLException {
+        return exportPage(ADYEN_NOTIFICATIONS,
+                          ADYEN_NOTIFICATIONS_ARCHIVE,
+                          ADYEN_NOTIFICATIONS_ARCHIVE_FIELDS,
+                          archiveField(ADYEN_NOTIFICATIONS.RECORD_ID),
+                          exportCondition(archiveField(ADYEN_NOTIFICATIONS.KB_TENANT_ID).equal(kbTenantId.toString()),
+                                          archiveField(ADYEN_NOTIFICATIONS.MERCHANT_ACCOUNT_CODE),
+                                          merchantAccountCode,
+                                          archiveField(ADYEN_NOTIFICATIONS.CREATED_DATE),
+                                          createdFrom,
+                                          createdTo),
+                          afterRecordId,
+                          pageSize,
+                          handler);
+    }
+
+    private static Condition exportCondition(final Condition tenantCondition,
+                                             final Field<String> merchantAccountCodeField,
+                                             @Nullable final String merchantAccountCode,
+                                             final Field<Timestamp> createdDateField,
+                                             @Nullable final DateTime createdFrom,
+                                             @Nullable final DateTime createdTo) {
+        Condition condition = tenantCondition;
+        if (merchantAccountCode != null) {
+            condition = condition.and(merchantAccountCodeField.equal(merchantAccountCode));
+        }
+        if (createdFrom != null) {
+            condition = condition.and(createdDateField.greaterOrEqual(toTimestamp(createdFrom)));
+        }
+        if (createdTo != null) {
+            condition = condition.and(createdDateField.lessThan(toTimestamp(createdTo)));
+        }
+        return condition;
+    }
+
+    // The fields and condition are unqualified, to apply to both the table and its archive
+    private <R extends Record> UInteger exportPage(final Table<R> table,
+                                                   final Table<Record> archiveTable,
+                                                   final List<Field<?>> fields,
+                                                   final Field<UInteger> recordIdField,
+                                                   final Condition condition,
+                                                   @Nullable final UInteger afterRecordId,
+                                                   final int pageSize,
+                                                   final RecordHandler<R> handler) throws SQLException {
+        final Condition pageCondition = afterRecordId == null ? condition : condition.and(recordIdField.greaterThan(afterRecordId));
+        return execute(getConnection(canReadFromReplica(ImmutableList.<UUID>of())), "exportPage",
+                       new WithConnectionCallback<UInteger>() {
+                           @Override
+                           public UInteger withConnection(final Connection conn) throws SQLException {
+                               final DSLContext context = using(conn);
+                               // A row is either live or archived: each table is read up to the page size, and the
+                               // first rows of both make the page
+                               final Table<Record> livePage = context.select(fields)
+                                                                     .from(table)
+                                                                     .where(pageCondition)
+                                                                     .orderBy(recordIdField)
+                                                                     .limit(pageSize)
+                                                                     .asTable("live_page");
+                               final Table<Record> archivedPage = context.select(fields)
+                                                                         .from(archiveTable)
+                                                                         .where(pageCondition)
+                                                                         .orderBy(recordIdField)
+                                                                         .limit(pageSize)
+                                                                         .asTable("archived_page");
+                               // Rows are handed over as they are read: only the current one is materialized
+                               final Cursor<Record> cursor = context.select(fields)
+                                                                    .from(livePage)
+                                                                    .unionAll(context.select(fields).from(archivedPage))
+                                                                    .orderBy(recordIdField)
+                                                                    .limit(pageSize)
+                                                                    .fetchLazy();
+                               try {
+                                   UInteger lastRecordId = null;
+                                   while (cursor.hasNext()) {
+                                       final Record record = cursor.fetchOne();
+                                       handler.next(record.into(table));
+                                       lastRecordId = record.get(recordIdField);
+                                   }
+                                   return lastRecordId;
+                               } finally {
+                                   cursor.close();
+                               }
+                           }
+                       });
+    }
+
     // Just for testing
     public List<AdyenNotificationsRecord> getNotifications() throws SQLException {
-        return execute(dataSource.getConnection(),
+        return execute(getConnection(), "getNotifications",
                        new WithConnectionCallback<List<AdyenNotificationsRecord>>() {
                            @Override
                            public List<AdyenNotificationsRecord> withConnection(final Connection conn) throws SQLException {
-                               return DSL.using(conn, dialect, settings)
+                               return using(conn)
                                          .selectFrom(ADYEN_NOTIFICATIONS)
                                          .orderBy(ADYEN_NOTIFICATIONS.RECORD_ID.asc())
                                          .fetch();
@@ -523,6 +2113,21 @@ public class AdyenDao extends PluginPaymentDao<AdyenResponsesRecord, AdyenRespon
                        });
     }
 
+    /**
+     * Insert the record and set its generated record_id in a single round-trip: RETURNING on PostgreSQL,
+     * JDBC generated keys on MySQL and H2. The returned record is the one passed in, i.e. it isn't re-read.
+     */
+    private <R extends TableRecord<R>, T> R insert(final Connection conn, final Identity<R, T> identity, final R record) {
+        final R inserted = using(conn)
+                              .insertInto(identity.getTable())
+                              .set(record)
+                              .returning(identity.getField())
+                              .fetchOne();
+        record.set(identity.getField(), inserted.get(identity.getField()));
+        record.changed(false);
+        return record;
+    }
+
     private String getString(@Nullable final Iterable<?> iterable) {
         if (iterable == null || !iterable.iterator().hasNext()) {
             return null;
@@ -539,7 +2144,7 @@ public class AdyenDao extends PluginPaymentDao<AdyenResponsesRecord, AdyenRespon
         return getProperty(key, response.getAdditionalData());
     }
 
-    private String getAdditionalData(final PurchaseResult result) throws SQLException {
+    private Map<String, String> getAdditionalDataMap(final PurchaseResult result) {
         final Map<String, String> additionalDataMap = new HashMap<String, String>();
         if (result.getAdditionalData() != null && !result.getAdditionalData().isEmpty()) {
             additionalDataMap.putAll(result.getAdditionalData());
@@ -547,10 +2152,36 @@ public class AdyenDao extends PluginPaymentDao<AdyenResponsesRecord, AdyenRespon
         if (result.getFormParameter() != null && !result.getFormParameter().isEmpty()) {
             additionalDataMap.putAll(result.getFormParameter());
         }
-        if (additionalDataMap.isEmpty()) {
-            return null;
-        } else {
-            return asString(additionalDataMap);
+        return additionalDataMap;
+    }
+
+    private void setIndexedColumns(final AdyenResponsesRecord record, @Nullable final Map additionalData) {
+        record.setMerchantAccountCode(getProperty(PROPERTY_MERCHANT_ACCOUNT_CODE, additionalData));
+        record.setPaymentMethod(getPaymentMethod(additionalData));
+        record.setFromHpp(fromBoolean(Boolean.valueOf(getProperty(PROPERTY_FROM_HPP, additionalData))));
+        record.setFromHppCompletion(fromBoolean(Boolean.valueOf(getProperty(PROPERTY_HPP_COMPLETION, additionalData))));
+        record.setFromHppTransactionStatus(getProperty(PROPERTY_FROM_HPP_TRANSACTION_STATUS, additionalData));
+    }
+
+    private void setIndexedColumns(final AdyenHppRequestsRecord record, @Nullable final Map additionalData) {
+        record.setMerchantAccountCode(getProperty(PROPERTY_MERCHANT_ACCOUNT_CODE, additionalData));
+        record.setPaymentMethod(getPaymentMethod(additionalData));
+        // Both keys are optional: the flag tells the backfill the row was processed
+        record.setAdditionalDataExtracted(TRUE);
+    }
+
+    // paymentMethod comes from the notification, brandCode from the HPP request
+    private String getPaymentMethod(@Nullable final Map additionalData) {
+        final String paymentMethod = getProperty(PROPERTY_PAYMENT_METHOD, additionalData);
+        return paymentMethod != null ? paymentMethod : getProperty(PROPERTY_BRAND_CODE, additionalData);
+    }
+
+    private static Map fromAdditionalDataOrEmpty(@Nullable final String additionalData) {
+        try {
+            return fromAdditionalData(additionalData);
+        } catch (final RuntimeException e) {
+            // Corrupted JSON: still mark the row as processed
+            return ImmutableMap.of();
         }
     }
 
@@ -558,6 +2189,18 @@ public class AdyenDao extends PluginPaymentDao<AdyenResponsesRecord, AdyenRespon
         return asString(response.getAdditionalData());
     }
 
+    private static List<Field<?>> archiveFields(final Table<?> table) {
+        final List<Field<?>> archiveFields = new ArrayList<Field<?>>();
+        for (final Field<?> field : table.fields()) {
+            archiveFields.add(archiveField(field));
+        }
+        return archiveFields;
+    }
+
+    private static <T> Field<T> archiveField(final Field<T> field) {
+        return DSL.field(DSL.name(field.getName()), field.getDataType());
+    }
+
     public static Map fromAdditionalData(@Nullable final String additionalData) {
         if (additionalData == null) {
             return ImmutableMap.of();
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.dao;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.jooq.Binding;
+import org.jooq.BindingGetResultSetContext;
+import org.jooq.BindingGetSQLInputContext;
+import org.jooq.BindingGetStatementContext;
+import org.jooq.BindingRegisterContext;
+import org.jooq.BindingSQLContext;
+import org.jooq.BindingSetSQLOutputContext;
+import org.jooq.BindingSetStatementContext;
+import org.jooq.Configuration;
+import org.jooq.Converter;
+import org.jooq.SQLDialect;
+import org.jooq.conf.ParamType;
+import org.jooq.impl.DSL;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Binding of the kb_*_id columns: Kill Bill ids are always Strings on the Java side, stored either as char(36)
+ * (default schema) or, once converted by KbIdColumnsMigration, as binary(16) (uuid on PostgreSQL).
+ * <p/>
+ * Reads adapt to what the driver returns. Writes need to know the storage: it is set on the jOOQ configuration
+ * (see BINARY_KB_IDS), the DAO detecting it at startup.
+ */
+public class KbIdBinding implements Binding<String, String> {
+
+    public static final String BINARY_KB_IDS = "org.killbill.billing.plugin.adyen.binaryKbIds";
+
+    private static final Converter<String, String> IDENTITY = new Converter<String, String>() {
+        @Override
+        public String from(final String databaseObject) {
+            return databaseObject;
+        }
+
+        @Override
+        public String to(final String userObject) {
+            return userObject;
+        }
+
+        @Override
+        public Class<String> fromType() {
+            return String.class;
+        }
+
+        @Override
+        public Class<String> toType() {
+            return String.class;
+        }
+    };
+
+    public static boolean isBinary(final Configuration configuration) {
+        return Boolean.TRUE.equals(configuration.data(BINARY_KB_IDS));
+    }
+
+    public static byte[] toBytes(final String kbId) {
+        final UUID uuid = UUID.fromString(kbId);
+        return ByteBuffer.allocate(16)
+                         .putLong(uuid.getMostSignificantBits())
+                         .putLong(uuid.getLeastSignificantBits())
+                         .array();
+    }
+
+    @Nullable
+    public static String fromDatabase(@Nullable final Object value) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof byte[]) {
+            final ByteBuffer buffer = ByteBuffer.wrap((byte[]) value);
+            return new UUID(buffer.getLong(), buffer.getLong()).toString();
+        } else {
+            // char(36), or java.util.UUID
+            return value.toString();
+        }
+    }
+
+    @Override
+    public Converter<String, String> converter() {
+        return IDENTITY;
+    }
+
+    @Override
+    public void sql(final BindingSQLContext<String> ctx) throws SQLException {
+        if (ctx.render().paramType() != ParamType.INLINED) {
+            ctx.render().sql(ctx.variable());
+        } else if (ctx.value() == null || !isBinary(ctx.configuration())) {
+            ctx.render().visit(DSL.inline(ctx.value()));
+        } else if (ctx.family() == SQLDialect.POSTGRES) {
+            ctx.render().visit(DSL.inline(ctx.value())).sql("::uuid");
+        } else {
+            ctx.render().sql("X'").sql(BaseEncoding.base16().encode(toBytes(ctx.value()))).sql("'");
+        }
+    }
+
+    @Override
+    public void register(final BindingRegisterContext<String> ctx) throws SQLException {
+        ctx.statement().registerOutParameter(ctx.index(), sqlType(ctx.configuration()));
+    }
+
+    @Override
+    public void set(final BindingSetStatementContext<String> ctx) throws SQLException {
+        final String value = ctx.value();
+        if (value == null) {
+            ctx.statement().setNull(ctx.index(), sqlType(ctx.configuration()));
+        } else if (!isBinary(ctx.configuration())) {
+            ctx.statement().setString(ctx.index(), value);
+        } else if (ctx.family() == SQLDialect.POSTGRES) {
+            ctx.statement().setObject(ctx.index(), UUID.fromString(value));
+        } else {
+            ctx.statement().setBytes(ctx.index(), toBytes(value));
+        }
+    }
+
+    @Override
+    public void set(final BindingSetSQLOutputContext<String> ctx) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public void get(final BindingGetResultSetContext<String> ctx) throws SQLException {
+        ctx.value(fromDatabase(ctx.resultSet().getObject(ctx.index())));
+    }
+
+    @Override
+    public void get(final BindingGetStatementContext<String> ctx) throws SQLException {
+        ctx.value(fromDatabase(ctx.statement().getObject(ctx.index())));
+    }
+
+    @Override
+    public void get(final BindingGetSQLInputContext<String> ctx) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    private static int sqlType(final Configuration configuration) {
+        if (!isBinary(configuration)) {
+            return Types.CHAR;
+        }
+        return configuration.family() == SQLDialect.POSTGRES ? Types.OTHER : Types.BINARY;
+    }
+}
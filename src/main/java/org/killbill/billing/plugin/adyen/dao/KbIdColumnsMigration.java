@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import org.jooq.DataType;
+import org.jooq.SQLDialect;
+import org.jooq.impl.SQLDataType;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Converts the kb_*_id columns from char(36) to binary(16) (uuid on PostgreSQL): each id takes 16 bytes in the
+ * indexes, instead of 36 (108 with the utf8 charset on MySQL).
+ * <p/>
+ * Offline tool: Kill Bill must be stopped during the whole cutover, which rebuilds the tables with blocking alter table
+ * statements (there is no online backfill: every row would have to be filled again anyway). Lookups by kb_payment_id
+ * aren't faster on H2 (see KbIdLookupBenchmark), the gain is the size of the indexes.
+ * <p/>
+ * Usage: java -cp adyen-plugin.jar:[JDBC driver] org.killbill.billing.plugin.adyen.dao.KbIdColumnsMigration [JDBC url] [user] [password] cutover [chunk size]
+ */
+public class KbIdColumnsMigration extends ShadowColumnsMigration {
+
+    private static final DataType<String> KB_ID = SQLDataType.CHAR.length(36).asConvertedDataType(new KbIdBinding());
+    private static final Map<String, List<String>> KB_ID_COLUMNS = getColumnsWithBinding(KbIdBinding.class);
+
+    public KbIdColumnsMigration(final Connection conn) {
+        super(conn, KbIdBinding.BINARY_KB_IDS, KB_ID_COLUMNS, KB_ID, "Kill Bill ids");
+    }
+
+    /**
+     * @param conn connection to the plugin schema
+     * @return true if the Kill Bill ids are stored as binary(16) (or uuid)
+     * @throws SQLException if the conversion was only partially done (cutover must be run again)
+     */
+    public static boolean hasBinaryKbIds(final Connection conn) throws SQLException {
+        return hasBinaryColumns(conn, KB_ID_COLUMNS, KbIdColumnsMigration.class.getSimpleName());
+    }
+
+    @Override
+    protected String binaryType() {
+        return family == SQLDialect.POSTGRES ? "uuid" : "binary(16)";
+    }
+
+    public static void main(final String[] args) throws SQLException {
+        main(args,
+             KbIdColumnsMigration.class.getSimpleName(),
+             ImmutableSet.<String>of("cutover"),
+             new Command() {
+                 @Override
+                 public void run(final Connection conn, final String command, final int chunkSize) throws SQLException {
+                     new KbIdColumnsMigration(conn).cutover(chunkSize);
+                 }
+             });
+    }
+}
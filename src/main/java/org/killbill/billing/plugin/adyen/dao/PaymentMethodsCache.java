@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.dao;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenPaymentMethodsRecord;
+import org.killbill.billing.plugin.adyen.metrics.Counter;
+import org.killbill.billing.plugin.adyen.metrics.Gauge;
+import org.killbill.billing.plugin.adyen.metrics.MetricFamily;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded, per-tenant cache of the (non deleted) payment methods rows, keyed by kbPaymentMethodId.
+ * <p/>
+ * Entries are invalidated by the writes going through this node; the TTL bounds the staleness of writes
+ * made by other nodes. Callers get their own copy of the cached records.
+ * <p/>
+ * Each invalidation bumps a generation: a row read from the database before an invalidation (i.e. possibly stale) is
+ * never left in the cache, see put.
+ */
+public class PaymentMethodsCache {
+
+    public static final String CACHE_REQUESTS_METRIC = "adyen_payment_methods_cache_requests_total";
+    public static final String CACHE_HIT_RATIO_METRIC = "adyen_payment_methods_cache_hit_ratio";
+    public static final String CACHE_SIZE_METRIC = "adyen_payment_methods_cache_size";
+
+    public static final long DEFAULT_MAX_SIZE = 10000;
+    public static final long DEFAULT_TTL_SECONDS = 300;
+
+    private final Cache<Key, AdyenPaymentMethodsRecord> cache;
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+
+    public PaymentMethodsCache(final MetricsRegistry metricsRegistry) {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL_SECONDS, metricsRegistry);
+    }
+
+    /**
+     * @param maxSize         maximum number of payment methods cached (0 to disable the cache)
+     * @param ttlSeconds      time after which an entry is reloaded from the database
+     * @param metricsRegistry registry to report the hit ratio to
+     */
+    public PaymentMethodsCache(final long maxSize, final long ttlSeconds, final MetricsRegistry metricsRegistry) {
+        this.cache = CacheBuilder.newBuilder()
+                                 .maximumSize(maxSize)
+                                 .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                                 .build();
+
+        final MetricFamily<Counter> requests = metricsRegistry.counters(CACHE_REQUESTS_METRIC, "Lookups of the payment methods cache", "result");
+        this.hits = requests.labels("hit");
+        this.misses = requests.labels("miss");
+        metricsRegistry.gauge(CACHE_HIT_RATIO_METRIC,
+                              "Ratio of the payment methods lookups served by the cache",
+                              new Gauge() {
+                                  @Override
+                                  public double getValue() {
+                                      final long hitCount = hits.getCount();
+                                      final long requestCount = hitCount + misses.getCount();
+                                      return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+                                  }
+                              });
+        metricsRegistry.gauge(CACHE_SIZE_METRIC,
+                              "Number of payment methods cached",
+                              new Gauge() {
+                                  @Override
+                                  public double getValue() {
+                                      return cache.size();
+                                  }
+                              });
+    }
+
+    @Nullable
+    public AdyenPaymentMethodsRecord get(final UUID kbPaymentMethodId, final UUID kbTenantId) {
+        final AdyenPaymentMethodsRecord record = cache.getIfPresent(new Key(kbPaymentMethodId, kbTenantId));
+        if (record == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copy(record);
+    }
+
+    /**
+     * @return the generation to pass to put, taken before reading the row from the database
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @param generation generation returned by getGeneration before the row was read: if anything was invalidated
+     *                   since, the row is dropped
+     */
+    public void put(final UUID kbPaymentMethodId, final UUID kbTenantId, final AdyenPaymentMethodsRecord record, final long generation) {
+        final Key key = new Key(kbPaymentMethodId, kbTenantId);
+        final AdyenPaymentMethodsRecord copy = copy(record);
+        cache.put(key, copy);
+        // Checked after the put: a concurrent invalidation either bumped the generation already, or removes the entry
+        if (this.generation.get() != generation) {
+            cache.asMap().remove(key, copy);
+        }
+    }
+
+    public void invalidate(final UUID kbPaymentMethodId, final UUID kbTenantId) {
+        generation.incrementAndGet();
+        cache.invalidate(new Key(kbPaymentMethodId, kbTenantId));
+    }
+
+    public void invalidateAccount(final UUID kbAccountId, final UUID kbTenantId) {
+        generation.incrementAndGet();
+        final String accountId = kbAccountId.toString();
+        final Iterator<Map.Entry<Key, AdyenPaymentMethodsRecord>> iterator = cache.asMap().entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Key, AdyenPaymentMethodsRecord> entry = iterator.next();
+            if (entry.getKey().kbTenantId.equals(kbTenantId) && accountId.equals(entry.getValue().getKbAccountId())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static AdyenPaymentMethodsRecord copy(final AdyenPaymentMethodsRecord record) {
+        final AdyenPaymentMethodsRecord copy = new AdyenPaymentMethodsRecord();
+        copy.from(record);
+        copy.changed(false);
+        return copy;
+    }
+
+    private static final class Key {
+
+        private final UUID kbPaymentMethodId;
+        private final UUID kbTenantId;
+
+        private Key(final UUID kbPaymentMethodId, final UUID kbTenantId) {
+            this.kbPaymentMethodId = kbPaymentMethodId;
+            this.kbTenantId = kbTenantId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return kbPaymentMethodId.equals(key.kbPaymentMethodId) && kbTenantId.equals(key.kbTenantId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(kbPaymentMethodId, kbTenantId);
+        }
+    }
+}
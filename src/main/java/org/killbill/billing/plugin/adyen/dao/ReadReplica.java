@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import org.killbill.billing.plugin.adyen.metrics.Counter;
+import org.killbill.billing.plugin.adyen.metrics.MetricFamily;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Read replica, for the DAO reads which tolerate replication lag (payment infos, payment methods, exports).
+ * <p/>
+ * Read-your-writes: the Kill Bill ids (payments, accounts, payment methods) written through this node during the last
+ * readYourWritesSeconds are read from the primary instead. Writes made by other nodes are only bounded by the lag.
+ */
+public class ReadReplica {
+
+    public static final String READS_METRIC = "adyen_dao_replica_reads_total";
+    public static final long DEFAULT_READ_YOUR_WRITES_SECONDS = 30;
+
+    // Beyond that many ids written during the window, the oldest ones may be read from the replica early
+    private static final long MAX_RECENT_WRITES = 100000;
+
+    private final DataSource dataSource;
+    private final Cache<UUID, Boolean> recentWrites;
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+
+    public ReadReplica(final DataSource dataSource, final MetricsRegistry metricsRegistry) {
+        this(dataSource, DEFAULT_READ_YOUR_WRITES_SECONDS, metricsRegistry);
+    }
+
+    /**
+     * @param dataSource            replica of the plugin schema
+     * @param readYourWritesSeconds time during which the ids written by this node are read from the primary (should
+     *                              exceed the replication lag)
+     * @param metricsRegistry       registry to report the routing of the reads to
+     */
+    public ReadReplica(final DataSource dataSource, final long readYourWritesSeconds, final MetricsRegistry metricsRegistry) {
+        this.dataSource = dataSource;
+        this.recentWrites = CacheBuilder.newBuilder()
+                                        .maximumSize(MAX_RECENT_WRITES)
+                                        .expireAfterWrite(readYourWritesSeconds, TimeUnit.SECONDS)
+                                        .build();
+
+        final MetricFamily<Counter> reads = metricsRegistry.counters(READS_METRIC, "Reads eligible to the read replica", "target");
+        this.replicaReads = reads.labels("replica");
+        this.primaryReads = reads.labels("primary");
+    }
+
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    public void recordWrite(@Nullable final UUID kbId) {
+        if (kbId != null) {
+            recentWrites.put(kbId, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @param kbIds Kill Bill ids the read is about
+     * @return true if the read can go to the replica, false if one of the ids has been written recently
+     */
+    public boolean canRead(final Iterable<UUID> kbIds) {
+        final boolean canRead = !isRecentlyWritten(kbIds);
+        recordRead(canRead);
+        return canRead;
+    }
+
+    /**
+     * For reads which check their ids in several steps: one call to recordRead per read, once decided
+     *
+     * @param kbIds Kill Bill ids the read is about
+     * @return true if one of the ids has been written recently
+     */
+    public boolean isRecentlyWritten(final Iterable<UUID> kbIds) {
+        for (final UUID kbId : kbIds) {
+            if (recentWrites.getIfPresent(kbId) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void recordRead(final boolean fromReplica) {
+        (fromReplica ? replicaReads : primaryReads).increment();
+    }
+}
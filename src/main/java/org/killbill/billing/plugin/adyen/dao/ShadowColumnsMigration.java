@@ -0,0 +1,431 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.dao;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jooq.BatchBindStep;
+import org.jooq.Binding;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.DataType;
+import org.jooq.Field;
+import org.jooq.Query;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.SQLDialect;
+import org.jooq.Table;
+import org.jooq.UpdateSetMoreStep;
+import org.jooq.conf.RenderNameStyle;
+import org.jooq.conf.Settings;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+import org.jooq.tools.jdbc.JDBCUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import static org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenHppRequests.ADYEN_HPP_REQUESTS;
+import static org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenNotifications.ADYEN_NOTIFICATIONS;
+import static org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenPaymentMethods.ADYEN_PAYMENT_METHODS;
+import static org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenResponses.ADYEN_RESPONSES;
+
+/**
+ * Converts text columns to a binary type, in two steps:
+ * <ul>
+ * <li>backfill: adds a shadow column for each column (e.g. kb_payment_id_bin) and fills it, one chunk (and transaction)
+ * at a time. It can run while Kill Bill is up, and be interrupted and run again.</li>
+ * <li>cutover: fills the shadow columns of all the rows again (the text columns of the backfilled rows may have been
+ * updated since, e.g. by merging additional data), drops the indexes on the columns, swaps the columns and recreates
+ * the indexes. Kill Bill must be stopped during the whole cutover: the alter table statements block the tables (and
+ * rebuild them on MySQL), and AdyenDao only detects the storage of the columns on startup.</li>
+ * </ul>
+ * The values are converted by the binding of the columns, with the binary flag set on the configuration.
+ */
+public abstract class ShadowColumnsMigration {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private static final Logger logger = LoggerFactory.getLogger(ShadowColumnsMigration.class);
+
+    static final String SHADOW_COLUMN_SUFFIX = "_bin";
+    static final Field<Long> RECORD_ID = DSL.field(DSL.name("record_id"), SQLDataType.BIGINT);
+
+    private static final String ARCHIVE_TABLE_SUFFIX = "_archive";
+    private static final ImmutableSet<Integer> TEXT_TYPES = ImmutableSet.<Integer>of(Types.CHAR, Types.VARCHAR, Types.LONGVARCHAR, Types.CLOB,
+                                                                                     Types.NCHAR, Types.NVARCHAR, Types.LONGNVARCHAR, Types.NCLOB);
+
+    protected final Connection conn;
+    protected final SQLDialect family;
+    // Reads the text columns
+    protected final DSLContext textContext;
+    // Writes the binary columns
+    protected final DSLContext binaryContext;
+
+    private final Map<String, List<String>> columnsByTable;
+    private final DataType<String> binaryDataType;
+    private final String description;
+
+    protected ShadowColumnsMigration(final Connection conn,
+                                     final String binaryFlag,
+                                     final Map<String, List<String>> columnsByTable,
+                                     final DataType<String> binaryDataType,
+                                     final String description) {
+        this.conn = conn;
+        this.family = JDBCUtils.dialect(conn).family();
+        final Settings settings = new Settings().withRenderSchema(false).withRenderNameStyle(RenderNameStyle.AS_IS);
+        this.textContext = DSL.using(conn, family, settings);
+        this.binaryContext = DSL.using(conn, family, settings);
+        this.binaryContext.configuration().data(binaryFlag, true);
+        this.columnsByTable = columnsByTable;
+        this.binaryDataType = binaryDataType;
+        this.description = description;
+    }
+
+    /**
+     * Add and fill the shadow columns (online)
+     *
+     * @param chunkSize number of rows updated per transaction
+     * @return the number of rows updated
+     * @throws SQLException For any unexpected SQL error
+     */
+    public long backfill(final int chunkSize) throws SQLException {
+        long updated = 0;
+        for (final String table : columnsByTable.keySet()) {
+            final List<String> columns = getTextColumns(table);
+            if (columns.isEmpty()) {
+                continue;
+            }
+            addShadowColumns(table, columns);
+            updated += fillShadowColumns(table, columns, chunkSize, false);
+        }
+        return updated;
+    }
+
+    /**
+     * Swap the columns (offline: Kill Bill must be stopped, the tables are locked until the end)
+     *
+     * @param chunkSize number of rows updated per transaction, to fill the shadow columns
+     * @throws SQLException For any unexpected SQL error
+     */
+    public void cutover(final int chunkSize) throws SQLException {
+        for (final String table : columnsByTable.keySet()) {
+            final List<String> columns = getTextColumns(table);
+            if (columns.isEmpty()) {
+                continue;
+            }
+
+            addShadowColumns(table, columns);
+            // Nothing is written anymore: no backfilled value can go stale
+            fillShadowColumns(table, columns, chunkSize, true);
+
+            final Map<String, Column> existingColumns = getColumns(conn, table);
+            final List<Index> indexes = getIndexes(table, columns);
+            for (final Index index : indexes) {
+                execute(isMySQL() ? "drop index " + index.name + " on " + table : "drop index " + index.name);
+            }
+            for (final String column : columns) {
+                execute("alter table " + table + " drop column " + column);
+                renameShadowColumn(table, column, !existingColumns.get(column).nullable);
+            }
+            for (final Index index : indexes) {
+                execute("create " + (index.unique ? "unique " : "") + "index " + index.name + " on " + table + "(" + Joiner.on(", ").join(index.columns) + ")");
+            }
+            logger.info("Converted {} to binary: table='{}', columns='{}', indexes='{}'", description, table, columns, indexes.size());
+        }
+    }
+
+    // SQL type of the shadow columns
+    protected abstract String binaryType();
+
+    protected Map<String, List<String>> getColumnsByTable() {
+        return columnsByTable;
+    }
+
+    protected boolean isMySQL() {
+        return family == SQLDialect.MYSQL || family == SQLDialect.MARIADB;
+    }
+
+    protected void execute(final String sql) {
+        logger.info("Executing '{}'", sql);
+        textContext.execute(sql);
+    }
+
+    /**
+     * @param conn           connection to the plugin schema
+     * @param columnsByTable columns to look at
+     * @param tool           name of the migration, for the error message
+     * @return true if the columns have been converted to binary
+     * @throws SQLException if the conversion was only partially done (cutover must be run again)
+     */
+    static boolean hasBinaryColumns(final Connection conn, final Map<String, List<String>> columnsByTable, final String tool) throws SQLException {
+        Boolean binary = null;
+        for (final Map.Entry<String, List<String>> table : columnsByTable.entrySet()) {
+            final Map<String, Column> columns = getColumns(conn, table.getKey());
+            for (final String name : table.getValue()) {
+                final Column column = columns.get(name);
+                if (column == null) {
+                    continue;
+                }
+                if (binary == null) {
+                    binary = column.isBinary();
+                } else if (binary != column.isBinary()) {
+                    throw new SQLException("Columns only partially converted to binary, run the cutover of " + tool + " again (" + table.getKey() + "." + name + ")");
+                }
+            }
+        }
+        return binary != null && binary;
+    }
+
+    // Columns with that binding, by table (the archive tables have the same columns as their counterpart)
+    static Map<String, List<String>> getColumnsWithBinding(final Class<? extends Binding> bindingClass) {
+        final Map<String, List<String>> columnsByTable = new LinkedHashMap<String, List<String>>();
+        for (final Table<?> table : ImmutableList.<Table<?>>of(ADYEN_HPP_REQUESTS, ADYEN_NOTIFICATIONS, ADYEN_PAYMENT_METHODS, ADYEN_RESPONSES)) {
+            final List<String> columns = new ArrayList<String>();
+            for (final Field<?> field : table.fields()) {
+                if (bindingClass.isInstance(field.getDataType().getBinding())) {
+                    columns.add(field.getName());
+                }
+            }
+            columnsByTable.put(table.getName(), columns);
+            if (table == ADYEN_NOTIFICATIONS || table == ADYEN_RESPONSES) {
+                columnsByTable.put(table.getName() + ARCHIVE_TABLE_SUFFIX, columns);
+            }
+        }
+        return columnsByTable;
+    }
+
+    // By lower case name (H2 stores them upper case)
+    static Map<String, Column> getColumns(final Connection conn, final String table) throws SQLException {
+        final DatabaseMetaData metaData = conn.getMetaData();
+        final Map<String, Column> columns = new LinkedHashMap<String, Column>();
+        for (final String tableName : ImmutableList.<String>of(table, table.toUpperCase(Locale.ROOT))) {
+            final ResultSet resultSet = metaData.getColumns(conn.getCatalog(), null, tableName, null);
+            try {
+                while (resultSet.next()) {
+                    columns.put(resultSet.getString("COLUMN_NAME").toLowerCase(Locale.ROOT),
+                                new Column(resultSet.getInt("DATA_TYPE"), resultSet.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls));
+                }
+            } finally {
+                resultSet.close();
+            }
+            if (!columns.isEmpty()) {
+                break;
+            }
+        }
+        return columns;
+    }
+
+    interface Command {
+
+        void run(Connection conn, String command, int chunkSize) throws SQLException;
+    }
+
+    static void main(final String[] args, final String usage, final ImmutableSet<String> commands, final Command command) throws SQLException {
+        if (args.length < 4 || !commands.contains(args[3])) {
+            System.err.println("Usage: " + usage + " <JDBC url> <user> <password> " + Joiner.on('|').join(commands) + " [chunk size]");
+            System.exit(1);
+        }
+        final int chunkSize = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_CHUNK_SIZE;
+
+        final Connection conn = DriverManager.getConnection(args[0], args[1], args[2]);
+        try {
+            conn.setAutoCommit(true);
+            command.run(conn, args[3], chunkSize);
+        } finally {
+            conn.close();
+        }
+    }
+
+    private List<String> getTextColumns(final String table) throws SQLException {
+        final Map<String, Column> existingColumns = getColumns(conn, table);
+        final List<String> columns = new ArrayList<String>();
+        for (final String name : columnsByTable.get(table)) {
+            final Column column = existingColumns.get(name);
+            if (column != null && !column.isBinary()) {
+                columns.add(name);
+            }
+        }
+        return columns;
+    }
+
+    private void addShadowColumns(final String table, final List<String> columns) throws SQLException {
+        final Map<String, Column> existingColumns = getColumns(conn, table);
+        for (final String column : columns) {
+            if (!existingColumns.containsKey(column + SHADOW_COLUMN_SUFFIX)) {
+                execute("alter table " + table + " add column " + column + SHADOW_COLUMN_SUFFIX + " " + binaryType());
+            }
+        }
+    }
+
+    // Unless all rows are refreshed, only the rows missing (some of) their shadow columns are updated: running the backfill
+    // again is cheap, but it doesn't catch up with the updates of the text columns
+    private long fillShadowColumns(final String table, final List<String> columns, final int chunkSize, final boolean allRows) {
+        final List<Field<String>> textFields = new ArrayList<Field<String>>();
+        final List<Field<String>> shadowFields = new ArrayList<Field<String>>();
+        Condition toFill = allRows ? DSL.trueCondition() : DSL.falseCondition();
+        for (final String column : columns) {
+            final Field<String> textField = DSL.field(DSL.name(column), SQLDataType.VARCHAR);
+            final Field<String> shadowField = DSL.field(DSL.name(column + SHADOW_COLUMN_SUFFIX), binaryDataType);
+            textFields.add(textField);
+            shadowFields.add(shadowField);
+            if (!allRows) {
+                toFill = toFill.or(textField.isNotNull().and(shadowField.isNull()));
+            }
+        }
+
+        UpdateSetMoreStep<Record> updateSet = null;
+        for (final Field<String> shadowField : shadowFields) {
+            updateSet = (updateSet == null ? binaryContext.update(DSL.table(DSL.name(table))) : updateSet).set(shadowField, (String) null);
+        }
+        // Built once: where() adds to the conditions of the query
+        final Query update = updateSet.where(RECORD_ID.equal((Long) null));
+
+        long updated = 0;
+        long lastRecordId = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            final Result<Record> rows = textContext.select(RECORD_ID)
+                                                   .select(textFields)
+                                                   .from(DSL.table(DSL.name(table)))
+                                                   .where(RECORD_ID.greaterThan(lastRecordId))
+                                                   .and(toFill)
+                                                   .orderBy(RECORD_ID)
+                                                   .limit(chunkSize)
+                                                   .fetch();
+            if (rows.isEmpty()) {
+                break;
+            }
+
+            final BatchBindStep batch = binaryContext.batch(update);
+            for (final Record row : rows) {
+                final Object[] values = new Object[textFields.size() + 1];
+                for (int i = 0; i < textFields.size(); i++) {
+                    values[i] = row.get(textFields.get(i));
+                }
+                values[textFields.size()] = row.get(RECORD_ID);
+                batch.bind(values);
+            }
+            batch.execute();
+
+            updated += rows.size();
+            lastRecordId = rows.get(rows.size() - 1).get(RECORD_ID);
+        }
+        if (updated > 0) {
+            logger.info("Filled binary {}: table='{}', rows='{}'", description, table, updated);
+        }
+        return updated;
+    }
+
+    private void renameShadowColumn(final String table, final String column, final boolean notNull) {
+        final String shadowColumn = column + SHADOW_COLUMN_SUFFIX;
+        if (isMySQL()) {
+            execute("alter table " + table + " change " + shadowColumn + " " + column + " " + binaryType() + (notNull ? " not null" : ""));
+            return;
+        } else if (family == SQLDialect.POSTGRES) {
+            execute("alter table " + table + " rename column " + shadowColumn + " to " + column);
+        } else {
+            execute("alter table " + table + " alter column " + shadowColumn + " rename to " + column);
+        }
+        if (notNull) {
+            execute("alter table " + table + " alter column " + column + " set not null");
+        }
+    }
+
+    // Indexes on (some of) the columns, in their original column order
+    private List<Index> getIndexes(final String table, final List<String> columns) throws SQLException {
+        final DatabaseMetaData metaData = conn.getMetaData();
+        final Map<String, Index> indexes = new LinkedHashMap<String, Index>();
+        for (final String tableName : ImmutableList.<String>of(table, table.toUpperCase(Locale.ROOT))) {
+            final ResultSet resultSet = metaData.getIndexInfo(conn.getCatalog(), null, tableName, false, false);
+            try {
+                while (resultSet.next()) {
+                    final String name = resultSet.getString("INDEX_NAME");
+                    final String column = resultSet.getString("COLUMN_NAME");
+                    if (name == null || column == null) {
+                        continue;
+                    }
+                    Index index = indexes.get(name);
+                    if (index == null) {
+                        index = new Index(name, !resultSet.getBoolean("NON_UNIQUE"));
+                        indexes.put(name, index);
+                    }
+                    index.ordinalColumns.put(resultSet.getInt("ORDINAL_POSITION"), column.toLowerCase(Locale.ROOT));
+                }
+            } finally {
+                resultSet.close();
+            }
+            if (!indexes.isEmpty()) {
+                break;
+            }
+        }
+
+        final List<Index> indexesOnColumns = new ArrayList<Index>();
+        for (final Index index : indexes.values()) {
+            index.columns.addAll(index.ordinalColumns.values());
+            for (final String column : columns) {
+                if (index.columns.contains(column)) {
+                    indexesOnColumns.add(index);
+                    break;
+                }
+            }
+        }
+        return indexesOnColumns;
+    }
+
+    static final class Column {
+
+        private final int type;
+        private final boolean nullable;
+
+        private Column(final int type, final boolean nullable) {
+            this.type = type;
+            this.nullable = nullable;
+        }
+
+        boolean isBinary() {
+            return !TEXT_TYPES.contains(type);
+        }
+    }
+
+    private static final class Index {
+
+        private final String name;
+        private final boolean unique;
+        private final Map<Integer, String> ordinalColumns = new TreeMap<Integer, String>();
+        private final List<String> columns = new ArrayList<String>();
+
+        private Index(final String name, final boolean unique) {
+            this.name = name;
+            this.unique = unique;
+        }
+    }
+}
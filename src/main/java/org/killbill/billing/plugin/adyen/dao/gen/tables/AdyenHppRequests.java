@@ -39,17 +39,17 @@ public class AdyenHppRequests extends org.jooq.impl.TableImpl<org.killbill.billi
 	/**
 	 * The column <code>killbill.adyen_hpp_requests.kb_account_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord, java.lang.String> KB_ACCOUNT_ID = createField("kb_account_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord, java.lang.String> KB_ACCOUNT_ID = createField("kb_account_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
 
 	/**
 	 * The column <code>killbill.adyen_hpp_requests.kb_payment_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord, java.lang.String> KB_PAYMENT_ID = createField("kb_payment_id", org.jooq.impl.SQLDataType.CHAR.length(36), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord, java.lang.String> KB_PAYMENT_ID = createField("kb_payment_id", org.jooq.impl.SQLDataType.CHAR.length(36), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
 
 	/**
 	 * The column <code>killbill.adyen_hpp_requests.kb_payment_transaction_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord, java.lang.String> KB_PAYMENT_TRANSACTION_ID = createField("kb_payment_transaction_id", org.jooq.impl.SQLDataType.CHAR.length(36), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord, java.lang.String> KB_PAYMENT_TRANSACTION_ID = createField("kb_payment_transaction_id", org.jooq.impl.SQLDataType.CHAR.length(36), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
 
 	/**
 	 * The column <code>killbill.adyen_hpp_requests.transaction_external_key</code>.
@@ -59,7 +59,7 @@ public class AdyenHppRequests extends org.jooq.impl.TableImpl<org.killbill.billi
 	/**
 	 * The column <code>killbill.adyen_hpp_requests.additional_data</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord, java.lang.String> ADDITIONAL_DATA = createField("additional_data", org.jooq.impl.SQLDataType.CLOB, this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord, java.lang.String> ADDITIONAL_DATA = createField("additional_data", org.jooq.impl.SQLDataType.CLOB, this, "", new org.killbill.billing.plugin.adyen.dao.AdditionalDataBinding());
 
 	/**
 	 * The column <code>killbill.adyen_hpp_requests.created_date</code>.
@@ -69,7 +69,22 @@ public class AdyenHppRequests extends org.jooq.impl.TableImpl<org.killbill.billi
 	/**
 	 * The column <code>killbill.adyen_hpp_requests.kb_tenant_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord, java.lang.String> KB_TENANT_ID = createField("kb_tenant_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord, java.lang.String> KB_TENANT_ID = createField("kb_tenant_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
+
+	/**
+	 * The column <code>killbill.adyen_hpp_requests.merchant_account_code</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord, java.lang.String> MERCHANT_ACCOUNT_CODE = createField("merchant_account_code", org.jooq.impl.SQLDataType.VARCHAR.length(255), this, "");
+
+	/**
+	 * The column <code>killbill.adyen_hpp_requests.payment_method</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord, java.lang.String> PAYMENT_METHOD = createField("payment_method", org.jooq.impl.SQLDataType.VARCHAR.length(64), this, "");
+
+	/**
+	 * The column <code>killbill.adyen_hpp_requests.additional_data_extracted</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord, java.lang.Byte> ADDITIONAL_DATA_EXTRACTED = createField("additional_data_extracted", org.jooq.impl.SQLDataType.TINYINT, this, "");
 
 	/**
 	 * Create a <code>killbill.adyen_hpp_requests</code> table reference
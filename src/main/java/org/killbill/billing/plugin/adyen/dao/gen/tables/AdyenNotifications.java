@@ -39,17 +39,17 @@ public class AdyenNotifications extends org.jooq.impl.TableImpl<org.killbill.bil
 	/**
 	 * The column <code>killbill.adyen_notifications.kb_account_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord, java.lang.String> KB_ACCOUNT_ID = createField("kb_account_id", org.jooq.impl.SQLDataType.CHAR.length(36), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord, java.lang.String> KB_ACCOUNT_ID = createField("kb_account_id", org.jooq.impl.SQLDataType.CHAR.length(36), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
 
 	/**
 	 * The column <code>killbill.adyen_notifications.kb_payment_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord, java.lang.String> KB_PAYMENT_ID = createField("kb_payment_id", org.jooq.impl.SQLDataType.CHAR.length(36), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord, java.lang.String> KB_PAYMENT_ID = createField("kb_payment_id", org.jooq.impl.SQLDataType.CHAR.length(36), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
 
 	/**
 	 * The column <code>killbill.adyen_notifications.kb_payment_transaction_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord, java.lang.String> KB_PAYMENT_TRANSACTION_ID = createField("kb_payment_transaction_id", org.jooq.impl.SQLDataType.CHAR.length(36), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord, java.lang.String> KB_PAYMENT_TRANSACTION_ID = createField("kb_payment_transaction_id", org.jooq.impl.SQLDataType.CHAR.length(36), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
 
 	/**
 	 * The column <code>killbill.adyen_notifications.transaction_type</code>.
@@ -119,7 +119,7 @@ public class AdyenNotifications extends org.jooq.impl.TableImpl<org.killbill.bil
 	/**
 	 * The column <code>killbill.adyen_notifications.additional_data</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord, java.lang.String> ADDITIONAL_DATA = createField("additional_data", org.jooq.impl.SQLDataType.CLOB, this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord, java.lang.String> ADDITIONAL_DATA = createField("additional_data", org.jooq.impl.SQLDataType.CLOB, this, "", new org.killbill.billing.plugin.adyen.dao.AdditionalDataBinding());
 
 	/**
 	 * The column <code>killbill.adyen_notifications.created_date</code>.
@@ -129,7 +129,7 @@ public class AdyenNotifications extends org.jooq.impl.TableImpl<org.killbill.bil
 	/**
 	 * The column <code>killbill.adyen_notifications.kb_tenant_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord, java.lang.String> KB_TENANT_ID = createField("kb_tenant_id", org.jooq.impl.SQLDataType.CHAR.length(36), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord, java.lang.String> KB_TENANT_ID = createField("kb_tenant_id", org.jooq.impl.SQLDataType.CHAR.length(36), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
 
 	/**
 	 * Create a <code>killbill.adyen_notifications</code> table reference
@@ -39,12 +39,12 @@ public class AdyenPaymentMethods extends org.jooq.impl.TableImpl<org.killbill.bi
 	/**
 	 * The column <code>killbill.adyen_payment_methods.kb_account_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenPaymentMethodsRecord, java.lang.String> KB_ACCOUNT_ID = createField("kb_account_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenPaymentMethodsRecord, java.lang.String> KB_ACCOUNT_ID = createField("kb_account_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
 
 	/**
 	 * The column <code>killbill.adyen_payment_methods.kb_payment_method_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenPaymentMethodsRecord, java.lang.String> KB_PAYMENT_METHOD_ID = createField("kb_payment_method_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenPaymentMethodsRecord, java.lang.String> KB_PAYMENT_METHOD_ID = createField("kb_payment_method_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
 
 	/**
 	 * The column <code>killbill.adyen_payment_methods.token</code>.
@@ -154,7 +154,7 @@ public class AdyenPaymentMethods extends org.jooq.impl.TableImpl<org.killbill.bi
 	/**
 	 * The column <code>killbill.adyen_payment_methods.additional_data</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenPaymentMethodsRecord, java.lang.String> ADDITIONAL_DATA = createField("additional_data", org.jooq.impl.SQLDataType.CLOB, this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenPaymentMethodsRecord, java.lang.String> ADDITIONAL_DATA = createField("additional_data", org.jooq.impl.SQLDataType.CLOB, this, "", new org.killbill.billing.plugin.adyen.dao.AdditionalDataBinding());
 
 	/**
 	 * The column <code>killbill.adyen_payment_methods.created_date</code>.
@@ -169,7 +169,7 @@ public class AdyenPaymentMethods extends org.jooq.impl.TableImpl<org.killbill.bi
 	/**
 	 * The column <code>killbill.adyen_payment_methods.kb_tenant_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenPaymentMethodsRecord, java.lang.String> KB_TENANT_ID = createField("kb_tenant_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenPaymentMethodsRecord, java.lang.String> KB_TENANT_ID = createField("kb_tenant_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
 
 	/**
 	 * Create a <code>killbill.adyen_payment_methods</code> table reference
@@ -39,17 +39,17 @@ public class AdyenResponses extends org.jooq.impl.TableImpl<org.killbill.billing
 	/**
 	 * The column <code>killbill.adyen_responses.kb_account_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.String> KB_ACCOUNT_ID = createField("kb_account_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.String> KB_ACCOUNT_ID = createField("kb_account_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
 
 	/**
 	 * The column <code>killbill.adyen_responses.kb_payment_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.String> KB_PAYMENT_ID = createField("kb_payment_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.String> KB_PAYMENT_ID = createField("kb_payment_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
 
 	/**
 	 * The column <code>killbill.adyen_responses.kb_payment_transaction_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.String> KB_PAYMENT_TRANSACTION_ID = createField("kb_payment_transaction_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.String> KB_PAYMENT_TRANSACTION_ID = createField("kb_payment_transaction_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
 
 	/**
 	 * The column <code>killbill.adyen_responses.transaction_type</code>.
@@ -144,7 +144,7 @@ public class AdyenResponses extends org.jooq.impl.TableImpl<org.killbill.billing
 	/**
 	 * The column <code>killbill.adyen_responses.additional_data</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.String> ADDITIONAL_DATA = createField("additional_data", org.jooq.impl.SQLDataType.CLOB, this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.String> ADDITIONAL_DATA = createField("additional_data", org.jooq.impl.SQLDataType.CLOB, this, "", new org.killbill.billing.plugin.adyen.dao.AdditionalDataBinding());
 
 	/**
 	 * The column <code>killbill.adyen_responses.created_date</code>.
@@ -154,7 +154,32 @@ public class AdyenResponses extends org.jooq.impl.TableImpl<org.killbill.billing
 	/**
 	 * The column <code>killbill.adyen_responses.kb_tenant_id</code>.
 	 */
-	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.String> KB_TENANT_ID = createField("kb_tenant_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "");
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.String> KB_TENANT_ID = createField("kb_tenant_id", org.jooq.impl.SQLDataType.CHAR.length(36).nullable(false), this, "", new org.killbill.billing.plugin.adyen.dao.KbIdBinding());
+
+	/**
+	 * The column <code>killbill.adyen_responses.merchant_account_code</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.String> MERCHANT_ACCOUNT_CODE = createField("merchant_account_code", org.jooq.impl.SQLDataType.VARCHAR.length(255), this, "");
+
+	/**
+	 * The column <code>killbill.adyen_responses.payment_method</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.String> PAYMENT_METHOD = createField("payment_method", org.jooq.impl.SQLDataType.VARCHAR.length(64), this, "");
+
+	/**
+	 * The column <code>killbill.adyen_responses.from_hpp</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.Byte> FROM_HPP = createField("from_hpp", org.jooq.impl.SQLDataType.TINYINT, this, "");
+
+	/**
+	 * The column <code>killbill.adyen_responses.from_hpp_completion</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.Byte> FROM_HPP_COMPLETION = createField("from_hpp_completion", org.jooq.impl.SQLDataType.TINYINT, this, "");
+
+	/**
+	 * The column <code>killbill.adyen_responses.from_hpp_transaction_status</code>.
+	 */
+	public final org.jooq.TableField<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord, java.lang.String> FROM_HPP_TRANSACTION_STATUS = createField("from_hpp_transaction_status", org.jooq.impl.SQLDataType.VARCHAR.length(32), this, "");
 
 	/**
 	 * Create a <code>killbill.adyen_responses</code> table reference
@@ -14,7 +14,7 @@ package org.killbill.billing.plugin.adyen.dao.gen.tables.records;
 	comments = "This class is generated by jOOQ"
 )
 @java.lang.SuppressWarnings({ "all", "unchecked", "rawtypes" })
-public class AdyenHppRequestsRecord extends org.jooq.impl.UpdatableRecordImpl<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord> implements org.jooq.Record8<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.sql.Timestamp, java.lang.String> {
+public class AdyenHppRequestsRecord extends org.jooq.impl.UpdatableRecordImpl<org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord> implements org.jooq.Record11<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.sql.Timestamp, java.lang.String, java.lang.String, java.lang.String, java.lang.Byte> {
 
 	private static final long serialVersionUID = -2092363079;
 
@@ -130,6 +130,48 @@ public class AdyenHppRequestsRecord extends org.jooq.impl.UpdatableRecordImpl<or
 		return (java.lang.String) getValue(7);
 	}
 
+	/**
+	 * Setter for <code>killbill.adyen_hpp_requests.merchant_account_code</code>.
+	 */
+	public void setMerchantAccountCode(java.lang.String value) {
+		setValue(8, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.adyen_hpp_requests.merchant_account_code</code>.
+	 */
+	public java.lang.String getMerchantAccountCode() {
+		return (java.lang.String) getValue(8);
+	}
+
+	/**
+	 * Setter for <code>killbill.adyen_hpp_requests.payment_method</code>.
+	 */
+	public void setPaymentMethod(java.lang.String value) {
+		setValue(9, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.adyen_hpp_requests.payment_method</code>.
+	 */
+	public java.lang.String getPaymentMethod() {
+		return (java.lang.String) getValue(9);
+	}
+
+	/**
+	 * Setter for <code>killbill.adyen_hpp_requests.additional_data_extracted</code>.
+	 */
+	public void setAdditionalDataExtracted(java.lang.Byte value) {
+		setValue(10, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.adyen_hpp_requests.additional_data_extracted</code>.
+	 */
+	public java.lang.Byte getAdditionalDataExtracted() {
+		return (java.lang.Byte) getValue(10);
+	}
+
 	// -------------------------------------------------------------------------
 	// Primary key information
 	// -------------------------------------------------------------------------
@@ -143,23 +185,23 @@ public class AdyenHppRequestsRecord extends org.jooq.impl.UpdatableRecordImpl<or
 	}
 
 	// -------------------------------------------------------------------------
-	// Record8 type implementation
+	// Record11 type implementation
 	// -------------------------------------------------------------------------
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public org.jooq.Row8<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.sql.Timestamp, java.lang.String> fieldsRow() {
-		return (org.jooq.Row8) super.fieldsRow();
+	public org.jooq.Row11<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.sql.Timestamp, java.lang.String, java.lang.String, java.lang.String, java.lang.Byte> fieldsRow() {
+		return (org.jooq.Row11) super.fieldsRow();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public org.jooq.Row8<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.sql.Timestamp, java.lang.String> valuesRow() {
-		return (org.jooq.Row8) super.valuesRow();
+	public org.jooq.Row11<org.jooq.types.UInteger, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.sql.Timestamp, java.lang.String, java.lang.String, java.lang.String, java.lang.Byte> valuesRow() {
+		return (org.jooq.Row11) super.valuesRow();
 	}
 
 	/**
@@ -226,6 +268,30 @@ public class AdyenHppRequestsRecord extends org.jooq.impl.UpdatableRecordImpl<or
 		return org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenHppRequests.ADYEN_HPP_REQUESTS.KB_TENANT_ID;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.lang.String> field9() {
+		return org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenHppRequests.ADYEN_HPP_REQUESTS.MERCHANT_ACCOUNT_CODE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.lang.String> field10() {
+		return org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenHppRequests.ADYEN_HPP_REQUESTS.PAYMENT_METHOD;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public org.jooq.Field<java.lang.Byte> field11() {
+		return org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenHppRequests.ADYEN_HPP_REQUESTS.ADDITIONAL_DATA_EXTRACTED;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -290,6 +356,30 @@ public class AdyenHppRequestsRecord extends org.jooq.impl.UpdatableRecordImpl<or
 		return getKbTenantId();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.lang.String value9() {
+		return getMerchantAccountCode();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.lang.String value10() {
+		return getPaymentMethod();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public java.lang.Byte value11() {
+		return getAdditionalDataExtracted();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -366,7 +456,34 @@ public class AdyenHppRequestsRecord extends org.jooq.impl.UpdatableRecordImpl<or
 	 * {@inheritDoc}
 	 */
 	@Override
-	public AdyenHppRequestsRecord values(org.jooq.types.UInteger value1, java.lang.String value2, java.lang.String value3, java.lang.String value4, java.lang.String value5, java.lang.String value6, java.sql.Timestamp value7, java.lang.String value8) {
+	public AdyenHppRequestsRecord value9(java.lang.String value) {
+		setMerchantAccountCode(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public AdyenHppRequestsRecord value10(java.lang.String value) {
+		setPaymentMethod(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public AdyenHppRequestsRecord value11(java.lang.Byte value) {
+		setAdditionalDataExtracted(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public AdyenHppRequestsRecord values(org.jooq.types.UInteger value1, java.lang.String value2, java.lang.String value3, java.lang.String value4, java.lang.String value5, java.lang.String value6, java.sql.Timestamp value7, java.lang.String value8, java.lang.String value9, java.lang.String value10, java.lang.Byte value11) {
 		return this;
 	}
 
@@ -384,7 +501,7 @@ public class AdyenHppRequestsRecord extends org.jooq.impl.UpdatableRecordImpl<or
 	/**
 	 * Create a detached, initialised AdyenHppRequestsRecord
 	 */
-	public AdyenHppRequestsRecord(org.jooq.types.UInteger recordId, java.lang.String kbAccountId, java.lang.String kbPaymentId, java.lang.String kbPaymentTransactionId, java.lang.String transactionExternalKey, java.lang.String additionalData, java.sql.Timestamp createdDate, java.lang.String kbTenantId) {
+	public AdyenHppRequestsRecord(org.jooq.types.UInteger recordId, java.lang.String kbAccountId, java.lang.String kbPaymentId, java.lang.String kbPaymentTransactionId, java.lang.String transactionExternalKey, java.lang.String additionalData, java.sql.Timestamp createdDate, java.lang.String kbTenantId, java.lang.String merchantAccountCode, java.lang.String paymentMethod, java.lang.Byte additionalDataExtracted) {
 		super(org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenHppRequests.ADYEN_HPP_REQUESTS);
 
 		setValue(0, recordId);
@@ -395,5 +512,8 @@ public class AdyenHppRequestsRecord extends org.jooq.impl.UpdatableRecordImpl<or
 		setValue(5, additionalData);
 		setValue(6, createdDate);
 		setValue(7, kbTenantId);
+		setValue(8, merchantAccountCode);
+		setValue(9, paymentMethod);
+		setValue(10, additionalDataExtracted);
 	}
 }
@@ -368,6 +368,76 @@ public class AdyenResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<org.
 		return (java.lang.String) getValue(24);
 	}
 
+	/**
+	 * Setter for <code>killbill.adyen_responses.merchant_account_code</code>.
+	 */
+	public void setMerchantAccountCode(java.lang.String value) {
+		setValue(25, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.adyen_responses.merchant_account_code</code>.
+	 */
+	public java.lang.String getMerchantAccountCode() {
+		return (java.lang.String) getValue(25);
+	}
+
+	/**
+	 * Setter for <code>killbill.adyen_responses.payment_method</code>.
+	 */
+	public void setPaymentMethod(java.lang.String value) {
+		setValue(26, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.adyen_responses.payment_method</code>.
+	 */
+	public java.lang.String getPaymentMethod() {
+		return (java.lang.String) getValue(26);
+	}
+
+	/**
+	 * Setter for <code>killbill.adyen_responses.from_hpp</code>.
+	 */
+	public void setFromHpp(java.lang.Byte value) {
+		setValue(27, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.adyen_responses.from_hpp</code>.
+	 */
+	public java.lang.Byte getFromHpp() {
+		return (java.lang.Byte) getValue(27);
+	}
+
+	/**
+	 * Setter for <code>killbill.adyen_responses.from_hpp_completion</code>.
+	 */
+	public void setFromHppCompletion(java.lang.Byte value) {
+		setValue(28, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.adyen_responses.from_hpp_completion</code>.
+	 */
+	public java.lang.Byte getFromHppCompletion() {
+		return (java.lang.Byte) getValue(28);
+	}
+
+	/**
+	 * Setter for <code>killbill.adyen_responses.from_hpp_transaction_status</code>.
+	 */
+	public void setFromHppTransactionStatus(java.lang.String value) {
+		setValue(29, value);
+	}
+
+	/**
+	 * Getter for <code>killbill.adyen_responses.from_hpp_transaction_status</code>.
+	 */
+	public java.lang.String getFromHppTransactionStatus() {
+		return (java.lang.String) getValue(29);
+	}
+
 	// -------------------------------------------------------------------------
 	// Primary key information
 	// -------------------------------------------------------------------------
@@ -394,7 +464,7 @@ public class AdyenResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<org.
 	/**
 	 * Create a detached, initialised AdyenResponsesRecord
 	 */
-	public AdyenResponsesRecord(org.jooq.types.UInteger recordId, java.lang.String kbAccountId, java.lang.String kbPaymentId, java.lang.String kbPaymentTransactionId, java.lang.String transactionType, java.math.BigDecimal amount, java.lang.String currency, java.lang.String pspResult, java.lang.String pspReference, java.lang.String authCode, java.lang.String resultCode, java.lang.String refusalReason, java.lang.String reference, java.lang.String pspErrorCodes, java.lang.String paymentInternalRef, java.lang.String formUrl, java.math.BigDecimal dccAmount, java.lang.String dccCurrency, java.lang.String dccSignature, java.lang.String issuerUrl, java.lang.String md, java.lang.String paRequest, java.lang.String additionalData, java.sql.Timestamp createdDate, java.lang.String kbTenantId) {
+	public AdyenResponsesRecord(org.jooq.types.UInteger recordId, java.lang.String kbAccountId, java.lang.String kbPaymentId, java.lang.String kbPaymentTransactionId, java.lang.String transactionType, java.math.BigDecimal amount, java.lang.String currency, java.lang.String pspResult, java.lang.String pspReference, java.lang.String authCode, java.lang.String resultCode, java.lang.String refusalReason, java.lang.String reference, java.lang.String pspErrorCodes, java.lang.String paymentInternalRef, java.lang.String formUrl, java.math.BigDecimal dccAmount, java.lang.String dccCurrency, java.lang.String dccSignature, java.lang.String issuerUrl, java.lang.String md, java.lang.String paRequest, java.lang.String additionalData, java.sql.Timestamp createdDate, java.lang.String kbTenantId, java.lang.String merchantAccountCode, java.lang.String paymentMethod, java.lang.Byte fromHpp, java.lang.Byte fromHppCompletion, java.lang.String fromHppTransactionStatus) {
 		super(org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenResponses.ADYEN_RESPONSES);
 
 		setValue(0, recordId);
@@ -422,5 +492,10 @@ public class AdyenResponsesRecord extends org.jooq.impl.UpdatableRecordImpl<org.
 		setValue(22, additionalData);
 		setValue(23, createdDate);
 		setValue(24, kbTenantId);
+		setValue(25, merchantAccountCode);
+		setValue(26, paymentMethod);
+		setValue(27, fromHpp);
+		setValue(28, fromHppCompletion);
+		setValue(29, fromHppTransactionStatus);
 	}
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.metrics;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Metrics sharing a name, keyed by the value of a single label.
+ * <p/>
+ * Hot paths should resolve their metric once (e.g. in a field) or rely on {@link #labels(String)} being a
+ * plain map lookup once the label value has been seen.
+ */
+public abstract class MetricFamily<T> implements MetricsCollector {
+
+    protected final String name;
+    protected final String help;
+    protected final String[] labelNames;
+
+    private final ConcurrentMap<String, T> metrics = new ConcurrentHashMap<String, T>();
+
+    protected MetricFamily(final String name, final String help, final String labelName) {
+        this.name = name;
+        this.help = help;
+        this.labelNames = new String[]{labelName};
+    }
+
+    public T labels(@Nullable final String labelValue) {
+        final String key = labelValue == null ? "" : labelValue;
+        // Plain get() first: computeIfAbsent would lock the bin even when the entry already exists
+        T metric = metrics.get(key);
+        if (metric == null) {
+            final T newMetric = newMetric();
+            metric = metrics.putIfAbsent(key, newMetric);
+            if (metric == null) {
+                metric = newMetric;
+            }
+        }
+        return metric;
+    }
+
+    protected abstract T newMetric();
+
+    /**
+     * @return the metrics sorted by label value, to keep the output stable across scrapes
+     */
+    protected SortedMap<String, T> getMetrics() {
+        return new TreeMap<String, T>(metrics);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.metrics;
+
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Plugin-wide metrics, exported in the Prometheus text format.
+ * <p/>
+ * Metrics are registered once (at startup or on first use of a label value) and recording into them
+ * does not allocate. Families are registered by name: asking twice for the same family (e.g. from
+ * objects re-created on configuration changes) returns the same instance.
+ */
+public class MetricsRegistry implements MetricsCollector {
+
+    private static final String[] NO_LABELS = {};
+
+    private final List<MetricsCollector> collectors = new CopyOnWriteArrayList<MetricsCollector>();
+    private final ConcurrentMap<String, MetricFamily<?>> families = new ConcurrentHashMap<String, MetricFamily<?>>();
+
+    public <C extends MetricsCollector> C register(final C collector) {
+        collectors.add(collector);
+        return collector;
+    }
+
+    public MetricFamily<Counter> counters(final String name, final String help, final String labelName) {
+        return registerFamily(new MetricFamily<Counter>(name, help, labelName) {
+            @Override
+            protected Counter newMetric() {
+                return new Counter();
+            }
+
+            @Override
+            public void writeTo(final PrometheusTextWriter writer) {
+                writer.header(name, "counter", help);
+                for (final Entry<String, Counter> entry : getMetrics().entrySet()) {
+                    writer.sample(name, labelNames, new String[]{entry.getKey()}, entry.getValue().getCount());
+                }
+            }
+        });
+    }
+
+    /**
+     * Operations are exported as a {@code <prefix>_duration_seconds} summary and an {@code <prefix>_errors_total} counter.
+     */
+    public MetricFamily<OperationMetrics> operations(final String prefix, final String help, final String labelName) {
+        return registerFamily(new MetricFamily<OperationMetrics>(prefix, help, labelName) {
+            @Override
+            protected OperationMetrics newMetric() {
+                return new OperationMetrics();
+            }
+
+            @Override
+            public void writeTo(final PrometheusTextWriter writer) {
+                final Iterable<Entry<String, OperationMetrics>> entries = getMetrics().entrySet();
+
+                final String durationName = name + "_duration_seconds";
+                writer.header(durationName, "summary", "Duration of " + help);
+                for (final Entry<String, OperationMetrics> entry : entries) {
+                    writer.summary(durationName, labelNames, new String[]{entry.getKey()}, entry.getValue().getDurations());
+                }
+
+                final String errorsName = name + "_errors_total";
+                writer.header(errorsName, "counter", "Failures of " + help);
+                for (final Entry<String, OperationMetrics> entry : entries) {
+                    writer.sample(errorsName, labelNames, new String[]{entry.getKey()}, entry.getValue().getErrors().getCount());
+                }
+            }
+        });
+    }
+
+    public void gauge(final String name, final String help, final Gauge gauge) {
+        register(new MetricsCollector() {
+            @Override
+            public void writeTo(final PrometheusTextWriter writer) {
+                writer.header(name, "gauge", help);
+                writer.sample(name, NO_LABELS, NO_LABELS, gauge.getValue());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> MetricFamily<T> registerFamily(final MetricFamily<T> family) {
+        final MetricFamily<?> existingFamily = families.putIfAbsent(family.name, family);
+        if (existingFamily != null) {
+            return (MetricFamily<T>) existingFamily;
+        }
+        return register(family);
+    }
+
+    @Override
+    public void writeTo(final PrometheusTextWriter writer) {
+        for (final MetricsCollector collector : collectors) {
+            collector.writeTo(writer);
+        }
+    }
+}
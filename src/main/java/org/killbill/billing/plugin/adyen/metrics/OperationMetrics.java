@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.metrics;
+
+/**
+ * Duration and number of failures of an operation (API method, DAO call, etc.).
+ */
+public class OperationMetrics {
+
+    private final LatencyHistogram durations = new LatencyHistogram();
+    private final Counter errors = new Counter();
+
+    /**
+     * @param startNanos value of {@link System#nanoTime()} when the operation started
+     * @param success    whether the operation completed normally
+     */
+    public void record(final long startNanos, final boolean success) {
+        durations.record(System.nanoTime() - startNanos);
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    public LatencyHistogram getDurations() {
+        return durations;
+    }
+
+    public Counter getErrors() {
+        return errors;
+    }
+}
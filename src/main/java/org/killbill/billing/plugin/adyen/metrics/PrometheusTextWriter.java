@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.metrics;
+
+/**
+ * Minimal writer for the Prometheus text exposition format (version 0.0.4).
+ */
+public class PrometheusTextWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double NANOS_PER_SECOND = 1E9;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final StringBuilder out;
+
+    public PrometheusTextWriter(final StringBuilder out) {
+        this.out = out;
+    }
+
+    public PrometheusTextWriter header(final String name, final String type, final String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    public PrometheusTextWriter sample(final String name, final String[] labelNames, final String[] labelValues, final double value) {
+        out.append(name);
+        appendLabels(labelNames, labelValues, null, null);
+        appendValue(value);
+        return this;
+    }
+
+    /**
+     * Write the histogram as a summary, in seconds (quantiles, _sum and _count).
+     */
+    public PrometheusTextWriter summary(final String name, final String[] labelNames, final String[] labelValues, final LatencyHistogram histogram) {
+        for (final double quantile : QUANTILES) {
+            out.append(name);
+            appendLabels(labelNames, labelValues, "quantile", String.valueOf(quantile));
+            appendValue(histogram.getValueAtPercentile(quantile * 100) / NANOS_PER_SECOND);
+        }
+        out.append(name).append("_sum");
+        appendLabels(labelNames, labelValues, null, null);
+        appendValue(histogram.getSum() / NANOS_PER_SECOND);
+        out.append(name).append("_count");
+        appendLabels(labelNames, labelValues, null, null);
+        appendValue(histogram.getCount());
+        return this;
+    }
+
+    private void appendLabels(final String[] labelNames, final String[] labelValues, final String extraLabelName, final String extraLabelValue) {
+        if (labelNames.length == 0 && extraLabelName == null) {
+            return;
+        }
+
+        out.append('{');
+        for (int i = 0; i < labelNames.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendLabel(labelNames[i], labelValues[i]);
+        }
+        if (extraLabelName != null) {
+            if (labelNames.length > 0) {
+                out.append(',');
+            }
+            appendLabel(extraLabelName, extraLabelValue);
+        }
+        out.append('}');
+    }
+
+    private void appendLabel(final String labelName, final String labelValue) {
+        out.append(labelName).append("=\"");
+        final String value = labelValue == null ? "" : labelValue;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private void appendValue(final double value) {
+        out.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1E15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+}
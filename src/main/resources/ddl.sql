@@ -10,11 +10,16 @@ create table adyen_hpp_requests (
 , additional_data longtext default null
 , created_date datetime not null
 , kb_tenant_id char(36) not null
+, merchant_account_code varchar(255) default null
+, payment_method varchar(64) default null
+, additional_data_extracted smallint default null
 , primary key(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
 create index adyen_hpp_requests_kb_account_id on adyen_hpp_requests(kb_account_id);
 create index adyen_hpp_requests_kb_transaction_external_key on adyen_hpp_requests(transaction_external_key);
 create index adyen_hpp_requests_kb_payment_transaction_id on adyen_hpp_requests(kb_payment_transaction_id);
+create index adyen_hpp_requests_merchant_account_code on adyen_hpp_requests(merchant_account_code);
+create index adyen_hpp_requests_payment_method on adyen_hpp_requests(payment_method);
 
 drop table if exists adyen_responses;
 create table adyen_responses (
@@ -43,11 +48,59 @@ create table adyen_responses (
 , additional_data longtext default null
 , created_date datetime not null
 , kb_tenant_id char(36) not null
+, merchant_account_code varchar(255) default null
+, payment_method varchar(64) default null
+, from_hpp smallint default null
+, from_hpp_completion smallint default null
+, from_hpp_transaction_status varchar(32) default null
 , primary key(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
-create index adyen_responses_kb_payment_id on adyen_responses(kb_payment_id);
+create index adyen_responses_kb_payment_id_kb_tenant_id_record_id_tx_type on adyen_responses(kb_payment_id, kb_tenant_id, record_id, transaction_type);
 create index adyen_responses_kb_payment_transaction_id on adyen_responses(kb_payment_transaction_id);
-create index psp_reference_idx on adyen_responses(psp_reference);
+create index adyen_responses_psp_reference_kb_tenant_id on adyen_responses(psp_reference, kb_tenant_id);
+create index adyen_responses_merchant_account_code on adyen_responses(merchant_account_code);
+create index adyen_responses_payment_method on adyen_responses(payment_method);
+create index adyen_responses_kb_tenant_id_from_hpp_tx_status_record_id on adyen_responses(kb_tenant_id, from_hpp_transaction_status, record_id);
+create index adyen_responses_kb_tenant_id_psp_result_record_id on adyen_responses(kb_tenant_id, psp_result, record_id);
+
+-- Responses of the settled payments, see AdyenResponsesArchival
+drop table if exists adyen_responses_archive;
+create table adyen_responses_archive (
+  record_id bigint /*! unsigned */ not null
+, kb_account_id char(36) not null
+, kb_payment_id char(36) not null
+, kb_payment_transaction_id char(36) not null
+, transaction_type varchar(32) not null
+, amount numeric(15,9)
+, currency char(3)
+, psp_result varchar(64)
+, psp_reference varchar(64)
+, auth_code varchar(64)
+, result_code varchar(64)
+, refusal_reason varchar(64)
+, reference varchar(64)
+, psp_error_codes varchar(64)
+, payment_internal_ref varchar(64)
+, form_url varchar(1024)
+, dcc_amount numeric(15,9)
+, dcc_currency char(3)
+, dcc_signature varchar(64)
+, issuer_url varchar(1024)
+, md text
+, pa_request text
+, additional_data longtext default null
+, created_date datetime not null
+, kb_tenant_id char(36) not null
+, merchant_account_code varchar(255) default null
+, payment_method varchar(64) default null
+, from_hpp smallint default null
+, from_hpp_completion smallint default null
+, from_hpp_transaction_status varchar(32) default null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create index adyen_responses_archive_kb_payment_id on adyen_responses_archive(kb_payment_id);
+create index adyen_responses_archive_kb_payment_transaction_id on adyen_responses_archive(kb_payment_transaction_id);
+create index adyen_responses_archive_psp_reference_kb_tenant_id on adyen_responses_archive(psp_reference, kb_tenant_id);
 
 drop table if exists adyen_notifications;
 create table adyen_notifications (
@@ -74,9 +127,37 @@ create table adyen_notifications (
 , primary key(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
 -- Not unique to handle retries
-create index adyen_notifications_psp_reference on adyen_notifications(psp_reference);
+create index adyen_notifications_psp_reference_kb_tenant_id on adyen_notifications(psp_reference, kb_tenant_id);
 create index adyen_notifications_kb_payment_id on adyen_notifications(kb_payment_id);
 create index adyen_notifications_kb_payment_transaction_id on adyen_notifications(kb_payment_transaction_id);
+create index adyen_notifications_kb_tenant_id_created_date on adyen_notifications(kb_tenant_id, created_date);
+
+-- Notifications past their retention period, see AdyenNotificationsArchival
+drop table if exists adyen_notifications_archive;
+create table adyen_notifications_archive (
+  record_id bigint /*! unsigned */ not null
+, kb_account_id char(36)
+, kb_payment_id char(36)
+, kb_payment_transaction_id char(36)
+, transaction_type varchar(32)
+, amount numeric(15,9)
+, currency char(3)
+, event_code varchar(64)
+, event_date datetime
+, merchant_account_code varchar(64)
+, merchant_reference varchar(64)
+, operations varchar(1024)
+, original_reference varchar(64)
+, payment_method varchar(64)
+, psp_reference varchar(255)
+, reason text
+, success smallint not null default 0
+, additional_data longtext default null
+, created_date datetime not null
+, kb_tenant_id char(36)
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create index adyen_notifications_archive_psp_reference on adyen_notifications_archive(psp_reference);
 
 drop table if exists adyen_payment_methods;
 create table adyen_payment_methods (
@@ -111,3 +192,20 @@ create table adyen_payment_methods (
 , primary key(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
 create unique index adyen_payment_methods_kb_payment_id on adyen_payment_methods(kb_payment_method_id);
+
+-- Leader election of the background jobs, see AdyenDao#acquireLease
+drop table if exists adyen_leases;
+create table adyen_leases (
+  lease_name varchar(64) not null
+, owner varchar(255) not null
+, expiration_date datetime not null
+, primary key(lease_name)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+
+-- Progress of the background jobs, see AdyenDao#getCheckpoint
+drop table if exists adyen_checkpoints;
+create table adyen_checkpoints (
+  checkpoint_name varchar(64) not null
+, record_id bigint /*! unsigned */ not null
+, primary key(checkpoint_name)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
@@ -0,0 +1,14 @@
+alter table adyen_responses add column merchant_account_code varchar(255) default null;
+alter table adyen_responses add column payment_method varchar(64) default null;
+alter table adyen_responses add column from_hpp smallint default null;
+alter table adyen_responses add column from_hpp_completion smallint default null;
+alter table adyen_responses add column from_hpp_transaction_status varchar(32) default null;
+alter table adyen_responses add index adyen_responses_merchant_account_code(merchant_account_code);
+alter table adyen_responses add index adyen_responses_payment_method(payment_method);
+alter table adyen_responses add index adyen_responses_from_hpp_transaction_status(from_hpp_transaction_status);
+
+alter table adyen_hpp_requests add column merchant_account_code varchar(255) default null;
+alter table adyen_hpp_requests add column payment_method varchar(64) default null;
+alter table adyen_hpp_requests add column additional_data_extracted smallint default null;
+alter table adyen_hpp_requests add index adyen_hpp_requests_merchant_account_code(merchant_account_code);
+alter table adyen_hpp_requests add index adyen_hpp_requests_payment_method(payment_method);
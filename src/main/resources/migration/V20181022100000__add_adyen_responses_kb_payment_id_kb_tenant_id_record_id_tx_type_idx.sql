@@ -0,0 +1,2 @@
+create index adyen_responses_kb_payment_id_kb_tenant_id_record_id_tx_type on adyen_responses(kb_payment_id, kb_tenant_id, record_id, transaction_type);
+drop index adyen_responses_kb_payment_id on adyen_responses;
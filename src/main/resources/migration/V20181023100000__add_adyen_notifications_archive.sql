@@ -0,0 +1,26 @@
+create index adyen_notifications_kb_tenant_id_created_date on adyen_notifications(kb_tenant_id, created_date);
+
+create table adyen_notifications_archive (
+  record_id bigint /*! unsigned */ not null
+, kb_account_id char(36)
+, kb_payment_id char(36)
+, kb_payment_transaction_id char(36)
+, transaction_type varchar(32)
+, amount numeric(15,9)
+, currency char(3)
+, event_code varchar(64)
+, event_date datetime
+, merchant_account_code varchar(64)
+, merchant_reference varchar(64)
+, operations varchar(1024)
+, original_reference varchar(64)
+, payment_method varchar(64)
+, psp_reference varchar(255)
+, reason text
+, success smallint not null default 0
+, additional_data longtext default null
+, created_date datetime not null
+, kb_tenant_id char(36)
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create index adyen_notifications_archive_psp_reference on adyen_notifications_archive(psp_reference);
@@ -0,0 +1,42 @@
+create table adyen_responses_archive (
+  record_id bigint /*! unsigned */ not null
+, kb_account_id char(36) not null
+, kb_payment_id char(36) not null
+, kb_payment_transaction_id char(36) not null
+, transaction_type varchar(32) not null
+, amount numeric(15,9)
+, currency char(3)
+, psp_result varchar(64)
+, psp_reference varchar(64)
+, auth_code varchar(64)
+, result_code varchar(64)
+, refusal_reason varchar(64)
+, reference varchar(64)
+, psp_error_codes varchar(64)
+, payment_internal_ref varchar(64)
+, form_url varchar(1024)
+, dcc_amount numeric(15,9)
+, dcc_currency char(3)
+, dcc_signature varchar(64)
+, issuer_url varchar(1024)
+, md text
+, pa_request text
+, additional_data longtext default null
+, created_date datetime not null
+, kb_tenant_id char(36) not null
+, merchant_account_code varchar(255) default null
+, payment_method varchar(64) default null
+, from_hpp smallint default null
+, from_hpp_completion smallint default null
+, from_hpp_transaction_status varchar(32) default null
+, primary key(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+create index adyen_responses_archive_kb_payment_id on adyen_responses_archive(kb_payment_id);
+create index adyen_responses_archive_kb_payment_transaction_id on adyen_responses_archive(kb_payment_transaction_id);
+create index adyen_responses_archive_psp_reference on adyen_responses_archive(psp_reference);
+
+create table adyen_checkpoints (
+  checkpoint_name varchar(64) not null
+, record_id bigint /*! unsigned */ not null
+, primary key(checkpoint_name)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
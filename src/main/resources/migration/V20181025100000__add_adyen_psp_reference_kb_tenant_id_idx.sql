@@ -0,0 +1,6 @@
+create index adyen_responses_psp_reference_kb_tenant_id on adyen_responses(psp_reference, kb_tenant_id);
+drop index psp_reference_idx on adyen_responses;
+create index adyen_responses_archive_psp_reference_kb_tenant_id on adyen_responses_archive(psp_reference, kb_tenant_id);
+drop index adyen_responses_archive_psp_reference on adyen_responses_archive;
+create index adyen_notifications_psp_reference_kb_tenant_id on adyen_notifications(psp_reference, kb_tenant_id);
+drop index adyen_notifications_psp_reference on adyen_notifications;
@@ -0,0 +1,9 @@
+create index adyen_responses_kb_tenant_id_from_hpp_tx_status_record_id on adyen_responses(kb_tenant_id, from_hpp_transaction_status, record_id);
+drop index adyen_responses_from_hpp_transaction_status on adyen_responses;
+create index adyen_responses_kb_tenant_id_psp_result_record_id on adyen_responses(kb_tenant_id, psp_result, record_id);
+create table adyen_leases (
+  lease_name varchar(64) not null
+, owner varchar(255) not null
+, expiration_date datetime not null
+, primary key(lease_name)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
@@ -20,6 +20,8 @@ package org.killbill.billing.plugin.adyen;
 import java.io.IOException;
 import java.sql.SQLException;
 
+import javax.sql.DataSource;
+
 import org.killbill.billing.platform.test.PlatformDBTestingHelper;
 import org.killbill.billing.plugin.TestUtils;
 import org.killbill.billing.plugin.adyen.dao.AdyenDao;
@@ -54,7 +56,11 @@ public class EmbeddedDbHelper {
     }
 
     public AdyenDao getAdyenDao() throws IOException, SQLException {
-        return new AdyenDao(embeddedDB.getDataSource());
+        return new AdyenDao(getDataSource());
+    }
+
+    public DataSource getDataSource() throws IOException {
+        return embeddedDB.getDataSource();
     }
 
     public void resetDB() throws Exception {
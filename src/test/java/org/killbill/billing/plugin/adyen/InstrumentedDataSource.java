@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+/**
+ * DataSource wrapper counting, per calling thread, the statements executed (i.e. database round-trips)
+ * and the time spent waiting for a connection.
+ */
+public class InstrumentedDataSource {
+
+    private final DataSource delegate;
+    private final ThreadLocal<Stats> stats = new ThreadLocal<Stats>() {
+        @Override
+        protected Stats initialValue() {
+            return new Stats();
+        }
+    };
+
+    public InstrumentedDataSource(final DataSource delegate) {
+        this.delegate = delegate;
+    }
+
+    public DataSource getDataSource() {
+        return wrap(DataSource.class, delegate, new Interceptor() {
+            @Override
+            public Object intercept(final Object target, final Method method, final Object[] args) throws Throwable {
+                if (!"getConnection".equals(method.getName())) {
+                    return invoke(target, method, args);
+                }
+
+                final long startNanos = System.nanoTime();
+                final Connection connection = (Connection) invoke(target, method, args);
+                final Stats threadStats = stats.get();
+                threadStats.connectionWaitNanos += System.nanoTime() - startNanos;
+                threadStats.connections++;
+                return wrapConnection(connection);
+            }
+        });
+    }
+
+    /**
+     * @return the cumulative statistics of the current thread
+     */
+    public Stats getThreadStats() {
+        return stats.get();
+    }
+
+    private Connection wrapConnection(final Connection connection) {
+        return wrap(Connection.class, connection, new Interceptor() {
+            @Override
+            public Object intercept(final Object target, final Method method, final Object[] args) throws Throwable {
+                final Object result = invoke(target, method, args);
+                if (result instanceof Statement) {
+                    return wrapStatement((Statement) result);
+                }
+                return result;
+            }
+        });
+    }
+
+    private Statement wrapStatement(final Statement statement) {
+        // Preserve the most specific interface (PreparedStatement, CallableStatement)
+        final Class<? extends Statement> statementInterface = findStatementInterface(statement.getClass());
+        return wrap(statementInterface, statement, new Interceptor() {
+            @Override
+            public Object intercept(final Object target, final Method method, final Object[] args) throws Throwable {
+                if (method.getName().startsWith("execute")) {
+                    stats.get().statements++;
+                }
+                return invoke(target, method, args);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Statement> findStatementInterface(final Class<?> statementClass) {
+        Class<? extends Statement> mostSpecific = Statement.class;
+        for (Class<?> clazz = statementClass; clazz != null; clazz = clazz.getSuperclass()) {
+            for (final Class<?> candidate : clazz.getInterfaces()) {
+                if (Statement.class.isAssignableFrom(candidate) && mostSpecific.isAssignableFrom(candidate)) {
+                    mostSpecific = (Class<? extends Statement>) candidate;
+                }
+            }
+        }
+        return mostSpecific;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T wrap(final Class<? extends T> iface, final T target, final Interceptor interceptor) {
+        return (T) Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(),
+                                          new Class<?>[]{iface},
+                                          new InvocationHandler() {
+                                              @Override
+                                              public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                                                  return interceptor.intercept(target, method, args);
+                                              }
+                                          });
+    }
+
+    private static Object invoke(final Object target, final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private interface Interceptor {
+
+        Object intercept(Object target, Method method, Object[] args) throws Throwable;
+    }
+
+    public static final class Stats {
+
+        private long statements;
+        private long connections;
+        private long connectionWaitNanos;
+
+        public long getStatements() {
+            return statements;
+        }
+
+        public long getConnections() {
+            return connections;
+        }
+
+        public long getConnectionWaitNanos() {
+            return connectionWaitNanos;
+        }
+    }
+}
@@ -26,18 +26,18 @@ public abstract class TestWithEmbeddedDBBase extends TestRemoteBase {
 
     protected AdyenDao dao;
 
-    @BeforeSuite(groups = {"slow", "integration"})
+    @BeforeSuite(groups = {"slow", "integration", "stress"})
     public void setUpBeforeSuite() throws Exception {
         EmbeddedDbHelper.instance().startDb();
     }
 
-    @BeforeMethod(groups = {"slow", "integration"})
+    @BeforeMethod(groups = {"slow", "integration", "stress"})
     public void setUpBeforeMethod() throws Exception {
         EmbeddedDbHelper.instance().resetDB();
         dao = EmbeddedDbHelper.instance().getAdyenDao();
     }
 
-    @AfterSuite(groups = {"slow", "integration"})
+    @AfterSuite(groups = {"slow", "integration", "stress"})
     public void tearDownAfterSuite() throws Exception {
         EmbeddedDbHelper.instance().stopDB();
     }
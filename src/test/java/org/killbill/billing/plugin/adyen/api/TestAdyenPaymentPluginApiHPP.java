@@ -35,8 +35,10 @@ import org.killbill.billing.payment.plugin.api.PaymentPluginApiException;
 import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
 import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
 import org.killbill.billing.plugin.adyen.client.model.PaymentServiceProviderResult;
+import org.killbill.billing.plugin.adyen.core.AdyenExpiredPaymentsJanitor;
 import org.killbill.billing.plugin.adyen.dao.AdyenDao;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
 import org.killbill.billing.plugin.api.PluginProperties;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -105,6 +107,7 @@ public class TestAdyenPaymentPluginApiHPP extends TestAdyenPaymentPluginApiBase
                                    TransactionType.AUTHORIZE);
         Period expirationPeriod = adyenConfigProperties.getPendingHppPaymentWithoutCompletionExpirationPeriod().minusMinutes(1);
         clock.setDeltaFromReality(expirationPeriod.toStandardDuration().getMillis());
+        runExpiredPaymentsJanitor();
 
         List<PaymentTransactionInfoPlugin> expiredPaymentTransactions = adyenPaymentPluginApi.getPaymentInfo(account.getId(),
                                                                                                                    payment.getId(),
@@ -117,6 +120,7 @@ public class TestAdyenPaymentPluginApiHPP extends TestAdyenPaymentPluginApiBase
 
         expirationPeriod = adyenConfigProperties.getPendingHppPaymentWithoutCompletionExpirationPeriod().plusMinutes(1);
         clock.setDeltaFromReality(expirationPeriod.toStandardDuration().getMillis());
+        runExpiredPaymentsJanitor();
 
         expiredPaymentTransactions = adyenPaymentPluginApi.getPaymentInfo(account.getId(),
                                                                           payment.getId(),
@@ -143,6 +147,7 @@ public class TestAdyenPaymentPluginApiHPP extends TestAdyenPaymentPluginApiBase
                                                context);
         Period expirationPeriod = adyenConfigProperties.getPendingHppPaymentWithoutCompletionExpirationPeriod().plusMinutes(1);
         clock.setDeltaFromReality(expirationPeriod.toStandardDuration().getMillis());
+        runExpiredPaymentsJanitor();
 
         List<PaymentTransactionInfoPlugin> paymentTransactions = adyenPaymentPluginApi.getPaymentInfo(account.getId(),
                                                                                                              payment.getId(),
@@ -155,6 +160,7 @@ public class TestAdyenPaymentPluginApiHPP extends TestAdyenPaymentPluginApiBase
 
         expirationPeriod = adyenConfigProperties.getPendingPaymentExpirationPeriod(null).plusMinutes(1);
         clock.setDeltaFromReality(expirationPeriod.toStandardDuration().getMillis());
+        runExpiredPaymentsJanitor();
         List<PaymentTransactionInfoPlugin> expiredPaymentTransactions = adyenPaymentPluginApi.getPaymentInfo(account.getId(),
                                                                                                              payment.getId(),
                                                                                                              ImmutableList.<PluginProperty>of(),
@@ -175,10 +181,12 @@ public class TestAdyenPaymentPluginApiHPP extends TestAdyenPaymentPluginApiBase
 
         final Period preExpirationPeriod = expirationPeriod.minusMinutes(1);
         clock.setDeltaFromReality(preExpirationPeriod.toStandardDuration().getMillis());
+        runExpiredPaymentsJanitor();
         assertEquals(adyenPaymentPluginApi.getPaymentInfo(account.getId(), payment.getId(), Collections.<PluginProperty>emptyList(), context).get(0).getStatus(), PaymentPluginStatus.PENDING);
 
         final Period postExpirationPeriod = expirationPeriod.plusMinutes(1);
         clock.setDeltaFromReality(postExpirationPeriod.toStandardDuration().getMillis());
+        runExpiredPaymentsJanitor();
 
         final List<PaymentTransactionInfoPlugin> transactions = adyenPaymentPluginApi.getPaymentInfo(account.getId(), payment.getId(), Collections.<PluginProperty>emptyList(), context);
         final PaymentTransactionInfoPlugin canceledTransaction = transactions.get(0);
@@ -200,10 +208,12 @@ public class TestAdyenPaymentPluginApiHPP extends TestAdyenPaymentPluginApiBase
 
         final Period preExpirationPeriod = expirationPeriod.minusMinutes(1);
         clock.setDeltaFromReality(preExpirationPeriod.toStandardDuration().getMillis());
+        runExpiredPaymentsJanitor();
         assertEquals(adyenPaymentPluginApi.getPaymentInfo(account.getId(), payment.getId(), Collections.<PluginProperty>emptyList(), context).get(0).getStatus(), PaymentPluginStatus.PENDING);
 
         final Period postExpirationPeriod = expirationPeriod.plusMinutes(1);
         clock.setDeltaFromReality(postExpirationPeriod.toStandardDuration().getMillis());
+        runExpiredPaymentsJanitor();
 
         final List<PaymentTransactionInfoPlugin> transactions = adyenPaymentPluginApi.getPaymentInfo(account.getId(), payment.getId(), Collections.<PluginProperty>emptyList(), context);
         final PaymentTransactionInfoPlugin canceledTransaction = transactions.get(0);
@@ -225,10 +235,12 @@ public class TestAdyenPaymentPluginApiHPP extends TestAdyenPaymentPluginApiBase
 
         final Period preExpirationPeriod = expirationPeriod.minusMinutes(1);
         clock.setDeltaFromReality(preExpirationPeriod.toStandardDuration().getMillis());
+        runExpiredPaymentsJanitor();
         assertEquals(adyenPaymentPluginApi.getPaymentInfo(account.getId(), payment.getId(), Collections.<PluginProperty>emptyList(), context).get(0).getStatus(), PaymentPluginStatus.PENDING);
 
         final Period postExpirationPeriod = expirationPeriod.plusMinutes(1);
         clock.setDeltaFromReality(postExpirationPeriod.toStandardDuration().getMillis());
+        runExpiredPaymentsJanitor();
 
         final List<PaymentTransactionInfoPlugin> transactions = adyenPaymentPluginApi.getPaymentInfo(account.getId(), payment.getId(), Collections.<PluginProperty>emptyList(), context);
         final PaymentTransactionInfoPlugin canceledTransaction = transactions.get(0);
@@ -250,10 +262,12 @@ public class TestAdyenPaymentPluginApiHPP extends TestAdyenPaymentPluginApiBase
 
         final Period preExpirationPeriod = expirationPeriod.minusMinutes(1);
         clock.setDeltaFromReality(preExpirationPeriod.toStandardDuration().getMillis());
+        runExpiredPaymentsJanitor();
         assertEquals(adyenPaymentPluginApi.getPaymentInfo(account.getId(), payment.getId(), Collections.<PluginProperty>emptyList(), context).get(0).getStatus(), PaymentPluginStatus.PENDING);
 
         final Period postExpirationPeriod = expirationPeriod.plusMinutes(1);
         clock.setDeltaFromReality(postExpirationPeriod.toStandardDuration().getMillis());
+        runExpiredPaymentsJanitor();
 
         final List<PaymentTransactionInfoPlugin> transactions = adyenPaymentPluginApi.getPaymentInfo(account.getId(), payment.getId(), Collections.<PluginProperty>emptyList(), context);
         final PaymentTransactionInfoPlugin canceledTransaction = transactions.get(0);
@@ -311,6 +325,16 @@ public class TestAdyenPaymentPluginApiHPP extends TestAdyenPaymentPluginApiBase
         return null;
     }
 
+    // Expired payments are only canceled by the background janitor
+    private void runExpiredPaymentsJanitor() {
+        final AdyenExpiredPaymentsJanitor janitor = new AdyenExpiredPaymentsJanitor(dao, adyenConfigPropertiesConfigurationHandler, clock, new MetricsRegistry(), AdyenExpiredPaymentsJanitor.DEFAULT_LEASE_DURATION);
+        try {
+            janitor.run();
+        } finally {
+            janitor.release();
+        }
+    }
+
     private void processHPPNotification() throws PaymentPluginApiException {
         final String eventCode = "AUTHORISATION";
         final boolean success = true;
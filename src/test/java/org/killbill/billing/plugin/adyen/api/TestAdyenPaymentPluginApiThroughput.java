@@ -0,0 +1,435 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.api;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.payment.api.Payment;
+import org.killbill.billing.payment.api.PaymentApiException;
+import org.killbill.billing.payment.api.PaymentTransaction;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
+import org.killbill.billing.payment.plugin.api.PaymentTransactionInfoPlugin;
+import org.killbill.billing.plugin.TestUtils;
+import org.killbill.billing.plugin.adyen.AdyenPluginMockBuilder;
+import org.killbill.billing.plugin.adyen.EmbeddedDbHelper;
+import org.killbill.billing.plugin.adyen.InstrumentedDataSource;
+import org.killbill.billing.plugin.adyen.TestWithEmbeddedDBBase;
+import org.killbill.billing.plugin.adyen.dao.AdyenDao;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.google.common.collect.ImmutableMap;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.killbill.billing.plugin.TestUtils.toProperties;
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Throughput harness: drives authorizations, captures and purchases from concurrent threads against the
+ * embedded database and a local Adyen stub (WireMock), and reports ops/sec, latency percentiles,
+ * database round-trips and Kill Bill payment lookups per operation and connection acquisition time.
+ * <p/>
+ * Run with: mvn -Ptest-stress test -Dtest=TestAdyenPaymentPluginApiThroughput [-Dorg.killbill.billing.dbi.test.h2=true]
+ * <p/>
+ * Tunables (system properties): org.killbill.billing.plugin.adyen.stress.threads (default 8),
+ * org.killbill.billing.plugin.adyen.stress.iterations (per thread, default 200),
+ * org.killbill.billing.plugin.adyen.stress.warmupIterations (per thread, default 50),
+ * org.killbill.billing.plugin.adyen.stress.gatewayDelayMs (simulated Adyen latency, default 0) and
+ * org.killbill.billing.plugin.adyen.stress.killbillDelayMs (simulated Kill Bill getPayment latency, default 0).
+ */
+public class TestAdyenPaymentPluginApiThroughput extends TestWithEmbeddedDBBase {
+
+    private static final Logger logger = LoggerFactory.getLogger(TestAdyenPaymentPluginApiThroughput.class);
+
+    private static final String PROPERTY_PREFIX = "org.killbill.billing.plugin.adyen.stress.";
+    private static final String ADYEN_PATH = "/adyen";
+    private static final String PSP_REFERENCE = "8514436247811264";
+
+    private static final String AUTHORISE_RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                                     "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n" +
+                                                     "  <soap:Body>\n" +
+                                                     "    <ns1:authoriseResponse xmlns:ns1=\"http://payment.services.adyen.com\">\n" +
+                                                     "      <ns1:paymentResult>\n" +
+                                                     "        <additionalData xmlns=\"http://payment.services.adyen.com\" xsi:nil=\"true\"/>\n" +
+                                                     "        <authCode xmlns=\"http://payment.services.adyen.com\">76330</authCode>\n" +
+                                                     "        <pspReference xmlns=\"http://payment.services.adyen.com\">" + PSP_REFERENCE + "</pspReference>\n" +
+                                                     "        <refusalReason xmlns=\"http://payment.services.adyen.com\" xsi:nil=\"true\"/>\n" +
+                                                     "        <resultCode xmlns=\"http://payment.services.adyen.com\">Authorised</resultCode>\n" +
+                                                     "      </ns1:paymentResult>\n" +
+                                                     "    </ns1:authoriseResponse>\n" +
+                                                     "  </soap:Body>\n" +
+                                                     "</soap:Envelope>";
+
+    private static final String CAPTURE_RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                                   "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n" +
+                                                   "  <soap:Body>\n" +
+                                                   "    <ns1:captureResponse xmlns:ns1=\"http://payment.services.adyen.com\">\n" +
+                                                   "      <ns1:captureResult>\n" +
+                                                   "        <additionalData xmlns=\"http://payment.services.adyen.com\" xsi:nil=\"true\"/>\n" +
+                                                   "        <pspReference xmlns=\"http://payment.services.adyen.com\">" + PSP_REFERENCE + "</pspReference>\n" +
+                                                   "        <response xmlns=\"http://payment.services.adyen.com\">[capture-received]</response>\n" +
+                                                   "      </ns1:captureResult>\n" +
+                                                   "    </ns1:captureResponse>\n" +
+                                                   "  </soap:Body>\n" +
+                                                   "</soap:Envelope>";
+
+    private enum Operation {
+        AUTHORIZE,
+        CAPTURE,
+        PURCHASE
+    }
+
+    private final int threads = Integer.getInteger(PROPERTY_PREFIX + "threads", 8);
+    private final int iterations = Integer.getInteger(PROPERTY_PREFIX + "iterations", 200);
+    private final int warmupIterations = Integer.getInteger(PROPERTY_PREFIX + "warmupIterations", 50);
+    private final int gatewayDelayMs = Integer.getInteger(PROPERTY_PREFIX + "gatewayDelayMs", 0);
+    private final int killbillDelayMs = Integer.getInteger(PROPERTY_PREFIX + "killbillDelayMs", 0);
+    // The Answer runs on the caller thread
+    private final ThreadLocal<long[]> killbillCalls = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private WireMockServer wireMockServer;
+    private InstrumentedDataSource instrumentedDataSource;
+    private Account account;
+    private AdyenPaymentPluginApi adyenPaymentPluginApi;
+    private Map<UUID, Payment> payments;
+
+    @BeforeMethod(groups = "stress")
+    public void setUp() throws Exception {
+        wireMockServer = new WireMockServer(WireMockConfiguration.wireMockConfig()
+                                                                 .dynamicPort()
+                                                                 .containerThreads(threads + 10)
+                                                                 .disableRequestJournal());
+        wireMockServer.start();
+        wireMockServer.stubFor(post(urlEqualTo(ADYEN_PATH)).withRequestBody(containing("paymentRequest"))
+                                                           .willReturn(aResponse().withStatus(200)
+                                                                                  .withHeader("Content-Type", "text/xml")
+                                                                                  .withFixedDelay(gatewayDelayMs)
+                                                                                  .withBody(AUTHORISE_RESPONSE)));
+        wireMockServer.stubFor(post(urlEqualTo(ADYEN_PATH)).withRequestBody(containing("modificationRequest"))
+                                                           .willReturn(aResponse().withStatus(200)
+                                                                                  .withHeader("Content-Type", "text/xml")
+                                                                                  .withFixedDelay(gatewayDelayMs)
+                                                                                  .withBody(CAPTURE_RESPONSE)));
+
+        instrumentedDataSource = new InstrumentedDataSource(EmbeddedDbHelper.instance().getDataSource());
+        final AdyenDao instrumentedDao = new AdyenDao(instrumentedDataSource.getDataSource());
+
+        account = TestUtils.buildAccount(DEFAULT_CURRENCY, DEFAULT_COUNTRY);
+        final OSGIKillbillAPI killbillAPI = TestUtils.buildOSGIKillbillAPI(account);
+        // Stubbed once: Mockito stubbing isn't thread-safe and stub lookups are linear
+        payments = new ConcurrentHashMap<UUID, Payment>();
+        Mockito.when(killbillAPI.getPaymentApi().getPayment(Mockito.<UUID>any(),
+                                                            Mockito.anyBoolean(),
+                                                            Mockito.anyBoolean(),
+                                                            Mockito.<Iterable<PluginProperty>>any(),
+                                                            Mockito.<TenantContext>any()))
+               .then(new Answer<Payment>() {
+                   @Override
+                   public Payment answer(final InvocationOnMock invocation) throws Throwable {
+                       killbillCalls.get()[0]++;
+                       if (killbillDelayMs > 0) {
+                           Thread.sleep(killbillDelayMs);
+                       }
+                       final Payment payment = payments.get((UUID) invocation.getArguments()[0]);
+                       if (payment == null) {
+                           throw new PaymentApiException(new IllegalStateException("Unknown payment"), 0, "Unknown payment");
+                       }
+                       return payment;
+                   }
+               });
+
+        adyenPaymentPluginApi = AdyenPluginMockBuilder.newPlugin()
+                                                      .withAdyenProperty("org.killbill.billing.plugin.adyen.paymentUrl", "http://localhost:" + wireMockServer.port() + ADYEN_PATH)
+                                                      .withOSGIKillbillAPI(killbillAPI)
+                                                      .withDatabaseAccess(instrumentedDao)
+                                                      .build();
+    }
+
+    @AfterMethod(groups = "stress")
+    public void tearDown() throws Exception {
+        wireMockServer.stop();
+    }
+
+    @Test(groups = "stress")
+    public void testThroughput() throws Exception {
+        final Iterable<PluginProperty> properties = toProperties(ImmutableMap.<String, String>builder()
+                                                                             .put(AdyenPaymentPluginApi.PROPERTY_CC_TYPE, CC_TYPE)
+                                                                             .put(AdyenPaymentPluginApi.PROPERTY_CC_LAST_NAME, "Dupont")
+                                                                             .put(AdyenPaymentPluginApi.PROPERTY_CC_NUMBER, CC_NUMBER)
+                                                                             .put(AdyenPaymentPluginApi.PROPERTY_CC_EXPIRATION_MONTH, String.valueOf(CC_EXPIRATION_MONTH))
+                                                                             .put(AdyenPaymentPluginApi.PROPERTY_CC_EXPIRATION_YEAR, String.valueOf(CC_EXPIRATION_YEAR))
+                                                                             .put(AdyenPaymentPluginApi.PROPERTY_CC_VERIFICATION_VALUE, CC_VERIFICATION_VALUE)
+                                                                             .build());
+
+        // Build the Kill Bill side upfront, outside of the measurements
+        final List<List<Fixture>> warmupFixtures = buildFixtures(warmupIterations);
+        final List<List<Fixture>> fixtures = buildFixtures(iterations);
+
+        logger.info("Warming up: threads={}, iterations={}", threads, warmupIterations);
+        run(warmupFixtures, properties);
+
+        logger.info("Running: threads={}, iterations={}, gatewayDelayMs={}, killbillDelayMs={}", threads, iterations, gatewayDelayMs, killbillDelayMs);
+        final long startNanos = System.nanoTime();
+        final List<Recorder> recorders = run(fixtures, properties);
+        final long elapsedNanos = System.nanoTime() - startNanos;
+
+        final StringBuilder report = new StringBuilder(String.format("%n%-10s %8s %10s %9s %9s %9s %9s %9s %12s %14s %12s%n",
+                                                                     "operation", "count", "ops/sec", "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)", "max(ms)", "db stmts/op", "conn wait(us)", "kb calls/op"));
+        long totalOperations = 0;
+        for (final Operation operation : Operation.values()) {
+            final OperationStats merged = Recorder.merge(recorders, operation);
+            assertEquals(merged.count, threads * iterations);
+            totalOperations += merged.count;
+
+            final long[] latencies = Arrays.copyOf(merged.latenciesNanos, merged.count);
+            Arrays.sort(latencies);
+            report.append(String.format("%-10s %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %12.2f %14.1f %12.2f%n",
+                                        operation,
+                                        merged.count,
+                                        merged.count / (elapsedNanos / 1E9),
+                                        percentile(latencies, 50) / 1E6,
+                                        percentile(latencies, 90) / 1E6,
+                                        percentile(latencies, 99) / 1E6,
+                                        percentile(latencies, 99.9) / 1E6,
+                                        latencies[latencies.length - 1] / 1E6,
+                                        merged.statements / (double) merged.count,
+                                        merged.connectionWaitNanos / 1E3 / merged.count,
+                                        merged.killbillCalls / (double) merged.count));
+        }
+        report.append(String.format("total: %d operations in %.2f s (%.1f ops/sec)", totalOperations, elapsedNanos / 1E9, totalOperations / (elapsedNanos / 1E9)));
+        logger.info(report.toString());
+    }
+
+    private List<Recorder> run(final List<List<Fixture>> fixturesPerThread, final Iterable<PluginProperty> properties) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            final List<Future<Recorder>> futures = new ArrayList<Future<Recorder>>(threads);
+            for (final List<Fixture> fixtures : fixturesPerThread) {
+                futures.add(executor.submit(new Callable<Recorder>() {
+                    @Override
+                    public Recorder call() throws Exception {
+                        startLatch.await();
+                        return runThread(fixtures, properties);
+                    }
+                }));
+            }
+            startLatch.countDown();
+
+            final List<Recorder> recorders = new ArrayList<Recorder>(threads);
+            for (final Future<Recorder> future : futures) {
+                recorders.add(future.get());
+            }
+            return recorders;
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private Recorder runThread(final List<Fixture> fixtures, final Iterable<PluginProperty> properties) throws Exception {
+        final Recorder recorder = new Recorder(instrumentedDataSource, killbillCalls.get(), fixtures.size());
+        final AdyenCallContext context = new AdyenCallContext(DateTime.now(), account.getId(), UUID.randomUUID());
+        for (final Fixture fixture : fixtures) {
+            recorder.start();
+            final PaymentTransactionInfoPlugin authorization = adyenPaymentPluginApi.authorizePayment(account.getId(),
+                                                                                                      fixture.authorization.getPaymentId(),
+                                                                                                      fixture.authorization.getId(),
+                                                                                                      account.getPaymentMethodId(),
+                                                                                                      fixture.authorization.getAmount(),
+                                                                                                      fixture.authorization.getCurrency(),
+                                                                                                      properties,
+                                                                                                      context);
+            recorder.stop(Operation.AUTHORIZE);
+            assertEquals(authorization.getStatus(), PaymentPluginStatus.PROCESSED);
+            // Like in Kill Bill, the capture only exists once the authorization went through
+            payments.get(fixture.capture.getPaymentId()).getTransactions().add(fixture.capture);
+
+            recorder.start();
+            final PaymentTransactionInfoPlugin capture = adyenPaymentPluginApi.capturePayment(account.getId(),
+                                                                                              fixture.capture.getPaymentId(),
+                                                                                              fixture.capture.getId(),
+                                                                                              account.getPaymentMethodId(),
+                                                                                              fixture.capture.getAmount(),
+                                                                                              fixture.capture.getCurrency(),
+                                                                                              properties,
+                                                                                              context);
+            recorder.stop(Operation.CAPTURE);
+            assertEquals(capture.getStatus(), PaymentPluginStatus.PENDING);
+
+            recorder.start();
+            final PaymentTransactionInfoPlugin purchase = adyenPaymentPluginApi.purchasePayment(account.getId(),
+                                                                                                fixture.purchase.getPaymentId(),
+                                                                                                fixture.purchase.getId(),
+                                                                                                account.getPaymentMethodId(),
+                                                                                                fixture.purchase.getAmount(),
+                                                                                                fixture.purchase.getCurrency(),
+                                                                                                properties,
+                                                                                                context);
+            recorder.stop(Operation.PURCHASE);
+            assertEquals(purchase.getStatus(), PaymentPluginStatus.PROCESSED);
+        }
+        return recorder;
+    }
+
+    private List<List<Fixture>> buildFixtures(final int iterationsPerThread) throws PaymentApiException {
+        final List<List<Fixture>> fixturesPerThread = new ArrayList<List<Fixture>>(threads);
+        for (int i = 0; i < threads; i++) {
+            final List<Fixture> fixtures = new ArrayList<Fixture>(iterationsPerThread);
+            for (int j = 0; j < iterationsPerThread; j++) {
+                final Payment authorizedPayment = TestUtils.buildPayment(account.getId(), account.getPaymentMethodId(), account.getCurrency());
+                final PaymentTransaction authorization = TestUtils.buildPaymentTransaction(authorizedPayment, TransactionType.AUTHORIZE, BigDecimal.TEN, account.getCurrency());
+                final PaymentTransaction capture = TestUtils.buildPaymentTransaction(authorizedPayment, TransactionType.CAPTURE, BigDecimal.TEN, account.getCurrency());
+                // Added back once authorized
+                authorizedPayment.getTransactions().remove(capture);
+                payments.put(authorizedPayment.getId(), authorizedPayment);
+
+                final Payment purchasedPayment = TestUtils.buildPayment(account.getId(), account.getPaymentMethodId(), account.getCurrency());
+                final PaymentTransaction purchase = TestUtils.buildPaymentTransaction(purchasedPayment, TransactionType.PURCHASE, BigDecimal.TEN, account.getCurrency());
+                payments.put(purchasedPayment.getId(), purchasedPayment);
+
+                fixtures.add(new Fixture(authorization, capture, purchase));
+            }
+            fixturesPerThread.add(fixtures);
+        }
+        return fixturesPerThread;
+    }
+
+    private static long percentile(final long[] sortedValues, final double percentile) {
+        final int index = (int) Math.ceil(percentile / 100 * sortedValues.length) - 1;
+        return sortedValues[Math.max(0, Math.min(index, sortedValues.length - 1))];
+    }
+
+    private static final class Fixture {
+
+        private final PaymentTransaction authorization;
+        private final PaymentTransaction capture;
+        private final PaymentTransaction purchase;
+
+        private Fixture(final PaymentTransaction authorization, final PaymentTransaction capture, final PaymentTransaction purchase) {
+            this.authorization = authorization;
+            this.capture = capture;
+            this.purchase = purchase;
+        }
+    }
+
+    // Per-thread, per-operation measurements
+    private static final class Recorder {
+
+        private final InstrumentedDataSource instrumentedDataSource;
+        private final long[] killbillCalls;
+        private final OperationStats[] stats = new OperationStats[Operation.values().length];
+
+        private long startNanos;
+        private long startStatements;
+        private long startConnectionWaitNanos;
+        private long startKillbillCalls;
+
+        private Recorder(final InstrumentedDataSource instrumentedDataSource, final long[] killbillCalls, final int capacity) {
+            this.instrumentedDataSource = instrumentedDataSource;
+            this.killbillCalls = killbillCalls;
+            for (final Operation operation : Operation.values()) {
+                stats[operation.ordinal()] = new OperationStats(capacity);
+            }
+        }
+
+        private void start() {
+            final InstrumentedDataSource.Stats threadStats = instrumentedDataSource.getThreadStats();
+            startStatements = threadStats.getStatements();
+            startConnectionWaitNanos = threadStats.getConnectionWaitNanos();
+            startKillbillCalls = killbillCalls[0];
+            startNanos = System.nanoTime();
+        }
+
+        private void stop(final Operation operation) {
+            final long latencyNanos = System.nanoTime() - startNanos;
+            final InstrumentedDataSource.Stats threadStats = instrumentedDataSource.getThreadStats();
+
+            final OperationStats operationStats = stats[operation.ordinal()];
+            operationStats.latenciesNanos[operationStats.count++] = latencyNanos;
+            operationStats.statements += threadStats.getStatements() - startStatements;
+            operationStats.connectionWaitNanos += threadStats.getConnectionWaitNanos() - startConnectionWaitNanos;
+            operationStats.killbillCalls += killbillCalls[0] - startKillbillCalls;
+        }
+
+        private static OperationStats merge(final Iterable<Recorder> recorders, final Operation operation) {
+            int capacity = 0;
+            for (final Recorder recorder : recorders) {
+                capacity += recorder.stats[operation.ordinal()].count;
+            }
+
+            final OperationStats merged = new OperationStats(capacity);
+            for (final Recorder recorder : recorders) {
+                final OperationStats operationStats = recorder.stats[operation.ordinal()];
+                System.arraycopy(operationStats.latenciesNanos, 0, merged.latenciesNanos, merged.count, operationStats.count);
+                merged.count += operationStats.count;
+                merged.statements += operationStats.statements;
+                merged.connectionWaitNanos += operationStats.connectionWaitNanos;
+                merged.killbillCalls += operationStats.killbillCalls;
+            }
+            return merged;
+        }
+    }
+
+    private static final class OperationStats {
+
+        private final long[] latenciesNanos;
+        private int count;
+        private long statements;
+        private long connectionWaitNanos;
+        private long killbillCalls;
+
+        private OperationStats(final int capacity) {
+            this.latenciesNanos = new long[capacity];
+        }
+    }
+}
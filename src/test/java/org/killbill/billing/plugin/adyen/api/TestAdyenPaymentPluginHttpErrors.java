@@ -36,6 +36,7 @@ import org.killbill.billing.payment.api.Payment;
 import org.killbill.billing.payment.api.PaymentApiException;
 import org.killbill.billing.payment.api.PaymentTransaction;
 import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionStatus;
 import org.killbill.billing.payment.api.TransactionType;
 import org.killbill.billing.payment.plugin.api.PaymentPluginApi;
 import org.killbill.billing.payment.plugin.api.PaymentPluginApiException;
@@ -45,6 +46,7 @@ import org.killbill.billing.plugin.TestUtils;
 import org.killbill.billing.plugin.adyen.AdyenPluginMockBuilder;
 import org.killbill.billing.plugin.adyen.TestWithEmbeddedDBBase;
 import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.TenantContext;
 import org.mockito.Mockito;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -507,6 +509,37 @@ public class TestAdyenPaymentPluginHttpErrors extends TestWithEmbeddedDBBase {
         assertNull(result.getGatewayErrorCode());
     }
 
+    @Test(groups = "slow")
+    public void testTransactionExternalKeyResolution() throws Exception {
+
+        final String freeLocalPort = "http://localhost:" + findFreePort();
+
+        final Account account = defaultAccount();
+        final OSGIKillbillAPI killbillAPI = TestUtils.buildOSGIKillbillAPI(account);
+        final Payment payment = killBillPayment(account, killbillAPI);
+        final AdyenCallContext callContext = newCallContext(account);
+
+        final AdyenPaymentPluginApi pluginApi = AdyenPluginMockBuilder.newPlugin()
+                                                                      .withAdyenProperty("org.killbill.billing.plugin.adyen.paymentUrl", freeLocalPort)
+                                                                      .withOSGIKillbillAPI(killbillAPI)
+                                                                      .withDatabaseAccess(dao)
+                                                                      .build();
+
+        // Unknown: the payment is loaded
+        final PaymentTransaction transaction = TestUtils.buildPaymentTransaction(payment, UUID.randomUUID().toString(), TransactionType.AUTHORIZE, TransactionStatus.UNKNOWN, BigDecimal.TEN, Currency.EUR);
+        authorizeCall(account, transaction, callContext, pluginApi, creditCardPaymentProperties());
+        verifyGetPaymentCalls(killbillAPI, payment, 1);
+
+        // Retry: already known
+        authorizeCall(account, transaction, callContext, pluginApi, creditCardPaymentProperties());
+        verifyGetPaymentCalls(killbillAPI, payment, 1);
+
+        // New transaction of the same payment, created after the payment was loaded: loaded again
+        final PaymentTransaction otherTransaction = TestUtils.buildPaymentTransaction(payment, UUID.randomUUID().toString(), TransactionType.AUTHORIZE, TransactionStatus.UNKNOWN, BigDecimal.TEN, Currency.EUR);
+        authorizeCall(account, otherTransaction, callContext, pluginApi, creditCardPaymentProperties());
+        verifyGetPaymentCalls(killbillAPI, payment, 2);
+    }
+
     @Test(groups = "slow")
     public void testAuthorizeAdyenRespondWith503() throws Exception {
 
@@ -585,10 +618,14 @@ public class TestAdyenPaymentPluginHttpErrors extends TestWithEmbeddedDBBase {
 
     private PaymentTransactionInfoPlugin authorizeCall(final Account account, final Payment payment, final CallContext callContext, final PaymentPluginApi pluginApi, final Iterable<PluginProperty> pluginProperties) throws PaymentPluginApiException {
         final PaymentTransaction authorizationTransaction = TestUtils.buildPaymentTransaction(payment, TransactionType.AUTHORIZE, Currency.EUR);
+        return authorizeCall(account, authorizationTransaction, callContext, pluginApi, pluginProperties);
+    }
+
+    private PaymentTransactionInfoPlugin authorizeCall(final Account account, final PaymentTransaction authorizationTransaction, final CallContext callContext, final PaymentPluginApi pluginApi, final Iterable<PluginProperty> pluginProperties) throws PaymentPluginApiException {
         Mockito.when(authorizationTransaction.getAmount()).thenReturn(BigDecimal.TEN);
 
         return pluginApi.authorizePayment(account.getId(),
-                                          payment.getId(),
+                                          authorizationTransaction.getPaymentId(),
                                           authorizationTransaction.getId(),
                                           account.getPaymentMethodId(),
                                           authorizationTransaction.getAmount(),
@@ -597,6 +634,14 @@ public class TestAdyenPaymentPluginHttpErrors extends TestWithEmbeddedDBBase {
                                           callContext);
     }
 
+    private void verifyGetPaymentCalls(final OSGIKillbillAPI killbillAPI, final Payment payment, final int times) throws PaymentApiException {
+        Mockito.verify(killbillAPI.getPaymentApi(), Mockito.times(times)).getPayment(Mockito.eq(payment.getId()),
+                                                                                    Mockito.anyBoolean(),
+                                                                                    Mockito.anyBoolean(),
+                                                                                    Mockito.<Iterable<PluginProperty>>any(),
+                                                                                    Mockito.<TenantContext>any());
+    }
+
     private interface WithWireMock<T> {
 
         T execute(WireMockServer server) throws Exception;
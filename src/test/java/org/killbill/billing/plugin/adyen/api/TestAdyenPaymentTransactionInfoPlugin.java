@@ -58,7 +58,12 @@ public class TestAdyenPaymentTransactionInfoPlugin {
                                                                               UUID.randomUUID().toString(),
                                                                               null,
                                                                               new Timestamp(1242L),
-                                                                              UUID.randomUUID().toString());
+                                                                              UUID.randomUUID().toString(),
+                                                                              null,
+                                                                              null,
+                                                                              null,
+                                                                              null,
+                                                                              null);
         final PaymentTransactionInfoPlugin paymentTransactionInfoPlugin = new AdyenPaymentTransactionInfoPlugin(responsesRecord);
         Assert.assertNull(paymentTransactionInfoPlugin.getGatewayErrorCode());
     }
@@ -89,7 +94,12 @@ public class TestAdyenPaymentTransactionInfoPlugin {
                                                                               UUID.randomUUID().toString(),
                                                                               "{\"refusalReasonRaw\":\"05 : Do not honor\"}",
                                                                               new Timestamp(1242L),
-                                                                              UUID.randomUUID().toString());
+                                                                              UUID.randomUUID().toString(),
+                                                                              null,
+                                                                              null,
+                                                                              null,
+                                                                              null,
+                                                                              null);
         final PaymentTransactionInfoPlugin paymentTransactionInfoPlugin = new AdyenPaymentTransactionInfoPlugin(responsesRecord);
         Assert.assertEquals(paymentTransactionInfoPlugin.getGatewayError(), "Do not honor");
         Assert.assertEquals(paymentTransactionInfoPlugin.getGatewayErrorCode(), "05");
@@ -121,7 +131,12 @@ public class TestAdyenPaymentTransactionInfoPlugin {
                                                                               UUID.randomUUID().toString(),
                                                                               "{\"refusalReasonRaw\":\"ill-formatted raw refusal reason\"}",
                                                                               new Timestamp(1242L),
-                                                                              UUID.randomUUID().toString());
+                                                                              UUID.randomUUID().toString(),
+                                                                              null,
+                                                                              null,
+                                                                              null,
+                                                                              null,
+                                                                              null);
         final PaymentTransactionInfoPlugin paymentTransactionInfoPlugin = new AdyenPaymentTransactionInfoPlugin(responsesRecord);
         Assert.assertEquals(paymentTransactionInfoPlugin.getGatewayError(), "Not enough balance");
         Assert.assertNull(paymentTransactionInfoPlugin.getGatewayErrorCode());
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.api.mapping;
+
+import java.util.List;
+
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.plugin.api.PluginProperties;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class IndexedPluginPropertiesTest {
+
+    private final List<PluginProperty> pluginProperties = ImmutableList.of(new PluginProperty("country", "DE", false),
+                                                                           new PluginProperty("country", "FR", false),
+                                                                           new PluginProperty("email", "", false),
+                                                                           new PluginProperty("installments", 3, false),
+                                                                           new PluginProperty("recurringType", null, false),
+                                                                           new PluginProperty("splitSettlementDataItem.1.amount", "5.00", false),
+                                                                           new PluginProperty("splitSettlementDataItem.1.type", "Commission", false),
+                                                                           new PluginProperty("splitSettlementDataItem.2.type", null, false),
+                                                                           new PluginProperty("splitSettlementDataItemCount", "1", false),
+                                                                           new PluginProperty("additionalDataItem.1.key", "RequestedTestAcquirerResponseCode", false),
+                                                                           new PluginProperty("CardinalCommerce.ThreeDSVersion", "1.0.2", false));
+
+    @Test(groups = "fast")
+    public void testLookups() throws Exception {
+        final IndexedPluginProperties properties = IndexedPluginProperties.of(pluginProperties);
+        for (final String key : new String[]{"country", "email", "installments", "recurringType", "splitSettlementDataItem.1.amount", "unknown"}) {
+            assertEquals(properties.findValue(key), PluginProperties.findPluginPropertyValue(key, pluginProperties), key);
+            assertEquals(properties.getValue(key, "fallback"), PluginProperties.getValue(key, "fallback", pluginProperties), key);
+        }
+        assertEquals(properties.findValue("installments"), "3");
+        assertNull(properties.findValue("email"));
+
+        assertEquals(ImmutableList.copyOf(properties), pluginProperties);
+        assertSame(IndexedPluginProperties.of(properties), properties);
+        assertTrue(ImmutableList.copyOf(IndexedPluginProperties.of(null)).isEmpty());
+    }
+
+    @Test(groups = "fast")
+    public void testGroups() throws Exception {
+        final IndexedPluginProperties properties = IndexedPluginProperties.of(pluginProperties);
+        assertEquals(properties.findGroup("splitSettlementDataItem"), ImmutableList.of(pluginProperties.get(5), pluginProperties.get(6)));
+        assertEquals(properties.findGroup("additionalDataItem"), ImmutableList.of(pluginProperties.get(9)));
+        assertEquals(properties.findGroup("CardinalCommerce"), ImmutableList.of(pluginProperties.get(10)));
+        assertTrue(properties.findGroup("country").isEmpty());
+        assertTrue(properties.findGroup("unknown").isEmpty());
+    }
+
+    @Test(groups = "fast")
+    public void testMerge() throws Exception {
+        final IndexedPluginProperties merged = IndexedPluginProperties.merge(pluginProperties,
+                                                                             ImmutableList.of(new PluginProperty("email", "a@b.c", false),
+                                                                                              new PluginProperty("installments", null, false)));
+        //noinspection unchecked
+        final Iterable<PluginProperty> expected = PluginProperties.merge(pluginProperties,
+                                                                         ImmutableList.of(new PluginProperty("email", "a@b.c", false),
+                                                                                          new PluginProperty("installments", null, false)));
+        assertEquals(PluginProperties.toMap(merged), PluginProperties.toMap(expected));
+        // Last one has precedence
+        assertEquals(merged.findValue("country"), "FR");
+        assertEquals(merged.findValue("email"), "a@b.c");
+        assertEquals(merged.findValue("installments"), "3");
+        assertEquals(merged.findGroup("splitSettlementDataItem").size(), 2);
+
+        assertEquals(IndexedPluginProperties.merge(null, pluginProperties.subList(0, 1)).findValue("country"), "DE");
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.api.mapping;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.plugin.adyen.client.model.SplitSettlementData;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class ItemPropertiesMappingServiceTest {
+
+    @Test(groups = "fast")
+    public void testSplitSettlementData() throws Exception {
+        final IndexedPluginProperties properties = IndexedPluginProperties.of(ImmutableList.of(new PluginProperty("splitSettlementDataItem.10.amount", "2.5", false),
+                                                                                               new PluginProperty("splitSettlementDataItem.10.type", "Commission", false),
+                                                                                               new PluginProperty("splitSettlementDataItem.2.amount", "7.5", false),
+                                                                                               new PluginProperty("splitSettlementDataItem.2.type", "Voucher", false),
+                                                                                               new PluginProperty("splitSettlementDataItem.2.group", "deal1", false),
+                                                                                               new PluginProperty("splitSettlementDataItem.2.reference", "voucherId", false),
+                                                                                               new PluginProperty("splitSettlementDataItem.2.unknown", "ignored", false),
+                                                                                               // No type
+                                                                                               new PluginProperty("splitSettlementDataItem.3.amount", "1", false),
+                                                                                               new PluginProperty("splitSettlementDataItem.4.type", null, false),
+                                                                                               new PluginProperty("additionalDataItem.1.key", "ignored", false)));
+
+        final SplitSettlementData splitSettlementData = ItemPropertiesMappingService.toSplitSettlementData(Currency.EUR, properties);
+        assertEquals(splitSettlementData,
+                     new SplitSettlementData(1,
+                                             "EUR",
+                                             ImmutableList.<SplitSettlementData.Item>of(new SplitSettlementData.Item(750, "deal1", "voucherId", "Voucher"),
+                                                                                        new SplitSettlementData.Item(250, "Commission", "Commission", "Commission"))));
+
+        assertNull(ItemPropertiesMappingService.toSplitSettlementData(Currency.EUR, IndexedPluginProperties.of(ImmutableList.<PluginProperty>of())));
+        // Currency isn't required without items (e.g. voids)
+        assertNull(ItemPropertiesMappingService.toSplitSettlementData(null, IndexedPluginProperties.of(ImmutableList.of(new PluginProperty("splitSettlementDataItemCount", "1", false)))));
+    }
+
+    @Test(groups = "fast")
+    public void testAdditionalData() throws Exception {
+        final IndexedPluginProperties properties = IndexedPluginProperties.of(ImmutableList.of(new PluginProperty("additionalDataItem.2.key", "RequestedTestAcquirerResponseCode", false),
+                                                                                               new PluginProperty("additionalDataItem.2.value", "6", false),
+                                                                                               new PluginProperty("additionalDataItem.1.value", "bar", false),
+                                                                                               new PluginProperty("additionalDataItem.1.key", "foo", false),
+                                                                                               new PluginProperty("additionalDataItem.3.key", "noValue", false),
+                                                                                               new PluginProperty("additionalDataItem.4.value", "noKey", false)));
+
+        final Map<String, String> additionalData = ItemPropertiesMappingService.toAdditionalData(properties);
+        final Map<String, String> expected = new LinkedHashMap<String, String>(ImmutableMap.<String, String>of("foo", "bar", "RequestedTestAcquirerResponseCode", "6"));
+        expected.put("noValue", null);
+        assertEquals(ImmutableList.copyOf(additionalData.entrySet()), ImmutableList.copyOf(expected.entrySet()));
+
+        assertTrue(ItemPropertiesMappingService.toAdditionalData(IndexedPluginProperties.of(null)).isEmpty());
+    }
+
+    @Test(groups = "fast")
+    public void testInvalidItemNumbers() throws Exception {
+        for (final String key : new String[]{"splitSettlementDataItem..amount",
+                                             "splitSettlementDataItem.1",
+                                             "splitSettlementDataItem.1.",
+                                             "splitSettlementDataItem.-1.amount",
+                                             "splitSettlementDataItem.1a.amount",
+                                             "splitSettlementDataItem.32768.amount",
+                                             "splitSettlementDataItem.99999999999.amount"}) {
+            try {
+                ItemPropertiesMappingService.toSplitSettlementData(Currency.EUR, IndexedPluginProperties.of(ImmutableList.of(new PluginProperty(key, "1", false))));
+                fail(key);
+            } catch (final IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains(key), e.getMessage());
+            }
+        }
+
+        final Map<String, String> additionalData = ItemPropertiesMappingService.toAdditionalData(IndexedPluginProperties.of(ImmutableList.of(new PluginProperty("additionalDataItem.32767.key", "max", false))));
+        assertEquals(additionalData.keySet(), ImmutableSet.of("max"));
+    }
+}
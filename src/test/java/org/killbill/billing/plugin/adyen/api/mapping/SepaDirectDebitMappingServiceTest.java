@@ -44,22 +44,22 @@ public class SepaDirectDebitMappingServiceTest {
     @Test(groups = "fast")
     public void testSepaMappingServiceWithSepaCountryCode() throws Exception {
         SepaDirectDebit paymentInfo = SepaDirectDebitMappingService.toPaymentInfo(accountData, paymentMethodRecord,
-                                                                    ImmutableList.of(new PluginProperty("sepaCountryCode", "UK", false),
-                                                                                     new PluginProperty("country", "DE", false)));
+                                                                                  IndexedPluginProperties.of(ImmutableList.of(new PluginProperty("sepaCountryCode", "UK", false),
+                                                                                                                              new PluginProperty("country", "DE", false))));
         Assert.assertEquals(paymentInfo.getCountryCode(), "UK");
     }
 
     @Test(groups = "fast")
     public void testSepaMappingServiceWithoutSepaCountryCode() throws Exception {
         SepaDirectDebit paymentInfo = SepaDirectDebitMappingService.toPaymentInfo(accountData, paymentMethodRecord,
-                                                                                  ImmutableList.of(new PluginProperty("country", "DE", false)));
+                                                                                  IndexedPluginProperties.of(ImmutableList.of(new PluginProperty("country", "DE", false))));
         Assert.assertEquals(paymentInfo.getCountryCode(), "DE");
     }
 
     @Test(groups = "fast")
     public void testSepaMappingServiceWithoutAnyCountryCode() throws Exception {
         when(paymentMethodRecord.getCountry()).thenReturn("DE");
-        SepaDirectDebit paymentInfo = SepaDirectDebitMappingService.toPaymentInfo(accountData, paymentMethodRecord, ImmutableList.of());
+        SepaDirectDebit paymentInfo = SepaDirectDebitMappingService.toPaymentInfo(accountData, paymentMethodRecord, IndexedPluginProperties.of(ImmutableList.<PluginProperty>of()));
         Assert.assertEquals(paymentInfo.getCountryCode(), "DE");
     }
 
@@ -67,7 +67,7 @@ public class SepaDirectDebitMappingServiceTest {
     public void testSepaMappingServiceWithoutAnyCountryCodeAndPaymentMethod() throws Exception {
         when(paymentMethodRecord.getCountry()).thenReturn(null);
         when(accountData.getCountry()).thenReturn("DE");
-        SepaDirectDebit paymentInfo = SepaDirectDebitMappingService.toPaymentInfo(accountData, paymentMethodRecord, ImmutableList.of());
+        SepaDirectDebit paymentInfo = SepaDirectDebitMappingService.toPaymentInfo(accountData, paymentMethodRecord, IndexedPluginProperties.of(ImmutableList.<PluginProperty>of()));
         Assert.assertEquals(paymentInfo.getCountryCode(), "DE");
     }
 
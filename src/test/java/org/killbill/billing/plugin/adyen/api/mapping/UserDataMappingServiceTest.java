@@ -346,7 +346,7 @@ public class UserDataMappingServiceTest {
                 new PluginProperty(AdyenPaymentPluginApi.PROPERTY_LAST_NAME,  customerLastNameProperty, false),
                 new PluginProperty(AdyenPaymentPluginApi.PROPERTY_IP, customerIpProperty, false));
 
-        final UserData userData = UserDataMappingService.toUserData(null, pluginProperties);
+        final UserData userData = UserDataMappingService.toUserData(null, IndexedPluginProperties.of(pluginProperties));
         assertEquals(userData.getShopperReference(), customerIdProperty);
         assertEquals(userData.getShopperLocale().toString(), customerLocaleProperty);
         assertEquals(userData.getShopperEmail(), customerEmailProperty);
@@ -374,7 +374,7 @@ public class UserDataMappingServiceTest {
         final List<PluginProperty> pluginProperties =
                 ImmutableList.of(new PluginProperty(AdyenPaymentPluginApi.PROPERTY_IP, customerIpProperty, false));
 
-        final UserData userData = UserDataMappingService.toUserData(account, pluginProperties);
+        final UserData userData = UserDataMappingService.toUserData(account, IndexedPluginProperties.of(pluginProperties));
         assertEquals(userData.getShopperReference(), externalKey);
         assertEquals(userData.getShopperLocale().toString(), accountLocale);
         assertEquals(userData.getShopperEmail(), email);
@@ -388,7 +388,7 @@ public class UserDataMappingServiceTest {
     public void testToUserDataForZeroInput() throws Exception {
         final List<PluginProperty> pluginProperties = ImmutableList.of();
 
-        final UserData userData = UserDataMappingService.toUserData(null, pluginProperties);
+        final UserData userData = UserDataMappingService.toUserData(null, IndexedPluginProperties.of(pluginProperties));
         assertEquals(userData.getShopperReference(), null);
         assertEquals(userData.getShopperLocale(), null);
         assertEquals(userData.getShopperEmail(), null);
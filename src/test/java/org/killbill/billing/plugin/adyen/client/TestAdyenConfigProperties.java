@@ -23,6 +23,7 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 public class TestAdyenConfigProperties {
 
@@ -44,6 +45,7 @@ public class TestAdyenConfigProperties {
         Assert.assertEquals(adyenConfigProperties.getMerchantAccount("UK"), "DefaultAccount");
         Assert.assertEquals(adyenConfigProperties.getMerchantAccount("DE"), "DefaultAccount");
         Assert.assertEquals(adyenConfigProperties.getMerchantAccount("US"), "DefaultAccount");
+        Assert.assertEquals(adyenConfigProperties.getMerchantAccounts(), ImmutableSet.of("DefaultAccount"));
 
         Assert.assertEquals(adyenConfigProperties.getUserName("DefaultAccount"), "DefaultUsername");
 
@@ -174,6 +176,7 @@ public class TestAdyenConfigProperties {
         final AdyenConfigProperties adyenConfigProperties = new AdyenConfigProperties(properties);
 
         Assert.assertEquals(adyenConfigProperties.getMerchantAccount("United States"), "FALLBACKAccountDE");
+        Assert.assertEquals(adyenConfigProperties.getMerchantAccounts(), ImmutableSet.of("DefaultAccountUK", "FALLBACKAccountDE"));
         Assert.assertEquals(adyenConfigProperties.getUserName("FALLBACKAccountDE"), "DefaultUsernameDE");
         Assert.assertEquals(adyenConfigProperties.getPassword("FALLBACKAccountDE"), "DefaultPasswordDE");
         Assert.assertEquals(adyenConfigProperties.getSkin("FALLBACKAccountDE"), "FALLBACKSkinDE");
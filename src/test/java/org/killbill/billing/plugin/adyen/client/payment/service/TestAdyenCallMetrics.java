@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.client.payment.service;
+
+import java.net.ConnectException;
+
+import org.killbill.adyen.payment.ModificationRequest;
+import org.killbill.adyen.payment.ModificationResult;
+import org.killbill.adyen.payment.PaymentPortType;
+import org.killbill.billing.plugin.adyen.client.AdyenPaymentPortRegistry;
+import org.killbill.billing.plugin.adyen.client.PaymentPortRegistry;
+import org.killbill.billing.plugin.adyen.metrics.LatencyHistogram;
+import org.killbill.billing.plugin.adyen.metrics.PrometheusTextWriter;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestAdyenCallMetrics {
+
+    @Test(groups = "fast")
+    public void testRecordCalls() throws Exception {
+        final PaymentPortType paymentPort = Mockito.mock(PaymentPortType.class);
+        final PaymentPortRegistry portRegistry = Mockito.mock(AdyenPaymentPortRegistry.class);
+        Mockito.when(portRegistry.getPaymentPort(Mockito.anyString())).thenReturn(paymentPort);
+        final AdyenCallMetrics adyenCallMetrics = new AdyenCallMetrics();
+        final AdyenPaymentRequestSender adyenPaymentRequestSender = new AdyenPaymentRequestSender(portRegistry, adyenCallMetrics);
+
+        final ModificationRequest modificationRequest = new ModificationRequest();
+        Mockito.when(paymentPort.capture(modificationRequest)).thenReturn(new ModificationResult());
+        Mockito.when(paymentPort.refund(modificationRequest)).thenThrow(new RuntimeException(new ConnectException("Connection refused")));
+
+        Assert.assertTrue(adyenPaymentRequestSender.capture("MerchantA", modificationRequest).receivedWellFormedResponse());
+        Assert.assertTrue(adyenPaymentRequestSender.capture("MerchantA", modificationRequest).receivedWellFormedResponse());
+        Assert.assertFalse(adyenPaymentRequestSender.refund("MerchantA", modificationRequest).receivedWellFormedResponse());
+
+        final LatencyHistogram captures = adyenCallMetrics.getHistogram("capture", "MerchantA", null);
+        Assert.assertNotNull(captures);
+        Assert.assertEquals(captures.getCount(), 2);
+        final LatencyHistogram failedRefunds = adyenCallMetrics.getHistogram("refund", "MerchantA", AdyenCallErrorStatus.REQUEST_NOT_SEND);
+        Assert.assertNotNull(failedRefunds);
+        Assert.assertEquals(failedRefunds.getCount(), 1);
+        Assert.assertNull(adyenCallMetrics.getHistogram("refund", "MerchantA", null));
+        Assert.assertNull(adyenCallMetrics.getHistogram("capture", "MerchantB", null));
+    }
+
+    @Test(groups = "fast")
+    public void testPrometheusExport() throws Exception {
+        final AdyenCallMetrics adyenCallMetrics = new AdyenCallMetrics();
+        adyenCallMetrics.record("authorise", "Merchant\"A", null, 2000000000L);
+        adyenCallMetrics.record("authorise", "Merchant\"A", AdyenCallErrorStatus.RESPONSE_NOT_RECEIVED, 1000000L);
+
+        final StringBuilder output = new StringBuilder();
+        adyenCallMetrics.writeTo(new PrometheusTextWriter(output));
+        final String text = output.toString();
+
+        Assert.assertTrue(text.startsWith("# HELP adyen_gateway_call_duration_seconds "), text);
+        Assert.assertTrue(text.contains("# TYPE adyen_gateway_call_duration_seconds summary\n"), text);
+        Assert.assertTrue(text.contains("adyen_gateway_call_duration_seconds_count{operation=\"authorise\",merchant_account=\"Merchant\\\"A\",status=\"SUCCESS\"} 1\n"), text);
+        Assert.assertTrue(text.contains("adyen_gateway_call_duration_seconds_sum{operation=\"authorise\",merchant_account=\"Merchant\\\"A\",status=\"SUCCESS\"} 2\n"), text);
+        Assert.assertTrue(text.contains("adyen_gateway_call_duration_seconds_count{operation=\"authorise\",merchant_account=\"Merchant\\\"A\",status=\"RESPONSE_NOT_RECEIVED\"} 1\n"), text);
+        Assert.assertTrue(text.contains("status=\"SUCCESS\",quantile=\"0.99\"}"), text);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillAPI;
+import org.killbill.billing.osgi.libs.killbill.OSGIKillbillLogService;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestAdyenConfigPropertiesConfigurationHandler {
+
+    @Test(groups = "fast")
+    public void testMerchantAccountTenantResolution() {
+        final UUID kbTenantIdA = UUID.randomUUID();
+        final UUID kbTenantIdB = UUID.randomUUID();
+        final Map<UUID, String> configurations = new HashMap<UUID, String>();
+        configurations.put(kbTenantIdA, "org.killbill.billing.plugin.adyen.merchantAccount=DE#AccountA|FR#SharedAccount\n" +
+                                        "org.killbill.billing.plugin.adyen.paymentProcessorAccountIdToMerchantAccount=legacy#LegacyAccountA\n");
+        configurations.put(kbTenantIdB, "org.killbill.billing.plugin.adyen.merchantAccount=US#AccountB|FALLBACK#SharedAccount\n");
+
+        final AdyenConfigPropertiesConfigurationHandler handler = new AdyenConfigPropertiesConfigurationHandler(AdyenActivator.PLUGIN_NAME,
+                                                                                                                Mockito.mock(OSGIKillbillAPI.class),
+                                                                                                                Mockito.mock(OSGIKillbillLogService.class),
+                                                                                                                null) {
+            @Override
+            protected String getTenantConfigurationAsString(@Nullable final UUID kbTenantId) {
+                return configurations.get(kbTenantId);
+            }
+        };
+
+        // Tenants not configured yet
+        Assert.assertNull(handler.getTenantId("AccountA"));
+
+        handler.configureTenants(ImmutableList.<UUID>of(kbTenantIdA));
+        Assert.assertEquals(handler.getTenantId("AccountA"), kbTenantIdA);
+        Assert.assertEquals(handler.getTenantId("LegacyAccountA"), kbTenantIdA);
+        Assert.assertEquals(handler.getTenantId("SharedAccount"), kbTenantIdA);
+        Assert.assertNull(handler.getTenantId("AccountB"));
+        Assert.assertNull(handler.getTenantId(null));
+
+        // Also indexed on first use of the configuration
+        Assert.assertNotNull(handler.getConfigurable(kbTenantIdB));
+        Assert.assertEquals(handler.getTenantId("AccountB"), kbTenantIdB);
+        // Ambiguous
+        Assert.assertNull(handler.getTenantId("SharedAccount"));
+
+        // Configuration changes
+        configurations.put(kbTenantIdA, "org.killbill.billing.plugin.adyen.merchantAccount=AccountA\n");
+        handler.configure(kbTenantIdA);
+        Assert.assertEquals(handler.getTenantId("AccountA"), kbTenantIdA);
+        Assert.assertNull(handler.getTenantId("LegacyAccountA"));
+        Assert.assertEquals(handler.getTenantId("SharedAccount"), kbTenantIdB);
+
+        configurations.remove(kbTenantIdB);
+        handler.configure(kbTenantIdB);
+        Assert.assertNull(handler.getTenantId("AccountB"));
+        Assert.assertNull(handler.getTenantId("SharedAccount"));
+        Assert.assertEquals(handler.getTenantId("AccountA"), kbTenantIdA);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.payment.plugin.api.PaymentPluginStatus;
+import org.killbill.billing.plugin.adyen.TestWithEmbeddedDBBase;
+import org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi;
+import org.killbill.billing.plugin.adyen.api.AdyenPaymentTransactionInfoPlugin;
+import org.killbill.billing.plugin.adyen.client.AdyenConfigProperties;
+import org.killbill.billing.plugin.adyen.client.model.PaymentServiceProviderResult;
+import org.killbill.billing.plugin.adyen.client.model.PurchaseResult;
+import org.killbill.billing.plugin.adyen.dao.AdyenDao;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
+import org.killbill.billing.plugin.api.PluginProperties;
+import org.killbill.clock.ClockMock;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class TestAdyenExpiredPaymentsJanitor extends TestWithEmbeddedDBBase {
+
+    private final UUID kbAccountId = UUID.randomUUID();
+    private final UUID kbTenantId = UUID.randomUUID();
+
+    private ClockMock clock;
+    private AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler;
+
+    @BeforeMethod(groups = "slow")
+    public void setUp() throws Exception {
+        clock = new ClockMock();
+        adyenConfigPropertiesConfigurationHandler = Mockito.mock(AdyenConfigPropertiesConfigurationHandler.class);
+        Mockito.when(adyenConfigPropertiesConfigurationHandler.getConfigurable(kbTenantId)).thenReturn(new AdyenConfigProperties(new Properties()));
+    }
+
+    @Test(groups = "slow")
+    public void testCancelExpiredPayments() throws Exception {
+        // Small chunks, to go through several of them
+        final AdyenExpiredPaymentsJanitor janitor = newJanitor("node", 1);
+
+        final DateTime now = clock.getUTCNow();
+        final AdyenResponsesRecord expired = addAuthorization(PaymentServiceProviderResult.PENDING, ImmutableMap.<String, String>of(), now.minusDays(4));
+        final AdyenResponsesRecord recent = addAuthorization(PaymentServiceProviderResult.PENDING, ImmutableMap.<String, String>of(), now.minusDays(2));
+        final AdyenResponsesRecord settled = addAuthorization(PaymentServiceProviderResult.AUTHORISED, ImmutableMap.<String, String>of(), now.minusDays(4));
+        // Shorter expiration periods
+        final AdyenResponsesRecord expiredPayPal = addAuthorization(PaymentServiceProviderResult.PENDING, ImmutableMap.<String, String>of("paymentMethod", "paypal"), now.minusDays(2));
+        final AdyenResponsesRecord expired3DS = addAuthorization(PaymentServiceProviderResult.REDIRECT_SHOPPER, ImmutableMap.<String, String>of(), now.minusHours(4));
+        final AdyenResponsesRecord recent3DS = addAuthorization(PaymentServiceProviderResult.REDIRECT_SHOPPER, ImmutableMap.<String, String>of(), now.minusHours(2));
+        // Already canceled by the janitor
+        final AdyenResponsesRecord canceled = addAuthorization(PaymentServiceProviderResult.PENDING, ImmutableMap.<String, String>of(), now.minusDays(4));
+        dao.updateResponse(UUID.fromString(canceled.getKbPaymentTransactionId()),
+                           PluginProperties.buildPluginProperties(ImmutableMap.<String, String>of(AdyenPaymentPluginApi.PROPERTY_FROM_HPP_TRANSACTION_STATUS, PaymentPluginStatus.CANCELED.toString())),
+                           kbTenantId);
+
+        Assert.assertEquals(dao.getResponsesTenantIds().size(), 1);
+        Assert.assertEquals(dao.getPendingResponses(kbTenantId, now, null, 10).size(), 5);
+
+        janitor.run();
+
+        Assert.assertEquals(getStatus(expired), PaymentPluginStatus.CANCELED);
+        Assert.assertEquals(getStatus(expiredPayPal), PaymentPluginStatus.CANCELED);
+        Assert.assertEquals(getStatus(expired3DS), PaymentPluginStatus.CANCELED);
+        Assert.assertEquals(getStatus(recent), PaymentPluginStatus.PENDING);
+        Assert.assertEquals(getStatus(recent3DS), PaymentPluginStatus.PENDING);
+        Assert.assertEquals(getStatus(settled), PaymentPluginStatus.PROCESSED);
+        Assert.assertEquals(AdyenDao.fromAdditionalData(getResponse(expired).getAdditionalData()).get("message"), "Payment Expired - Cancelled by Janitor");
+
+        // Canceled payments aren't scanned anymore
+        Assert.assertEquals(dao.getPendingResponses(kbTenantId, now, null, 10).size(), 2);
+    }
+
+    @Test(groups = "slow")
+    public void testLeaderElection() throws Exception {
+        final AdyenExpiredPaymentsJanitor firstJanitor = newJanitor("first-node", AdyenExpiredPaymentsJanitor.DEFAULT_CHUNK_SIZE);
+        final AdyenExpiredPaymentsJanitor secondJanitor = newJanitor("second-node", AdyenExpiredPaymentsJanitor.DEFAULT_CHUNK_SIZE);
+
+        // Nothing to do, but the first node becomes the leader
+        firstJanitor.run();
+
+        final AdyenResponsesRecord expired = addAuthorization(PaymentServiceProviderResult.PENDING, ImmutableMap.<String, String>of(), clock.getUTCNow().minusDays(4));
+        secondJanitor.run();
+        Assert.assertEquals(getStatus(expired), PaymentPluginStatus.PENDING);
+
+        // The first node stopped renewing its lease
+        clock.addDeltaFromReality(Period.minutes(11).toStandardDuration().getMillis());
+        secondJanitor.run();
+        Assert.assertEquals(getStatus(expired), PaymentPluginStatus.CANCELED);
+
+        // Only the owner can release the lease
+        firstJanitor.release();
+        Assert.assertFalse(dao.acquireLease(AdyenExpiredPaymentsJanitor.LEASE_NAME, "first-node", clock.getUTCNow(), clock.getUTCNow().plusMinutes(10)));
+        secondJanitor.release();
+        Assert.assertTrue(dao.acquireLease(AdyenExpiredPaymentsJanitor.LEASE_NAME, "first-node", clock.getUTCNow(), clock.getUTCNow().plusMinutes(10)));
+    }
+
+    private AdyenExpiredPaymentsJanitor newJanitor(final String owner, final int chunkSize) {
+        return new AdyenExpiredPaymentsJanitor(dao, adyenConfigPropertiesConfigurationHandler, clock, new MetricsRegistry(), owner, Period.minutes(10), chunkSize);
+    }
+
+    private AdyenResponsesRecord addAuthorization(final PaymentServiceProviderResult result, final Map<String, String> additionalData, final DateTime createdDate) throws SQLException {
+        final PurchaseResult purchaseResult = new PurchaseResult(result, null, UUID.randomUUID().toString(), null, result.toString(), null, additionalData);
+        return dao.addResponse(kbAccountId, UUID.randomUUID(), UUID.randomUUID(), TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, createdDate, kbTenantId);
+    }
+
+    private AdyenResponsesRecord getResponse(final AdyenResponsesRecord response) throws SQLException {
+        final List<AdyenResponsesRecord> responses = dao.getResponses(UUID.fromString(response.getKbPaymentId()), kbTenantId);
+        Assert.assertEquals(responses.size(), 1);
+        return responses.get(0);
+    }
+
+    private PaymentPluginStatus getStatus(final AdyenResponsesRecord response) throws SQLException {
+        return new AdyenPaymentTransactionInfoPlugin(getResponse(response)).getStatus();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.adyen.notification.NotificationRequestItem;
+import org.killbill.billing.plugin.adyen.EmbeddedDbHelper;
+import org.killbill.billing.plugin.adyen.TestWithEmbeddedDBBase;
+import org.killbill.billing.plugin.adyen.client.AdyenConfigProperties;
+import org.killbill.billing.plugin.adyen.client.model.NotificationItem;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord;
+import org.killbill.clock.ClockMock;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Sets;
+
+public class TestAdyenNotificationsArchival extends TestWithEmbeddedDBBase {
+
+    @Test(groups = "slow")
+    public void testArchivePerTenantRetention() throws Exception {
+        final ClockMock clock = new ClockMock();
+        final UUID kbTenantIdWithRetention = UUID.randomUUID();
+        final UUID kbTenantIdWithoutRetention = UUID.randomUUID();
+
+        final Properties globalProperties = new Properties();
+        globalProperties.put("org.killbill.billing.plugin.adyen.notificationsRetentionPeriod", "P30d");
+        final Properties tenantProperties = new Properties();
+        tenantProperties.put("org.killbill.billing.plugin.adyen.notificationsRetentionPeriod", "P10d");
+        final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler = Mockito.mock(AdyenConfigPropertiesConfigurationHandler.class);
+        Mockito.when(adyenConfigPropertiesConfigurationHandler.getConfigurable(null)).thenReturn(new AdyenConfigProperties(globalProperties));
+        Mockito.when(adyenConfigPropertiesConfigurationHandler.getConfigurable(kbTenantIdWithRetention)).thenReturn(new AdyenConfigProperties(tenantProperties));
+        Mockito.when(adyenConfigPropertiesConfigurationHandler.getConfigurable(kbTenantIdWithoutRetention)).thenReturn(new AdyenConfigProperties(new Properties()));
+
+        for (int i = 0; i < 5; i++) {
+            addNotification(kbTenantIdWithRetention, clock.getUTCNow().minusDays(20));
+            addNotification(kbTenantIdWithoutRetention, clock.getUTCNow().minusDays(20));
+            addNotification(null, clock.getUTCNow().minusDays(20));
+        }
+        final AdyenNotificationsRecord recent = addNotification(kbTenantIdWithRetention, clock.getUTCNow().minusDays(5));
+        final AdyenNotificationsRecord unmatched = addNotification(null, clock.getUTCNow().minusDays(40));
+        Assert.assertEquals(new HashSet<String>(dao.getNotificationsTenantIds()),
+                            Sets.<String>newHashSet(kbTenantIdWithRetention.toString(), kbTenantIdWithoutRetention.toString(), null));
+        Assert.assertEquals(dao.getNotificationsTenantIds().size(), 3);
+
+        newArchival("node", adyenConfigPropertiesConfigurationHandler, clock).run();
+
+        Assert.assertEquals(dao.getNotifications().size(), 11);
+        Assert.assertEquals(count("adyen_notifications_archive"), 6);
+        for (final AdyenNotificationsRecord notification : dao.getNotifications()) {
+            if (kbTenantIdWithRetention.toString().equals(notification.getKbTenantId())) {
+                Assert.assertEquals(notification.getRecordId(), recent.getRecordId());
+            }
+            Assert.assertNotEquals(notification.getRecordId(), unmatched.getRecordId());
+        }
+
+        // Nothing left to do
+        newArchival("node", adyenConfigPropertiesConfigurationHandler, clock).run();
+        Assert.assertEquals(count("adyen_notifications_archive"), 6);
+
+        clock.addDays(15);
+        newArchival("node", adyenConfigPropertiesConfigurationHandler, clock).run();
+        Assert.assertEquals(dao.getNotifications().size(), 5);
+        Assert.assertEquals(count("adyen_notifications_archive"), 12);
+        for (final AdyenNotificationsRecord notification : dao.getNotifications()) {
+            Assert.assertEquals(notification.getKbTenantId(), kbTenantIdWithoutRetention.toString());
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testLeaderElection() throws Exception {
+        final ClockMock clock = new ClockMock();
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.adyen.notificationsRetentionPeriod", "P30d");
+        final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler = Mockito.mock(AdyenConfigPropertiesConfigurationHandler.class);
+        Mockito.when(adyenConfigPropertiesConfigurationHandler.getConfigurable(Mockito.<UUID>any())).thenReturn(new AdyenConfigProperties(properties));
+        final AdyenNotificationsArchival firstArchival = newArchival("first-node", adyenConfigPropertiesConfigurationHandler, clock);
+        final AdyenNotificationsArchival secondArchival = newArchival("second-node", adyenConfigPropertiesConfigurationHandler, clock);
+
+        // Nothing to do, but the first node becomes the leader
+        firstArchival.run();
+
+        addNotification(null, clock.getUTCNow().minusDays(40));
+        secondArchival.run();
+        Assert.assertEquals(count("adyen_notifications_archive"), 0);
+
+        // The first node stopped
+        firstArchival.release();
+        secondArchival.run();
+        Assert.assertEquals(count("adyen_notifications_archive"), 1);
+        secondArchival.release();
+    }
+
+    // Small chunks, to go through several transactions
+    private AdyenNotificationsArchival newArchival(final String owner, final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler, final ClockMock clock) {
+        return new AdyenNotificationsArchival(dao, adyenConfigPropertiesConfigurationHandler, clock, owner, AdyenNotificationsArchival.DEFAULT_LEASE_DURATION, 2);
+    }
+
+    private AdyenNotificationsRecord addNotification(final UUID kbTenantId, final DateTime createdDate) throws SQLException {
+        final NotificationRequestItem notificationRequestItem = new NotificationRequestItem();
+        notificationRequestItem.setEventCode("AUTHORISATION");
+        notificationRequestItem.setPspReference(UUID.randomUUID().toString());
+        notificationRequestItem.setSuccess(true);
+        return dao.addNotification(null, null, null, null, new NotificationItem(notificationRequestItem), createdDate, kbTenantId);
+    }
+
+    private long count(final String tableName) throws SQLException, IOException {
+        final Connection connection = EmbeddedDbHelper.instance().getDataSource().getConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            try {
+                final ResultSet resultSet = statement.executeQuery("select count(*) from " + tableName);
+                resultSet.next();
+                return resultSet.getLong(1);
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+}
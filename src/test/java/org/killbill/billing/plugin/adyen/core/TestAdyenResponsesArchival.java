@@ -0,0 +1,221 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.adyen.EmbeddedDbHelper;
+import org.killbill.billing.plugin.adyen.TestWithEmbeddedDBBase;
+import org.killbill.billing.plugin.adyen.client.AdyenConfigProperties;
+import org.killbill.billing.plugin.adyen.client.model.PaymentModificationResponse;
+import org.killbill.billing.plugin.adyen.client.model.PaymentServiceProviderResult;
+import org.killbill.billing.plugin.adyen.client.model.PurchaseResult;
+import org.killbill.billing.plugin.adyen.dao.AdyenDao;
+import org.killbill.billing.plugin.adyen.dao.ResponseWithHppRequest;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+import org.killbill.clock.ClockMock;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class TestAdyenResponsesArchival extends TestWithEmbeddedDBBase {
+
+    private final UUID kbAccountId = UUID.randomUUID();
+    private final UUID kbTenantId = UUID.randomUUID();
+
+    @Test(groups = "slow")
+    public void testArchiveSettledPayments() throws Exception {
+        final ClockMock clock = new ClockMock();
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.adyen.settledResponsesRetentionPeriod", "P1y");
+        final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler = Mockito.mock(AdyenConfigPropertiesConfigurationHandler.class);
+        Mockito.when(adyenConfigPropertiesConfigurationHandler.getConfigurable(null)).thenReturn(new AdyenConfigProperties(properties));
+        final AdyenResponsesArchival archival = new AdyenResponsesArchival(dao, adyenConfigPropertiesConfigurationHandler, clock, "node", AdyenResponsesArchival.DEFAULT_LEASE_DURATION, 2);
+
+        final DateTime old = clock.getUTCNow().minusDays(400);
+        final UUID settledKbPaymentId = UUID.randomUUID();
+        final AdyenResponsesRecord settledAuth = addAuthorization(settledKbPaymentId, PaymentServiceProviderResult.AUTHORISED, old);
+        final AdyenResponsesRecord settledCapture = addCapture(settledKbPaymentId, old);
+        final UUID pendingKbPaymentId = UUID.randomUUID();
+        addAuthorization(pendingKbPaymentId, PaymentServiceProviderResult.PENDING, old);
+        // Still pending for the expired payments janitor
+        addAuthorization(UUID.randomUUID(), PaymentServiceProviderResult.RECEIVED, old);
+        final AdyenResponsesRecord pendingHppAuth = addAuthorization(UUID.randomUUID(), PaymentServiceProviderResult.AUTHORISED, old);
+        execute("update adyen_responses set from_hpp_transaction_status = 'PENDING' where record_id = " + pendingHppAuth.getRecordId());
+        final UUID activeKbPaymentId = UUID.randomUUID();
+        addAuthorization(activeKbPaymentId, PaymentServiceProviderResult.AUTHORISED, old);
+        addCapture(activeKbPaymentId, clock.getUTCNow().minusDays(10));
+        final UUID recentKbPaymentId = UUID.randomUUID();
+        addAuthorization(recentKbPaymentId, PaymentServiceProviderResult.AUTHORISED, clock.getUTCNow());
+
+        archival.run();
+
+        Assert.assertEquals(count("adyen_responses"), 6);
+        Assert.assertEquals(count("adyen_responses_archive"), 2);
+
+        // Archive-aware reads fall through to the archive
+        Assert.assertTrue(dao.getResponses(settledKbPaymentId, kbTenantId).isEmpty());
+        final List<AdyenResponsesRecord> responses = dao.getResponses(settledKbPaymentId, kbTenantId, true);
+        Assert.assertEquals(responses.size(), 2);
+        Assert.assertEquals(responses.get(0).getRecordId(), settledAuth.getRecordId());
+        Assert.assertEquals(responses.get(1).getRecordId(), settledCapture.getRecordId());
+        Assert.assertEquals(responses.get(1).getAdditionalData(), settledCapture.getAdditionalData());
+        final List<ResponseWithHppRequest> responsesWithHppRequests = dao.getResponsesWithHppRequests(ImmutableList.<UUID>of(settledKbPaymentId, activeKbPaymentId), kbTenantId).get(settledKbPaymentId);
+        Assert.assertEquals(responsesWithHppRequests.size(), 2);
+        Assert.assertEquals(responsesWithHppRequests.get(1).getResponse().getRecordId(), settledCapture.getRecordId());
+        Assert.assertEquals(dao.getSuccessfulAuthorizationResponse(settledKbPaymentId, kbTenantId).getRecordId(), settledAuth.getRecordId());
+        Assert.assertEquals(dao.getResponse(settledCapture.getPspReference()).getRecordId(), settledCapture.getRecordId());
+        Assert.assertNull(dao.getResponse(UUID.randomUUID().toString()));
+
+        // New responses since the archival are merged
+        final AdyenResponsesRecord refund = addRefund(settledKbPaymentId, clock.getUTCNow());
+        Assert.assertEquals(dao.getResponses(settledKbPaymentId, kbTenantId, true).size(), 3);
+        Assert.assertEquals(dao.getResponses(settledKbPaymentId, kbTenantId, true).get(2).getRecordId(), refund.getRecordId());
+
+        // Updates move the payment back
+        final AdyenResponsesRecord updated = dao.updateResponse(UUID.fromString(settledCapture.getKbPaymentTransactionId()),
+                                                                ImmutableList.<PluginProperty>of(new PluginProperty("key", "value", false)),
+                                                                kbTenantId);
+        Assert.assertEquals(updated.getRecordId(), settledCapture.getRecordId());
+        Assert.assertEquals(AdyenDao.fromAdditionalData(updated.getAdditionalData()).get("key"), "value");
+        Assert.assertEquals(count("adyen_responses"), 9);
+        Assert.assertEquals(count("adyen_responses_archive"), 0);
+        Assert.assertEquals(dao.getResponses(settledKbPaymentId, kbTenantId, true).size(), 3);
+    }
+
+    @Test(groups = "slow")
+    public void testResumeFromCheckpoint() throws Exception {
+        final ClockMock clock = new ClockMock();
+        final Properties properties = new Properties();
+        properties.put("org.killbill.billing.plugin.adyen.settledResponsesRetentionPeriod", "P1y");
+        final AdyenConfigPropertiesConfigurationHandler adyenConfigPropertiesConfigurationHandler = Mockito.mock(AdyenConfigPropertiesConfigurationHandler.class);
+        Mockito.when(adyenConfigPropertiesConfigurationHandler.getConfigurable(null)).thenReturn(new AdyenConfigProperties(properties));
+        final AdyenResponsesArchival archival = new AdyenResponsesArchival(dao, adyenConfigPropertiesConfigurationHandler, clock, "node", AdyenResponsesArchival.DEFAULT_LEASE_DURATION, 2);
+
+        final DateTime old = clock.getUTCNow().minusDays(400);
+        final UUID settledKbPaymentId = UUID.randomUUID();
+        addAuthorization(settledKbPaymentId, PaymentServiceProviderResult.AUTHORISED, old);
+        addCapture(settledKbPaymentId, old);
+        final AdyenResponsesRecord pendingAuth = addAuthorization(UUID.randomUUID(), PaymentServiceProviderResult.PENDING, old);
+        final AdyenResponsesRecord otherPendingAuth = addAuthorization(UUID.randomUUID(), PaymentServiceProviderResult.PENDING, old);
+
+        Assert.assertNull(dao.getCheckpoint(AdyenResponsesArchival.LEASE_NAME));
+        archival.run();
+        Assert.assertEquals(count("adyen_responses"), 2);
+        Assert.assertEquals(count("adyen_responses_archive"), 2);
+        Assert.assertEquals(dao.getCheckpoint(AdyenResponsesArchival.LEASE_NAME), otherPendingAuth.getRecordId());
+
+        // Already scanned: not looked at again until the payment gets a new response
+        execute("update adyen_responses set psp_result = 'AUTHORISED' where record_id = " + pendingAuth.getRecordId());
+        final UUID otherSettledKbPaymentId = UUID.randomUUID();
+        addAuthorization(otherSettledKbPaymentId, PaymentServiceProviderResult.AUTHORISED, old);
+        final AdyenResponsesRecord otherSettledCapture = addCapture(otherSettledKbPaymentId, old);
+
+        archival.run();
+        Assert.assertEquals(count("adyen_responses"), 2);
+        Assert.assertEquals(count("adyen_responses_archive"), 4);
+        Assert.assertEquals(dao.getResponses(otherSettledKbPaymentId, kbTenantId, true).size(), 2);
+        Assert.assertEquals(dao.getCheckpoint(AdyenResponsesArchival.LEASE_NAME), otherSettledCapture.getRecordId());
+    }
+
+    @Test(groups = "slow")
+    public void testNewPaymentsDoNotReadTheArchive() throws Exception {
+        // Any query against the archive fails
+        execute("alter table adyen_responses_archive rename to adyen_responses_archive_hidden");
+        try {
+            final UUID kbPaymentId = UUID.randomUUID();
+            Assert.assertNull(dao.getSuccessfulAuthorizationResponse(kbPaymentId, kbTenantId, false));
+
+            final AdyenResponsesRecord authorization = addAuthorization(kbPaymentId, PaymentServiceProviderResult.REDIRECT_SHOPPER, new ClockMock().getUTCNow());
+            Assert.assertEquals(dao.getSuccessfulAuthorizationResponse(kbPaymentId, kbTenantId, false).getRecordId(), authorization.getRecordId());
+            Assert.assertEquals(dao.getResponse(authorization.getPspReference(), kbTenantId, false).getRecordId(), authorization.getRecordId());
+            Assert.assertEquals(dao.getResponses(kbPaymentId, kbTenantId).size(), 1);
+            Assert.assertTrue(dao.getResponses(UUID.randomUUID(), kbTenantId).isEmpty());
+            Assert.assertNull(dao.getResponse(UUID.randomUUID().toString(), kbTenantId, false));
+
+            final AdyenResponsesRecord updated = dao.updateResponse(UUID.fromString(authorization.getKbPaymentTransactionId()),
+                                                                    ImmutableList.<PluginProperty>of(new PluginProperty("key", "value", false)),
+                                                                    kbTenantId,
+                                                                    false);
+            Assert.assertEquals(updated.getRecordId(), authorization.getRecordId());
+            Assert.assertNull(dao.updateResponse(UUID.randomUUID(), ImmutableList.<PluginProperty>of(), kbTenantId, false));
+        } finally {
+            execute("alter table adyen_responses_archive_hidden rename to adyen_responses_archive");
+        }
+    }
+
+    private AdyenResponsesRecord addAuthorization(final UUID kbPaymentId, final PaymentServiceProviderResult result, final DateTime createdDate) throws SQLException {
+        final PurchaseResult purchaseResult = new PurchaseResult(result, null, UUID.randomUUID().toString(), null, null, null, null);
+        return dao.addResponse(kbAccountId, kbPaymentId, UUID.randomUUID(), TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, createdDate, kbTenantId);
+    }
+
+    private AdyenResponsesRecord addCapture(final UUID kbPaymentId, final DateTime createdDate) throws SQLException {
+        final PaymentModificationResponse response = new PaymentModificationResponse("[capture-received]", UUID.randomUUID().toString(), ImmutableMap.<Object, Object>of("capture", "data"));
+        return dao.addResponse(kbAccountId, kbPaymentId, UUID.randomUUID(), TransactionType.CAPTURE, BigDecimal.TEN, Currency.EUR, response, createdDate, kbTenantId);
+    }
+
+    private AdyenResponsesRecord addRefund(final UUID kbPaymentId, final DateTime createdDate) throws SQLException {
+        final PaymentModificationResponse response = new PaymentModificationResponse("[refund-received]", UUID.randomUUID().toString(), ImmutableMap.<Object, Object>of());
+        return dao.addResponse(kbAccountId, kbPaymentId, UUID.randomUUID(), TransactionType.REFUND, BigDecimal.TEN, Currency.EUR, response, createdDate, kbTenantId);
+    }
+
+    private void execute(final String sql) throws SQLException, IOException {
+        final Connection connection = EmbeddedDbHelper.instance().getDataSource().getConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            try {
+                statement.execute(sql);
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private long count(final String tableName) throws SQLException, IOException {
+        final Connection connection = EmbeddedDbHelper.instance().getDataSource().getConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            try {
+                final ResultSet resultSet = statement.executeQuery("select count(*) from " + tableName);
+                resultSet.next();
+                return resultSet.getLong(1);
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -135,6 +135,40 @@ public class TestKillbillAdyenNotificationHandler extends TestAdyenPaymentPlugin
         Assert.assertEquals(payment.getTransactions().get(1).getTransactionStatus(), TransactionStatus.SUCCESS);
     }
 
+    @Test(groups = "slow")
+    public void testHandleNotificationForMerchantAccountResolvedToAnotherTenant() throws Exception {
+        // Only the configuration of another tenant, sharing the merchant account, has been loaded on this node so far
+        final UUID otherKbTenantId = UUID.randomUUID();
+        final AdyenConfigPropertiesConfigurationHandler otherTenantConfigurationHandler = new AdyenConfigPropertiesConfigurationHandler(AdyenActivator.PLUGIN_NAME, killbillApi, logService, null) {
+            @Override
+            protected String getTenantConfigurationAsString(@Nullable final UUID kbTenantId) {
+                return otherKbTenantId.equals(kbTenantId) ? "org.killbill.billing.plugin.adyen.merchantAccount=SharedAccount\n" : null;
+            }
+        };
+        otherTenantConfigurationHandler.setDefaultConfigurable(new AdyenConfigProperties(new Properties()));
+        otherTenantConfigurationHandler.configureTenants(ImmutableList.<UUID>of(otherKbTenantId));
+        Assert.assertEquals(otherTenantConfigurationHandler.getTenantId("SharedAccount"), otherKbTenantId);
+        killbillAdyenNotificationHandler = new KillbillAdyenNotificationHandler(otherTenantConfigurationHandler, killbillApi, dao, clock);
+
+        final NotificationRequestItem authItem = getNotificationRequestItem("AUTHORISATION", true);
+        authItem.setMerchantAccountCode("SharedAccount");
+        setupTransaction(TransactionType.AUTHORIZE, authItem);
+
+        killbillAdyenNotificationHandler.handleNotification(authItem);
+        verifyLastNotificationRecorded(1);
+        Assert.assertEquals(payment.getTransactions().get(0).getTransactionStatus(), TransactionStatus.SUCCESS);
+
+        // Matched by original reference
+        final NotificationRequestItem captureItem = getNotificationRequestItem(authItem, "CAPTURE", true);
+        captureItem.setMerchantAccountCode("SharedAccount");
+
+        killbillAdyenNotificationHandler.handleNotification(captureItem);
+        verifyLastNotificationRecorded(2);
+        Assert.assertEquals(payment.getTransactions().size(), 2);
+        Assert.assertEquals(payment.getTransactions().get(1).getTransactionType(), TransactionType.CAPTURE);
+        Assert.assertEquals(payment.getTransactions().get(1).getTransactionStatus(), TransactionStatus.SUCCESS);
+    }
+
     @Test(groups = "slow")
     public void testHandleCaptureFailure() throws Exception {
         final boolean success = false;
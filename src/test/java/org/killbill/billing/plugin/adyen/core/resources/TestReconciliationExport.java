@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.core.resources;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.jooq.RecordHandler;
+import org.jooq.types.UInteger;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.adyen.TestWithEmbeddedDBBase;
+import org.killbill.billing.plugin.adyen.client.model.NotificationItem;
+import org.killbill.billing.plugin.adyen.client.model.PaymentServiceProviderResult;
+import org.killbill.billing.plugin.adyen.client.model.PurchaseResult;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+import static org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenNotifications.ADYEN_NOTIFICATIONS;
+import static org.killbill.billing.plugin.adyen.dao.gen.tables.AdyenResponses.ADYEN_RESPONSES;
+
+public class TestReconciliationExport extends TestWithEmbeddedDBBase {
+
+    private final UUID kbTenantId = UUID.randomUUID();
+    private final DateTime now = new DateTime(2018, 3, 1, 12, 0, DateTimeZone.UTC);
+
+    @Test(groups = "slow")
+    public void testExportNotificationsAsCsv() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            addNotification(kbTenantId, "TestAccount", "reason" + i, now.plusDays(i));
+        }
+        addNotification(kbTenantId, "OtherAccount", "other", now);
+        addNotification(UUID.randomUUID(), "TestAccount", "other tenant", now);
+        final AdyenNotificationsRecord quoted = addNotification(kbTenantId, "TestAccount", "Refused, \"CVC\"\ndeclined", now.plusDays(10));
+
+        // Pages smaller than the export
+        final List<String> lines = readLines(exportNotifications("TestAccount", null, null, null, ExportFormat.CSV, 2));
+        Assert.assertEquals(lines.get(0), "record_id,kb_account_id,kb_payment_id,kb_payment_transaction_id,transaction_type,amount,currency,event_code,event_date,merchant_account_code,merchant_reference,operations,original_reference,payment_method,psp_reference,reason,success,additional_data,created_date,kb_tenant_id");
+        // Header, 5 notifications and the quoted one (records are separated by CRLF, its value has a LF)
+        Assert.assertEquals(lines.size(), 1 + 5 + 1);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(lines.get(1 + i).contains(",reason" + i + ","), lines.get(1 + i));
+            Assert.assertTrue(lines.get(1 + i).contains("," + now.plusDays(i).toString() + ","), lines.get(1 + i));
+        }
+        Assert.assertTrue(lines.get(6).startsWith(quoted.getRecordId() + ","), lines.get(6));
+        Assert.assertTrue(lines.get(6).contains(",\"Refused, \"\"CVC\"\"\ndeclined\","), lines.get(6));
+
+        // Date range, with an exclusive end
+        Assert.assertEquals(readLines(exportNotifications("TestAccount", now.plusDays(1), now.plusDays(3), null, ExportFormat.CSV, 2)).size(), 1 + 2);
+        // All merchant accounts
+        Assert.assertEquals(readLines(exportNotifications(null, null, now.plusDays(1), null, ExportFormat.CSV, 100)).size(), 1 + 2);
+        // Resume
+        final List<String> resumed = readLines(exportNotifications("TestAccount", null, now.plusDays(5), UInteger.valueOf(lines.get(3).split(",")[0]), ExportFormat.CSV, 2));
+        Assert.assertEquals(resumed.subList(1, resumed.size()), lines.subList(4, 6));
+        // Nothing to export
+        Assert.assertEquals(readLines(exportNotifications("UnknownAccount", null, null, null, ExportFormat.CSV, 2)).size(), 1);
+    }
+
+    @Test(groups = "slow")
+    public void testExportAcrossArchivedNotifications() throws Exception {
+        // Archived and live notifications interleaved in record_id order
+        for (int i = 0; i < 6; i++) {
+            addNotification(kbTenantId, "TestAccount", "reason" + i, i % 2 == 0 ? now.minusDays(100) : now);
+        }
+        final List<String> lines = readLines(exportNotifications("TestAccount", null, null, null, ExportFormat.CSV, 2));
+        Assert.assertEquals(lines.size(), 1 + 6);
+
+        Assert.assertEquals(dao.archiveNotifications(kbTenantId, now.minusDays(50), 10), 3);
+        Assert.assertEquals(dao.getNotifications().size(), 3);
+
+        // Same export, whatever the page size
+        Assert.assertEquals(readLines(exportNotifications("TestAccount", null, null, null, ExportFormat.CSV, 2)), lines);
+        Assert.assertEquals(readLines(exportNotifications("TestAccount", null, null, null, ExportFormat.CSV, 100)), lines);
+        // Filters and resume apply to the archive too
+        Assert.assertEquals(readLines(exportNotifications("TestAccount", null, now.minusDays(50), null, ExportFormat.CSV, 2)), ImmutableList.<String>of(lines.get(0), lines.get(1), lines.get(3), lines.get(5)));
+        Assert.assertEquals(readLines(exportNotifications("TestAccount", null, null, UInteger.valueOf(lines.get(3).split(",")[0]), ExportFormat.CSV, 2)), ImmutableList.<String>builder().add(lines.get(0)).addAll(lines.subList(4, 7)).build());
+    }
+
+    @Test(groups = "slow")
+    public void testExportResponsesAsNdjson() throws Exception {
+        final List<AdyenResponsesRecord> responses = ImmutableList.<AdyenResponsesRecord>of(addResponse(kbTenantId),
+                                                                                            addResponse(kbTenantId),
+                                                                                            addResponse(kbTenantId));
+        addResponse(UUID.randomUUID());
+
+        final String export = new String(ByteStreams.toByteArray(new ReconciliationExport<AdyenResponsesRecord>(ADYEN_RESPONSES.fields(),
+                                                                                                                 ExportFormat.NDJSON,
+                                                                                                                 null,
+                                                                                                                 new ReconciliationExport.PageReader<AdyenResponsesRecord>() {
+                                                                                                                     @Override
+                                                                                                                     public UInteger readPage(@Nullable final UInteger afterRecordId, final int pageSize, final RecordHandler<AdyenResponsesRecord> handler) throws SQLException {
+                                                                                                                         return dao.exportResponses(kbTenantId, null, null, null, afterRecordId, pageSize, handler);
+                                                                                                                     }
+                                                                                                                 },
+                                                                                                                 3)),
+                                         Charsets.UTF_8);
+        Assert.assertTrue(export.endsWith("\n"));
+        final List<String> lines = Splitter.on('\n').omitEmptyStrings().splitToList(export);
+        Assert.assertEquals(lines.size(), 3);
+
+        final ObjectMapper objectMapper = new ObjectMapper();
+        for (int i = 0; i < lines.size(); i++) {
+            final Map<?, ?> json = objectMapper.readValue(lines.get(i), Map.class);
+            Assert.assertEquals(json.get("record_id"), responses.get(i).getRecordId().intValue());
+            Assert.assertEquals(json.get("kb_payment_id"), responses.get(i).getKbPaymentId());
+            Assert.assertEquals(new BigDecimal(json.get("amount").toString()).compareTo(BigDecimal.TEN), 0);
+            Assert.assertEquals(json.get("additional_data"), responses.get(i).getAdditionalData());
+            Assert.assertNull(json.get("dcc_amount"));
+            Assert.assertTrue(json.containsKey("dcc_amount"));
+        }
+    }
+
+    private InputStream exportNotifications(@Nullable final String merchantAccount, @Nullable final DateTime from, @Nullable final DateTime to,
+                                            @Nullable final UInteger afterRecordId, final ExportFormat format, final int pageSize) {
+        return new ReconciliationExport<AdyenNotificationsRecord>(ADYEN_NOTIFICATIONS.fields(),
+                                                                  format,
+                                                                  afterRecordId,
+                                                                  new ReconciliationExport.PageReader<AdyenNotificationsRecord>() {
+                                                                      @Override
+                                                                      public UInteger readPage(@Nullable final UInteger afterRecordId, final int pageSize, final RecordHandler<AdyenNotificationsRecord> handler) throws SQLException {
+                                                                          return dao.exportNotifications(kbTenantId, merchantAccount, from, to, afterRecordId, pageSize, handler);
+                                                                      }
+                                                                  },
+                                                                  pageSize);
+    }
+
+    private List<String> readLines(final InputStream export) throws IOException {
+        try {
+            return Splitter.on("\r\n").omitEmptyStrings().splitToList(new String(ByteStreams.toByteArray(export), Charsets.UTF_8));
+        } finally {
+            export.close();
+        }
+    }
+
+    private AdyenNotificationsRecord addNotification(final UUID kbTenantId, final String merchantAccountCode, final String reason, final DateTime createdDate) throws SQLException {
+        final NotificationItem notificationItem = new NotificationItem(null, null, null, "AUTHORISATION", null, merchantAccountCode, null, null, null, null, UUID.randomUUID().toString(), reason, true);
+        return dao.addNotification(null, null, null, null, notificationItem, createdDate, kbTenantId);
+    }
+
+    private AdyenResponsesRecord addResponse(final UUID kbTenantId) throws SQLException {
+        final PurchaseResult purchaseResult = new PurchaseResult(PaymentServiceProviderResult.AUTHORISED,
+                                                                 "83152",
+                                                                 UUID.randomUUID().toString(),
+                                                                 null,
+                                                                 null,
+                                                                 null,
+                                                                 ImmutableMap.<String, String>of("cardSummary", "1111", "paymentMethod", "visa"));
+        return dao.addResponse(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, now, kbTenantId);
+    }
+}
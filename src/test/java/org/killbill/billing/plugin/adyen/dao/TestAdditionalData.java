@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.dao;
+
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestAdditionalData {
+
+    private static final String JSON = "{\"nested\":{\"fromHPP\":false,\"list\":[1,2]},\"fromHPP\":true,\"fromHPPCompletion\":\"true\"," +
+                                       "\"merchantAccountCode\":\"TestAccount\",\"amount\":1.50,\"count\":10,\"empty\":null}";
+
+    @Test(groups = "fast")
+    public void testHotKeys() {
+        final AdyenResponsesRecord record = new AdyenResponsesRecord();
+        record.setAdditionalData(JSON);
+
+        final AdditionalData additionalData = AdditionalData.of(record);
+        Assert.assertTrue(additionalData.isFromHpp());
+        Assert.assertTrue(additionalData.isHppCompletion());
+        Assert.assertEquals(additionalData.getMerchantAccountCode(), "TestAccount");
+        Assert.assertNull(additionalData.getAdyenCallErrorStatus());
+        Assert.assertNull(additionalData.get("empty"));
+        Assert.assertFalse(additionalData.getBoolean("authMode", false));
+        Assert.assertTrue(additionalData.getBoolean("authMode", true));
+
+        // Same representation as the values of the deserialized map
+        Assert.assertEquals(additionalData.get("amount"), "1.5");
+        Assert.assertEquals(additionalData.get("count"), "10");
+        Assert.assertEquals(additionalData.get("nested"), AdyenDao.fromAdditionalData(JSON).get("nested").toString());
+        Assert.assertEquals(additionalData.asMap(), AdyenDao.fromAdditionalData(JSON));
+    }
+
+    @Test(groups = "fast")
+    public void testMemoizedPerRecord() {
+        final AdyenHppRequestsRecord record = new AdyenHppRequestsRecord();
+        Assert.assertTrue(AdditionalData.of(record).asMap().isEmpty());
+        Assert.assertFalse(AdditionalData.of(record).isFromHpp());
+
+        record.setAdditionalData(JSON);
+        final AdditionalData additionalData = AdditionalData.of(record);
+        Assert.assertSame(AdditionalData.of(record), additionalData);
+        Assert.assertSame(additionalData.asMap(), additionalData.asMap());
+
+        final AdyenHppRequestsRecord otherRecord = new AdyenHppRequestsRecord();
+        otherRecord.setAdditionalData(JSON);
+        Assert.assertNotSame(AdditionalData.of(otherRecord), additionalData);
+
+        // Changing the column invalidates the view
+        record.setAdditionalData("{\"fromHPP\":false}");
+        Assert.assertNotSame(AdditionalData.of(record), additionalData);
+        Assert.assertFalse(AdditionalData.of(record).isFromHpp());
+        Assert.assertTrue(additionalData.isFromHpp());
+    }
+
+    @Test(groups = "fast")
+    public void testDuplicateKeys() {
+        final String json = "{\"merchantAccountCode\":\"First\",\"fromHPP\":true,\"merchantAccountCode\":\"Last\",\"fromHPP\":null}";
+
+        // Last occurrence wins, for the streamed lookups as for the deserialized map
+        final AdditionalData additionalData = new AdditionalData(json);
+        Assert.assertEquals(additionalData.getMerchantAccountCode(), "Last");
+        Assert.assertFalse(additionalData.isFromHpp());
+        Assert.assertEquals(additionalData.getMerchantAccountCode(), additionalData.asMap().get("merchantAccountCode"));
+        Assert.assertNull(additionalData.asMap().get("fromHPP"));
+    }
+
+    @Test(groups = "fast", expectedExceptions = UnsupportedOperationException.class)
+    public void testMapIsUnmodifiable() {
+        new AdditionalData(JSON).asMap().clear();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.dao;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+
+public class TestAdditionalDataCodec {
+
+    private static final String JSON = "{\"authCode\":\"83152\",\"cardSummary\":\"1111\",\"expiryDate\":\"8/2018\",\"cardBin\":\"411111\"," +
+                                       "\"paymentMethod\":\"visa\",\"fromHPP\":\"false\",\"amount\":{\"value\":1000,\"currency\":\"EUR\"}," +
+                                       "\"merchantAccountCode\":\"TestAccount\",\"hmacSignature\":\"XlhIGK7wKAFJ1D1aqceFwLkXSL1XXf1DWBVhUo17rqo=\"}";
+
+    @Test(groups = "fast")
+    public void testRoundTrip() {
+        for (final String json : new String[]{JSON,
+                                               "{}",
+                                               "",
+                                               "{\"unknown\":\"value\",\"authCode\":null}",
+                                               // Escaped quotes, in and around dictionary entries
+                                               "{\"exceptionMessage\":\"\\\"authCode\\\" missing\",\"authCode\":\"\\\\\",\"visa\":\"\\\"\"}",
+                                               // Non ASCII
+                                               "{\"cardHolderName\":\"Jérôme Ünïcödé 漢字\",\"shopperLocale\":\"fr_FR\"}",
+                                               // Not JSON
+                                               "{\"authCode\":\"unterminated",
+                                               "\"authCode\"",
+                                               // Control characters
+                                               "{\"authCode\":\"a\u0001b\u0002\"}",
+                                               "\u0001"}) {
+            final byte[] encoded = AdditionalDataCodec.encode(json);
+            Assert.assertEquals(AdditionalDataCodec.decode(encoded), json, json);
+        }
+        Assert.assertNull(AdditionalDataCodec.encode(null));
+        Assert.assertNull(AdditionalDataCodec.decode(null));
+    }
+
+    @Test(groups = "fast")
+    public void testCompact() {
+        final byte[] encoded = AdditionalDataCodec.encode(JSON);
+        Assert.assertTrue(AdditionalDataCodec.isCompact(encoded));
+        Assert.assertTrue(encoded.length < JSON.getBytes(Charsets.UTF_8).length * 0.75, encoded.length + " bytes");
+        // Deterministic
+        Assert.assertEquals(AdditionalDataCodec.encode(JSON), encoded);
+
+        Assert.assertFalse(AdditionalDataCodec.isCompact(AdditionalDataCodec.encode("\u0001")));
+    }
+
+    @Test(groups = "fast")
+    public void testLegacy() {
+        Assert.assertFalse(AdditionalDataCodec.isCompact(JSON.getBytes(Charsets.UTF_8)));
+        Assert.assertEquals(AdditionalDataCodec.decode(JSON.getBytes(Charsets.UTF_8)), JSON);
+        Assert.assertEquals(AdditionalDataCodec.decode(new byte[0]), "");
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.dao;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.TestUtils;
+import org.killbill.billing.plugin.adyen.client.model.NotificationItem;
+import org.killbill.billing.plugin.adyen.client.model.PaymentServiceProviderResult;
+import org.killbill.billing.plugin.adyen.client.model.PurchaseResult;
+import org.killbill.billing.plugin.adyen.dao.AdditionalDataColumnsMigration.SizeReport;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+import org.killbill.commons.embeddeddb.h2.H2EmbeddedDB;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class TestAdditionalDataColumnsMigration {
+
+    private final UUID kbAccountId = UUID.randomUUID();
+    private final UUID kbTenantId = UUID.randomUUID();
+
+    // Dedicated database: the schema is altered
+    private H2EmbeddedDB embeddedDB;
+
+    @BeforeMethod(groups = "slow")
+    public void setUp() throws Exception {
+        embeddedDB = new H2EmbeddedDB("additionalDataColumnsMigration" + System.currentTimeMillis(), "adyen", "adyen");
+        embeddedDB.initialize();
+        embeddedDB.start();
+        embeddedDB.executeScript(TestUtils.toString("ddl.sql"));
+        embeddedDB.refreshTableNames();
+    }
+
+    @AfterMethod(groups = "slow")
+    public void tearDown() throws Exception {
+        embeddedDB.stop();
+    }
+
+    @Test(groups = "slow")
+    public void testBackfillAndCutover() throws Exception {
+        final AdyenDao textDao = new AdyenDao(embeddedDB.getDataSource());
+        Assert.assertFalse(textDao.hasBinaryAdditionalData());
+
+        final AdyenResponsesRecord authorization = addAuthorization(textDao, UUID.randomUUID());
+        final UUID kbPaymentMethodId = UUID.randomUUID();
+        textDao.addPaymentMethod(kbAccountId, kbPaymentMethodId, true, ImmutableMap.<String, String>of("recurringType", "ONECLICK"), DateTime.now(DateTimeZone.UTC), kbTenantId);
+        textDao.addHppRequest(kbAccountId, null, null, "external-key", ImmutableMap.<Object, Object>of("merchantAccountCode", "TestAccount", "brandCode", "visa"), DateTime.now(DateTimeZone.UTC), kbTenantId);
+
+        // Small chunks, to go through several transactions
+        final Connection conn = embeddedDB.getDataSource().getConnection();
+        try {
+            final AdditionalDataColumnsMigration migration = new AdditionalDataColumnsMigration(conn);
+            Assert.assertTrue(migration.backfill(1) > 0);
+            Assert.assertFalse(AdditionalDataColumnsMigration.hasBinaryAdditionalData(conn));
+            Assert.assertEquals(migration.backfill(1), 0);
+
+            final SizeReport responsesReport = getReport(migration.report(), "adyen_responses");
+            Assert.assertEquals(responsesReport.getTextRows(), 1);
+            Assert.assertEquals(responsesReport.getBinaryRows(), 1);
+            Assert.assertTrue(responsesReport.getBinaryBytes() < responsesReport.getTextBytes(), responsesReport.toString());
+        } finally {
+            conn.close();
+        }
+
+        // Written between the backfill and the cutover
+        addNotification(textDao, authorization.getPspReference());
+        final AdyenResponsesRecord updatedAfterBackfill = textDao.updateResponse(UUID.fromString(authorization.getKbPaymentTransactionId()),
+                                                                                 ImmutableList.<PluginProperty>of(new PluginProperty("lateKey", "lateValue", false)),
+                                                                                 kbTenantId);
+
+        final Connection cutoverConn = embeddedDB.getDataSource().getConnection();
+        try {
+            final AdditionalDataColumnsMigration migration = new AdditionalDataColumnsMigration(cutoverConn);
+            migration.cutover(1);
+            Assert.assertTrue(AdditionalDataColumnsMigration.hasBinaryAdditionalData(cutoverConn));
+            // The Kill Bill ids are independent
+            Assert.assertFalse(KbIdColumnsMigration.hasBinaryKbIds(cutoverConn));
+            Assert.assertTrue(AdditionalDataCodec.isCompact(getStoredAdditionalData(cutoverConn, "adyen_notifications")));
+
+            final SizeReport notificationsReport = getReport(migration.report(), "adyen_notifications");
+            Assert.assertEquals(notificationsReport.getTextRows(), 0);
+            Assert.assertEquals(notificationsReport.getBinaryRows(), 1);
+        } finally {
+            cutoverConn.close();
+        }
+
+        final AdyenDao binaryDao = new AdyenDao(embeddedDB.getDataSource());
+        Assert.assertTrue(binaryDao.hasBinaryAdditionalData());
+
+        // Converted rows, including the updates made after the backfill
+        final AdyenResponsesRecord response = binaryDao.getResponses(UUID.fromString(authorization.getKbPaymentId()), kbTenantId).get(0);
+        Assert.assertEquals(response.getAdditionalData(), updatedAfterBackfill.getAdditionalData());
+        Assert.assertEquals(AdyenDao.fromAdditionalData(response.getAdditionalData()).get("lateKey"), "lateValue");
+        Assert.assertEquals(AdyenDao.fromAdditionalData(response.getAdditionalData()).get("cardHolderName"), "Jérôme");
+        Assert.assertEquals(binaryDao.getPaymentMethod(kbPaymentMethodId, kbTenantId).getAdditionalData(), "{\"recurringType\":\"ONECLICK\"}");
+        Assert.assertEquals(AdyenDao.fromAdditionalData(binaryDao.getHppRequest("external-key").getAdditionalData()).get("brandCode"), "visa");
+        final List<AdyenNotificationsRecord> notifications = binaryDao.getNotifications();
+        Assert.assertEquals(notifications.size(), 1);
+        Assert.assertEquals(AdyenDao.fromAdditionalData(notifications.get(0).getAdditionalData()).get("hmacSignature"), "signature");
+
+        // Compare-and-set on the encoded value
+        final AdyenResponsesRecord updated = binaryDao.updateResponse(UUID.fromString(authorization.getKbPaymentTransactionId()),
+                                                                      ImmutableList.<PluginProperty>of(new PluginProperty("key", "value", false)),
+                                                                      kbTenantId);
+        Assert.assertEquals(AdyenDao.fromAdditionalData(updated.getAdditionalData()).get("key"), "value");
+        final AdyenResponsesRecord updatedAgain = binaryDao.updateResponse(UUID.fromString(authorization.getKbPaymentTransactionId()),
+                                                                           ImmutableList.<PluginProperty>of(new PluginProperty("otherKey", "otherValue", false)),
+                                                                           kbTenantId);
+        Assert.assertEquals(AdyenDao.fromAdditionalData(updatedAgain.getAdditionalData()).get("key"), "value");
+        Assert.assertEquals(binaryDao.getResponses(UUID.fromString(authorization.getKbPaymentId()), kbTenantId).get(0).getAdditionalData(), updatedAgain.getAdditionalData());
+
+        // New rows
+        final AdyenResponsesRecord newAuthorization = addAuthorization(binaryDao, UUID.randomUUID());
+        Assert.assertEquals(binaryDao.getResponses(UUID.fromString(newAuthorization.getKbPaymentId()), kbTenantId).get(0).getAdditionalData(), newAuthorization.getAdditionalData());
+    }
+
+    private AdyenResponsesRecord addAuthorization(final AdyenDao dao, final UUID kbPaymentId) throws SQLException {
+        final PurchaseResult purchaseResult = new PurchaseResult(PaymentServiceProviderResult.AUTHORISED,
+                                                                 "83152",
+                                                                 UUID.randomUUID().toString(),
+                                                                 null,
+                                                                 null,
+                                                                 null,
+                                                                 ImmutableMap.<String, String>of("cardSummary", "1111", "paymentMethod", "visa", "cardHolderName", "Jérôme"));
+        return dao.addResponse(kbAccountId, kbPaymentId, UUID.randomUUID(), TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, DateTime.now(DateTimeZone.UTC), kbTenantId);
+    }
+
+    private void addNotification(final AdyenDao dao, final String pspReference) throws SQLException {
+        final NotificationItem notificationItem = new NotificationItem(ImmutableMap.<Object, Object>of("hmacSignature", "signature"),
+                                                                       null, null, "AUTHORISATION", null, null, null, null, null, null, pspReference, null, true);
+        dao.addNotification(null, null, null, null, notificationItem, DateTime.now(DateTimeZone.UTC), kbTenantId);
+    }
+
+    private SizeReport getReport(final Iterable<SizeReport> reports, final String table) {
+        for (final SizeReport report : reports) {
+            if (table.equals(report.getTable())) {
+                return report;
+            }
+        }
+        throw new AssertionError("No report for " + table);
+    }
+
+    private byte[] getStoredAdditionalData(final Connection conn, final String table) throws SQLException {
+        final Statement statement = conn.createStatement();
+        try {
+            final ResultSet resultSet = statement.executeQuery("select additional_data from " + table);
+            Assert.assertTrue(resultSet.next());
+            return resultSet.getBytes(1);
+        } finally {
+            statement.close();
+        }
+    }
+}
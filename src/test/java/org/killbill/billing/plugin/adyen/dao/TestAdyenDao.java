@@ -19,34 +19,65 @@ package org.killbill.billing.plugin.adyen.dao;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import javax.sql.DataSource;
 import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.jooq.DSLContext;
+import org.jooq.ResultQuery;
+import org.jooq.SQLDialect;
+import org.jooq.conf.ParamType;
+import org.jooq.conf.RenderNameStyle;
+import org.jooq.conf.Settings;
+import org.jooq.impl.DSL;
+import org.jooq.tools.jdbc.JDBCUtils;
+import org.jooq.types.UInteger;
 import org.killbill.adyen.common.Amount;
 import org.killbill.adyen.notification.ArrayOfString;
 import org.killbill.adyen.notification.NotificationRequestItem;
 import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.adyen.EmbeddedDbHelper;
+import org.killbill.billing.plugin.adyen.InstrumentedDataSource;
 import org.killbill.billing.plugin.adyen.TestWithEmbeddedDBBase;
 import org.killbill.billing.plugin.adyen.api.AdyenPaymentPluginApi;
 import org.killbill.billing.plugin.adyen.client.model.NotificationItem;
+import org.killbill.billing.plugin.adyen.client.model.PaymentModificationResponse;
 import org.killbill.billing.plugin.adyen.client.model.PaymentServiceProviderResult;
 import org.killbill.billing.plugin.adyen.client.model.PurchaseResult;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenHppRequestsRecord;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenPaymentMethodsRecord;
 import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+import org.killbill.billing.plugin.adyen.metrics.Counter;
+import org.killbill.billing.plugin.adyen.metrics.MetricFamily;
+import org.killbill.billing.plugin.adyen.metrics.MetricsRegistry;
+import org.killbill.billing.plugin.adyen.metrics.OperationMetrics;
+import org.killbill.billing.plugin.dao.PluginDao;
 import org.killbill.clock.DefaultClock;
 import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 public class TestAdyenDao extends TestWithEmbeddedDBBase {
@@ -150,4 +181,640 @@ public class TestAdyenDao extends TestWithEmbeddedDBBase {
         Assert.assertEquals(new DateTime(record.getCreatedDate(), DateTimeZone.UTC).compareTo(dateTime), 0);
         Assert.assertEquals(record.getKbTenantId(), kbTenantId.toString());
     }
+
+    @Test(groups = "slow")
+    public void testCallMetrics() throws SQLException, IOException {
+        final MetricsRegistry metricsRegistry = new MetricsRegistry();
+        final AdyenDao instrumentedDao = new AdyenDao(EmbeddedDbHelper.instance().getDataSource(), metricsRegistry);
+
+        final UUID kbPaymentId = UUID.randomUUID();
+        final UUID kbTenantId = UUID.randomUUID();
+        instrumentedDao.getResponses(kbPaymentId, kbTenantId);
+        instrumentedDao.getResponses(kbPaymentId, kbTenantId);
+        instrumentedDao.getSuccessfulAuthorizationResponse(kbPaymentId, kbTenantId);
+        // Inherited from PluginPaymentDao
+        instrumentedDao.addResponse(UUID.randomUUID(), kbPaymentId, UUID.randomUUID(), TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, ImmutableMap.<String, Object>of(), DateTime.now(DateTimeZone.UTC), kbTenantId);
+
+        final MetricFamily<OperationMetrics> daoMetrics = metricsRegistry.operations(AdyenDao.DAO_METRIC, "the database calls", "method");
+        Assert.assertEquals(daoMetrics.labels("getResponses").getDurations().getCount(), 2);
+        Assert.assertEquals(daoMetrics.labels("getSuccessfulAuthorizationResponse").getDurations().getCount(), 1);
+        Assert.assertEquals(daoMetrics.labels("getSuccessfulAuthorizationResponse").getErrors().getCount(), 0);
+        Assert.assertEquals(daoMetrics.labels(AdyenDao.INHERITED_METHOD).getDurations().getCount(), 1);
+    }
+
+    @Test(groups = "slow")
+    public void testInsertsAreSingleStatement() throws SQLException, IOException {
+        final InstrumentedDataSource instrumentedDataSource = new InstrumentedDataSource(EmbeddedDbHelper.instance().getDataSource());
+        final AdyenDao instrumentedDao = new AdyenDao(instrumentedDataSource.getDataSource());
+
+        final UUID kbAccountId = UUID.randomUUID();
+        final UUID kbPaymentId = UUID.randomUUID();
+        final UUID kbTenantId = UUID.randomUUID();
+        final DateTime dateTime = DefaultClock.truncateMs(new DateTime(DateTimeZone.UTC));
+
+        long statements = instrumentedDataSource.getThreadStats().getStatements();
+        final UUID kbAuthTransactionId = UUID.randomUUID();
+        final PurchaseResult purchaseResult = new PurchaseResult(PaymentServiceProviderResult.AUTHORISED, null, UUID.randomUUID().toString(), null, null, null, null);
+        final AdyenResponsesRecord authResponse = instrumentedDao.addResponse(kbAccountId, kbPaymentId, kbAuthTransactionId, TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, dateTime, kbTenantId);
+        Assert.assertEquals(instrumentedDataSource.getThreadStats().getStatements() - statements, 1);
+        assertSameRecord(authResponse, dao.getSuccessfulAuthorizationResponse(kbPaymentId, kbTenantId));
+
+        statements = instrumentedDataSource.getThreadStats().getStatements();
+        final UUID kbCaptureTransactionId = UUID.randomUUID();
+        final PaymentModificationResponse modificationResponse = new PaymentModificationResponse("[capture-received]", UUID.randomUUID().toString(), ImmutableMap.<Object, Object>of());
+        final AdyenResponsesRecord captureResponse = instrumentedDao.addResponse(kbAccountId, kbPaymentId, kbCaptureTransactionId, TransactionType.CAPTURE, BigDecimal.TEN, Currency.EUR, modificationResponse, dateTime, kbTenantId);
+        Assert.assertEquals(instrumentedDataSource.getThreadStats().getStatements() - statements, 1);
+        final List<AdyenResponsesRecord> responses = dao.getResponses(kbPaymentId, kbTenantId);
+        Assert.assertEquals(responses.size(), 2);
+        assertSameRecord(captureResponse, responses.get(1));
+
+        statements = instrumentedDataSource.getThreadStats().getStatements();
+        final AdyenHppRequestsRecord hppRequest = instrumentedDao.addHppRequest(kbAccountId, kbPaymentId, kbAuthTransactionId, UUID.randomUUID().toString(), ImmutableMap.of("key", "value"), dateTime, kbTenantId);
+        Assert.assertEquals(instrumentedDataSource.getThreadStats().getStatements() - statements, 1);
+        Assert.assertEquals(hppRequest.getRecordId(), dao.getHppRequest(kbAuthTransactionId).getRecordId());
+        Assert.assertEquals(hppRequest.getTransactionExternalKey(), dao.getHppRequest(kbAuthTransactionId).getTransactionExternalKey());
+
+        statements = instrumentedDataSource.getThreadStats().getStatements();
+        final NotificationRequestItem notificationRequestItem = new NotificationRequestItem();
+        notificationRequestItem.setEventCode("CAPTURE");
+        notificationRequestItem.setPspReference(captureResponse.getPspReference());
+        notificationRequestItem.setSuccess(true);
+        final AdyenNotificationsRecord notification = instrumentedDao.addNotification(kbAccountId, kbPaymentId, kbCaptureTransactionId, TransactionType.CAPTURE, new NotificationItem(notificationRequestItem), dateTime, kbTenantId);
+        Assert.assertEquals(instrumentedDataSource.getThreadStats().getStatements() - statements, 1);
+        Assert.assertEquals(notification.getRecordId(), dao.getNotification(captureResponse.getPspReference()).getRecordId());
+        Assert.assertEquals(notification.getRecordId(), dao.getNotification(captureResponse.getPspReference(), kbTenantId).getRecordId());
+        Assert.assertNull(dao.getNotification(captureResponse.getPspReference(), UUID.randomUUID()));
+        Assert.assertEquals(notification.getEventCode(), "CAPTURE");
+    }
+
+    @Test(groups = "slow")
+    public void testResponsesWithHppRequestsInOneStatement() throws SQLException, IOException {
+        final InstrumentedDataSource instrumentedDataSource = new InstrumentedDataSource(EmbeddedDbHelper.instance().getDataSource());
+        final AdyenDao instrumentedDao = new AdyenDao(instrumentedDataSource.getDataSource());
+
+        final UUID kbAccountId = UUID.randomUUID();
+        final UUID kbTenantId = UUID.randomUUID();
+        final DateTime dateTime = DefaultClock.truncateMs(new DateTime(DateTimeZone.UTC));
+        final List<UUID> kbPaymentIds = new LinkedList<UUID>();
+        final Map<UUID, AdyenHppRequestsRecord> hppRequests = new HashMap<UUID, AdyenHppRequestsRecord>();
+        for (int i = 0; i < 5; i++) {
+            final UUID kbPaymentId = UUID.randomUUID();
+            kbPaymentIds.add(kbPaymentId);
+            final UUID kbAuthTransactionId = UUID.randomUUID();
+            // Only the latest HPP request is returned
+            dao.addHppRequest(kbAccountId, kbPaymentId, kbAuthTransactionId, UUID.randomUUID().toString(), ImmutableMap.of("key", "first"), dateTime, kbTenantId);
+            hppRequests.put(kbPaymentId, dao.addHppRequest(kbAccountId, kbPaymentId, kbAuthTransactionId, UUID.randomUUID().toString(), ImmutableMap.of("key", "second"), dateTime, kbTenantId));
+            final PurchaseResult purchaseResult = new PurchaseResult(PaymentServiceProviderResult.AUTHORISED, null, UUID.randomUUID().toString(), null, null, null, null);
+            dao.addResponse(kbAccountId, kbPaymentId, kbAuthTransactionId, TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, dateTime, kbTenantId);
+            final PaymentModificationResponse modificationResponse = new PaymentModificationResponse("[capture-received]", UUID.randomUUID().toString(), ImmutableMap.<Object, Object>of());
+            dao.addResponse(kbAccountId, kbPaymentId, UUID.randomUUID(), TransactionType.CAPTURE, BigDecimal.TEN, Currency.EUR, modificationResponse, dateTime, kbTenantId);
+        }
+        final UUID unknownKbPaymentId = UUID.randomUUID();
+
+        final long statements = instrumentedDataSource.getThreadStats().getStatements();
+        final Map<UUID, List<ResponseWithHppRequest>> responsesByPaymentId = instrumentedDao.getResponsesWithHppRequests(kbPaymentIds, kbTenantId);
+        Assert.assertEquals(instrumentedDataSource.getThreadStats().getStatements() - statements, 1);
+
+        Assert.assertEquals(responsesByPaymentId.size(), 5);
+        for (final UUID kbPaymentId : kbPaymentIds) {
+            final List<ResponseWithHppRequest> responses = responsesByPaymentId.get(kbPaymentId);
+            final List<AdyenResponsesRecord> expectedResponses = dao.getResponses(kbPaymentId, kbTenantId);
+            Assert.assertEquals(responses.size(), 2);
+            assertSameRecord(responses.get(0).getResponse(), expectedResponses.get(0));
+            assertSameRecord(responses.get(1).getResponse(), expectedResponses.get(1));
+            Assert.assertEquals(responses.get(0).getHppRequest().getRecordId(), hppRequests.get(kbPaymentId).getRecordId());
+            Assert.assertEquals(responses.get(0).getHppRequest().getAdditionalData(), hppRequests.get(kbPaymentId).getAdditionalData());
+            Assert.assertNull(responses.get(1).getHppRequest());
+        }
+
+        Assert.assertTrue(dao.getResponsesWithHppRequests(unknownKbPaymentId, kbTenantId).isEmpty());
+        Assert.assertTrue(dao.getResponsesWithHppRequests(kbPaymentIds.get(0), UUID.randomUUID()).isEmpty());
+    }
+
+    @Test(groups = "slow")
+    public void testSuccessfulAuthorizationResponseQueryPlan() throws SQLException, IOException {
+        final UUID kbAccountId = UUID.randomUUID();
+        final UUID kbPaymentId = UUID.randomUUID();
+        final UUID kbTenantId = UUID.randomUUID();
+        final DateTime dateTime = DefaultClock.truncateMs(new DateTime(DateTimeZone.UTC));
+        final PaymentModificationResponse modificationResponse = new PaymentModificationResponse("[capture-received]", UUID.randomUUID().toString(), ImmutableMap.<Object, Object>of());
+        for (int i = 0; i < 10; i++) {
+            final PurchaseResult purchaseResult = new PurchaseResult(PaymentServiceProviderResult.AUTHORISED, null, UUID.randomUUID().toString(), null, null, null, null);
+            dao.addResponse(kbAccountId, UUID.randomUUID(), UUID.randomUUID(), TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, dateTime, kbTenantId);
+        }
+        final PurchaseResult purchaseResult = new PurchaseResult(PaymentServiceProviderResult.AUTHORISED, null, UUID.randomUUID().toString(), null, null, null, null);
+        final AdyenResponsesRecord authResponse = dao.addResponse(kbAccountId, kbPaymentId, UUID.randomUUID(), TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, dateTime, kbTenantId);
+        dao.addResponse(kbAccountId, kbPaymentId, UUID.randomUUID(), TransactionType.CAPTURE, BigDecimal.TEN, Currency.EUR, modificationResponse, dateTime, kbTenantId);
+
+        assertSameRecord(authResponse, dao.getSuccessfulAuthorizationResponse(kbPaymentId, kbTenantId));
+        Assert.assertNull(dao.getSuccessfulAuthorizationResponse(kbPaymentId, UUID.randomUUID()));
+
+        final String plan = explain(new QueryBuilder() {
+            @Override
+            public ResultQuery<?> build(final DSLContext context) {
+                return AdyenDao.successfulAuthorizationResponseQuery(context, kbPaymentId, kbTenantId);
+            }
+        });
+        Assert.assertTrue(plan.toLowerCase().contains("adyen_responses_kb_payment_id_kb_tenant_id_record_id_tx_type"), plan);
+    }
+
+    @Test(groups = "slow")
+    public void testTenantScopedPspReferenceLookups() throws SQLException, IOException {
+        final UUID kbTenantId = UUID.randomUUID();
+        final UUID otherKbTenantId = UUID.randomUUID();
+        final DateTime dateTime = DefaultClock.truncateMs(new DateTime(DateTimeZone.UTC));
+        for (int i = 0; i < 10; i++) {
+            final PurchaseResult purchaseResult = new PurchaseResult(PaymentServiceProviderResult.AUTHORISED, null, UUID.randomUUID().toString(), null, null, null, null);
+            dao.addResponse(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, dateTime, kbTenantId);
+        }
+
+        // Same PSP reference in two tenants
+        final String pspReference = UUID.randomUUID().toString();
+        final PurchaseResult purchaseResult = new PurchaseResult(PaymentServiceProviderResult.AUTHORISED, null, pspReference, null, null, null, null);
+        final AdyenResponsesRecord response = dao.addResponse(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, dateTime, kbTenantId);
+        final AdyenResponsesRecord otherResponse = dao.addResponse(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, dateTime, otherKbTenantId);
+
+        assertSameRecord(response, dao.getResponse(pspReference, kbTenantId));
+        assertSameRecord(otherResponse, dao.getResponse(pspReference, otherKbTenantId));
+        Assert.assertNull(dao.getResponse(pspReference, UUID.randomUUID()));
+        // Across all tenants, the latest one wins
+        assertSameRecord(otherResponse, dao.getResponse(pspReference));
+        Assert.assertEquals(dao.getResponses(ImmutableList.<String>of(pspReference), kbTenantId).get(pspReference).getRecordId(), response.getRecordId());
+
+        final String plan = explain(new QueryBuilder() {
+            @Override
+            public ResultQuery<?> build(final DSLContext context) {
+                return AdyenDao.responseByPspReferenceQuery(context, pspReference, kbTenantId);
+            }
+        });
+        Assert.assertTrue(plan.toLowerCase().contains("adyen_responses_psp_reference_kb_tenant_id"), plan);
+    }
+
+    private interface QueryBuilder {
+
+        ResultQuery<?> build(DSLContext context);
+    }
+
+    private String explain(final QueryBuilder queryBuilder) throws SQLException, IOException {
+        final Connection connection = EmbeddedDbHelper.instance().getDataSource().getConnection();
+        try {
+            final SQLDialect dialect = JDBCUtils.dialect(connection);
+            final Settings settings = new Settings().withRenderSchema(false).withRenderNameStyle(RenderNameStyle.AS_IS);
+            final boolean postgres = dialect.family() == SQLDialect.POSTGRES;
+            final Statement statement = connection.createStatement();
+            try {
+                if (postgres) {
+                    // The table is too small for the planner to pick the index otherwise
+                    statement.execute("set enable_seqscan = off");
+                }
+
+                final String sql = queryBuilder.build(DSL.using(connection, dialect, settings)).getSQL(ParamType.INLINED);
+                final StringBuilder plan = new StringBuilder();
+                final ResultSet resultSet = statement.executeQuery("explain " + sql);
+                while (resultSet.next()) {
+                    for (int i = 1; i <= resultSet.getMetaData().getColumnCount(); i++) {
+                        plan.append(resultSet.getString(i)).append(' ');
+                    }
+                }
+                return plan.toString();
+            } finally {
+                try {
+                    if (postgres) {
+                        // The connection goes back to the pool
+                        statement.execute("reset enable_seqscan");
+                    }
+                } finally {
+                    statement.close();
+                }
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testPaymentMethodsCache() throws SQLException, IOException {
+        final InstrumentedDataSource instrumentedDataSource = new InstrumentedDataSource(EmbeddedDbHelper.instance().getDataSource());
+        final MetricsRegistry metricsRegistry = new MetricsRegistry();
+        final AdyenDao instrumentedDao = new AdyenDao(instrumentedDataSource.getDataSource(), metricsRegistry);
+        final MetricFamily<Counter> requests = metricsRegistry.counters(PaymentMethodsCache.CACHE_REQUESTS_METRIC, "", "result");
+
+        final UUID kbAccountId = UUID.randomUUID();
+        final UUID kbPaymentMethodId = UUID.randomUUID();
+        final UUID kbTenantId = UUID.randomUUID();
+        final DateTime dateTime = DefaultClock.truncateMs(new DateTime(DateTimeZone.UTC));
+        instrumentedDao.addPaymentMethod(kbAccountId, kbPaymentMethodId, false, ImmutableMap.<String, String>of(), dateTime, kbTenantId);
+
+        // Misses are not cached
+        Assert.assertNull(instrumentedDao.getPaymentMethod(kbPaymentMethodId, UUID.randomUUID()));
+        Assert.assertEquals(requests.labels("miss").getCount(), 1);
+
+        Assert.assertNull(instrumentedDao.getPaymentMethod(kbPaymentMethodId, kbTenantId).getToken());
+        long statements = instrumentedDataSource.getThreadStats().getStatements();
+        final AdyenPaymentMethodsRecord cached = instrumentedDao.getPaymentMethod(kbPaymentMethodId, kbTenantId);
+        Assert.assertEquals(instrumentedDataSource.getThreadStats().getStatements() - statements, 0);
+        Assert.assertEquals(requests.labels("hit").getCount(), 1);
+        Assert.assertEquals(requests.labels("miss").getCount(), 2);
+
+        // Callers get their own copy
+        cached.setToken("modified");
+        Assert.assertNull(instrumentedDao.getPaymentMethod(kbPaymentMethodId, kbTenantId).getToken());
+
+        instrumentedDao.setPaymentMethodToken(kbPaymentMethodId.toString(), "token", kbTenantId.toString());
+        Assert.assertEquals(instrumentedDao.getPaymentMethod(kbPaymentMethodId, kbTenantId).getToken(), "token");
+
+        instrumentedDao.setDefaultPaymentMethod(kbAccountId, kbPaymentMethodId, dateTime, kbTenantId);
+        Assert.assertEquals(instrumentedDao.getPaymentMethod(kbPaymentMethodId, kbTenantId).getIsDefault(), Byte.valueOf(PluginDao.TRUE));
+
+        instrumentedDao.deletePaymentMethod(kbPaymentMethodId, dateTime, kbTenantId);
+        Assert.assertNull(instrumentedDao.getPaymentMethod(kbPaymentMethodId, kbTenantId));
+        Assert.assertEquals(requests.labels("hit").getCount(), 2);
+        Assert.assertEquals(requests.labels("miss").getCount(), 5);
+    }
+
+    @Test(groups = "slow")
+    public void testPaymentMethodsCacheInvalidationDuringLoad() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final AdyenDao[] cachingDao = new AdyenDao[1];
+        final boolean[] updateDuringLoad = {true};
+        final MetricsRegistry metricsRegistry = new MetricsRegistry();
+        final PaymentMethodsCache paymentMethodsCache = new PaymentMethodsCache(metricsRegistry) {
+            @Override
+            public void put(final UUID kbPaymentMethodId, final UUID kbTenantId, final AdyenPaymentMethodsRecord record, final long generation) {
+                if (updateDuringLoad[0]) {
+                    updateDuringLoad[0] = false;
+                    // Another thread updates the row after it was read, but before it is cached
+                    try {
+                        executor.submit(new Callable<Void>() {
+                            @Override
+                            public Void call() throws Exception {
+                                cachingDao[0].setPaymentMethodToken(kbPaymentMethodId.toString(), "token", kbTenantId.toString());
+                                return null;
+                            }
+                        }).get();
+                    } catch (final Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                super.put(kbPaymentMethodId, kbTenantId, record, generation);
+            }
+        };
+        cachingDao[0] = new AdyenDao(EmbeddedDbHelper.instance().getDataSource(), metricsRegistry, paymentMethodsCache);
+
+        final UUID kbAccountId = UUID.randomUUID();
+        final UUID kbPaymentMethodId = UUID.randomUUID();
+        final UUID kbTenantId = UUID.randomUUID();
+        final DateTime dateTime = DefaultClock.truncateMs(new DateTime(DateTimeZone.UTC));
+        cachingDao[0].addPaymentMethod(kbAccountId, kbPaymentMethodId, false, ImmutableMap.<String, String>of(), dateTime, kbTenantId);
+        try {
+            // The stale row is returned to this caller only, it isn't cached
+            Assert.assertNull(cachingDao[0].getPaymentMethod(kbPaymentMethodId, kbTenantId).getToken());
+            Assert.assertNull(paymentMethodsCache.get(kbPaymentMethodId, kbTenantId));
+            Assert.assertEquals(cachingDao[0].getPaymentMethod(kbPaymentMethodId, kbTenantId).getToken(), "token");
+            // Without invalidation, the row is cached
+            Assert.assertEquals(paymentMethodsCache.get(kbPaymentMethodId, kbTenantId).getToken(), "token");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testUnitOfWork() throws Exception {
+        final InstrumentedDataSource instrumentedDataSource = new InstrumentedDataSource(EmbeddedDbHelper.instance().getDataSource());
+        final AdyenDao instrumentedDao = new AdyenDao(instrumentedDataSource.getDataSource());
+
+        final UUID kbAccountId = UUID.randomUUID();
+        final UUID kbPaymentMethodId = UUID.randomUUID();
+        final UUID kbTenantId = UUID.randomUUID();
+        final DateTime dateTime = DefaultClock.truncateMs(new DateTime(DateTimeZone.UTC));
+
+        // Single connection for all DAO calls, including the nested units of work and transactions
+        long connections = instrumentedDataSource.getThreadStats().getConnections();
+        instrumentedDao.inUnitOfWork(new AdyenDao.UnitOfWork<Void, SQLException>() {
+            @Override
+            public Void run() throws SQLException {
+                instrumentedDao.addPaymentMethod(kbAccountId, kbPaymentMethodId, false, ImmutableMap.<String, String>of(), dateTime, kbTenantId);
+                Assert.assertEquals(instrumentedDao.getPaymentMethods(kbAccountId, kbTenantId).size(), 1);
+                return instrumentedDao.inTransaction(new AdyenDao.UnitOfWork<Void, SQLException>() {
+                    @Override
+                    public Void run() throws SQLException {
+                        instrumentedDao.setDefaultPaymentMethod(kbAccountId, kbPaymentMethodId, dateTime, kbTenantId);
+                        return instrumentedDao.inUnitOfWork(new AdyenDao.UnitOfWork<Void, SQLException>() {
+                            @Override
+                            public Void run() throws SQLException {
+                                Assert.assertEquals(instrumentedDao.getPaymentMethod(kbPaymentMethodId, kbTenantId).getIsDefault(), Byte.valueOf(PluginDao.TRUE));
+                                return null;
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        Assert.assertEquals(instrumentedDataSource.getThreadStats().getConnections() - connections, 1);
+        Assert.assertEquals(instrumentedDao.getPaymentMethod(kbPaymentMethodId, kbTenantId).getIsDefault(), Byte.valueOf(PluginDao.TRUE));
+
+        // Rolled back, including the DAO transactions (savepoints) and the cache
+        final UUID otherKbPaymentMethodId = UUID.randomUUID();
+        try {
+            instrumentedDao.inTransaction(new AdyenDao.UnitOfWork<Void, SQLException>() {
+                @Override
+                public Void run() throws SQLException {
+                    instrumentedDao.addPaymentMethod(kbAccountId, otherKbPaymentMethodId, false, ImmutableMap.<String, String>of(), dateTime, kbTenantId);
+                    instrumentedDao.setDefaultPaymentMethod(kbAccountId, otherKbPaymentMethodId, dateTime, kbTenantId);
+                    Assert.assertEquals(instrumentedDao.getPaymentMethod(otherKbPaymentMethodId, kbTenantId).getIsDefault(), Byte.valueOf(PluginDao.TRUE));
+                    Assert.assertEquals(instrumentedDao.getPaymentMethod(kbPaymentMethodId, kbTenantId).getIsDefault(), Byte.valueOf(PluginDao.FALSE));
+                    throw new SQLException("Rollback");
+                }
+            });
+            Assert.fail();
+        } catch (final SQLException e) {
+            Assert.assertEquals(e.getMessage(), "Rollback");
+        }
+        Assert.assertNull(instrumentedDao.getPaymentMethod(otherKbPaymentMethodId, kbTenantId));
+        Assert.assertEquals(instrumentedDao.getPaymentMethod(kbPaymentMethodId, kbTenantId).getIsDefault(), Byte.valueOf(PluginDao.TRUE));
+        Assert.assertEquals(instrumentedDao.getPaymentMethods(kbAccountId, kbTenantId).size(), 1);
+
+        // The connection is released, and back in auto-commit mode
+        connections = instrumentedDataSource.getThreadStats().getConnections();
+        instrumentedDao.getPaymentMethods(kbAccountId, kbTenantId);
+        instrumentedDao.getPaymentMethods(kbAccountId, kbTenantId);
+        Assert.assertEquals(instrumentedDataSource.getThreadStats().getConnections() - connections, 2);
+        final Connection conn = EmbeddedDbHelper.instance().getDataSource().getConnection();
+        try {
+            Assert.assertTrue(conn.getAutoCommit());
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testReadReplica() throws Exception {
+        final InstrumentedDataSource primaryDataSource = new InstrumentedDataSource(EmbeddedDbHelper.instance().getDataSource());
+        // Same database: only the routing matters
+        final InstrumentedDataSource replicaDataSource = new InstrumentedDataSource(EmbeddedDbHelper.instance().getDataSource());
+        final MetricsRegistry metricsRegistry = new MetricsRegistry();
+        final AdyenDao replicaDao = new AdyenDao(primaryDataSource.getDataSource(),
+                                                 new ReadReplica(replicaDataSource.getDataSource(), 3600, metricsRegistry),
+                                                 metricsRegistry,
+                                                 new PaymentMethodsCache(metricsRegistry));
+        final MetricFamily<Counter> reads = metricsRegistry.counters(ReadReplica.READS_METRIC, "", "target");
+
+        final UUID kbAccountId = UUID.randomUUID();
+        final UUID kbTenantId = UUID.randomUUID();
+        final DateTime dateTime = DefaultClock.truncateMs(new DateTime(DateTimeZone.UTC));
+
+        // Written by another node
+        final UUID kbPaymentId = UUID.randomUUID();
+        final UUID kbTransactionId = UUID.randomUUID();
+        final PurchaseResult purchaseResult = new PurchaseResult(PaymentServiceProviderResult.AUTHORISED, null, UUID.randomUUID().toString(), null, null, null, null);
+        dao.addResponse(kbAccountId, kbPaymentId, kbTransactionId, TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, dateTime, kbTenantId);
+        final UUID kbPaymentMethodId = UUID.randomUUID();
+        dao.addPaymentMethod(kbAccountId, kbPaymentMethodId, false, ImmutableMap.<String, String>of(), dateTime, kbTenantId);
+
+        long replicaConnections = replicaDataSource.getThreadStats().getConnections();
+        Assert.assertEquals(replicaDao.getResponsesWithHppRequests(kbPaymentId, kbTenantId).size(), 1);
+        Assert.assertEquals(replicaDao.getPaymentMethods(kbAccountId, kbTenantId).size(), 1);
+        Assert.assertEquals(replicaDao.getNotificationsTenantIds().isEmpty(), dao.getNotificationsTenantIds().isEmpty());
+        Assert.assertEquals(replicaDataSource.getThreadStats().getConnections() - replicaConnections, 3);
+        Assert.assertEquals(reads.labels("replica").getCount(), 3);
+        Assert.assertEquals(reads.labels("primary").getCount(), 0);
+
+        // Read your writes
+        replicaDao.updateResponse(kbTransactionId, ImmutableList.<PluginProperty>of(new PluginProperty("key", "value", false)), kbTenantId);
+        replicaDao.setPaymentMethodToken(kbPaymentMethodId.toString(), "token", kbTenantId.toString());
+        replicaConnections = replicaDataSource.getThreadStats().getConnections();
+        long primaryConnections = primaryDataSource.getThreadStats().getConnections();
+        Assert.assertEquals(replicaDao.getResponsesWithHppRequests(ImmutableList.<UUID>of(kbPaymentId, UUID.randomUUID()), kbTenantId).size(), 1);
+        // The account wasn't written to: the payment method is only known to be recent once read from the replica
+        Assert.assertEquals(replicaDao.getPaymentMethods(kbAccountId, kbTenantId).get(0).getToken(), "token");
+        Assert.assertEquals(replicaDataSource.getThreadStats().getConnections() - replicaConnections, 1);
+        // The unknown payment is looked up in the archive as well, on the primary too
+        Assert.assertEquals(primaryDataSource.getThreadStats().getConnections() - primaryConnections, 3);
+        Assert.assertEquals(reads.labels("primary").getCount(), 2);
+
+        final UUID otherKbAccountId = UUID.randomUUID();
+        replicaDao.addPaymentMethod(otherKbAccountId, UUID.randomUUID(), true, ImmutableMap.<String, String>of(), dateTime, kbTenantId);
+        replicaConnections = replicaDataSource.getThreadStats().getConnections();
+        Assert.assertEquals(replicaDao.getPaymentMethods(otherKbAccountId, kbTenantId).size(), 1);
+        Assert.assertEquals(replicaDataSource.getThreadStats().getConnections() - replicaConnections, 0);
+        // A single routing decision per read
+        Assert.assertEquals(reads.labels("replica").getCount(), 3);
+        Assert.assertEquals(reads.labels("primary").getCount(), 3);
+
+        // Units of work stay on the primary
+        replicaConnections = replicaDataSource.getThreadStats().getConnections();
+        replicaDao.inUnitOfWork(new AdyenDao.UnitOfWork<Void, SQLException>() {
+            @Override
+            public Void run() throws SQLException {
+                Assert.assertEquals(replicaDao.getPaymentMethods(UUID.randomUUID(), kbTenantId).size(), 0);
+                Assert.assertEquals(replicaDao.getResponsesWithHppRequests(UUID.randomUUID(), kbTenantId).size(), 0);
+                return null;
+            }
+        });
+        Assert.assertEquals(replicaDataSource.getThreadStats().getConnections() - replicaConnections, 0);
+    }
+
+    @Test(groups = "slow")
+    public void testRecurringDetailsReconciliationQueries() throws SQLException, IOException {
+        final InstrumentedDataSource instrumentedDataSource = new InstrumentedDataSource(EmbeddedDbHelper.instance().getDataSource());
+        final AdyenDao instrumentedDao = new AdyenDao(instrumentedDataSource.getDataSource());
+
+        final UUID kbAccountId = UUID.randomUUID();
+        final UUID kbTenantId = UUID.randomUUID();
+        final DateTime dateTime = DefaultClock.truncateMs(new DateTime(DateTimeZone.UTC));
+        final Map<String, String> tokensByKbPaymentMethodId = new HashMap<String, String>();
+        final Map<String, AdyenResponsesRecord> responsesByPspReference = new HashMap<String, AdyenResponsesRecord>();
+        for (int i = 0; i < 3; i++) {
+            final UUID kbPaymentMethodId = UUID.randomUUID();
+            instrumentedDao.addPaymentMethod(kbAccountId, kbPaymentMethodId, false, ImmutableMap.<String, String>of(), dateTime, kbTenantId);
+            tokensByKbPaymentMethodId.put(kbPaymentMethodId.toString(), UUID.randomUUID().toString());
+
+            final PurchaseResult purchaseResult = new PurchaseResult(PaymentServiceProviderResult.AUTHORISED, null, UUID.randomUUID().toString(), null, null, null, null);
+            final AdyenResponsesRecord response = dao.addResponse(kbAccountId, UUID.randomUUID(), UUID.randomUUID(), TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, dateTime, kbTenantId);
+            responsesByPspReference.put(response.getPspReference(), response);
+        }
+        final UUID deletedKbPaymentMethodId = UUID.randomUUID();
+        instrumentedDao.addPaymentMethod(kbAccountId, deletedKbPaymentMethodId, false, ImmutableMap.<String, String>of(), dateTime, kbTenantId);
+        instrumentedDao.deletePaymentMethod(deletedKbPaymentMethodId, dateTime, kbTenantId);
+
+        long statements = instrumentedDataSource.getThreadStats().getStatements();
+        final Map<String, AdyenResponsesRecord> responses = instrumentedDao.getResponses(ImmutableList.<String>builder()
+                                                                                                     .addAll(responsesByPspReference.keySet())
+                                                                                                     .build(),
+                                                                                         kbTenantId);
+        Assert.assertEquals(instrumentedDataSource.getThreadStats().getStatements() - statements, 1);
+        Assert.assertEquals(responses.size(), 3);
+        for (final AdyenResponsesRecord response : responsesByPspReference.values()) {
+            assertSameRecord(response, responses.get(response.getPspReference()));
+        }
+        Assert.assertTrue(instrumentedDao.getResponses(ImmutableList.<String>of(UUID.randomUUID().toString()), kbTenantId).isEmpty());
+        // Other tenants' responses aren't returned
+        Assert.assertTrue(instrumentedDao.getResponses(responsesByPspReference.keySet(), UUID.randomUUID()).isEmpty());
+
+        // Warm-up the cache
+        for (final String kbPaymentMethodId : tokensByKbPaymentMethodId.keySet()) {
+            Assert.assertNull(instrumentedDao.getPaymentMethod(UUID.fromString(kbPaymentMethodId), kbTenantId).getToken());
+        }
+
+        statements = instrumentedDataSource.getThreadStats().getStatements();
+        instrumentedDao.setPaymentMethodTokens(ImmutableMap.<String, String>builder()
+                                                           .putAll(tokensByKbPaymentMethodId)
+                                                           .put(deletedKbPaymentMethodId.toString(), "token")
+                                                           .build(),
+                                               kbTenantId.toString());
+        Assert.assertEquals(instrumentedDataSource.getThreadStats().getStatements() - statements, 1);
+        for (final Map.Entry<String, String> token : tokensByKbPaymentMethodId.entrySet()) {
+            Assert.assertEquals(instrumentedDao.getPaymentMethod(UUID.fromString(token.getKey()), kbTenantId).getToken(), token.getValue());
+        }
+        Assert.assertNull(instrumentedDao.getPaymentMethod(deletedKbPaymentMethodId, kbTenantId));
+    }
+
+    @Test(groups = "slow")
+    public void testUpdateResponseWithoutLostUpdates() throws Exception {
+        final InstrumentedDataSource instrumentedDataSource = new InstrumentedDataSource(EmbeddedDbHelper.instance().getDataSource());
+        final AdyenDao instrumentedDao = new AdyenDao(instrumentedDataSource.getDataSource());
+
+        final UUID kbPaymentId = UUID.randomUUID();
+        final UUID kbTransactionId = UUID.randomUUID();
+        final UUID kbTenantId = UUID.randomUUID();
+        final PurchaseResult purchaseResult = new PurchaseResult(PaymentServiceProviderResult.REDIRECT_SHOPPER, null, null, null, null, null, null);
+        dao.addResponse(UUID.randomUUID(), kbPaymentId, kbTransactionId, TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, DefaultClock.truncateMs(new DateTime(DateTimeZone.UTC)), kbTenantId);
+
+        Assert.assertNull(instrumentedDao.updateResponse(UUID.randomUUID(), ImmutableList.<PluginProperty>of(), kbTenantId));
+
+        // One SELECT and one conditional UPDATE, the updated row isn't re-read
+        final long statements = instrumentedDataSource.getThreadStats().getStatements();
+        final String pspReference = UUID.randomUUID().toString();
+        final AdyenResponsesRecord updated = instrumentedDao.updateResponse(kbTransactionId,
+                                                                            PaymentServiceProviderResult.AUTHORISED,
+                                                                            ImmutableList.<PluginProperty>of(new PluginProperty(AdyenPaymentPluginApi.PROPERTY_PSP_REFERENCE, pspReference, false)),
+                                                                            kbTenantId);
+        Assert.assertEquals(instrumentedDataSource.getThreadStats().getStatements() - statements, 2);
+        Assert.assertEquals(updated.getPspReference(), pspReference);
+        Assert.assertEquals(updated.getPspResult(), PaymentServiceProviderResult.AUTHORISED.toString());
+        assertSameRecord(updated, dao.getResponses(kbPaymentId, kbTenantId).get(0));
+
+        // Concurrent updates (e.g. notifications) for the same transaction
+        final int nbThreads = 4;
+        final int nbUpdatesPerThread = 5;
+        final ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        try {
+            final List<Future<?>> futures = new LinkedList<Future<?>>();
+            for (int i = 0; i < nbThreads; i++) {
+                final int threadNb = i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int j = 0; j < nbUpdatesPerThread; j++) {
+                            dao.updateResponse(kbTransactionId, ImmutableList.<PluginProperty>of(new PluginProperty(AdyenPaymentPluginApi.PROPERTY_PSP_REFERENCE, pspReference, false),
+                                                                                                 new PluginProperty("key-" + threadNb + "-" + j, "value", false)), kbTenantId);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final Map additionalData = AdyenDao.fromAdditionalData(dao.getResponses(kbPaymentId, kbTenantId).get(0).getAdditionalData());
+        for (int i = 0; i < nbThreads; i++) {
+            for (int j = 0; j < nbUpdatesPerThread; j++) {
+                Assert.assertEquals(additionalData.get("key-" + i + "-" + j), "value");
+            }
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testAdditionalDataColumns() throws SQLException, IOException {
+        final UUID kbAccountId = UUID.randomUUID();
+        final UUID kbPaymentId = UUID.randomUUID();
+        final UUID kbTransactionId = UUID.randomUUID();
+        final UUID kbTenantId = UUID.randomUUID();
+        final DateTime dateTime = DefaultClock.truncateMs(new DateTime(DateTimeZone.UTC));
+
+        final PurchaseResult purchaseResult = new PurchaseResult(PaymentServiceProviderResult.REDIRECT_SHOPPER, null, null, null, null, null, null,
+                                                                 ImmutableMap.<String, String>of(),
+                                                                 ImmutableMap.<String, String>of(AdyenPaymentPluginApi.PROPERTY_MERCHANT_ACCOUNT_CODE, "TestAccount"));
+        final AdyenResponsesRecord inserted = dao.addResponse(kbAccountId, kbPaymentId, kbTransactionId, TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, dateTime, kbTenantId);
+        Assert.assertEquals(inserted.getMerchantAccountCode(), "TestAccount");
+        Assert.assertEquals(inserted.getFromHpp(), (Byte) AdyenDao.FALSE);
+        Assert.assertNull(inserted.getPaymentMethod());
+
+        final AdyenResponsesRecord updated = dao.updateResponse(kbTransactionId,
+                                                                ImmutableList.<PluginProperty>of(new PluginProperty(AdyenPaymentPluginApi.PROPERTY_FROM_HPP, true, false),
+                                                                                                 new PluginProperty(AdyenPaymentPluginApi.PROPERTY_FROM_HPP_TRANSACTION_STATUS, "PENDING", false),
+                                                                                                 new PluginProperty(AdyenPaymentPluginApi.PROPERTY_PAYMENT_METHOD, "paypal", false)),
+                                                                kbTenantId);
+        assertAdditionalDataColumns(updated);
+        assertAdditionalDataColumns(dao.getResponses(kbPaymentId, kbTenantId).get(0));
+
+        final AdyenHppRequestsRecord hppRequest = dao.addHppRequest(kbAccountId, kbPaymentId, kbTransactionId, UUID.randomUUID().toString(), ImmutableMap.of(AdyenPaymentPluginApi.PROPERTY_BRAND_CODE, "paypal"), dateTime, kbTenantId);
+        Assert.assertEquals(hppRequest.getPaymentMethod(), "paypal");
+        Assert.assertNull(hppRequest.getMerchantAccountCode());
+        Assert.assertEquals(hppRequest.getAdditionalDataExtracted(), (Byte) AdyenDao.TRUE);
+        final UUID otherKbTransactionId = UUID.randomUUID();
+        final AdyenHppRequestsRecord hppRequestWithoutKeys = dao.addHppRequest(kbAccountId, kbPaymentId, otherKbTransactionId, UUID.randomUUID().toString(), ImmutableMap.of("countryCode", "NL"), dateTime, kbTenantId);
+
+        // Rows written before the columns were introduced: read from the JSON, until backfilled
+        final DataSource dataSource = EmbeddedDbHelper.instance().getDataSource();
+        final Connection connection = dataSource.getConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            statement.executeUpdate("update adyen_responses set merchant_account_code = null, payment_method = null, from_hpp = null, from_hpp_completion = null, from_hpp_transaction_status = null where record_id = " + updated.getRecordId());
+            statement.executeUpdate("update adyen_hpp_requests set payment_method = null, additional_data_extracted = null where record_id in (" + hppRequest.getRecordId() + ", " + hppRequestWithoutKeys.getRecordId() + ")");
+            statement.close();
+        } finally {
+            connection.close();
+        }
+        final AdyenResponsesRecord legacy = dao.getResponses(kbPaymentId, kbTenantId).get(0);
+        Assert.assertNull(legacy.getFromHpp());
+        Assert.assertTrue(AdyenDao.isFromHpp(legacy));
+        Assert.assertFalse(AdyenDao.isHppCompletion(legacy));
+        Assert.assertEquals(AdyenDao.getMerchantAccountCode(legacy), "TestAccount");
+        Assert.assertEquals(AdyenDao.getPaymentMethod(legacy), "paypal");
+
+        // Resumable chunks
+        UInteger lastRecordId = null;
+        do {
+            lastRecordId = dao.backfillResponses(lastRecordId, 1);
+        } while (lastRecordId != null);
+        assertAdditionalDataColumns(dao.getResponses(kbPaymentId, kbTenantId).get(0));
+        Assert.assertNull(dao.backfillResponses(null, 10));
+
+        do {
+            lastRecordId = dao.backfillHppRequests(lastRecordId, 10);
+        } while (lastRecordId != null);
+        Assert.assertEquals(dao.getHppRequest(kbTransactionId).getPaymentMethod(), "paypal");
+        // Rows without any of the keys aren't picked up again
+        Assert.assertEquals(dao.getHppRequest(otherKbTransactionId).getAdditionalDataExtracted(), (Byte) AdyenDao.TRUE);
+        Assert.assertNull(dao.backfillHppRequests(null, 10));
+    }
+
+    private void assertAdditionalDataColumns(final AdyenResponsesRecord record) {
+        Assert.assertEquals(record.getMerchantAccountCode(), "TestAccount");
+        Assert.assertEquals(record.getPaymentMethod(), "paypal");
+        Assert.assertEquals(record.getFromHpp(), (Byte) AdyenDao.TRUE);
+        Assert.assertEquals(record.getFromHppCompletion(), (Byte) AdyenDao.FALSE);
+        Assert.assertEquals(record.getFromHppTransactionStatus(), "PENDING");
+        Assert.assertTrue(AdyenDao.isFromHpp(record));
+        Assert.assertFalse(AdyenDao.isHppCompletion(record));
+    }
+
+    private void assertSameRecord(final AdyenResponsesRecord inserted, final AdyenResponsesRecord reRead) {
+        Assert.assertNotNull(inserted.getRecordId());
+        Assert.assertEquals(inserted.getRecordId(), reRead.getRecordId());
+        Assert.assertEquals(inserted.getKbPaymentTransactionId(), reRead.getKbPaymentTransactionId());
+        Assert.assertEquals(inserted.getTransactionType(), reRead.getTransactionType());
+        Assert.assertEquals(inserted.getAmount().compareTo(reRead.getAmount()), 0);
+        Assert.assertEquals(inserted.getCurrency(), reRead.getCurrency());
+        Assert.assertEquals(inserted.getPspResult(), reRead.getPspResult());
+        Assert.assertEquals(inserted.getPspReference(), reRead.getPspReference());
+        Assert.assertEquals(inserted.getAdditionalData(), reRead.getAdditionalData());
+        Assert.assertEquals(inserted.getCreatedDate(), reRead.getCreatedDate());
+        Assert.assertEquals(inserted.getKbTenantId(), reRead.getKbTenantId());
+    }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.dao;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.adyen.notification.NotificationRequestItem;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.payment.api.TransactionType;
+import org.killbill.billing.plugin.TestUtils;
+import org.killbill.billing.plugin.adyen.client.model.NotificationItem;
+import org.killbill.billing.plugin.adyen.client.model.PaymentServiceProviderResult;
+import org.killbill.billing.plugin.adyen.client.model.PurchaseResult;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenNotificationsRecord;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenPaymentMethodsRecord;
+import org.killbill.billing.plugin.adyen.dao.gen.tables.records.AdyenResponsesRecord;
+import org.killbill.billing.plugin.api.payment.PluginPaymentPluginApi;
+import org.killbill.commons.embeddeddb.h2.H2EmbeddedDB;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class TestKbIdColumnsMigration {
+
+    private final UUID kbAccountId = UUID.randomUUID();
+    private final UUID kbTenantId = UUID.randomUUID();
+
+    // Dedicated database: the schema is altered
+    private H2EmbeddedDB embeddedDB;
+
+    @BeforeMethod(groups = "slow")
+    public void setUp() throws Exception {
+        embeddedDB = new H2EmbeddedDB("kbIdColumnsMigration" + System.currentTimeMillis(), "adyen", "adyen");
+        embeddedDB.initialize();
+        embeddedDB.start();
+        embeddedDB.executeScript(TestUtils.toString("ddl.sql"));
+        embeddedDB.refreshTableNames();
+    }
+
+    @AfterMethod(groups = "slow")
+    public void tearDown() throws Exception {
+        embeddedDB.stop();
+    }
+
+    @Test(groups = "slow")
+    public void testCutover() throws Exception {
+        final AdyenDao textDao = new AdyenDao(embeddedDB.getDataSource());
+        Assert.assertFalse(textDao.hasBinaryKbIds());
+
+        final UUID kbPaymentId = UUID.randomUUID();
+        final AdyenResponsesRecord authorization = addAuthorization(textDao, kbPaymentId);
+        final UUID kbPaymentMethodId = UUID.randomUUID();
+        textDao.addPaymentMethod(kbAccountId, kbPaymentMethodId, true, ImmutableMap.<String, String>of(PluginPaymentPluginApi.PROPERTY_TOKEN, "token"), DateTime.now(DateTimeZone.UTC), kbTenantId);
+
+        final UUID otherKbPaymentId = UUID.randomUUID();
+        addAuthorization(textDao, otherKbPaymentId);
+        addNotification(textDao, kbPaymentId);
+
+        // Small chunks, to go through several transactions
+        final Connection cutoverConn = embeddedDB.getDataSource().getConnection();
+        try {
+            new KbIdColumnsMigration(cutoverConn).cutover(1);
+            Assert.assertTrue(KbIdColumnsMigration.hasBinaryKbIds(cutoverConn));
+            Assert.assertTrue(getIndexedColumns(cutoverConn, "adyen_responses").contains("kb_payment_id"));
+            Assert.assertTrue(getIndexedColumns(cutoverConn, "adyen_payment_methods").contains("kb_payment_method_id"));
+        } finally {
+            cutoverConn.close();
+        }
+
+        final AdyenDao binaryDao = new AdyenDao(embeddedDB.getDataSource());
+        Assert.assertTrue(binaryDao.hasBinaryKbIds());
+
+        // Rows converted by the cutover
+        final List<AdyenResponsesRecord> responses = binaryDao.getResponses(kbPaymentId, kbTenantId);
+        Assert.assertEquals(responses.size(), 1);
+        Assert.assertEquals(responses.get(0).getRecordId(), authorization.getRecordId());
+        Assert.assertEquals(responses.get(0).getKbPaymentId(), kbPaymentId.toString());
+        Assert.assertEquals(responses.get(0).getKbTenantId(), kbTenantId.toString());
+        Assert.assertEquals(binaryDao.getResponses(otherKbPaymentId, kbTenantId).size(), 1);
+        Assert.assertEquals(binaryDao.getSuccessfulAuthorizationResponse(kbPaymentId, kbTenantId).getRecordId(), authorization.getRecordId());
+        final List<AdyenNotificationsRecord> notifications = binaryDao.getNotifications();
+        Assert.assertEquals(notifications.size(), 1);
+        Assert.assertEquals(notifications.get(0).getKbPaymentId(), kbPaymentId.toString());
+        Assert.assertNull(notifications.get(0).getKbAccountId());
+
+        final AdyenPaymentMethodsRecord paymentMethod = binaryDao.getPaymentMethod(kbPaymentMethodId, kbTenantId);
+        Assert.assertEquals(paymentMethod.getKbAccountId(), kbAccountId.toString());
+        Assert.assertEquals(paymentMethod.getToken(), "token");
+
+        // New rows
+        final UUID newKbPaymentMethodId = UUID.randomUUID();
+        binaryDao.addPaymentMethod(kbAccountId, newKbPaymentMethodId, false, ImmutableMap.<String, String>of(), DateTime.now(DateTimeZone.UTC), kbTenantId);
+        binaryDao.setDefaultPaymentMethod(kbAccountId, newKbPaymentMethodId, DateTime.now(DateTimeZone.UTC), kbTenantId);
+        final List<AdyenPaymentMethodsRecord> paymentMethods = binaryDao.getPaymentMethods(kbAccountId, kbTenantId);
+        Assert.assertEquals(paymentMethods.size(), 2);
+        Assert.assertEquals(paymentMethods.get(0).getIsDefault(), (Byte) AdyenDao.FALSE);
+        Assert.assertEquals(paymentMethods.get(1).getKbPaymentMethodId(), newKbPaymentMethodId.toString());
+        Assert.assertEquals(paymentMethods.get(1).getIsDefault(), (Byte) AdyenDao.TRUE);
+        binaryDao.deletePaymentMethod(kbPaymentMethodId, DateTime.now(DateTimeZone.UTC), kbTenantId);
+        Assert.assertNull(binaryDao.getPaymentMethod(kbPaymentMethodId, kbTenantId));
+
+        final UUID newKbPaymentId = UUID.randomUUID();
+        final AdyenResponsesRecord newAuthorization = addAuthorization(binaryDao, newKbPaymentId);
+        Assert.assertEquals(binaryDao.getResponses(newKbPaymentId, kbTenantId).get(0).getRecordId(), newAuthorization.getRecordId());
+        Assert.assertEquals(binaryDao.getResponsesWithHppRequests(ImmutableList.<UUID>of(kbPaymentId, newKbPaymentId), kbTenantId).size(), 2);
+    }
+
+    private AdyenResponsesRecord addAuthorization(final AdyenDao dao, final UUID kbPaymentId) throws SQLException {
+        final PurchaseResult purchaseResult = new PurchaseResult(PaymentServiceProviderResult.AUTHORISED, null, UUID.randomUUID().toString(), null, null, null, null);
+        return dao.addResponse(kbAccountId, kbPaymentId, UUID.randomUUID(), TransactionType.AUTHORIZE, BigDecimal.TEN, Currency.EUR, purchaseResult, DateTime.now(DateTimeZone.UTC), kbTenantId);
+    }
+
+    private void addNotification(final AdyenDao dao, final UUID kbPaymentId) throws SQLException {
+        final NotificationRequestItem notificationRequestItem = new NotificationRequestItem();
+        notificationRequestItem.setEventCode("AUTHORISATION");
+        notificationRequestItem.setPspReference(UUID.randomUUID().toString());
+        notificationRequestItem.setSuccess(true);
+        dao.addNotification(null, kbPaymentId, null, null, new NotificationItem(notificationRequestItem), DateTime.now(DateTimeZone.UTC), kbTenantId);
+    }
+
+    private Set<String> getIndexedColumns(final Connection conn, final String table) throws SQLException {
+        final Set<String> columns = new HashSet<String>();
+        final DatabaseMetaData metaData = conn.getMetaData();
+        final ResultSet resultSet = metaData.getIndexInfo(null, null, table, false, false);
+        try {
+            while (resultSet.next()) {
+                columns.add(resultSet.getString("COLUMN_NAME").toLowerCase(Locale.ROOT));
+            }
+        } finally {
+            resultSet.close();
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.metrics;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestLatencyHistogram {
+
+    @Test(groups = "fast")
+    public void testBucketBoundaries() throws Exception {
+        for (final long value : new long[]{0, 1, 31, 32, 33, 63, 64, 1000, 1000000, 123456789, (1L << 40) - 1}) {
+            final int index = LatencyHistogram.bucketIndex(value);
+            Assert.assertTrue(LatencyHistogram.highestValueInBucket(index) >= value, "value=" + value);
+            if (index > 0) {
+                Assert.assertTrue(LatencyHistogram.highestValueInBucket(index - 1) < value, "value=" + value);
+            }
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testPercentiles() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(histogram.getValueAtPercentile(50), 0);
+
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000000L);
+        }
+
+        Assert.assertEquals(histogram.getCount(), 1000);
+        Assert.assertEquals(histogram.getSum(), 500500L * 1000000L);
+        Assert.assertEquals(histogram.getMax(), 1000L * 1000000L);
+        assertWithinRelativeError(histogram.getValueAtPercentile(50), 500L * 1000000L);
+        assertWithinRelativeError(histogram.getValueAtPercentile(99), 990L * 1000000L);
+        Assert.assertEquals(histogram.getValueAtPercentile(100), 1000L * 1000000L);
+    }
+
+    @Test(groups = "fast")
+    public void testOutOfRangeValues() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        Assert.assertEquals(histogram.getCount(), 2);
+        Assert.assertEquals(histogram.getValueAtPercentile(50), 0);
+        Assert.assertEquals(histogram.getValueAtPercentile(100), (1L << 40) - 1);
+    }
+
+    private void assertWithinRelativeError(final long actual, final long expected) {
+        Assert.assertTrue(Math.abs(actual - expected) <= expected * 0.04, "actual=" + actual + ", expected=" + expected);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.plugin.adyen.metrics;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestMetricsRegistry {
+
+    @Test(groups = "fast")
+    public void testFamiliesAreRegisteredOnce() throws Exception {
+        final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+        final MetricFamily<OperationMetrics> operations = metricsRegistry.operations("adyen_test", "the tests", "method");
+        Assert.assertSame(metricsRegistry.operations("adyen_test", "the tests", "method"), operations);
+        Assert.assertSame(operations.labels("foo"), operations.labels("foo"));
+        Assert.assertSame(operations.labels(null), operations.labels(""));
+
+        final MetricFamily<Counter> counters = metricsRegistry.counters("adyen_test_total", "Tests", "result");
+        Assert.assertSame(metricsRegistry.counters("adyen_test_total", "Tests", "result"), counters);
+    }
+
+    @Test(groups = "fast")
+    public void testPrometheusExport() throws Exception {
+        final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+        final MetricFamily<OperationMetrics> operations = metricsRegistry.operations("adyen_test", "the tests", "method");
+        operations.labels("foo").record(System.nanoTime(), true);
+        operations.labels("foo").record(System.nanoTime(), false);
+        operations.labels("bar").record(System.nanoTime(), true);
+
+        final MetricFamily<Counter> counters = metricsRegistry.counters("adyen_test_total", "Tests", "result");
+        counters.labels("ok").add(3);
+
+        metricsRegistry.gauge("adyen_test_gauge", "Test gauge", new Gauge() {
+            @Override
+            public double getValue() {
+                return 12;
+            }
+        });
+
+        final StringBuilder output = new StringBuilder();
+        metricsRegistry.writeTo(new PrometheusTextWriter(output));
+        final String text = output.toString();
+
+        Assert.assertTrue(text.contains("# TYPE adyen_test_duration_seconds summary\n"), text);
+        Assert.assertTrue(text.contains("adyen_test_duration_seconds_count{method=\"foo\"} 2\n"), text);
+        Assert.assertTrue(text.contains("adyen_test_duration_seconds_count{method=\"bar\"} 1\n"), text);
+        // Series are sorted by label value
+        Assert.assertTrue(text.indexOf("adyen_test_duration_seconds_count{method=\"bar\"}") < text.indexOf("adyen_test_duration_seconds_count{method=\"foo\"}"), text);
+        Assert.assertTrue(text.contains("# TYPE adyen_test_errors_total counter\n"), text);
+        Assert.assertTrue(text.contains("adyen_test_errors_total{method=\"foo\"} 1\n"), text);
+        Assert.assertTrue(text.contains("adyen_test_errors_total{method=\"bar\"} 0\n"), text);
+        Assert.assertTrue(text.contains("adyen_test_total{result=\"ok\"} 3\n"), text);
+        Assert.assertTrue(text.contains("# TYPE adyen_test_gauge gauge\nadyen_test_gauge 12\n"), text);
+    }
+}